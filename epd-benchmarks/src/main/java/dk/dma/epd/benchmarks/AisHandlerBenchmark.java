@@ -0,0 +1,93 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.ais.AisIngestionPipeline;
+import dk.dma.epd.shore.ais.AisHandler;
+import dk.dma.epd.shore.service.IntendedRouteHandler;
+
+/**
+ * Benchmarks {@linkplain AisHandlerCommon#receive(AisMessage)}, including the handling of the
+ * messages by the ingestion pipeline, for fleets of different sizes.
+ * <p>
+ * The scores are in messages per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AisHandlerBenchmark {
+
+    static final int MESSAGES = 10000;
+
+    @Param({ "1000", "10000" })
+    int fleetSize;
+
+    private List<AisMessage> messages;
+    private AisHandler aisHandler;
+    private AisIngestionPipeline pipeline;
+
+    @Setup
+    public void setup() {
+        BenchmarkEPD.init();
+        messages = SyntheticData.decode(new AisSentenceGenerator(fleetSize, 42L).generate(MESSAGES * 2));
+        messages = messages.subList(0, Math.min(MESSAGES, messages.size()));
+
+        aisHandler = new AisHandler(EPD.getInstance().getSettings().getAisSettings());
+        aisHandler.findAndInit(new IntendedRouteHandler());
+        pipeline = aisHandler.getIngestionPipeline();
+        pipeline.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int receive() {
+        for (AisMessage message : messages) {
+            aisHandler.receive(message);
+        }
+        // Wait for the pipeline to catch up
+        while (pipeline.getPendingCount() > 0) {
+            Thread.yield();
+        }
+        return aisHandler.getVesselTargets().size();
+    }
+}
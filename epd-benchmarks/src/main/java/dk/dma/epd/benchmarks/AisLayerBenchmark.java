@@ -0,0 +1,83 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+import dk.dma.epd.shore.layers.ais.AisLayer;
+
+/**
+ * Benchmarks the {@code prepare()} method of the AIS layer, which projects the target graphics,
+ * while the map is panned back and forth
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class AisLayerBenchmark {
+
+    /** Keep the repaint timer of the layer out of the way */
+    static final int REDRAW_INTERVAL = 60 * 60 * 1000;
+
+    static final float SCALE = 2000000f;
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 1024;
+
+    @Param({ "1000", "10000" })
+    int targetCount;
+
+    private AisLayer aisLayer;
+    private Projection[] projections;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkEPD.init();
+        projections = new Projection[] { new Mercator(new LatLonPoint.Double(56.25, 11.75), SCALE, WIDTH, HEIGHT),
+                new Mercator(new LatLonPoint.Double(56.35, 11.95), SCALE, WIDTH, HEIGHT) };
+
+        aisLayer = new AisLayer(REDRAW_INTERVAL);
+        aisLayer.setProjection(projections[0]);
+        for (VesselTarget vesselTarget : SyntheticData.createVesselTargets(targetCount, 42L)) {
+            aisLayer.targetUpdated(vesselTarget);
+        }
+    }
+
+    @Benchmark
+    public OMGraphicList prepare() {
+        aisLayer.setProjection(projections[next++ % projections.length]);
+        return aisLayer.prepare();
+    }
+}
@@ -0,0 +1,243 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic, but well-formed, stream of AIS VDM sentences for a fleet of vessels.
+ * <p>
+ * The fleet moves around in Danish waters. The stream consists of class A position reports (#1),
+ * class B position reports (#18), and class A static and voyage related data (#5) which spans
+ * two sentences, roughly in the proportions of a real shore feed.
+ */
+public class AisSentenceGenerator {
+
+    /** Area of the fleet */
+    static final double MIN_LAT = 54.5;
+    static final double MAX_LAT = 58.0;
+    static final double MIN_LON = 8.0;
+    static final double MAX_LON = 15.5;
+
+    /** Share of the vessels that are class B */
+    private static final double CLASS_B_SHARE = 0.2;
+    /** Share of the class A reports that are static data */
+    private static final double STATIC_SHARE = 0.05;
+    /** Time between two reports of the same vessel */
+    private static final double REPORT_INTERVAL = 10.0; // Seconds
+
+    private final Random random;
+    private final int[] mmsi;
+    private final boolean[] classB;
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] sog;
+    private final double[] cog;
+    private int second;
+    private int seqId;
+
+    /**
+     * Constructor
+     *
+     * @param fleetSize
+     *            the number of vessels
+     * @param seed
+     *            the seed of the random generator
+     */
+    public AisSentenceGenerator(int fleetSize, long seed) {
+        random = new Random(seed);
+        mmsi = new int[fleetSize];
+        classB = new boolean[fleetSize];
+        lat = new double[fleetSize];
+        lon = new double[fleetSize];
+        sog = new double[fleetSize];
+        cog = new double[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            mmsi[i] = 219000000 + i;
+            classB[i] = random.nextDouble() < CLASS_B_SHARE;
+            lat[i] = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+            lon[i] = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON);
+            sog[i] = 5.0 + random.nextDouble() * 15.0;
+            cog[i] = random.nextDouble() * 360.0;
+        }
+    }
+
+    /**
+     * Generates sentences until at least the given number of sentences have been generated
+     *
+     * @param count
+     *            the minimum number of sentences
+     * @return the generated sentences
+     */
+    public List<String> generate(int count) {
+        List<String> sentences = new ArrayList<>(count + 1);
+        while (sentences.size() < count) {
+            next(sentences);
+        }
+        return sentences;
+    }
+
+    /**
+     * Generates the sentences of the next message and adds them to the list
+     *
+     * @param sentences
+     *            the list to add the sentences to
+     */
+    public void next(List<String> sentences) {
+        int i = random.nextInt(mmsi.length);
+        second = (second + 1) % 60;
+        if (classB[i]) {
+            move(i);
+            sentences.add(sentence(positionReport(18, i)));
+        } else if (random.nextDouble() < STATIC_SHARE) {
+            staticData(i, sentences);
+        } else {
+            move(i);
+            sentences.add(sentence(positionReport(1, i)));
+        }
+    }
+
+    /**
+     * Moves the vessel along its course, turning around at the edges of the area
+     */
+    private void move(int i) {
+        double dist = sog[i] * REPORT_INTERVAL / 3600.0 / 60.0; // Degrees of latitude
+        double rad = Math.toRadians(cog[i]);
+        lat[i] += dist * Math.cos(rad);
+        lon[i] += dist * Math.sin(rad) / Math.cos(Math.toRadians(lat[i]));
+        if (lat[i] < MIN_LAT || lat[i] > MAX_LAT || lon[i] < MIN_LON || lon[i] > MAX_LON) {
+            cog[i] = (cog[i] + 180.0) % 360.0;
+            lat[i] = Math.min(MAX_LAT, Math.max(MIN_LAT, lat[i]));
+            lon[i] = Math.min(MAX_LON, Math.max(MIN_LON, lon[i]));
+        }
+        cog[i] = (cog[i] + random.nextGaussian() + 360.0) % 360.0;
+    }
+
+    private SixbitWriter positionReport(int msgId, int i) {
+        SixbitWriter writer = new SixbitWriter();
+        writer.add(msgId, 6);
+        writer.add(0, 2); // Repeat indicator
+        writer.add(mmsi[i], 30);
+        if (msgId == 1) {
+            writer.add(0, 4); // Under way using engine
+            writer.add(0x80, 8); // ROT not available
+        } else {
+            writer.add(0, 8); // Reserved
+        }
+        writer.add(Math.round(sog[i] * 10.0), 10);
+        writer.add(1, 1); // Position accuracy
+        writer.add(Math.round(lon[i] * 600000.0), 28);
+        writer.add(Math.round(lat[i] * 600000.0), 27);
+        writer.add(Math.round(cog[i] * 10.0) % 3600, 12);
+        writer.add(Math.round(cog[i]) % 360, 9);
+        writer.add(second, 6);
+        if (msgId == 1) {
+            writer.add(0, 2); // Maneuver indicator
+            writer.add(0, 3); // Spare
+            writer.add(0, 1); // RAIM
+            writer.add(0, 19); // Radio status
+        } else {
+            writer.add(0, 2); // Reserved
+            writer.add(1, 1); // CS unit
+            writer.add(0, 5); // Display, DSC, band, message 22 and assigned flags
+            writer.add(0, 1); // RAIM
+            writer.add(0, 20); // Radio status
+        }
+        return writer;
+    }
+
+    private void staticData(int i, List<String> sentences) {
+        SixbitWriter writer = new SixbitWriter();
+        writer.add(5, 6);
+        writer.add(0, 2); // Repeat indicator
+        writer.add(mmsi[i], 30);
+        writer.add(0, 2); // AIS version
+        writer.add(9000000 + i, 30); // IMO
+        writer.addText("OU" + (i % 10000), 7);
+        writer.addText("VESSEL " + i, 20);
+        writer.add(70, 8); // Cargo ship
+        writer.add(80, 9); // Dimension to bow
+        writer.add(20, 9); // Dimension to stern
+        writer.add(8, 6); // Dimension to port
+        writer.add(8, 6); // Dimension to starboard
+        writer.add(1, 4); // GPS
+        writer.add(1 + i % 12, 4); // ETA month
+        writer.add(1 + i % 28, 5); // ETA day
+        writer.add(i % 24, 5); // ETA hour
+        writer.add(i % 60, 6); // ETA minute
+        writer.add(75, 8); // Draught
+        writer.addText("DKAAR", 20);
+        writer.add(0, 1); // DTE
+        writer.add(0, 1); // Spare
+
+        String payload = writer.payload();
+        String seq = Integer.toString(seqId);
+        seqId = (seqId + 1) % 10;
+        sentences.add(sentence("AIVDM,2,1," + seq + ",A," + payload.substring(0, 60) + ",0"));
+        sentences.add(sentence("AIVDM,2,2," + seq + ",A," + payload.substring(60) + "," + writer.fillBits()));
+    }
+
+    private static String sentence(SixbitWriter writer) {
+        return sentence("AIVDM,1,1,,A," + writer.payload() + "," + writer.fillBits());
+    }
+
+    private static String sentence(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format("!%s*%02X", body, checksum);
+    }
+
+    /**
+     * Encodes fields into an armored six-bit payload
+     */
+    private static final class SixbitWriter {
+        private final StringBuilder bits = new StringBuilder();
+
+        void add(long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                bits.append((value >> i & 1) == 1 ? '1' : '0');
+            }
+        }
+
+        void addText(String text, int length) {
+            String str = text.toUpperCase();
+            for (int i = 0; i < length; i++) {
+                int c = i < str.length() ? str.charAt(i) : '@';
+                add(c >= 64 ? c - 64 : c, 6);
+            }
+        }
+
+        int fillBits() {
+            return (6 - bits.length() % 6) % 6;
+        }
+
+        String payload() {
+            int fill = fillBits();
+            StringBuilder payload = new StringBuilder();
+            for (int i = 0; i < bits.length() + fill; i += 6) {
+                int value = 0;
+                for (int j = i; j < i + 6; j++) {
+                    value = value << 1 | (j < bits.length() && bits.charAt(j) == '1' ? 1 : 0);
+                }
+                payload.append((char) (value < 40 ? value + 48 : value + 56));
+            }
+            return payload.toString();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.maritimecloud.core.id.MaritimeId;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.gui.MainFrameCommon;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
+import dk.dma.epd.shore.settings.EPDSettings;
+
+/**
+ * Minimal headless {@code EPD} instance used by the benchmarks.
+ * <p>
+ * Many EPD components look up their settings and home folder through {@linkplain EPD#getInstance()},
+ * so an instance must be created before these components are instantiated, or even class-loaded.
+ * The instance uses the default shore settings and a temporary home folder.
+ */
+public final class BenchmarkEPD extends EPD {
+
+    private static final Position POSITION = Position.create(56.0, 11.0);
+
+    private BenchmarkEPD(Path homePath) {
+        super();
+        this.homePath = homePath;
+        this.settings = new EPDSettings();
+    }
+
+    /**
+     * Creates the benchmark {@code EPD} instance, unless it has already been created
+     *
+     * @return the benchmark {@code EPD} instance
+     */
+    public static synchronized BenchmarkEPD init() {
+        if (instance instanceof BenchmarkEPD) {
+            return (BenchmarkEPD) instance;
+        }
+        Path home;
+        try {
+            home = Files.createTempDirectory("epd-benchmarks");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create benchmark home folder", e);
+        }
+        System.setProperty("dma.app.home", home.toString());
+        PntTime.init(false);
+        return new BenchmarkEPD(home);
+    }
+
+    @Override
+    public EPDType getType() {
+        return EPDType.SHORE;
+    }
+
+    @Override
+    public Path getHomePath() {
+        return homePath;
+    }
+
+    @Override
+    protected String getPropertyFileName() {
+        return "epd-benchmarks.properties";
+    }
+
+    @Override
+    protected void propertyLoadError(String msg, IOException e) {
+        throw new IllegalStateException(msg, e);
+    }
+
+    @Override
+    protected void startSensors() {
+    }
+
+    @Override
+    protected void stopSensors() {
+    }
+
+    @Override
+    public MainFrameCommon getMainFrame() {
+        return null;
+    }
+
+    @Override
+    public Position getPosition() {
+        return POSITION;
+    }
+
+    @Override
+    public Long getMmsi() {
+        return null;
+    }
+
+    @Override
+    public MaritimeId getMaritimeId() {
+        return null;
+    }
+
+    @Override
+    public String[] getDefaultMouseModeServiceList() {
+        return new String[0];
+    }
+
+    @Override
+    public void closeApp(boolean restart) {
+    }
+
+    @Override
+    public void settingsChanged(Type type) {
+    }
+}
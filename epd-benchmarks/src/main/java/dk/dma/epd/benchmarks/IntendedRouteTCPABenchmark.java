@@ -0,0 +1,106 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteTCPAEngine;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.settings.EnavSettings;
+
+/**
+ * Benchmarks the TCPA computations of the intended route filter over growing fleets.
+ * <p>
+ * {@code findAll} computes the TCPA's of all route pairs, as done when the filter is rebuilt,
+ * {@code findUpdated} those of a single updated route, as done when an intended route is received,
+ * and {@code findPairwise} checks all route pairs one by one, for reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntendedRouteTCPABenchmark {
+
+    static final int WAYPOINTS = 10;
+
+    @Param({ "50", "200", "800" })
+    int fleetSize;
+
+    private Map<Long, Route> routes;
+    private List<Long> mmsis;
+    private IntendedRouteTCPAEngine engine;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkEPD.init();
+        Date start = new Date();
+        now = start.getTime() + 30 * 60 * 1000L;
+        routes = SyntheticData.createFleetRoutes(fleetSize, WAYPOINTS, 42L, start);
+        mmsis = new ArrayList<>(routes.keySet());
+
+        EnavSettings settings = EPD.getInstance().getSettings().getEnavSettings();
+        engine = new IntendedRouteTCPAEngine();
+        engine.setDistances(settings.getFilterDistance(), settings.getMarkerDistance(), settings.getAlertDistance());
+    }
+
+    @Benchmark
+    public Collection<FilteredIntendedRoute> findAll() {
+        return engine.findTCPAs(routes, now);
+    }
+
+    @Benchmark
+    public Collection<FilteredIntendedRoute> findUpdated() {
+        Long mmsi = mmsis.get(next++ % mmsis.size());
+        return engine.findTCPAs(mmsi, routes.get(mmsi), routes, now);
+    }
+
+    @Benchmark
+    public int findPairwise() {
+        int count = 0;
+        for (int i = 0; i < mmsis.size(); i++) {
+            Long mmsi1 = mmsis.get(i);
+            for (int j = i + 1; j < mmsis.size(); j++) {
+                Long mmsi2 = mmsis.get(j);
+                if (engine.findTCPA(routes.get(mmsi1), mmsi1, routes.get(mmsi2), mmsi2, now).include()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dk.dma.epd.common.prototype.service.MsiNmServiceHandlerCommon;
+import dk.dma.epd.common.prototype.service.MsiNmStore;
+import dk.dma.epd.shore.route.RouteManager;
+import dma.msinm.MCMessage;
+
+/**
+ * Benchmarks {@linkplain MsiNmServiceHandlerCommon#recomputeMsiNmMessageFilter(boolean)} with the MSI
+ * filter enabled, for different numbers of MSI-NM messages and visible routes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MsiNmFilterBenchmark {
+
+    static final int WAYPOINTS = 20;
+
+    @Param({ "100", "1000", "10000" })
+    int messageCount;
+
+    @Param({ "10", "100" })
+    int routeCount;
+
+    private MsiNmServiceHandlerCommon msiNmHandler;
+
+    @Setup
+    public void setup() {
+        BenchmarkEPD.init();
+        EPD.getInstance().getSettings().getEnavSettings().setMsiFilter(true);
+
+        // The handler loads its messages from the MSI-NM store of the home folder
+        List<MsiNmNotification> notifications = new ArrayList<>();
+        for (MCMessage message : SyntheticData.createMsiNmMessages(messageCount, 42L)) {
+            notifications.add(new MsiNmNotification(message));
+        }
+        MsiNmStore store = new MsiNmStore(EPD.getInstance().getHomePath());
+        store.setMsiNmMessages(notifications);
+        store.saveToFile();
+
+        RouteManager routeManager = new RouteManager();
+        Random random = new Random(42L);
+        for (int i = 0; i < routeCount; i++) {
+            routeManager.addRoute(SyntheticData.createRoute(random, WAYPOINTS, new Date()));
+        }
+
+        msiNmHandler = new MsiNmServiceHandlerCommon();
+        msiNmHandler.findAndInit(routeManager);
+        if (msiNmHandler.getMsiNmMessages(false).size() != messageCount) {
+            throw new IllegalStateException("Failed to load the synthetic MSI-NM messages");
+        }
+    }
+
+    @Benchmark
+    public int recomputeMsiNmMessageFilter() {
+        msiNmHandler.recomputeMsiNmMessageFilter(false);
+        return msiNmHandler.getMsiNmMessages(true).size();
+    }
+}
@@ -0,0 +1,148 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+import dk.dma.epd.common.prototype.sensor.nmea.IAisSensorListener;
+import dk.dma.epd.common.prototype.sensor.nmea.NmeaSensor;
+
+/**
+ * Benchmarks the parsing of NMEA sentences by the {@linkplain NmeaSensor}, from a single
+ * line, or a buffer of framed sentences, up to the distribution of the decoded AIS messages,
+ * and of the stream reading loop.
+ * <p>
+ * The scores are in sentences per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NmeaSensorBenchmark {
+
+    static final int SENTENCES = 10000;
+
+    private List<String> sentences;
+    private byte[] stream;
+    private BenchmarkSensor sensor;
+    private CountingListener listener;
+
+    @Setup
+    public void setup() {
+        BenchmarkEPD.init();
+        sentences = new AisSentenceGenerator(1000, 42L).generate(SENTENCES).subList(0, SENTENCES);
+        StringBuilder sb = new StringBuilder();
+        for (String sentence : sentences) {
+            sb.append(sentence).append("\r\n");
+        }
+        stream = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        listener = new CountingListener();
+        sensor = new BenchmarkSensor();
+        sensor.addAisListener(listener);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES)
+    public long handleLine() {
+        for (String sentence : sentences) {
+            sensor.handleLine(sentence);
+        }
+        return listener.count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES)
+    public long handleSentences() {
+        sensor.handleSentences(ByteBuffer.wrap(stream), true);
+        return listener.count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES)
+    public long readLoop() throws IOException {
+        sensor.readLoop(new ByteArrayInputStream(stream));
+        return listener.count;
+    }
+
+    /**
+     * Sensor without a connection, fed directly by the benchmark
+     */
+    static class BenchmarkSensor extends NmeaSensor {
+
+        @Override
+        public void handleLine(String line) {
+            super.handleLine(line);
+        }
+
+        @Override
+        public int handleSentences(ByteBuffer buffer, boolean endOfInput) {
+            return super.handleSentences(buffer, endOfInput);
+        }
+
+        @Override
+        public void readLoop(InputStream stream) throws IOException {
+            super.readLoop(stream);
+        }
+
+        @Override
+        public void send(SendRequest sendRequest, Consumer<Abk> resultListener) {
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    /**
+     * Listener counting the received AIS messages
+     */
+    static class CountingListener implements IAisSensorListener {
+        long count;
+
+        @Override
+        public void receive(AisMessage aisMessage) {
+            count++;
+        }
+
+        @Override
+        public void receiveOwnMessage(AisMessage aisMessage) {
+            count++;
+        }
+    }
+}
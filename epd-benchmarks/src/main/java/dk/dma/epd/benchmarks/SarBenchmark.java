@@ -0,0 +1,137 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.model.voct.SAROperation;
+import dk.dma.epd.common.prototype.model.voct.SAR_TYPE;
+import dk.dma.epd.common.prototype.model.voct.SearchPatternGenerator;
+import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SearchPatternRoute;
+import dk.dma.epd.common.prototype.settings.NavSettings;
+
+/**
+ * Benchmarks the SAR drift calculations of the {@linkplain SAROperation} for different drift periods,
+ * and the generation of search patterns by the {@linkplain SearchPatternGenerator}.
+ * <p>
+ * The drift calculations start with an empty drift cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SarBenchmark {
+
+    static final long SRU_MMSI = 219999999L;
+
+    /**
+     * State of the drift calculations
+     */
+    @State(Scope.Benchmark)
+    public static class DriftState {
+
+        @Param({ "1", "6", "24" })
+        int hours;
+
+        @Setup
+        public void setup() {
+            BenchmarkEPD.init();
+        }
+    }
+
+    /**
+     * State of the search pattern generation, based on a rapid response operation
+     */
+    @State(Scope.Benchmark)
+    public static class SearchPatternState {
+
+        @Param({ "Parallel_Sweep_Search", "Creeping_Line_Search", "Expanding_Square_Search" })
+        SearchPatternGenerator.searchPattern pattern;
+
+        RapidResponseData data;
+        SearchPatternGenerator generator;
+        NavSettings navSettings;
+
+        @Setup
+        public void setup() {
+            BenchmarkEPD.init();
+            navSettings = EPD.getInstance().getSettings().getNavSettings();
+            SAROperation sarOperation = new SAROperation(SAR_TYPE.RAPID_RESPONSE);
+            data = sarOperation.startRapidResponseCalculations(SyntheticData.createRapidResponseData(6, 42L));
+
+            EffortAllocationData effortAllocationData = new EffortAllocationData();
+            effortAllocationData.setW(1.0);
+            effortAllocationData.setPod(0.78);
+            effortAllocationData.setGroundSpeed(10.0);
+            effortAllocationData.setSearchTime(3);
+            data.addEffortAllocationData(SRU_MMSI, effortAllocationData);
+            sarOperation.calculateEffortAllocation(data);
+
+            // Search the full rapid response area
+            effortAllocationData.setEffectiveAreaA(data.getA());
+            effortAllocationData.setEffectiveAreaB(data.getB());
+            effortAllocationData.setEffectiveAreaC(data.getC());
+            effortAllocationData.setEffectiveAreaD(data.getD());
+            data.setCSP(data.getA());
+            generator = new SearchPatternGenerator(sarOperation);
+        }
+    }
+
+    @Benchmark
+    public RapidResponseData rapidResponse(DriftState state) {
+        SAROperation.getDriftCache().clear();
+        SAROperation sarOperation = new SAROperation(SAR_TYPE.RAPID_RESPONSE);
+        return sarOperation.startRapidResponseCalculations(SyntheticData.createRapidResponseData(state.hours, 42L));
+    }
+
+    @Benchmark
+    public DatumPointData datumPoint(DriftState state) {
+        SAROperation.getDriftCache().clear();
+        SAROperation sarOperation = new SAROperation(SAR_TYPE.DATUM_POINT);
+        return sarOperation.startDatumPointCalculations(SyntheticData.createDatumPointData(state.hours, 42L));
+    }
+
+    @Benchmark
+    public List<SARData> futureCalculations(DriftState state) {
+        SAROperation.getDriftCache().clear();
+        SAROperation sarOperation = new SAROperation(SAR_TYPE.DATUM_POINT);
+        DatumPointData data = sarOperation.startDatumPointCalculations(SyntheticData.createDatumPointData(state.hours, 42L));
+        return sarOperation.sarFutureCalculations(data);
+    }
+
+    @Benchmark
+    public SearchPatternRoute searchPattern(SearchPatternState state) {
+        return state.generator.generateSearchPattern(state.pattern, state.data, state.navSettings, SRU_MMSI);
+    }
+}
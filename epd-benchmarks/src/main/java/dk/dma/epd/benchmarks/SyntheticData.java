@@ -0,0 +1,294 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.benchmarks;
+
+import static dk.dma.epd.benchmarks.AisSentenceGenerator.MAX_LAT;
+import static dk.dma.epd.benchmarks.AisSentenceGenerator.MAX_LON;
+import static dk.dma.epd.benchmarks.AisSentenceGenerator.MIN_LAT;
+import static dk.dma.epd.benchmarks.AisSentenceGenerator.MIN_LON;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.packet.AisPacketParser;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.VesselPositionData;
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCMessage;
+import dma.msinm.MCMessageDesc;
+import dma.msinm.MCPoint;
+
+/**
+ * Factory methods for the synthetic data used by the benchmarks.
+ * <p>
+ * All data is generated from a seeded random generator, so repeated runs
+ * benchmark the same data.
+ */
+public final class SyntheticData {
+
+    /** Area of the routes, roughly the Kattegat, to get a realistic density of encounters */
+    private static final double ROUTE_MIN_LAT = 56.0;
+    private static final double ROUTE_MAX_LAT = 57.5;
+    private static final double ROUTE_MIN_LON = 10.5;
+    private static final double ROUTE_MAX_LON = 12.5;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Returns a random position within the given area
+     */
+    private static Position randomPosition(Random random, double minLat, double maxLat, double minLon, double maxLon) {
+        return Position.create(minLat + random.nextDouble() * (maxLat - minLat), minLon + random.nextDouble() * (maxLon - minLon));
+    }
+
+    /**
+     * Decodes the given sentences into AIS messages
+     *
+     * @param sentences
+     *            the sentences to decode
+     * @return the decoded AIS messages
+     */
+    public static List<AisMessage> decode(List<String> sentences) {
+        AisPacketParser parser = new AisPacketParser();
+        List<AisMessage> messages = new ArrayList<>(sentences.size());
+        try {
+            for (String sentence : sentences) {
+                AisPacket packet = parser.readLine(sentence);
+                if (packet != null) {
+                    messages.add(AisMessage.getInstance(packet.getVdm()));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to decode synthetic AIS sentences", e);
+        }
+        return messages;
+    }
+
+    /**
+     * Creates a route of straight legs, starting at the given time
+     *
+     * @param random
+     *            the random generator
+     * @param waypointCount
+     *            the number of way points
+     * @param starttime
+     *            the start time of the route
+     * @return the route, with ETA's calculated
+     */
+    public static Route createRoute(Random random, int waypointCount, Date starttime) {
+        Route route = new Route();
+        route.setName("Route " + random.nextInt(100000));
+        double speed = 8.0 + random.nextDouble() * 10.0;
+        double heading = random.nextDouble() * 360.0;
+        Position pos = randomPosition(random, ROUTE_MIN_LAT, ROUTE_MAX_LAT, ROUTE_MIN_LON, ROUTE_MAX_LON);
+
+        RouteWaypoint prevWp = null;
+        for (int i = 0; i < waypointCount; i++) {
+            RouteWaypoint wp = new RouteWaypoint();
+            wp.setName(String.format("WP_%03d", i + 1));
+            wp.setPos(pos);
+            if (prevWp != null) {
+                new RouteLeg(prevWp, wp);
+                prevWp.setSpeed(speed);
+            }
+            route.getWaypoints().add(wp);
+            prevWp = wp;
+
+            // Next leg is 5-15 nm, turning up to 45 degrees
+            heading = (heading + (random.nextDouble() - 0.5) * 90.0 + 360.0) % 360.0;
+            double dist = (5.0 + random.nextDouble() * 10.0) / 60.0;
+            double lat = pos.getLatitude() + dist * Math.cos(Math.toRadians(heading));
+            double lon = pos.getLongitude() + dist * Math.sin(Math.toRadians(heading)) / Math.cos(Math.toRadians(lat));
+            pos = Position.create(lat, lon);
+        }
+        route.setStarttime(starttime);
+        route.setVisible(true);
+        route.calcValues(true);
+        return route;
+    }
+
+    /**
+     * Creates the routes of a fleet, indexed by MMSI
+     *
+     * @param fleetSize
+     *            the number of routes
+     * @param waypointCount
+     *            the number of way points per route
+     * @param seed
+     *            the seed of the random generator
+     * @param starttime
+     *            the start time of the routes
+     * @return the routes
+     */
+    public static Map<Long, Route> createFleetRoutes(int fleetSize, int waypointCount, long seed, Date starttime) {
+        Random random = new Random(seed);
+        Map<Long, Route> routes = new LinkedHashMap<>();
+        for (int i = 0; i < fleetSize; i++) {
+            // Stagger the start times over the first hour
+            Date start = new Date(starttime.getTime() + random.nextInt(60) * 60000L);
+            routes.put(219000000L + i, createRoute(random, waypointCount, start));
+        }
+        return routes;
+    }
+
+    /**
+     * Creates vessel targets with random positions, courses and speeds
+     *
+     * @param count
+     *            the number of targets
+     * @param seed
+     *            the seed of the random generator
+     * @return the vessel targets
+     */
+    public static List<VesselTarget> createVesselTargets(int count, long seed) {
+        Random random = new Random(seed);
+        Date now = new Date();
+        List<VesselTarget> targets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VesselPositionData positionData = new VesselPositionData();
+            positionData.setPos(randomPosition(random, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON));
+            positionData.setSog(5.0f + random.nextFloat() * 15.0f);
+            positionData.setCog(random.nextFloat() * 360.0f);
+            positionData.setTrueHeading(positionData.getCog());
+
+            VesselTarget target = new VesselTarget();
+            target.setMmsi(219000000L + i);
+            target.setAisClass(random.nextDouble() < 0.2 ? VesselTarget.AisClass.B : VesselTarget.AisClass.A);
+            target.setLastReceived(now);
+            target.setPositionData(positionData);
+            targets.add(target);
+        }
+        return targets;
+    }
+
+    /**
+     * Creates MSI-NM messages located as points, circles and polygons
+     *
+     * @param count
+     *            the number of messages
+     * @param seed
+     *            the seed of the random generator
+     * @return the MSI-NM messages
+     */
+    public static List<MCMessage> createMsiNmMessages(int count, long seed) {
+        Random random = new Random(seed);
+        List<MCMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MCMessage message = new MCMessage();
+            message.setId(i + 1);
+            message.setUpdated(net.maritimecloud.util.Timestamp.create(System.currentTimeMillis()));
+            MCMessageDesc desc = new MCMessageDesc();
+            desc.setTitle("Synthetic MSI-NM " + (i + 1));
+            message.addDescs(desc);
+
+            Position center = randomPosition(random, MIN_LAT, MAX_LAT, MIN_LON, MAX_LON);
+            MCLocation location = new MCLocation();
+            double type = random.nextDouble();
+            if (type < 0.6) {
+                location.setType(MCLocationType.POINT);
+                location.addPoints(createPoint(center.getLatitude(), center.getLongitude()));
+            } else if (type < 0.8) {
+                location.setType(MCLocationType.CIRCLE);
+                location.setRadius(1 + random.nextInt(5));
+                location.addPoints(createPoint(center.getLatitude(), center.getLongitude()));
+            } else {
+                location.setType(MCLocationType.POLYGON);
+                int points = 4 + random.nextInt(3);
+                for (int j = 0; j < points; j++) {
+                    double angle = 2.0 * Math.PI * j / points;
+                    location.addPoints(createPoint(center.getLatitude() + 0.05 * Math.cos(angle),
+                            center.getLongitude() + 0.1 * Math.sin(angle)));
+                }
+            }
+            message.addLocations(location);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static MCPoint createPoint(double lat, double lon) {
+        MCPoint point = new MCPoint();
+        point.setLat(lat);
+        point.setLon(lon);
+        return point;
+    }
+
+    /**
+     * Creates hourly surface drift data, starting at the given time
+     */
+    private static List<SARWeatherData> createWeatherPoints(Random random, DateTime start, int hours) {
+        List<SARWeatherData> weatherPoints = new ArrayList<>();
+        for (int i = 0; i <= hours; i++) {
+            weatherPoints.add(new SARWeatherData(random.nextDouble() * 360.0, 0.5 + random.nextDouble() * 2.0,
+                    5.0 + random.nextDouble() * 20.0, random.nextDouble() * 360.0, start.plusHours(i)));
+        }
+        return weatherPoints;
+    }
+
+    /**
+     * Creates the input of a rapid response SAR operation
+     *
+     * @param hours
+     *            the hours between the last known position and the commence search start
+     * @param seed
+     *            the seed of the random generator
+     * @return the rapid response data
+     */
+    public static RapidResponseData createRapidResponseData(int hours, long seed) {
+        Random random = new Random(seed);
+        DateTime css = DateTime.now();
+        DateTime lkpDate = css.minusHours(hours);
+        RapidResponseData data = new RapidResponseData("benchmark", lkpDate, css, randomPosition(random, ROUTE_MIN_LAT,
+                ROUTE_MAX_LAT, ROUTE_MIN_LON, ROUTE_MAX_LON), 1.0, 0.1, 1.0, 0);
+        data.setWeatherPoints(createWeatherPoints(random, lkpDate, hours));
+        return data;
+    }
+
+    /**
+     * Creates the input of a datum point SAR operation
+     *
+     * @param hours
+     *            the hours between the last known position and the commence search start
+     * @param seed
+     *            the seed of the random generator
+     * @return the datum point data
+     */
+    public static DatumPointData createDatumPointData(int hours, long seed) {
+        Random random = new Random(seed);
+        DateTime css = DateTime.now();
+        DateTime lkpDate = css.minusHours(hours);
+        DatumPointData data = new DatumPointData("benchmark", lkpDate, css, randomPosition(random, ROUTE_MIN_LAT,
+                ROUTE_MAX_LAT, ROUTE_MIN_LON, ROUTE_MAX_LON), 1.0, 0.1, 1.0, 0);
+        data.setWeatherPoints(createWeatherPoints(random, lkpDate, hours));
+        return data;
+    }
+}
@@ -14,22 +14,46 @@
  */
 package dk.dma.epd.common.prototype;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import org.apache.log4j.xml.DOMConfigurator;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 
 import com.google.common.io.Resources;
 
-
+/**
+ * Unpacks the default files and folders of the application to the home folder.
+ * <p>
+ * Existing files are never overwritten. The folders are unpacked in parallel, and a folder is
+ * only scanned if the application code has changed since it was last unpacked, or if one of the
+ * files unpacked then has since been deleted. The checksum and the file names are recorded
+ * in the {@code .bootstrap} file of the home folder.
+ */
 public class Bootstrap {
+
+    private static final String CHECKSUM_FILE = ".bootstrap";
+    private static final String FILES_SUFFIX = ".files";
+
     Path home;
+    private final ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
 
     public void run(EPD epd, String[] appHomeFiles, String[] appHomeFolders) throws IOException {
         
@@ -49,9 +73,7 @@ public class Bootstrap {
         for (String appHomeFile : appHomeFiles) {
             unpackToAppHome(appHomeFile);
         }
-        for (String appHomeFolder : appHomeFolders) {
-            unpackFolderToAppHome(appHomeFolder);
-        }
+        unpackFoldersToAppHome(epd, appHomeFolders);
 
         // update location of shape files to user.home
         Properties properties = epd.loadProperties();
@@ -75,21 +97,158 @@ public class Bootstrap {
         properties.put("background.InternalArea.spatialIndex", home.resolve(prev).toString());
 
     }
-    protected void unpackFolderToAppHome(String folder) throws IOException {
-        ApplicationContext context = new ClassPathXmlApplicationContext();
+
+    /**
+     * Unpacks the given folders in parallel, skipping the folders that were unpacked
+     * from the same application code before and whose files all still exist
+     *
+     * @param epd
+     *            the application
+     * @param folders
+     *            the folders to unpack
+     */
+    protected void unpackFoldersToAppHome(EPD epd, String[] folders) throws IOException {
+        Path checksumFile = home.resolve(CHECKSUM_FILE);
+        Properties checksums = new Properties();
+        if (Files.exists(checksumFile)) {
+            try (InputStream in = Files.newInputStream(checksumFile)) {
+                checksums.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Unpack all folders again
+                checksums.clear();
+            }
+        }
+        String checksum = getCodeChecksum(epd);
+
+        List<String> toUnpack = new ArrayList<>();
+        for (String folder : folders) {
+            if (checksum == null || !checksum.equals(checksums.getProperty(folder))
+                    || !filesExist(home.resolve(folder), checksums.getProperty(folder + FILES_SUFFIX))) {
+                toUnpack.add(folder);
+            }
+        }
+        if (toUnpack.isEmpty()) {
+            return;
+        }
+
+        List<List<String>> unpacked = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(toUnpack.size());
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (final String folder : toUnpack) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws IOException {
+                        return unpackFolderToAppHome(folder);
+                    }
+                }));
+            }
+            for (Future<List<String>> future : futures) {
+                unpacked.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while unpacking folders", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        if (checksum != null) {
+            for (int i = 0; i < toUnpack.size(); i++) {
+                checksums.setProperty(toUnpack.get(i), checksum);
+                checksums.setProperty(toUnpack.get(i) + FILES_SUFFIX, join(unpacked.get(i)));
+            }
+            try (OutputStream out = Files.newOutputStream(checksumFile)) {
+                checksums.store(out, "Application code checksum of the unpacked folders");
+            }
+        }
+    }
+
+    /**
+     * Returns a checksum identifying the packaged application code, or null if the code is not
+     * loaded from a single archive, e.g. when running from the class folders of a build
+     *
+     * @param epd
+     *            the application
+     * @return the checksum or null if not available
+     */
+    static String getCodeChecksum(EPD epd) {
+        try {
+            CodeSource codeSource = epd.getClass().getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                return null;
+            }
+            File file = new File(codeSource.getLocation().toURI());
+            if (!file.isFile()) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update((file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified()).getBytes("UTF-8"));
+            return Long.toHexString(crc.getValue());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns if the folder exists and contains all of the files in the given list
+     *
+     * @param folder
+     *            the folder
+     * @param files
+     *            the file names separated by '/', or null if not recorded
+     * @return if all files exist
+     */
+    static boolean filesExist(Path folder, String files) {
+        if (files == null || !Files.isDirectory(folder)) {
+            return false;
+        }
+        for (String file : files.split("/")) {
+            if (!file.isEmpty() && !Files.exists(folder.resolve(file))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String join(List<String> files) {
+        StringBuilder sb = new StringBuilder();
+        for (String file : files) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(file);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Unpacks the files of the given folder that do not already exist
+     *
+     * @param folder
+     *            the folder
+     * @return the names of all files in the folder resource
+     */
+    protected List<String> unpackFolderToAppHome(String folder) throws IOException {
         // we do not support recursive folders
-        Resource[] xmlResources = context.getResources("classpath:/" + folder + "/*.*");
+        Resource[] xmlResources = resolver.getResources("classpath:/" + folder + "/*.*");
         Path f = home.resolve(folder);
         if (!Files.exists(f)) {
             Files.createDirectories(f);
         }
+        List<String> files = new ArrayList<>();
         for (Resource r : xmlResources) {
+            files.add(r.getFilename());
             Path destination = f.resolve(r.getFilename());
             if (!Files.exists(destination)) {
-                Resources.copy(r.getURL(), Files.newOutputStream(destination));
+                try (OutputStream out = Files.newOutputStream(destination)) {
+                    Resources.copy(r.getURL(), out);
+                }
             }
         }
-
+        return files;
     }
 
     protected void unpackToAppHome(String filename) throws IOException {
@@ -99,7 +258,9 @@ public class Bootstrap {
             if (url == null) {
                 throw new Error("Missing file src/resources/" + filename);
             }
-            Resources.copy(url, Files.newOutputStream(destination));
+            try (OutputStream out = Files.newOutputStream(destination)) {
+                Resources.copy(url, out);
+            }
         }
     }
 }
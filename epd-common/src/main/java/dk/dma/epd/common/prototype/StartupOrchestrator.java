@@ -0,0 +1,306 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the phases of the application startup, in parallel where their dependencies allow it,
+ * and reports the time spent in each phase.
+ * <p>
+ * Phases submitted with {@linkplain #submit} run on a pool of worker threads once all their
+ * dependencies have completed. Phases run with {@linkplain #run} execute on the calling thread,
+ * e.g. because they must run in order or on a specific thread, and are only timed.
+ * If a phase fails, the phases depending on it are not run, and fail as well.
+ */
+@ThreadSafe
+public class StartupOrchestrator {
+
+    private final String name;
+    private final long startTime = System.nanoTime();
+    private final ExecutorService executor;
+    private final List<Phase<?>> phases = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *            the name of the application, used for the worker threads and the report
+     * @param threads
+     *            the number of worker threads
+     */
+    public StartupOrchestrator(String name, int threads) {
+        this.name = name;
+        final AtomicInteger count = new AtomicInteger();
+        final String threadName = name + "-startup-";
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Constructor using a worker thread per available processor, but at least two
+     *
+     * @param name
+     *            the name of the application, used for the worker threads and the report
+     */
+    public StartupOrchestrator(String name) {
+        this(name, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Submits a phase to run on a worker thread once its dependencies have completed
+     *
+     * @param phaseName
+     *            the name of the phase
+     * @param task
+     *            the task of the phase
+     * @param dependencies
+     *            the phases that must complete first
+     * @return the phase
+     */
+    public <T> Phase<T> submit(String phaseName, Callable<T> task, Phase<?>... dependencies) {
+        final Phase<T> phase = new Phase<>(phaseName, task, dependencies.length + 1);
+        phases.add(phase);
+        for (Phase<?> dependency : dependencies) {
+            dependency.addDependent(phase);
+        }
+        // Released once all dependencies, if any, have completed
+        phase.dependencyDone(null);
+        return phase;
+    }
+
+    /**
+     * Submits a phase without a result to run on a worker thread once its dependencies have completed
+     *
+     * @param phaseName
+     *            the name of the phase
+     * @param task
+     *            the task of the phase
+     * @param dependencies
+     *            the phases that must complete first
+     * @return the phase
+     */
+    public Phase<Void> submit(String phaseName, Runnable task, Phase<?>... dependencies) {
+        return submit(phaseName, Executors.<Void> callable(task, null), dependencies);
+    }
+
+    /**
+     * Runs a phase on the calling thread and times it
+     *
+     * @param phaseName
+     *            the name of the phase
+     * @param task
+     *            the task of the phase
+     */
+    public void run(String phaseName, Runnable task) {
+        Phase<Void> phase = new Phase<>(phaseName, Executors.<Void> callable(task, null), 0);
+        phases.add(phase);
+        phase.execute();
+        if (phase.error != null) {
+            throw phase.error instanceof RuntimeException ? (RuntimeException) phase.error : new IllegalStateException(
+                    phase.error);
+        }
+    }
+
+    /**
+     * Waits for all phases submitted so far, logs the timing report and stops the worker threads.
+     * Returns immediately, doing the waiting on a background thread.
+     */
+    public void finish() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Phase<?> phase : phases) {
+                    phase.await();
+                }
+                executor.shutdown();
+                LoggerFactory.getLogger(StartupOrchestrator.class).info(getReport());
+            }
+        }, name + "-startup-report");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the timing report of the completed phases, ordered by start time
+     *
+     * @return the timing report
+     */
+    public String getReport() {
+        List<Phase<?>> completed = new ArrayList<>();
+        for (Phase<?> phase : phases) {
+            if (phase.isDone()) {
+                completed.add(phase);
+            }
+        }
+        Collections.sort(completed, new Comparator<Phase<?>>() {
+            @Override
+            public int compare(Phase<?> p1, Phase<?> p2) {
+                return Long.compare(p1.start, p2.start);
+            }
+        });
+
+        long end = startTime;
+        long busy = 0;
+        StringBuilder report = new StringBuilder(name).append(" startup phases:");
+        for (Phase<?> phase : completed) {
+            end = Math.max(end, phase.end);
+            busy += phase.end - phase.start;
+            report.append(String.format("%n  %-32s start %6d ms  took %6d ms  [%s]%s", phase.name,
+                    millis(phase.start - startTime), millis(phase.end - phase.start), phase.thread,
+                    phase.error == null ? "" : " FAILED: " + phase.error));
+        }
+        report.append(String.format("%n  Total %d ms, %d ms of work in %d phases", millis(end - startTime), millis(busy),
+                completed.size()));
+        return report.toString();
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000L;
+    }
+
+    /**
+     * A startup phase
+     */
+    public final class Phase<T> {
+        private final String name;
+        private final Callable<T> task;
+        private final AtomicInteger pending;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        @GuardedBy("this")
+        private final List<Phase<?>> dependents = new ArrayList<>();
+        @GuardedBy("this")
+        private boolean completed;
+
+        private volatile Throwable failedDependency;
+        private volatile long start;
+        private volatile long end;
+        private volatile String thread;
+        private volatile T result;
+        private volatile Throwable error;
+
+        Phase(String name, Callable<T> task, int pending) {
+            this.name = name;
+            this.task = task;
+            this.pending = new AtomicInteger(pending);
+        }
+
+        /**
+         * Waits for the phase to complete and returns its result
+         *
+         * @return the result of the phase
+         * @throws IllegalStateException
+         *             if the phase, or one of its dependencies, failed
+         */
+        public T get() {
+            await();
+            if (error != null) {
+                throw new IllegalStateException("Startup phase " + name + " failed", error);
+            }
+            return result;
+        }
+
+        /**
+         * Returns if the phase has completed, successfully or not
+         *
+         * @return if the phase has completed
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for startup phase " + name, e);
+            }
+        }
+
+        void addDependent(Phase<?> dependent) {
+            synchronized (this) {
+                if (!completed) {
+                    dependents.add(dependent);
+                    return;
+                }
+            }
+            dependent.dependencyDone(error);
+        }
+
+        void dependencyDone(Throwable dependencyError) {
+            if (dependencyError != null) {
+                failedDependency = dependencyError;
+            }
+            if (pending.decrementAndGet() == 0) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute();
+                    }
+                });
+            }
+        }
+
+        void execute() {
+            thread = Thread.currentThread().getName();
+            start = System.nanoTime();
+            try {
+                if (failedDependency != null) {
+                    throw new IllegalStateException("Dependency failed", failedDependency);
+                }
+                result = task.call();
+            } catch (Throwable t) {
+                error = t;
+                LoggerFactory.getLogger(StartupOrchestrator.class).error(
+                        "Startup phase " + name + " failed: " + t.getMessage(), t);
+            }
+            end = System.nanoTime();
+
+            List<Phase<?>> toRelease;
+            synchronized (this) {
+                completed = true;
+                toRelease = new ArrayList<>(dependents);
+                dependents.clear();
+            }
+            done.countDown();
+            for (Phase<?> dependent : toRelease) {
+                dependent.dependencyDone(error);
+            }
+        }
+    }
+}
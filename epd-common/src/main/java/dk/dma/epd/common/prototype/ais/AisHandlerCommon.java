@@ -17,20 +17,23 @@ package dk.dma.epd.common.prototype.ais;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.slf4j.Logger;
@@ -61,16 +64,30 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
 
     private static final Logger LOG = LoggerFactory.getLogger(AisHandlerCommon.class);
 
+    // The legacy serialized AIS view file. Only read when migrating to the snapshot format
     protected static final String AIS_VIEW_FILE = EPD.getInstance().getHomePath().resolve(".aisview").toString();
+    protected static final String AIS_SNAPSHOT_FILE = EPD.getInstance().getHomePath().resolve(".aissnapshot").toString();
+
+    // How often the changed targets are checkpointed
+    protected static final long CHECKPOINT_INTERVAL = 60; // Seconds
+
+    // How often the targets updated by received messages are published
+    protected static final long PUBLISH_INTERVAL = 500; // Milliseconds
 
     // How long targets are saved without reports
     protected static final long TARGET_TTL = 60 * 60 * 1000; // One hour
 
-    protected ConcurrentHashMap<Integer, AtoNTarget> atonTargets = new ConcurrentHashMap<>();
-    protected ConcurrentHashMap<Long, VesselTarget> vesselTargets = new ConcurrentHashMap<>();
-    protected ConcurrentHashMap<Long, SarTarget> sarTargets = new ConcurrentHashMap<>();
+    // How often expired targets are aged, and how often the periodic update is performed
+    protected static final long AGING_INTERVAL = 1000; // Milliseconds
+    protected static final long PERIODIC_INTERVAL = 10000; // Milliseconds
+
+    // Replaced by loadView(), which may run on a startup worker thread
+    protected volatile ConcurrentHashMap<Integer, AtoNTarget> atonTargets = new ConcurrentHashMap<>();
+    protected volatile ConcurrentHashMap<Long, VesselTarget> vesselTargets = new ConcurrentHashMap<>();
+    protected volatile ConcurrentHashMap<Long, SarTarget> sarTargets = new ConcurrentHashMap<>();
 
     protected CopyOnWriteArrayList<IAisTargetListener> listeners = new CopyOnWriteArrayList<>();
+    protected CopyOnWriteArrayList<IAisTargetBatchListener> batchListeners = new CopyOnWriteArrayList<>();
 
     protected AisStatus aisStatus = new AisStatus();
     protected final boolean strictAisMode;
@@ -82,6 +99,45 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
 
     private IntendedRouteHandlerCommon intendedRouteHandlerCommon;
 
+    // Background checkpointing of the AIS view.
+    // The dirty targets are the MMSI's of targets changed or removed since the last checkpoint
+    private final AisViewSnapshot aisViewSnapshot = new AisViewSnapshot(Paths.get(AIS_SNAPSHOT_FILE));
+    private final Set<Long> dirtyTargets = new ConcurrentHashSet<>();
+    private volatile boolean snapshotDue = true;
+    private final ScheduledExecutorService checkpointScheduler = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AisViewCheckpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Received messages are handled by the ingestion pipeline, and the resulting
+    // target updates are coalesced and published periodically
+    private final AisIngestionPipeline ingestionPipeline = new AisIngestionPipeline("AisIngestion",
+            new AisIngestionPipeline.MessageHandler() {
+                @Override
+                public void handle(AisMessage aisMessage) {
+                    ingest(aisMessage);
+                }
+            });
+    private final Set<AisTarget> pendingUpdates = new ConcurrentHashSet<>();
+
+    // Targets scheduled for their next old, gone or dead status change
+    private final AisTargetExpiryQueue expiryQueue = new AisTargetExpiryQueue();
+    private long lastPeriodicUpdate;
+    private final ScheduledExecutorService publishScheduler = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AisPublisher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /**
      * Constructor
      * 
@@ -97,13 +153,26 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Method receiving AIS messages from AIS sensor
+     * Method receiving AIS messages from AIS sensor.
+     * <p>
+     * The message is handed over to the ingestion pipeline, which may block
+     * if the pipeline has fallen behind
      */
     @Override
     public final void receive(AisMessage aisMessage) {
         // Mark successful reception
         aisStatus.markAisReception();
 
+        ingestionPipeline.submit(aisMessage);
+    }
+
+    /**
+     * Handles the AIS message. Called by the worker thread of the MMSI of the message
+     * 
+     * @param aisMessage
+     *            the AIS message
+     */
+    private void ingest(AisMessage aisMessage) {
         if (aisMessage instanceof AisPositionMessage) {
             AisPositionMessage aisPositionMessage = (AisPositionMessage) aisMessage;
             // Create PositionData
@@ -139,6 +208,10 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         atonTargets.clear();
         vesselTargets.clear();
         sarTargets.clear();
+        pendingUpdates.clear();
+        expiryQueue.clear();
+        dirtyTargets.clear();
+        snapshotDue = true;
         publishAll();
     }
 
@@ -171,7 +244,9 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         atonTarget.setLastReceived(PntTime.getDate());
         // Update status
         atonTarget.setStatus(AisTarget.Status.OK);
-        publishUpdate(atonTarget);
+        markDirty(atonTarget.getMmsi());
+        scheduleExpiry(atonTarget);
+        queueUpdate(atonTarget);
     }
 
     /**
@@ -195,6 +270,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         }
         // Update static data
         vesselTarget.setStaticData(staticData);
+        markDirty(mmsi);
 
     }
 
@@ -219,6 +295,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         } else {
             staticData.update(msg24);
         }
+        markDirty(vesselTarget.getMmsi());
 
     }
 
@@ -237,6 +314,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         }
         // Update static data
         sarTarget.setStaticData(staticData);
+        markDirty(mmsi);
     }
 
     /**
@@ -252,17 +330,20 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         // Update class pos data
         mobileTarget.setPositionData(positionData);
 
-        // Update past-track
+        // Update past-track and clean up old past-track points (convert from minutes to seconds)
         mobileTarget.addPastTrackPosition(positionData.getPos());
+        mobileTarget.getPastTrackData().cleanup(60 * pastTrackMaxTime);
 
         // Update last received
         mobileTarget.setLastReceived(PntTime.getDate());
 
         // Update status
         mobileTarget.setStatus(AisTarget.Status.OK);
+        markDirty(mobileTarget.getMmsi());
+        scheduleExpiry(mobileTarget);
 
-        // Publish update
-        publishUpdate(mobileTarget);
+        // Publish update with the next batch
+        queueUpdate(mobileTarget);
     }
 
     /**
@@ -346,6 +427,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             VesselTargetSettings settings = vesselTarget.getSettings();
             if (show != settings.isShowPastTrack()) {
                 settings.setShowPastTrack(show);
+                markDirty(vesselTarget.getMmsi());
                 publishUpdate(vesselTarget);
             }
         }
@@ -353,6 +435,7 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
             VesselTargetSettings settings = sarTarget.getSettings();
             if (show != settings.isShowPastTrack()) {
                 settings.setShowPastTrack(show);
+                markDirty(sarTarget.getMmsi());
                 publishUpdate(sarTarget);
             }
         }
@@ -421,6 +504,15 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         return aisStatus;
     }
 
+    /**
+     * Returns the pipeline handling the received AIS messages
+     * 
+     * @return the ingestion pipeline
+     */
+    public final AisIngestionPipeline getIngestionPipeline() {
+        return ingestionPipeline;
+    }
+
     public final VesselTarget getVesselTarget(Long mmsi) {
         return vesselTargets.get(mmsi);
     }
@@ -451,27 +543,96 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Update status of all targets
+     * Update status of the targets whose next status change is due.
+     * <p>
+     * Each target is only examined when it may go old, gone or dead, so the cost
+     * is proportional to the number of expired targets rather than to the number of targets.
+     * Targets are re-scheduled for their next status change afterwards.
      */
     protected final void updateStatus() {
         Date now = PntTime.getDate();
-        List<Long> deadTargets = new ArrayList<>();
 
-        // Go through all vessel targets
-        updateStatus(vesselTargets, deadTargets, now, false);
+        for (AisTarget aisTarget : expiryQueue.pollExpired(now.getTime())) {
+            // The target may have been removed since it was scheduled
+            if (!isCurrentTarget(aisTarget)) {
+                continue;
+            }
+            if (updateTarget(aisTarget, now)) {
+                removeDeadTarget(aisTarget);
+            } else {
+                scheduleExpiry(aisTarget);
+            }
+        }
 
-        // Go through all aton targets
-        updateStatus(atonTargets, deadTargets, now, true);
+        // Allow sub-classes to perform a periodic update
+        long time = System.currentTimeMillis();
+        if (time - lastPeriodicUpdate >= PERIODIC_INTERVAL) {
+            lastPeriodicUpdate = time;
+            updatePeriodic();
+        }
+    }
 
-        // Go through all sart targets
-        updateStatus(sarTargets, deadTargets, now, false);
+    /**
+     * Schedules the target for its next status change, i.e. when it will go old, gone or
+     * dead unless a new report is received. Should be called whenever a report is received
+     * 
+     * @param aisTarget
+     *            the target to schedule
+     */
+    protected final void scheduleExpiry(AisTarget aisTarget) {
+        long deadline;
+        if (aisTarget.isGone()) {
+            deadline = aisTarget.getDeadTime(TARGET_TTL);
+        } else {
+            deadline = aisTarget.getGoneTime(strictAisMode);
+            if (aisTarget instanceof SarTarget && !((SarTarget) aisTarget).isOld()) {
+                deadline = Math.min(deadline, ((SarTarget) aisTarget).getOldTime());
+            }
+        }
+        expiryQueue.schedule(aisTarget, deadline);
+    }
 
-        // Allow sub-classes to perform a periodic update
-        updatePeriodic();
+    /**
+     * Returns if the target is still part of the AIS view
+     * 
+     * @param aisTarget
+     *            the target to check
+     * @return if the target is still part of the AIS view
+     */
+    private boolean isCurrentTarget(AisTarget aisTarget) {
+        long mmsi = aisTarget.getMmsi();
+        if (aisTarget instanceof VesselTarget) {
+            return vesselTargets.get(mmsi) == aisTarget;
+        } else if (aisTarget instanceof SarTarget) {
+            return sarTargets.get(mmsi) == aisTarget;
+        } else if (aisTarget instanceof AtoNTarget) {
+            return atonTargets.get((int) mmsi) == aisTarget;
+        }
+        return false;
     }
 
     /**
-     * Sub-classes can override to perform periodic updates. Called every 10 seconds.
+     * Removes the dead target from the AIS view
+     * 
+     * @param aisTarget
+     *            the dead target
+     */
+    private void removeDeadTarget(AisTarget aisTarget) {
+        long mmsi = aisTarget.getMmsi();
+        LOG.debug("Dead target " + mmsi);
+        if (aisTarget instanceof VesselTarget) {
+            vesselTargets.remove(mmsi, aisTarget);
+        } else if (aisTarget instanceof SarTarget) {
+            sarTargets.remove(mmsi, aisTarget);
+        } else if (aisTarget instanceof AtoNTarget) {
+            // cater with atonTargets, which use Integer as a key
+            atonTargets.remove((int) mmsi, aisTarget);
+        }
+        markDirty(mmsi);
+    }
+
+    /**
+     * Sub-classes can override to perform periodic updates. Called every {@code PERIODIC_INTERVAL} milliseconds.
      */
     protected void updatePeriodic() {
     }
@@ -488,37 +649,6 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         }
     }
 
-    /**
-     * Update the list of AIS targets and purge the dead targets
-     * 
-     * @param aisTargets
-     *            the list of AIS targets to update
-     * @param deadTargets
-     *            use for collecting dead targets
-     * @param now
-     *            the current time
-     * @param intKey
-     *            cater with atonTargets, which use Integer as a key
-     */
-    protected final <T extends AisTarget, N extends Number> void updateStatus(Map<N, T> aisTargets, List<Long> deadTargets,
-            Date now, boolean intKey) {
-        // Go through the list of AIS targets
-        for (T aisTarget : aisTargets.values()) {
-            if (updateTarget(aisTarget, now)) {
-                deadTargets.add(aisTarget.getMmsi());
-            }
-        }
-
-        // Remove dead targets
-        for (Long mmsi : deadTargets) {
-            LOG.debug("Dead target " + mmsi);
-            // cater with atonTargets, which use Integer as a key
-            aisTargets.remove(intKey ? Integer.valueOf((int) mmsi.longValue()) : mmsi);
-        }
-
-        deadTargets.clear();
-    }
-
     /**
      * Update AIS target. Return true if the target is considered dead, not just gone
      * 
@@ -542,12 +672,14 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         }
         if (aisTarget.hasGone(now, strictAisMode)) {
             aisTarget.setStatus(AisTarget.Status.GONE);
+            markDirty(aisTarget.getMmsi());
             publishUpdate(aisTarget);
             return false;
         }
         // Check if sart has gone old
         if (aisTarget instanceof SarTarget) {
             if (((SarTarget) aisTarget).hasGoneOld(now)) {
+                markDirty(aisTarget.getMmsi());
                 publishUpdate(aisTarget);
                 return false;
             }
@@ -584,6 +716,45 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         for (IAisTargetListener listener : listeners) {
             listener.targetUpdated(aisTarget);
         }
+        if (!batchListeners.isEmpty()) {
+            Collection<AisTarget> aisTargets = Collections.singletonList(aisTarget);
+            for (IAisTargetBatchListener listener : batchListeners) {
+                listener.targetsUpdated(aisTargets);
+            }
+        }
+    }
+
+    /**
+     * Queues the update of a target to be published to all listeners with the next batch.
+     * A target updated several times before then is only published once
+     * 
+     * @param aisTarget
+     */
+    protected final void queueUpdate(AisTarget aisTarget) {
+        pendingUpdates.add(aisTarget);
+    }
+
+    /**
+     * Publishes the targets queued since the last batch to all listeners
+     */
+    protected final void publishBatch() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        List<AisTarget> aisTargets = new ArrayList<>(pendingUpdates.size());
+        for (Iterator<AisTarget> it = pendingUpdates.iterator(); it.hasNext();) {
+            aisTargets.add(it.next());
+            it.remove();
+        }
+        for (IAisTargetListener listener : listeners) {
+            for (AisTarget aisTarget : aisTargets) {
+                listener.targetUpdated(aisTarget);
+            }
+        }
+        Collection<AisTarget> unmodifiableTargets = Collections.unmodifiableList(aisTargets);
+        for (IAisTargetBatchListener listener : batchListeners) {
+            listener.targetsUpdated(unmodifiableTargets);
+        }
     }
 
     protected final void publishAll() {
@@ -607,6 +778,14 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
         listeners.remove(targetListener);
     }
 
+    public final void addBatchListener(IAisTargetBatchListener targetListener) {
+        batchListeners.add(targetListener);
+    }
+
+    public final void removeBatchListener(IAisTargetBatchListener targetListener) {
+        batchListeners.remove(targetListener);
+    }
+
     /**
      * Get AisMessageExtended for a single VesselTarget
      * 
@@ -642,20 +821,32 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
     }
 
     /**
-     * Try to load AIS view from disk
+     * Flags that the target with the given MMSI has changed or has been removed,
+     * and should be included in the next checkpoint
+     * 
+     * @param mmsi
+     *            the MMSI of the target
+     */
+    protected final void markDirty(long mmsi) {
+        dirtyTargets.add(mmsi);
+    }
+
+    /**
+     * Try to load AIS view from disk.
+     * <p>
+     * The view is loaded from the binary snapshot. If no snapshot exists, the legacy
+     * serialized AIS view file is read instead and deleted afterwards.
      */
     public void loadView() {
         AisStore aisStore = null;
 
-        try (FileInputStream fileIn = new FileInputStream(AIS_VIEW_FILE);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
-            aisStore = (AisStore) objectIn.readObject();
-        } catch (FileNotFoundException e) {
-            // Not an error
-        } catch (Exception e) {
-            LOG.error("Failed to load AIS view file: " + e.getMessage());
-            // Delete possible corrupted or old file
-            new File(AIS_VIEW_FILE).delete();
+        if (!aisViewSnapshot.isEmpty()) {
+            aisStore = aisViewSnapshot.load();
+            // Keep on appending to the journal, unless damaged data was found.
+            // Appending after a torn block would make the new blocks unreadable
+            snapshotDue = aisViewSnapshot.isDamaged();
+        } else {
+            aisStore = loadLegacyView();
         }
 
         if (aisStore == null) {
@@ -675,38 +866,145 @@ public abstract class AisHandlerCommon extends MapHandlerChild implements Runnab
 
         LOG.info("AIS handler loaded total targets: " + (vesselTargets.size() + atonTargets.size() + sarTargets.size()));
 
-        // Update status to update old and gone (twice for old and gone)
+        // Schedule the loaded targets for aging
+        for (AisTarget aisTarget : vesselTargets.values()) {
+            scheduleExpiry(aisTarget);
+        }
+        for (AisTarget aisTarget : atonTargets.values()) {
+            scheduleExpiry(aisTarget);
+        }
+        for (AisTarget aisTarget : sarTargets.values()) {
+            scheduleExpiry(aisTarget);
+        }
+
+        // Update status to update old, gone and dead (once for each status change)
+        updateStatus();
         updateStatus();
         updateStatus();
 
     }
 
     /**
-     * Save AIS view to file
+     * Loads the legacy serialized AIS view file, and deletes it afterwards
+     * 
+     * @return the loaded AIS view, or null if undefined
+     */
+    private AisStore loadLegacyView() {
+        AisStore aisStore = null;
+
+        try (FileInputStream fileIn = new FileInputStream(AIS_VIEW_FILE);
+                ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+            aisStore = (AisStore) objectIn.readObject();
+        } catch (FileNotFoundException e) {
+            // Not an error
+            return null;
+        } catch (Exception e) {
+            LOG.error("Failed to load AIS view file: " + e.getMessage());
+        }
+
+        // The view is written as a snapshot from now on
+        new File(AIS_VIEW_FILE).delete();
+        return aisStore;
+    }
+
+    /**
+     * Save AIS view to file.
+     * <p>
+     * Stops the background checkpoints and writes a full snapshot
      */
     public void saveView() {
-        AisStore aisStore = new AisStore();
-        aisStore.setVesselTargets(vesselTargets);
-        aisStore.setAtonTargets(atonTargets);
-        aisStore.setSarTargets(sarTargets);
-
-        try (FileOutputStream fileOut = new FileOutputStream(AIS_VIEW_FILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
-            objectOut.writeObject(aisStore);
+        ingestionPipeline.stop();
+        checkpointScheduler.shutdown();
+        try {
+            // Let a running checkpoint complete before writing the snapshot
+            if (!checkpointScheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out waiting for the AIS view checkpoint to complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            aisViewSnapshot.writeSnapshot(vesselTargets.values(), atonTargets.values(), sarTargets.values());
         } catch (IOException e) {
-            e.printStackTrace();
             LOG.error("Failed to save Ais view file: " + e.getMessage());
         }
     }
 
+    /**
+     * Writes the targets that have changed since the last checkpoint to the AIS view journal.
+     * <p>
+     * A full snapshot is written instead, when the journal has grown larger than the snapshot.
+     */
+    protected void checkpoint() {
+        try {
+            if (snapshotDue || aisViewSnapshot.isDamaged() || aisViewSnapshot.isCompactionDue()) {
+                // Changes made while writing the snapshot will be included in the next checkpoint
+                snapshotDue = false;
+                dirtyTargets.clear();
+                aisViewSnapshot.writeSnapshot(vesselTargets.values(), atonTargets.values(), sarTargets.values());
+                return;
+            }
+
+            List<AisTarget> targets = new ArrayList<>();
+            List<Long> removed = new ArrayList<>();
+            for (Iterator<Long> it = dirtyTargets.iterator(); it.hasNext();) {
+                Long mmsi = it.next();
+                it.remove();
+                int count = targets.size();
+                addIfNotNull(targets, vesselTargets.get(mmsi));
+                addIfNotNull(targets, sarTargets.get(mmsi));
+                addIfNotNull(targets, atonTargets.get((int) mmsi.longValue()));
+                if (targets.size() == count) {
+                    removed.add(mmsi);
+                }
+            }
+            if (!targets.isEmpty() || !removed.isEmpty()) {
+                aisViewSnapshot.writeCheckpoint(targets, removed);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to checkpoint AIS view: " + e.getMessage());
+            // Fall back to a full snapshot
+            snapshotDue = true;
+        }
+    }
+
+    private static void addIfNotNull(List<AisTarget> targets, AisTarget target) {
+        if (target != null) {
+            targets.add(target);
+        }
+    }
+
     @Override
     public void run() {
+        // Start handling received messages
+        ingestionPipeline.start();
+
         // Publish loaded targets
         Util.sleep(2000);
         publishAll();
 
+        // Start publishing the targets updated by received messages
+        publishScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publishBatch();
+                } catch (Exception e) {
+                    LOG.error("Failed to publish AIS targets: " + e.getMessage(), e);
+                }
+            }
+        }, PUBLISH_INTERVAL, PUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+
+        // Start checkpointing the AIS view
+        checkpointScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkpoint();
+            }
+        }, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL, TimeUnit.SECONDS);
+
         while (true) {
-            Util.sleep(10000);
+            Util.sleep(AGING_INTERVAL);
             // Update status on targets
             updateStatus();
         }
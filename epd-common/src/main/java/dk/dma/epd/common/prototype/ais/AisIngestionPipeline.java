@@ -0,0 +1,255 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.message.AisMessage18;
+import dk.dma.ais.message.AisPositionMessage;
+
+/**
+ * Multi-threaded ingestion of AIS messages.
+ * <p>
+ * Messages are sharded by MMSI across a fixed number of worker threads, so all messages
+ * of a given target are handled in order by the same thread, while different targets
+ * are handled in parallel.
+ * <p>
+ * Each shard keeps at most one pending position report per MMSI. If the workers fall behind,
+ * a newer position report replaces the pending one, since only the latest position matters.
+ * Other messages are queued, and {@linkplain #submit(AisMessage)} blocks when the queue of a
+ * shard is full, applying backpressure to the sensor thread.
+ */
+@ThreadSafe
+public class AisIngestionPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AisIngestionPipeline.class);
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * Interface implemented by the handler of the AIS messages
+     */
+    public interface MessageHandler {
+
+        /**
+         * Called by a worker thread for each AIS message
+         *
+         * @param aisMessage
+         *            the AIS message to handle
+         */
+        void handle(AisMessage aisMessage);
+    }
+
+    private final MessageHandler handler;
+    private final Shard[] shards;
+    private final AtomicLong mergedCount = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     *
+     * @param name
+     *            the name used for the worker threads
+     * @param shardCount
+     *            the number of worker threads
+     * @param capacity
+     *            the maximum number of queued messages, other than position reports, per shard
+     * @param handler
+     *            the handler of the AIS messages
+     */
+    public AisIngestionPipeline(String name, int shardCount, int capacity, MessageHandler handler) {
+        this.handler = handler;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(name + "-" + i, capacity);
+        }
+    }
+
+    /**
+     * Constructor using a worker thread per available processor, but at most four,
+     * and the default capacity
+     *
+     * @param name
+     *            the name used for the worker threads
+     * @param handler
+     *            the handler of the AIS messages
+     */
+    public AisIngestionPipeline(String name, MessageHandler handler) {
+        this(name, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), DEFAULT_CAPACITY, handler);
+    }
+
+    /**
+     * Starts the worker threads. Messages submitted before the pipeline is started are queued
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Shard shard : shards) {
+            Thread thread = new Thread(shard, shard.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the worker threads. Pending messages are discarded
+     */
+    public synchronized void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.positions.clear();
+                shard.messages.clear();
+                shard.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Submits the AIS message to the shard of its MMSI.
+     * <p>
+     * Blocks if the queue of the shard is full
+     *
+     * @param aisMessage
+     *            the AIS message to submit
+     */
+    public void submit(AisMessage aisMessage) {
+        int mmsi = aisMessage.getUserId();
+        shards[(mmsi & Integer.MAX_VALUE) % shards.length].offer(mmsi, aisMessage);
+    }
+
+    /**
+     * Returns the number of position reports that have been replaced by a newer
+     * report before being handled
+     *
+     * @return the number of merged position reports
+     */
+    public long getMergedCount() {
+        return mergedCount.get();
+    }
+
+    /**
+     * Returns the number of messages that are waiting to be handled or being handled
+     *
+     * @return the number of pending messages
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count += shard.positions.size() + shard.messages.size() + shard.inFlight;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isPositionReport(AisMessage aisMessage) {
+        return aisMessage instanceof AisPositionMessage || aisMessage instanceof AisMessage18;
+    }
+
+    /**
+     * A worker thread along with its pending messages
+     */
+    private final class Shard implements Runnable {
+        final String name;
+        final int capacity;
+
+        @GuardedBy("this")
+        final LinkedHashMap<Integer, AisMessage> positions = new LinkedHashMap<>();
+        @GuardedBy("this")
+        final ArrayDeque<AisMessage> messages = new ArrayDeque<>();
+        @GuardedBy("this")
+        int inFlight;
+
+        Shard(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+        }
+
+        synchronized void offer(int mmsi, AisMessage aisMessage) {
+            if (isPositionReport(aisMessage)) {
+                // Replace any stale position report of the target
+                if (positions.remove(mmsi) != null) {
+                    mergedCount.incrementAndGet();
+                }
+                positions.put(mmsi, aisMessage);
+            } else {
+                while (running && messages.size() >= capacity) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                messages.add(aisMessage);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits for pending messages and returns them, position reports first,
+         * so that static data can be applied to newly created targets
+         */
+        synchronized List<AisMessage> take() throws InterruptedException {
+            while (running && positions.isEmpty() && messages.isEmpty()) {
+                wait();
+            }
+            List<AisMessage> batch = new ArrayList<>(positions.size() + messages.size());
+            batch.addAll(positions.values());
+            batch.addAll(messages);
+            positions.clear();
+            messages.clear();
+            inFlight = batch.size();
+            notifyAll();
+            return batch;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                List<AisMessage> batch;
+                try {
+                    batch = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (AisMessage aisMessage : batch) {
+                    try {
+                        handler.handle(aisMessage);
+                    } catch (Exception e) {
+                        LOG.error("Failed to handle AIS message: " + e.getMessage(), e);
+                    }
+                }
+                synchronized (this) {
+                    inFlight = 0;
+                }
+            }
+        }
+    }
+}
@@ -56,7 +56,36 @@ public abstract class AisTarget implements Serializable {
      * @param strict
      * @return
      */
-    public abstract boolean hasGone(Date now, boolean strict);
+    public synchronized boolean hasGone(Date now, boolean strict) {
+        long elapsed = (now.getTime() - lastReceived.getTime()) / 1000;
+        return elapsed > getGoneTolerance(strict);
+    }
+
+    /**
+     * Returns the number of seconds without reports after which the target has gone
+     * @param strict when strict is false more relaxed rules will used suitable for down sampled data
+     * @return the gone tolerance in seconds
+     */
+    protected abstract long getGoneTolerance(boolean strict);
+
+    /**
+     * Returns the time at which the target will have gone, unless a new report is received
+     * @param strict
+     * @return the time in milliseconds
+     */
+    public synchronized long getGoneTime(boolean strict) {
+        return lastReceived.getTime() + (getGoneTolerance(strict) + 1) * 1000L;
+    }
+
+    /**
+     * Returns the time at which the target will be dead given ttl (time-to-live),
+     * unless a new report is received
+     * @param ttl
+     * @return the time in milliseconds
+     */
+    public synchronized long getDeadTime(long ttl) {
+        return lastReceived.getTime() + ttl + 1;
+    }
     
     /**
      * Determine if target is dead given ttl (time-to-live)
@@ -0,0 +1,121 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Priority queue of AIS targets ordered by the time of their next status change,
+ * i.e. the time at which they will go old, gone or dead unless a new report is received.
+ * <p>
+ * Each target has at most one deadline. Scheduling a later deadline for a target that is
+ * already scheduled is a no-op, since receiving reports only postpones the status changes.
+ * When the earlier deadline expires, the target is re-examined and re-scheduled. This way,
+ * frequent updates of a target do not touch the queue, and polling the queue only costs
+ * in proportion to the number of expired deadlines.
+ */
+@ThreadSafe
+public class AisTargetExpiryQueue {
+
+    private final ConcurrentHashMap<AisTarget, Long> deadlines = new ConcurrentHashMap<>();
+
+    @GuardedBy("this")
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+    /**
+     * Schedules the target for the given deadline, unless it is already scheduled
+     * for an earlier deadline
+     *
+     * @param aisTarget
+     *            the target
+     * @param deadline
+     *            the time in milliseconds at which the target should be re-examined
+     */
+    public void schedule(AisTarget aisTarget, long deadline) {
+        // Fast path for targets that are updated frequently
+        Long current = deadlines.get(aisTarget);
+        if (current != null && current <= deadline) {
+            return;
+        }
+        synchronized (this) {
+            current = deadlines.get(aisTarget);
+            if (current != null && current <= deadline) {
+                return;
+            }
+            // Any previous entry of the target becomes stale and is skipped when polled
+            deadlines.put(aisTarget, deadline);
+            queue.add(new Entry(aisTarget, deadline));
+        }
+    }
+
+    /**
+     * Removes and returns the targets with a deadline no later than the given time
+     *
+     * @param now
+     *            the current time in milliseconds
+     * @return the expired targets, earliest deadline first
+     */
+    public synchronized List<AisTarget> pollExpired(long now) {
+        List<AisTarget> expired = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().deadline <= now) {
+            Entry entry = queue.poll();
+            if (deadlines.remove(entry.aisTarget, entry.deadline)) {
+                expired.add(entry.aisTarget);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Removes all targets from the queue
+     */
+    public synchronized void clear() {
+        deadlines.clear();
+        queue.clear();
+    }
+
+    /**
+     * Returns the number of scheduled targets
+     *
+     * @return the number of scheduled targets
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * A target along with its deadline
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final AisTarget aisTarget;
+        final long deadline;
+
+        Entry(AisTarget aisTarget, long deadline) {
+            this.aisTarget = aisTarget;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+}
@@ -0,0 +1,744 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.message.ShipTypeCargo;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.NavigationalStatus;
+
+/**
+ * Compact binary snapshot of the AIS view, i.e. the vessel, AtoN and SAR targets along with their past tracks.
+ * <p>
+ * The view is persisted in two files:
+ * <ul>
+ * <li>The snapshot file holds a full copy of the view. It is written to a temporary file, which is then moved into
+ * place, so that a crash never leaves a half-written snapshot.</li>
+ * <li>The journal file holds the targets that have changed since the snapshot was written. Checkpoints append the
+ * changed targets to the journal, and once the journal outgrows the snapshot, the two are compacted into a new
+ * snapshot.</li>
+ * </ul>
+ * Both files start with a header holding a magic number and the format version, followed by a sequence of blocks.
+ * Each block holds a number of length-prefixed target records, so records of an unknown type, or with trailing fields
+ * added in later versions, are simply skipped. When loading, the blocks are decoded in parallel. A truncated block at
+ * the end of a file, e.g. caused by a crash during a checkpoint, is ignored, as are blocks that cannot be decoded.
+ * Files that are not AIS view files are renamed to {@code <file>.bad}, and files of a newer format version are
+ * ignored. In all of these cases, {@linkplain #isDamaged()} returns {@code true}, and a new snapshot should be
+ * written before appending to the journal, since the appended blocks would otherwise follow the damaged bytes.
+ */
+@ThreadSafe
+public class AisViewSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AisViewSnapshot.class);
+
+    static final int MAGIC = 0x45504441; // "EPDA"
+    static final short VERSION = 1;
+
+    static final byte TYPE_VESSEL = 1;
+    static final byte TYPE_ATON = 2;
+    static final byte TYPE_SAR = 3;
+    static final byte TYPE_REMOVED = 4;
+
+    private static final int HEADER_SIZE = 4 + 2 + 8;
+    private static final int BLOCK_HEADER_SIZE = 4 + 4;
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /** Strings are stored with an unsigned short length, where the maximum value denotes null */
+    private static final int NULL_STRING = 0xFFFF;
+    static final int MAX_STRING_LENGTH = NULL_STRING - 1;
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private volatile boolean damaged;
+
+    /**
+     * Constructor
+     *
+     * @param snapshotFile
+     *            the snapshot file. The journal file is placed next to it
+     */
+    public AisViewSnapshot(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".journal");
+    }
+
+    /**
+     * Writes a full snapshot of the given targets and truncates the journal
+     *
+     * @param vesselTargets
+     *            the vessel targets
+     * @param atonTargets
+     *            the AtoN targets
+     * @param sarTargets
+     *            the SAR targets
+     */
+    public synchronized void writeSnapshot(Collection<VesselTarget> vesselTargets, Collection<AtoNTarget> atonTargets,
+            Collection<SarTarget> sarTargets) throws IOException {
+        long t0 = System.currentTimeMillis();
+        Path tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        int count;
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockWriter writer = new BlockWriter(channel);
+            writer.writeHeader();
+            for (VesselTarget vesselTarget : vesselTargets) {
+                writer.write(vesselTarget);
+            }
+            for (AtoNTarget atonTarget : atonTargets) {
+                writer.write(atonTarget);
+            }
+            for (SarTarget sarTarget : sarTargets) {
+                writer.write(sarTarget);
+            }
+            count = writer.finish();
+            channel.force(false);
+        }
+        Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(journalFile);
+        damaged = false;
+        LOG.info("Wrote AIS view snapshot with " + count + " targets in " + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+    /**
+     * Appends the given changed and removed targets to the journal
+     *
+     * @param targets
+     *            the targets that have changed since the last checkpoint
+     * @param removed
+     *            the MMSI's of the targets that have been removed since the last checkpoint
+     */
+    public synchronized void writeCheckpoint(Collection<? extends AisTarget> targets, Collection<Long> removed)
+            throws IOException {
+        boolean newJournal = !Files.exists(journalFile);
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            BlockWriter writer = new BlockWriter(channel);
+            if (newJournal) {
+                writer.writeHeader();
+            }
+            for (AisTarget target : targets) {
+                writer.write(target);
+            }
+            for (Long mmsi : removed) {
+                writer.writeRemoved(mmsi);
+            }
+            writer.finish();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Returns if the journal has grown large enough that it should be compacted into a new snapshot
+     *
+     * @return if the journal should be compacted
+     */
+    public boolean isCompactionDue() {
+        try {
+            if (!Files.exists(journalFile)) {
+                return false;
+            }
+            long snapshotSize = Files.exists(snapshotFile) ? Files.size(snapshotFile) : 0L;
+            return Files.size(journalFile) > Math.max(snapshotSize, MIN_COMPACTION_SIZE);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns if the last load found a truncated or undecodable block, or an invalid file.
+     * If so, a new snapshot should be written before appending to the journal.
+     *
+     * @return if the last load found damaged data
+     */
+    public boolean isDamaged() {
+        return damaged;
+    }
+
+    /**
+     * Returns if neither a snapshot nor a journal exists
+     *
+     * @return if neither a snapshot nor a journal exists
+     */
+    public boolean isEmpty() {
+        return !Files.exists(snapshotFile) && !Files.exists(journalFile);
+    }
+
+    /**
+     * Loads the snapshot and applies the journal.
+     * <p>
+     * If either of the files are damaged, the targets of the blocks that could be decoded are returned,
+     * and {@linkplain #isDamaged()} returns {@code true} until a new snapshot has been written.
+     *
+     * @return the loaded targets
+     */
+    public synchronized AisStore load() {
+        long t0 = System.currentTimeMillis();
+        damaged = false;
+        AisStore aisStore = new AisStore();
+        aisStore.setVesselTargets(new ConcurrentHashMap<Long, VesselTarget>());
+        aisStore.setAtonTargets(new ConcurrentHashMap<Integer, AtoNTarget>());
+        aisStore.setSarTargets(new ConcurrentHashMap<Long, SarTarget>());
+
+        // The blocks are decoded in parallel, but the records are applied in
+        // file order, so that later journal records replace earlier ones
+        for (List<Record> records : readBlocks(snapshotFile)) {
+            for (Record record : records) {
+                record.apply(aisStore);
+            }
+        }
+        for (List<Record> records : readBlocks(journalFile)) {
+            for (Record record : records) {
+                record.apply(aisStore);
+            }
+        }
+
+        LOG.info("Loaded AIS view snapshot in " + (System.currentTimeMillis() - t0) + " ms");
+        return aisStore;
+    }
+
+    /**
+     * Deletes the snapshot and the journal
+     */
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(snapshotFile);
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            LOG.error("Failed to delete AIS view snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the given file and decodes its blocks in parallel.
+     * <p>
+     * NB: The file is read into a buffer rather than memory-mapped, since a mapped
+     * file cannot be replaced on Windows until the mapping has been garbage collected.
+     *
+     * @param file
+     *            the file to read
+     * @return the decoded records of each block in file order
+     */
+    private List<List<Record>> readBlocks(Path file) {
+        List<List<Record>> result = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return result;
+        }
+
+        List<ByteBuffer> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    break;
+                }
+            }
+            buf.flip();
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+                throw new IOException("Not an AIS view snapshot");
+            }
+            short version = buf.getShort();
+            if (version > VERSION) {
+                // Written by a newer version. Leave the file alone and start with an empty view,
+                // but flag it as damaged, so that no blocks of this version are appended to it
+                LOG.warn("Ignoring AIS view file " + file.getFileName() + " of unsupported version " + version);
+                damaged = true;
+                return result;
+            }
+            buf.getLong(); // Creation time
+
+            // Slice the blocks. A truncated last block is skipped
+            while (buf.remaining() >= BLOCK_HEADER_SIZE) {
+                int length = buf.getInt();
+                int count = buf.getInt();
+                if (length < 0 || count < 0 || length > buf.remaining()) {
+                    LOG.warn("Skipping truncated block in " + file.getFileName());
+                    damaged = true;
+                    break;
+                }
+                ByteBuffer block = buf.slice();
+                block.limit(length);
+                buf.position(buf.position() + length);
+                blocks.add(block);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to load AIS view file " + file.getFileName() + ": " + e.getMessage());
+            damaged = true;
+            moveAsideQuietly(file);
+            return result;
+        }
+
+        // Decode the blocks in parallel. Blocks that cannot be decoded are skipped
+        final List<List<Record>> decoded = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            decoded.add(null);
+        }
+        final List<ByteBuffer> slices = blocks;
+        IntStream.range(0, slices.size()).parallel().forEach(i -> {
+            try {
+                decoded.set(i, decodeBlock(slices.get(i)));
+            } catch (RuntimeException e) {
+                LOG.error("Failed to decode block " + i + " of AIS view file " + file.getFileName() + ": " + e);
+                damaged = true;
+            }
+        });
+        for (List<Record> records : decoded) {
+            if (records != null) {
+                result.add(records);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renames an invalid file to {@code <file>.bad}, so that it is not read again but can still be inspected
+     *
+     * @param file
+     *            the file to rename
+     */
+    private static void moveAsideQuietly(Path file) {
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            LOG.error("Failed to rename AIS view file " + file.getFileName());
+        }
+    }
+
+    /**
+     * Decodes the records of a block
+     *
+     * @param block
+     *            the block to decode
+     * @return the decoded records
+     */
+    private static List<Record> decodeBlock(ByteBuffer block) {
+        List<Record> records = new ArrayList<>();
+        while (block.remaining() >= RECORD_HEADER_SIZE) {
+            byte type = block.get();
+            long mmsi = block.getLong();
+            int length = block.getInt();
+            if (length < 0 || length > block.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            ByteBuffer payload = block.slice();
+            payload.limit(length);
+            block.position(block.position() + length);
+
+            switch (type) {
+            case TYPE_VESSEL:
+                VesselTarget vesselTarget = new VesselTarget();
+                vesselTarget.setMmsi(mmsi);
+                readMobileTarget(payload, vesselTarget);
+                int aisClass = payload.get();
+                vesselTarget.setAisClass(aisClass < 0 ? null : VesselTarget.AisClass.values()[aisClass]);
+                vesselTarget.setShowIntendedRoute(payload.get() != 0);
+                records.add(new Record(mmsi, vesselTarget));
+                break;
+            case TYPE_SAR:
+                SarTarget sarTarget = new SarTarget();
+                sarTarget.setMmsi(mmsi);
+                readMobileTarget(payload, sarTarget);
+                sarTarget.setOld(payload.get() != 0);
+                sarTarget.setFirstReceived(readDate(payload));
+                records.add(new Record(mmsi, sarTarget));
+                break;
+            case TYPE_ATON:
+                AtoNTarget atonTarget = new AtoNTarget();
+                atonTarget.setMmsi(mmsi);
+                readAisTarget(payload, atonTarget);
+                readAtonTarget(payload, atonTarget);
+                records.add(new Record(mmsi, atonTarget));
+                break;
+            case TYPE_REMOVED:
+                records.add(new Record(mmsi, null));
+                break;
+            default:
+                // Unknown record type - skip it
+            }
+        }
+        return records;
+    }
+
+    /****************************************/
+    /** Encoding **/
+    /****************************************/
+
+    private static void writeAisTarget(ByteBuffer buf, AisTarget target) {
+        writeDate(buf, target.getLastReceived());
+        AisTarget.Status status = target.getStatus();
+        buf.put((byte) (status == null ? -1 : status.ordinal()));
+    }
+
+    private static void writeMobileTarget(ByteBuffer buf, MobileTarget target) {
+        writeAisTarget(buf, target);
+
+        VesselTargetSettings settings = target.getSettings();
+        buf.put((byte) (settings.isHide() ? 1 : 0));
+        buf.put((byte) (settings.isShowPastTrack() ? 1 : 0));
+        buf.putInt(settings.getPastTrackDisplayTime());
+        buf.putInt(settings.getPastTrackMinDist());
+
+        VesselPositionData positionData = target.getPositionData();
+        buf.put((byte) (positionData == null ? 0 : 1));
+        if (positionData != null) {
+            writePosition(buf, positionData.getPos());
+            buf.putInt(positionData.getNavStatus());
+            NavigationalStatus navStatus = positionData.getEnumNavStatus();
+            writeString(buf, navStatus == null ? null : navStatus.name());
+            buf.putFloat(positionData.getRot());
+            buf.putFloat(positionData.getSog());
+            buf.putFloat(positionData.getCog());
+            buf.putFloat(positionData.getTrueHeading());
+            buf.putInt(positionData.getPosAcc());
+        }
+
+        VesselStaticData staticData = target.getStaticData();
+        buf.put((byte) (staticData == null ? 0 : 1));
+        if (staticData != null) {
+            buf.putLong(staticData.getImo());
+            writeString(buf, staticData.getCallsign());
+            writeString(buf, staticData.getName());
+            ShipTypeCargo shipType = staticData.getShipType();
+            buf.putInt(shipType == null ? -1 : shipType.getIntShipType());
+            buf.putInt(staticData.getDimBow());
+            buf.putInt(staticData.getDimStern());
+            buf.putInt(staticData.getDimPort());
+            buf.putInt(staticData.getDimStarboard());
+            buf.putInt(staticData.getPosType());
+            buf.putLong(staticData.getEta());
+            buf.putFloat(staticData.getDraught());
+            writeString(buf, staticData.getDestination());
+        }
+
+        target.getPastTrackData().writeTo(buf);
+    }
+
+    private static void writeAtonTarget(ByteBuffer buf, AtoNTarget target) {
+        writeAisTarget(buf, target);
+        writePosition(buf, target.getPos());
+        AtoNTargetType atonType = target.getAtonType();
+        buf.putInt(atonType == null ? -1 : atonType.getAtoNTypeCode());
+        writeString(buf, target.getName());
+        buf.putInt(target.getPosAcc());
+        buf.putInt(target.getDimBow());
+        buf.putInt(target.getDimStern());
+        buf.putInt(target.getDimPort());
+        buf.putInt(target.getDimStarboard());
+        buf.putInt(target.getPosType());
+        buf.putInt(target.getOffPosition());
+        buf.putInt(target.getRegional());
+        buf.putInt(target.getRaim());
+        buf.putInt(target.getVirtual());
+        buf.putInt(target.getAssigned());
+        writeString(buf, target.getNameExt());
+    }
+
+    private static void writeDate(ByteBuffer buf, Date date) {
+        buf.putLong(date == null ? Long.MIN_VALUE : date.getTime());
+    }
+
+    private static void writePosition(ByteBuffer buf, Position pos) {
+        buf.put((byte) (pos == null ? 0 : 1));
+        if (pos != null) {
+            buf.putDouble(pos.getLatitude());
+            buf.putDouble(pos.getLongitude());
+        }
+    }
+
+    private static void writeString(ByteBuffer buf, String str) {
+        if (str == null) {
+            buf.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > MAX_STRING_LENGTH) {
+            // Truncate at a character boundary
+            ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, MAX_STRING_LENGTH);
+            StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(str), truncated, true);
+            length = truncated.position();
+        }
+        // The length is stored as an unsigned short
+        buf.putShort((short) length);
+        buf.put(bytes, 0, length);
+    }
+
+    /****************************************/
+    /** Decoding **/
+    /****************************************/
+
+    private static void readAisTarget(ByteBuffer buf, AisTarget target) {
+        target.setLastReceived(readDate(buf));
+        int status = buf.get();
+        target.setStatus(status < 0 ? null : AisTarget.Status.values()[status]);
+    }
+
+    private static void readMobileTarget(ByteBuffer buf, MobileTarget target) {
+        // NB: Read the AisTarget fields without triggering the past-track gone flagging of setStatus()
+        Date lastReceived = readDate(buf);
+        int status = buf.get();
+
+        VesselTargetSettings settings = target.getSettings();
+        settings.setHide(buf.get() != 0);
+        settings.setShowPastTrack(buf.get() != 0);
+        settings.setPastTrackDisplayTime(buf.getInt());
+        settings.setPastTrackMinDist(buf.getInt());
+
+        if (buf.get() != 0) {
+            VesselPositionData positionData = new VesselPositionData();
+            positionData.setPos(readPosition(buf));
+            positionData.setNavStatus(buf.getInt());
+            String navStatus = readString(buf);
+            if (navStatus != null) {
+                try {
+                    positionData.setEnumNavStatus(NavigationalStatus.valueOf(navStatus));
+                } catch (IllegalArgumentException e) {
+                    positionData.setEnumNavStatus(NavigationalStatus.UNDEFINED);
+                }
+            }
+            positionData.setRot(buf.getFloat());
+            positionData.setSog(buf.getFloat());
+            positionData.setCog(buf.getFloat());
+            positionData.setTrueHeading(buf.getFloat());
+            positionData.setPosAcc(buf.getInt());
+            target.setPositionData(positionData);
+        }
+
+        if (buf.get() != 0) {
+            VesselStaticData staticData = new VesselStaticData();
+            staticData.setImo(buf.getLong());
+            staticData.setCallsign(readString(buf));
+            staticData.setName(readString(buf));
+            int shipType = buf.getInt();
+            staticData.setShipType(shipType < 0 ? null : new ShipTypeCargo(shipType));
+            staticData.setDimBow(buf.getInt());
+            staticData.setDimStern(buf.getInt());
+            staticData.setDimPort(buf.getInt());
+            staticData.setDimStarboard(buf.getInt());
+            staticData.setPosType(buf.getInt());
+            staticData.setEta(buf.getLong());
+            staticData.setDraught(buf.getFloat());
+            staticData.setDestination(readString(buf));
+            target.setStaticData(staticData);
+        }
+
+        target.setPastTrackData(new PastTrackBuffer(buf));
+        target.setLastReceived(lastReceived);
+        target.setStatus(status < 0 ? null : AisTarget.Status.values()[status]);
+    }
+
+    private static void readAtonTarget(ByteBuffer buf, AtoNTarget target) {
+        target.setPos(readPosition(buf));
+        int atonType = buf.getInt();
+        target.setAtonType(atonType < 0 ? null : AtoNTargetType.getAtoNTargetTypeFromTypeCode(atonType));
+        target.setName(readString(buf));
+        target.setPosAcc(buf.getInt());
+        target.setDimBow(buf.getInt());
+        target.setDimStern(buf.getInt());
+        target.setDimPort(buf.getInt());
+        target.setDimStarboard(buf.getInt());
+        target.setPosType(buf.getInt());
+        target.setOffPosition(buf.getInt());
+        target.setRegional(buf.getInt());
+        target.setRaim(buf.getInt());
+        target.setVirtual(buf.getInt());
+        target.setAssigned(buf.getInt());
+        target.setNameExt(readString(buf));
+    }
+
+    private static Date readDate(ByteBuffer buf) {
+        long time = buf.getLong();
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    private static Position readPosition(ByteBuffer buf) {
+        if (buf.get() == 0) {
+            return null;
+        }
+        double lat = buf.getDouble();
+        double lon = buf.getDouble();
+        return Position.create(lat, lon);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /****************************************/
+    /** Helper classes **/
+    /****************************************/
+
+    /**
+     * A decoded record. The target is null for removed targets
+     */
+    private static final class Record {
+        final long mmsi;
+        final AisTarget target;
+
+        Record(long mmsi, AisTarget target) {
+            this.mmsi = mmsi;
+            this.target = target;
+        }
+
+        void apply(AisStore aisStore) {
+            if (target instanceof VesselTarget) {
+                aisStore.getVesselTargets().put(mmsi, (VesselTarget) target);
+            } else if (target instanceof SarTarget) {
+                aisStore.getSarTargets().put(mmsi, (SarTarget) target);
+            } else if (target instanceof AtoNTarget) {
+                aisStore.getAtonTargets().put((int) mmsi, (AtoNTarget) target);
+            } else {
+                aisStore.getVesselTargets().remove(mmsi);
+                aisStore.getSarTargets().remove(mmsi);
+                aisStore.getAtonTargets().remove((int) mmsi);
+            }
+        }
+    }
+
+    /**
+     * Encodes records into blocks and writes them to a channel
+     */
+    private static final class BlockWriter {
+        final FileChannel channel;
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE + BLOCK_SIZE / 2);
+        ByteBuffer record = ByteBuffer.allocate(4096);
+        int blockCount;
+        int totalCount;
+
+        BlockWriter(FileChannel channel) {
+            this.channel = channel;
+            block.position(BLOCK_HEADER_SIZE);
+        }
+
+        void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putLong(System.currentTimeMillis());
+            header.flip();
+            writeFully(header);
+        }
+
+        void write(AisTarget target) throws IOException {
+            while (true) {
+                try {
+                    record.clear();
+                    if (target instanceof VesselTarget) {
+                        VesselTarget vesselTarget = (VesselTarget) target;
+                        writeMobileTarget(record, vesselTarget);
+                        VesselTarget.AisClass aisClass = vesselTarget.getAisClass();
+                        record.put((byte) (aisClass == null ? -1 : aisClass.ordinal()));
+                        record.put((byte) (vesselTarget.isShowIntendedRoute() ? 1 : 0));
+                        add(TYPE_VESSEL, target.getMmsi());
+                    } else if (target instanceof SarTarget) {
+                        SarTarget sarTarget = (SarTarget) target;
+                        writeMobileTarget(record, sarTarget);
+                        record.put((byte) (sarTarget.isOld() ? 1 : 0));
+                        writeDate(record, sarTarget.getFirstReceived());
+                        add(TYPE_SAR, target.getMmsi());
+                    } else if (target instanceof AtoNTarget) {
+                        writeAtonTarget(record, (AtoNTarget) target);
+                        add(TYPE_ATON, target.getMmsi());
+                    }
+                    return;
+                } catch (BufferOverflowException e) {
+                    // Long past-track - grow the record buffer and retry
+                    record = ByteBuffer.allocate(record.capacity() * 2);
+                }
+            }
+        }
+
+        void writeRemoved(long mmsi) throws IOException {
+            record.clear();
+            add(TYPE_REMOVED, mmsi);
+        }
+
+        /**
+         * Adds the encoded record to the current block, flushing the block when full
+         */
+        private void add(byte type, long mmsi) throws IOException {
+            record.flip();
+            if (block.position() + RECORD_HEADER_SIZE + record.remaining() > block.capacity()) {
+                flush();
+                if (RECORD_HEADER_SIZE + record.remaining() > block.remaining()) {
+                    block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + RECORD_HEADER_SIZE + record.remaining());
+                    block.position(BLOCK_HEADER_SIZE);
+                }
+            }
+            block.put(type);
+            block.putLong(mmsi);
+            block.putInt(record.remaining());
+            block.put(record);
+            blockCount++;
+            totalCount++;
+            if (block.position() >= BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (blockCount == 0) {
+                return;
+            }
+            block.putInt(0, block.position() - BLOCK_HEADER_SIZE);
+            block.putInt(4, blockCount);
+            block.flip();
+            writeFully(block);
+            block.clear();
+            block.position(BLOCK_HEADER_SIZE);
+            blockCount = 0;
+        }
+
+        int finish() throws IOException {
+            flush();
+            return totalCount;
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+}
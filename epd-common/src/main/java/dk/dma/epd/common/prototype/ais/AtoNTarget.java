@@ -14,8 +14,6 @@
  */
 package dk.dma.epd.common.prototype.ais;
 
-import java.util.Date;
-
 import net.jcip.annotations.ThreadSafe;
 import dk.dma.ais.message.AisMessage;
 import dk.dma.ais.message.AisMessage21;
@@ -100,14 +98,12 @@ public class AtoNTarget extends AisTarget {
     }
     
     /**
-     * Determine if AtoN target has gone
+     * Determine when AtoN target has gone
      */
     @Override
-    public synchronized boolean hasGone(Date now, boolean strict) {
-        long elapsed = (now.getTime() - lastReceived.getTime()) / 1000;        
+    protected long getGoneTolerance(boolean strict) {
         // Base gone "loosely" on ITU-R Rec M1371-4 4.2.1  (3 minutes)
-        long tol = 600; // 10 minutes
-        return elapsed > tol;
+        return 600; // 10 minutes
     }
     
     public synchronized Position getPos() {
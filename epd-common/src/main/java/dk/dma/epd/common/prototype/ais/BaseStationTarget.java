@@ -14,8 +14,6 @@
  */
 package dk.dma.epd.common.prototype.ais;
 
-import java.util.Date;
-
 import net.jcip.annotations.ThreadSafe;
 import dk.dma.ais.message.AisMessage4;
 
@@ -42,11 +40,9 @@ public class BaseStationTarget extends AisTarget {
     }
     
     @Override
-    public synchronized boolean hasGone(Date now, boolean strict) {
-        long elapsed = (now.getTime() - lastReceived.getTime()) / 1000;        
+    protected long getGoneTolerance(boolean strict) {
         // Base gone "loosely" on ITU-R Rec M1371-4 4.2.1  (10 seconds)
-        long tol = 120; // 2 minutes        
-        return elapsed > tol;
+        return 120; // 2 minutes
     }
 
 }
@@ -0,0 +1,458 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Ring-buffer backed past-track store.
+ * <p>
+ * The time, latitude and longitude of each point are kept in primitive arrays,
+ * using roughly 13 bytes per point. Times are stored as seconds relative to the
+ * creation time of the buffer, and positions in single precision, which is accurate
+ * to about a meter.
+ * <p>
+ * Appends are lock-free under the assumption of a single writer thread. Readers
+ * may run concurrently and always see a consistent snapshot. Since the points
+ * are ordered by time, range queries are binary searched and {@linkplain #cleanup(int)}
+ * simply advances the head of the buffer.
+ */
+@ThreadSafe
+public class PastTrackBuffer implements IPastTrack, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final byte FLAG_GONE = 1;
+
+    /**
+     * The primitive arrays of the buffer. Replaced as a whole when the buffer grows
+     */
+    private static final class Data {
+        final int[] times;
+        final float[] lats;
+        final float[] lons;
+        final byte[] flags;
+        final int mask;
+
+        Data(int capacity) {
+            times = new int[capacity];
+            lats = new float[capacity];
+            lons = new float[capacity];
+            flags = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    private final long baseTime; // Epoch millis
+    private transient volatile Data data = new Data(INITIAL_CAPACITY);
+
+    // Sequence numbers of the first point and of the point after the last point.
+    // The slot of a sequence number is given by (seq & mask)
+    private transient volatile long head;
+    private transient volatile long tail;
+    private transient volatile long lastChangeTime;
+
+    /**
+     * No-arg constructor
+     */
+    public PastTrackBuffer() {
+        baseTime = System.currentTimeMillis();
+        updateLastChangeTime();
+    }
+
+    /**
+     * Copy-constructor
+     *
+     * @param pastTrackBuffer
+     *            the past-track buffer to copy
+     */
+    public PastTrackBuffer(PastTrackBuffer pastTrackBuffer) {
+        baseTime = pastTrackBuffer.baseTime;
+        long[] range = new long[2];
+        Data src = pastTrackBuffer.snapshot(range);
+        copyFrom(src, range[0], range[1]);
+        updateLastChangeTime();
+    }
+
+    /**
+     * Constructor used by the {@linkplain AisViewSnapshot} for reading back
+     * the points written by {@linkplain #writeTo(ByteBuffer)}
+     *
+     * @param buf
+     *            the buffer to read the points from
+     */
+    PastTrackBuffer(ByteBuffer buf) {
+        baseTime = buf.getLong();
+        int size = buf.getInt();
+        Data d = new Data(INITIAL_CAPACITY);
+        while (d.capacity() < size) {
+            d = new Data(d.capacity() * 2);
+        }
+        for (int i = 0; i < size; i++) {
+            d.times[i] = buf.getInt();
+            d.lats[i] = buf.getFloat();
+            d.lons[i] = buf.getFloat();
+            d.flags[i] = buf.get();
+        }
+        data = d;
+        head = 0;
+        tail = size;
+        updateLastChangeTime();
+    }
+
+    /**
+     * Updates the lastChangeTime to the current time
+     */
+    private void updateLastChangeTime() {
+        lastChangeTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the last change time
+     *
+     * @return the last change time
+     */
+    public long getLastChangeTime() {
+        return lastChangeTime;
+    }
+
+    /**
+     * Returns the number of past-track points
+     *
+     * @return the number of past-track points
+     */
+    public int size() {
+        long t = tail;
+        return (int) (t - head);
+    }
+
+    /**
+     * Adds a past-track position to the buffer, if it is further away from the last point than minDist.
+     * <p>
+     * Must only be called from a single writer thread at a time.
+     *
+     * @param vesselPosition
+     *            the new position to add
+     * @param minDist
+     *            the minimum distance required to add the position
+     */
+    @Override
+    public void addPosition(Position vesselPosition, int minDist) {
+        long t = tail;
+        if (t > head) {
+            Data d = data;
+            int i = (int) ((t - 1) & d.mask);
+            Position last = Position.create(d.lats[i], d.lons[i]);
+            if (last.distanceTo(vesselPosition, CoordinateSystem.CARTESIAN) <= minDist) {
+                return;
+            }
+        }
+        append(System.currentTimeMillis(), vesselPosition.getLatitude(), vesselPosition.getLongitude());
+    }
+
+    /**
+     * Appends a point to the buffer.
+     * <p>
+     * Must only be called from a single writer thread at a time.
+     *
+     * @param time
+     *            the time of the point in epoch millis
+     * @param lat
+     *            the latitude
+     * @param lon
+     *            the longitude
+     */
+    public void append(long time, double lat, double lon) {
+        long t = tail;
+        Data d = data;
+        if (t - head >= d.capacity()) {
+            d = grow(d, t);
+        }
+        int i = (int) (t & d.mask);
+        d.times[i] = toSeconds(time);
+        d.lats[i] = (float) lat;
+        d.lons[i] = (float) lon;
+        d.flags[i] = 0;
+
+        // Publish the point
+        tail = t + 1;
+        updateLastChangeTime();
+    }
+
+    /**
+     * Doubles the capacity of the buffer
+     */
+    private Data grow(Data d, long t) {
+        long h = head;
+        Data grown = new Data(d.capacity() * 2);
+        for (long seq = h; seq < t; seq++) {
+            int i = (int) (seq & d.mask);
+            int j = (int) (seq & grown.mask);
+            grown.times[j] = d.times[i];
+            grown.lats[j] = d.lats[i];
+            grown.lons[j] = d.lons[i];
+            grown.flags[j] = d.flags[i];
+        }
+        data = grown;
+        return grown;
+    }
+
+    /**
+     * Cleans up old past-track points that have timed out according to the TTL parameter
+     *
+     * @param ttl
+     *            the time to live in seconds
+     */
+    @Override
+    public synchronized void cleanup(int ttl) {
+        long[] range = new long[2];
+        Data d = snapshot(range);
+        long now = System.currentTimeMillis();
+
+        // Find the first point that is not dead
+        long lo = range[0], hi = range[1];
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (isDead(d.times[(int) (mid & d.mask)], now, ttl)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        if (lo > head) {
+            head = lo;
+            updateLastChangeTime();
+        }
+    }
+
+    /**
+     * Removes all past-track points
+     */
+    public synchronized void clear() {
+        head = tail;
+        updateLastChangeTime();
+    }
+
+    /**
+     * Flags that the mobile target was gone. Updates the last past-track point with this state.
+     */
+    public void flagGone() {
+        long t = tail;
+        if (t > head) {
+            Data d = data;
+            d.flags[(int) ((t - 1) & d.mask)] |= FLAG_GONE;
+        }
+    }
+
+    /**
+     * Returns a snapshot of all the past-track points
+     *
+     * @return a snapshot of all the past-track points
+     */
+    @Override
+    public List<PastTrackPoint> getPoints() {
+        return getPointsBetween(null, null);
+    }
+
+    /**
+     * Returns the points newer than the given {@code time}
+     *
+     * @param time
+     *            the time
+     */
+    public List<PastTrackPoint> getPointsNewerThan(Date time) {
+        return getPointsBetween(time, null);
+    }
+
+    /**
+     * Returns the points newer than {@code from} and not newer than {@code to}.
+     *
+     * @param from
+     *            the exclusive start time, or null for no lower bound
+     * @param to
+     *            the inclusive end time, or null for no upper bound
+     * @return the points within the given time interval
+     */
+    public List<PastTrackPoint> getPointsBetween(Date from, Date to) {
+        long[] range = new long[2];
+        Data d = snapshot(range);
+        long start = (from == null) ? range[0] : search(d, range[0], range[1], toSeconds(from.getTime()));
+        long end = (to == null) ? range[1] : search(d, start, range[1], toSeconds(to.getTime()));
+
+        List<PastTrackPoint> result = new ArrayList<>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            int i = (int) (seq & d.mask);
+            PastTrackPoint point = new PastTrackPoint(new Date(toMillis(d.times[i])), Position.create(d.lats[i], d.lons[i]));
+            if ((d.flags[i] & FLAG_GONE) != 0) {
+                point.flagGone();
+            }
+            result.add(point);
+        }
+
+        // Discard points that the writer may have overwritten while copying
+        long overwritten = tail - d.capacity() - start;
+        if (overwritten > 0) {
+            result.subList(0, (int) Math.min(overwritten, result.size())).clear();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sequence number of the first point with a time after the given time
+     */
+    private static long search(Data d, long lo, long hi, int seconds) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (d.times[(int) (mid & d.mask)] <= seconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the current data along with the sequence number range [head, tail)
+     */
+    private Data snapshot(long[] range) {
+        // Read tail before data, since the data is published before the tail
+        long t = tail;
+        long h = head;
+        Data d = data;
+        range[0] = Math.max(h, t - d.capacity());
+        range[1] = t;
+        return d;
+    }
+
+    /**
+     * Copies the given range of points into a fresh buffer
+     */
+    private void copyFrom(Data src, long h, long t) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < t - h) {
+            capacity *= 2;
+        }
+        Data d = new Data(capacity);
+        for (long seq = h; seq < t; seq++) {
+            int i = (int) (seq & src.mask);
+            int j = (int) ((seq - h) & d.mask);
+            d.times[j] = src.times[i];
+            d.lats[j] = src.lats[i];
+            d.lons[j] = src.lons[i];
+            d.flags[j] = src.flags[i];
+        }
+        data = d;
+        head = 0;
+        tail = t - h;
+    }
+
+    private int toSeconds(long time) {
+        return (int) ((time - baseTime) / 1000L);
+    }
+
+    private long toMillis(int seconds) {
+        return baseTime + seconds * 1000L;
+    }
+
+    private boolean isDead(int seconds, long now, int ttl) {
+        return (now - toMillis(seconds)) / 1000L > ttl;
+    }
+
+    /**
+     * Writes the past-track points to the given buffer in the format used by the {@linkplain AisViewSnapshot}
+     *
+     * @param buf
+     *            the buffer to write the points to
+     */
+    void writeTo(ByteBuffer buf) {
+        int pos = buf.position();
+        long[] range = new long[2];
+        while (true) {
+            Data d = snapshot(range);
+            buf.putLong(baseTime);
+            buf.putInt((int) (range[1] - range[0]));
+            for (long seq = range[0]; seq < range[1]; seq++) {
+                int i = (int) (seq & d.mask);
+                buf.putInt(d.times[i]);
+                buf.putFloat(d.lats[i]);
+                buf.putFloat(d.lons[i]);
+                buf.put(d.flags[i]);
+            }
+
+            // Start over if the writer may have overwritten points while copying
+            if (tail - d.capacity() <= range[0]) {
+                return;
+            }
+            buf.position(pos);
+        }
+    }
+
+    /**
+     * Serializes the past-track points
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        long[] range = new long[2];
+        Data d = snapshot(range);
+        out.writeInt((int) (range[1] - range[0]));
+        for (long seq = range[0]; seq < range[1]; seq++) {
+            int i = (int) (seq & d.mask);
+            out.writeInt(d.times[i]);
+            out.writeFloat(d.lats[i]);
+            out.writeFloat(d.lons[i]);
+            out.writeByte(d.flags[i]);
+        }
+    }
+
+    /**
+     * De-serializes the past-track points
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        Data d = new Data(INITIAL_CAPACITY);
+        while (d.capacity() < size) {
+            d = new Data(d.capacity() * 2);
+        }
+        for (int i = 0; i < size; i++) {
+            d.times[i] = in.readInt();
+            d.lats[i] = in.readFloat();
+            d.lons[i] = in.readFloat();
+            d.flags[i] = in.readByte();
+        }
+        data = d;
+        head = 0;
+        tail = size;
+        updateLastChangeTime();
+    }
+}
@@ -48,14 +48,20 @@ public class SarTarget extends MobileTarget {
     }
 
     /**
-     * Determines if the target should be considered gone
-     * @return if the target has gone
+     * Determines when the target should be considered gone
+     * @return the gone tolerance in seconds
      */
     @Override
-    public synchronized boolean hasGone(Date now, boolean strict) {        
-        long elapsed = (now.getTime() - lastReceived.getTime()) / 1000;        
-        // Determine if gone
-        return elapsed > GONE_TTL;
+    protected long getGoneTolerance(boolean strict) {
+        return GONE_TTL;
+    }
+
+    /**
+     * Returns the time at which the target will have gone old, unless a new report is received
+     * @return the time in milliseconds
+     */
+    public synchronized long getOldTime() {
+        return lastReceived.getTime() + (OLD_TTL + 1) * 1000L;
     }
     
     /**
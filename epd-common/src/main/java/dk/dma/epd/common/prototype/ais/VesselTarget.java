@@ -14,8 +14,6 @@
  */
 package dk.dma.epd.common.prototype.ais;
 
-import java.util.Date;
-
 import net.jcip.annotations.ThreadSafe;
 
 /**
@@ -67,15 +65,12 @@ public class VesselTarget extends MobileTarget {
     }
     
     /**
-     * Determine if the target has gone.
-     * @param now will be used as current time
+     * Determine when the target has gone.
      * @param strict when strict is false more relaxed rules will used suitable for down sampled data
-     * @return if the target has gone  
+     * @return the gone tolerance in seconds
      */
     @Override
-    public synchronized boolean hasGone(Date now, boolean strict) {
-        long elapsed = (now.getTime() - lastReceived.getTime()) / 1000;
-        
+    protected synchronized long getGoneTolerance(boolean strict) {
         // Base gone "loosely" on ITU-R Rec M1371-4 4.2.1
         long tol = 10;
         float sog = positionData.getSog();
@@ -113,7 +108,7 @@ public class VesselTarget extends MobileTarget {
             tol = 600; // 10 minutes
         }
         
-        return elapsed > tol;
+        return tol;
     }
     
     /**
@@ -0,0 +1,159 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Cache of JAXB contexts, one per context path or class, along with pools of their
+ * marshallers and unmarshallers.
+ * <p>
+ * Creating a JAXB context is expensive, since it reflects over all the classes of the context,
+ * whereas the context itself is thread-safe. Marshallers and unmarshallers are cheaper, but not
+ * thread-safe, so they are borrowed from a pool for the duration of a single call.
+ */
+@ThreadSafe
+public final class JaxbContextCache {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private JaxbContextCache() {
+    }
+
+    /**
+     * Returns the JAXB context of the given context path
+     *
+     * @param contextPath
+     *            the colon-separated list of packages of the context
+     * @return the JAXB context
+     */
+    public static JAXBContext getContext(String contextPath) throws JAXBException {
+        return getEntry(contextPath, null).context;
+    }
+
+    /**
+     * Returns the JAXB context of the given class
+     *
+     * @param type
+     *            the class of the context
+     * @return the JAXB context
+     */
+    public static JAXBContext getContext(Class<?> type) throws JAXBException {
+        return getEntry(null, type).context;
+    }
+
+    /**
+     * Unmarshals XML of the given context path from the stream
+     */
+    public static Object unmarshal(String contextPath, InputStream in) throws JAXBException {
+        Entry entry = getEntry(contextPath, null);
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return unmarshaller.unmarshal(in);
+        } finally {
+            entry.unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    /**
+     * Unmarshals XML of the given context path from the reader
+     */
+    public static Object unmarshal(String contextPath, Reader reader) throws JAXBException {
+        Entry entry = getEntry(contextPath, null);
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return unmarshaller.unmarshal(reader);
+        } finally {
+            entry.unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    /**
+     * Marshals the object as formatted UTF-8 XML of the given context path
+     */
+    public static void marshal(String contextPath, Object obj, Writer writer) throws JAXBException {
+        marshal(getEntry(contextPath, null), obj, writer);
+    }
+
+    /**
+     * Marshals the object as formatted UTF-8 XML of the given class
+     */
+    public static void marshal(Class<?> type, Object obj, Writer writer) throws JAXBException {
+        marshal(getEntry(null, type), obj, writer);
+    }
+
+    private static void marshal(Entry entry, Object obj, Writer writer) throws JAXBException {
+        Marshaller marshaller = entry.borrowMarshaller();
+        try {
+            marshaller.marshal(obj, writer);
+        } finally {
+            entry.marshallers.offer(marshaller);
+        }
+    }
+
+    private static Entry getEntry(String contextPath, Class<?> type) throws JAXBException {
+        String key = type != null ? "class:" + type.getName() : contextPath;
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            JAXBContext context = type != null ? JAXBContext.newInstance(type) : JAXBContext.newInstance(contextPath);
+            Entry existing = ENTRIES.putIfAbsent(key, entry = new Entry(context));
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * A JAXB context along with its idle marshallers and unmarshallers
+     */
+    private static final class Entry {
+        final JAXBContext context;
+        final ConcurrentLinkedQueue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+
+        Entry(JAXBContext context) {
+            this.context = context;
+        }
+
+        Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            if (marshaller == null) {
+                marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+                marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+            }
+            return marshaller;
+        }
+
+        Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            return unmarshaller != null ? unmarshaller : context.createUnmarshaller();
+        }
+    }
+}
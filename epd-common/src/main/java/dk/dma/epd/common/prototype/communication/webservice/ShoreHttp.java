@@ -16,20 +16,17 @@ package dk.dma.epd.common.prototype.communication.webservice;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.zip.GZIPInputStream;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +34,11 @@ import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.util.Compressor;
 
 /**
- * Encapsulation of HTTP connection to shore. 
+ * Encapsulation of HTTP connection to shore.
+ * <p>
+ * The connections are pooled by the {@linkplain ShoreHttpTransport#getShoreTransport() shore transport},
+ * and the JAXB contexts are cached by {@linkplain JaxbContextCache}, so a request only pays for the
+ * marshalling and the round trip.
  */
 public class ShoreHttp {
 
@@ -53,7 +54,7 @@ public class ShoreHttp {
     private int readTimeout = 60000; // 60 sec
     private int connectionTimeout = 30000; // 30 sec
 
-    private HttpClient httpClient;
+    private ShoreHttpTransport transport;
     private PostMethod method;
     private byte[] responseBody;
 
@@ -70,11 +71,82 @@ public class ShoreHttp {
         setUri(uri);
     }
 
+    /**
+     * Makes the request and reads the whole response body, which can then be unmarshalled with
+     * {@linkplain #getXmlUnmarshalledContent(String)}
+     */
     public void makeRequest() throws ShoreServiceException {
-        // Make the request
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            execute();
+
+            byte[] body = method.getResponseBody();
+            int rawResSize = body.length;
+
+            // Check for GZip content encoding
+            if (isGzipped()) {
+                body = Compressor.decompress(body);
+            }
+            responseBody = body;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Received XML: " + new String(responseBody, ENCODING));
+                LOG.debug("Received XML size    : " + responseBody.length);
+                LOG.debug("Received raw XML size: " + rawResSize);
+            }
+            success = true;
+        } catch (IOException e) {
+            LOG.error("Failed to read response body: " + e.getMessage());
+            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+        } finally {
+            method.releaseConnection();
+            transport.record(uri, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Makes the request and unmarshals the response while it is being received, without
+     * buffering the response body. A failure to read the response is reported as a
+     * {@linkplain ShoreServiceException}, while a response that cannot be unmarshalled
+     * is reported as a {@linkplain JAXBException}
+     *
+     * @param contextPath
+     *            the JAXB context path of the response
+     * @return the unmarshalled response
+     */
+    public Object makeRequest(String contextPath) throws ShoreServiceException, JAXBException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            execute();
+
+            InputStream in = method.getResponseBodyAsStream();
+            if (isGzipped()) {
+                in = new GZIPInputStream(in);
+            }
+            Object result = JaxbContextCache.unmarshal(contextPath, in);
+            success = true;
+            return result;
+        } catch (IOException e) {
+            LOG.error("Failed to read response body: " + e.getMessage());
+            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+        } catch (JAXBException e) {
+            // The unmarshaller wraps the errors of the response stream
+            if (e.getLinkedException() instanceof IOException || e.getCause() instanceof IOException) {
+                LOG.error("Failed to read response body: " + e.getMessage());
+                throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
+            }
+            throw e;
+        } finally {
+            method.releaseConnection();
+            transport.record(uri, System.nanoTime() - start, success);
+        }
+    }
+
+    private void execute() throws ShoreServiceException {
         int resCode = -1;
         try {
-            resCode = httpClient.executeMethod(method);
+            resCode = transport.execute(method, connectionTimeout);
         } catch (HttpException e) {
             LOG.error("HTTP request failed with: " + e.getMessage());
             throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
@@ -84,74 +156,52 @@ public class ShoreHttp {
         }
 
         if (resCode != 200) {
-            method.releaseConnection();
             throw new ShoreServiceException(ShoreServiceErrorCode.SERVER_ERROR);
         }
+    }
 
-        try {
-            responseBody = method.getResponseBody();
-            int rawResSize = responseBody.length;
-
-            // Check for GZip content encoding
-            Header contentEncoding = method.getResponseHeader("Content-Encoding");
-            if (contentEncoding != null && contentEncoding.getValue().toUpperCase().indexOf("GZIP") >= 0) {
-                responseBody = Compressor.decompress(responseBody);
-            }        
-            LOG.debug("Received XML: " + new String(responseBody));
-            LOG.debug("Received XML size    : " + responseBody.length);
-            LOG.debug("Received raw XML size: " + rawResSize);
-        } catch (IOException e) {
-            LOG.error("Failed to read response body: " + e.getMessage());
-            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
-        }
-
-        method.releaseConnection();
+    private boolean isGzipped() {
+        Header contentEncoding = method.getResponseHeader("Content-Encoding");
+        return contentEncoding != null && contentEncoding.getValue().toUpperCase().indexOf("GZIP") >= 0;
     }
 
     public void init() {
-        httpClient = new HttpClient();
+        transport = ShoreHttpTransport.getShoreTransport();
         method = new PostMethod(url);
-        HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
-        params.setSoTimeout(readTimeout);
-        params.setConnectionTimeout(connectionTimeout);
+        method.getParams().setSoTimeout(readTimeout);
         method.setRequestHeader("User-Agent", USER_AGENT);
-        method.setRequestHeader("Connection", "close");
-        method.addRequestHeader("Accept", "text/*");    
-        
+        method.addRequestHeader("Accept", "text/*");
+
         // TODO if compress response
         method.addRequestHeader("Accept-Encoding", "gzip");
     }
 
     public Object getXmlUnmarshalledContent(String contextPath) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
-        Unmarshaller u = jc.createUnmarshaller();
-        return u.unmarshal(new ByteArrayInputStream(responseBody));
+        return JaxbContextCache.unmarshal(contextPath, new ByteArrayInputStream(responseBody));
     }
 
     public void setXmlMarshalContent(String contextPath, Object obj) throws JAXBException, UnsupportedEncodingException {
-        JAXBContext jc = JAXBContext.newInstance(contextPath);
-        Marshaller m = jc.createMarshaller();
-        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-        m.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
-        StringWriter sw = new StringWriter();        
-        m.marshal(obj, sw);
+        StringWriter sw = new StringWriter();
+        JaxbContextCache.marshal(contextPath, obj, sw);
         String req = sw.toString();
-        LOG.debug("XML request: " + req);
-        setRequestBody(sw.toString().getBytes(ENCODING), ENCODING);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("XML request: " + req);
+        }
+        setRequestBody(req.getBytes(ENCODING), ENCODING);
     }
 
     public void setRequestBody(byte[] body, String contentType) {
         // TODO if Gzip Compress request
-        byte[] compressed = {};
-        try {            
-            compressed = Compressor.compress(body);                        
-            //body = compressed;
-            //method.addRequestHeader("Content-Encoding", "gzip");
-        } catch (IOException e) {
-            LOG.error("Failed to GZip request: " + e.getMessage());
-        }        
-        LOG.debug("XML req size           : " + body.length);
-        LOG.debug("XML req compressed size: " + compressed.length);
+        if (LOG.isDebugEnabled()) {
+            byte[] compressed = {};
+            try {
+                compressed = Compressor.compress(body);
+            } catch (IOException e) {
+                LOG.error("Failed to GZip request: " + e.getMessage());
+            }
+            LOG.debug("XML req size           : " + body.length);
+            LOG.debug("XML req compressed size: " + compressed.length);
+        }
         ByteArrayRequestEntity requestEntity = new ByteArrayRequestEntity(body, contentType);
         method.setRequestEntity(requestEntity);
     }
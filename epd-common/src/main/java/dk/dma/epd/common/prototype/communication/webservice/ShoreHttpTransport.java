@@ -0,0 +1,274 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+
+/**
+ * HTTP transport shared by the requests to a shore service.
+ * <p>
+ * The requests share a pool of keep-alive connections, so polls to the same server reuse
+ * the connection of the previous poll rather than paying for a new connection each time.
+ * Connections that have been idle for longer than {@linkplain #IDLE_TIMEOUT} are closed
+ * before the next request. The read timeout is set on the method of a request, and the
+ * connection timeout is passed to {@linkplain #execute(HttpMethod, int)}, which applies it
+ * to the pooled connection used for the request.
+ * <p>
+ * The latency of the requests is recorded per endpoint.
+ */
+@ThreadSafe
+public class ShoreHttpTransport {
+
+    public static final int MAX_CONNECTIONS_PER_HOST = 4;
+    public static final int MAX_TOTAL_CONNECTIONS = 16;
+    public static final long IDLE_TIMEOUT = 30000; // 30 sec
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 30000; // 30 sec
+
+    @GuardedBy("ShoreHttpTransport.class")
+    private static ShoreHttpTransport shoreTransport;
+
+    private final MultiThreadedHttpConnectionManager connectionManager = new ConnectionManager();
+    private final HttpClient httpClient;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicLong lastIdleCheck = new AtomicLong(System.currentTimeMillis());
+
+    public ShoreHttpTransport() {
+        this(DEFAULT_CONNECTION_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connectionTimeout
+     *            the timeout for establishing new connections in milliseconds, used by requests
+     *            that do not specify a connection timeout
+     */
+    public ShoreHttpTransport(int connectionTimeout) {
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        params.setStaleCheckingEnabled(true);
+        params.setConnectionTimeout(connectionTimeout);
+        httpClient = new HttpClient(connectionManager);
+    }
+
+    /**
+     * Returns the transport shared by the shore services
+     *
+     * @return the shore service transport
+     */
+    public static synchronized ShoreHttpTransport getShoreTransport() {
+        if (shoreTransport == null) {
+            shoreTransport = new ShoreHttpTransport();
+        }
+        return shoreTransport;
+    }
+
+    /**
+     * Executes the method on a pooled connection. The caller must release the connection of
+     * the method, once the response has been read
+     *
+     * @param method
+     *            the method to execute
+     * @return the HTTP status code
+     */
+    public int execute(HttpMethod method) throws IOException {
+        return execute(method, -1);
+    }
+
+    /**
+     * Executes the method on a pooled connection, using the given connection timeout if a new
+     * connection is opened. The caller must release the connection of the method, once the
+     * response has been read
+     *
+     * @param method
+     *            the method to execute
+     * @param connectionTimeout
+     *            the connection timeout in milliseconds, or a negative value for the default timeout
+     * @return the HTTP status code
+     */
+    public int execute(HttpMethod method, int connectionTimeout) throws IOException {
+        long now = System.currentTimeMillis();
+        long last = lastIdleCheck.get();
+        if (now - last > IDLE_TIMEOUT && lastIdleCheck.compareAndSet(last, now)) {
+            connectionManager.closeIdleConnections(IDLE_TIMEOUT);
+        }
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        if (connectionTimeout >= 0) {
+            hostConfiguration.getParams().setIntParameter(HttpConnectionParams.CONNECTION_TIMEOUT, connectionTimeout);
+        }
+        return httpClient.executeMethod(hostConfiguration, method);
+    }
+
+    /**
+     * Records a request to the endpoint
+     *
+     * @param endpoint
+     *            the endpoint, e.g. the URI of the service
+     * @param nanos
+     *            the time taken by the request, including reading the response
+     * @param success
+     *            whether the request succeeded
+     */
+    public void record(String endpoint, long nanos, boolean success) {
+        Endpoint stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = new Endpoint();
+            Endpoint existing = endpoints.putIfAbsent(endpoint, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        stats.record(nanos, success);
+    }
+
+    /**
+     * Returns the statistics of the endpoint, or null if no request has been made to it
+     *
+     * @param endpoint
+     *            the endpoint
+     * @return the statistics of the endpoint
+     */
+    public EndpointStatistics getStatistics(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats == null ? null : stats.snapshot(endpoint);
+    }
+
+    /**
+     * Returns the statistics of all endpoints
+     *
+     * @return the statistics of all endpoints
+     */
+    public List<EndpointStatistics> getStatistics() {
+        List<EndpointStatistics> result = new ArrayList<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            result.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * Closes all pooled connections
+     */
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Connection manager applying the connection timeout of the host configuration of a request,
+     * if any, to the connection handed out for the request. The host parameters are not part of
+     * the pool key, so the requests still share the connections to a host
+     */
+    private static final class ConnectionManager extends MultiThreadedHttpConnectionManager {
+        @Override
+        public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+                throws ConnectionPoolTimeoutException {
+            HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            // A null value reverts a timeout set by a previous request to the pool default
+            connection.getParams().setParameter(HttpConnectionParams.CONNECTION_TIMEOUT,
+                    hostConfiguration.getParams().getParameter(HttpConnectionParams.CONNECTION_TIMEOUT));
+            return connection;
+        }
+    }
+
+    /**
+     * Snapshot of the request statistics of an endpoint
+     */
+    public static final class EndpointStatistics {
+        private final String endpoint;
+        private final long requestCount;
+        private final long errorCount;
+        private final long totalMillis;
+        private final long maxMillis;
+
+        EndpointStatistics(String endpoint, long requestCount, long errorCount, long totalMillis, long maxMillis) {
+            this.endpoint = endpoint;
+            this.requestCount = requestCount;
+            this.errorCount = errorCount;
+            this.totalMillis = totalMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public double getAverageMillis() {
+            return requestCount == 0 ? 0 : (double) totalMillis / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + " requests: " + requestCount + ", errors: " + errorCount + ", avg: "
+                    + String.format("%.1f", getAverageMillis()) + " ms, max: " + maxMillis + " ms";
+        }
+    }
+
+    /**
+     * Counters of an endpoint
+     */
+    private static final class Endpoint {
+        final AtomicLong requestCount = new AtomicLong();
+        final AtomicLong errorCount = new AtomicLong();
+        final AtomicLong totalMillis = new AtomicLong();
+        final AtomicLong maxMillis = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            long millis = nanos / 1000000L;
+            requestCount.incrementAndGet();
+            if (!success) {
+                errorCount.incrementAndGet();
+            }
+            totalMillis.addAndGet(millis);
+            long max = maxMillis.get();
+            while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+                max = maxMillis.get();
+            }
+        }
+
+        EndpointStatistics snapshot(String endpoint) {
+            return new EndpointStatistics(endpoint, requestCount.get(), errorCount.get(), totalMillis.get(), maxMillis.get());
+        }
+    }
+}
@@ -14,12 +14,27 @@
  */
 package dk.dma.epd.common.prototype.gui.notification;
 
+import java.awt.Font;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
 import org.joda.time.DateTime;
 
+import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.notification.GeneralNotification;
 import dk.dma.epd.common.prototype.notification.Notification;
 import dk.dma.epd.common.prototype.notification.Notification.NotificationSeverity;
@@ -37,6 +52,12 @@ public class GeneralNotificationPanel extends
 
     private static final String[] NAMES = { "", "", "Date", "Title", "Time To" };
 
+    // Bounds of the acknowledged notifications kept in the list and in the archive
+    private static final int MAX_ACKNOWLEDGED = 200;
+    private static final int MAX_ARCHIVED = 1000;
+
+    private JButton archiveBtn;
+
     /**
      * Constructor
      */
@@ -50,6 +71,38 @@ public class GeneralNotificationPanel extends
         table.getColumnModel().getColumn(3).setPreferredWidth(30);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ButtonPanel initButtonPanel() {
+        ButtonPanel buttonPanel = super.initButtonPanel();
+
+        // Called from the super constructor, so the button is created here
+        archiveBtn = new JButton("Archive", EPD.res().getCachedImageIcon("images/notifications/flag-blue.png"));
+        archiveBtn.setToolTipText("Show the archived notifications");
+        buttonPanel.add(archiveBtn);
+
+        archiveBtn.addActionListener(new ActionListener() {
+            @Override public void actionPerformed(ActionEvent e) {
+                showArchivedNotifications();
+            }});
+
+        return buttonPanel;
+    }
+
+    /**
+     * Shows the archived notifications, newest first, in a separate dialog
+     */
+    protected void showArchivedNotifications() {
+        List<GeneralNotification> archived = getArchivedNotifications();
+        Collections.reverse(archived);
+        NotificationTableModel<GeneralNotification> archiveModel = initTableModel();
+        archiveModel.setNotifications(archived);
+
+        new ArchivedNotificationsDialog(notificationCenter, archiveModel).setVisible(true);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -158,6 +211,15 @@ public class GeneralNotificationPanel extends
         // notifyListeners();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean archiveNotifications() {
+        // Notifications are only added to this panel, so archive the old acknowledged ones
+        return archiveAcknowledgedNotifications(MAX_ACKNOWLEDGED, MAX_ARCHIVED);
+    }
+
 }
 
 /**
@@ -176,3 +238,60 @@ class GeneralNotificationDetailPanel extends
         buildGUI();
     }
 }
+
+/**
+ * A read-only dialog listing the archived general notifications
+ */
+class ArchivedNotificationsDialog extends JDialog implements
+        ListSelectionListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final NotificationTableModel<GeneralNotification> tableModel;
+    private final JTable table;
+    private final GeneralNotificationDetailPanel detailPanel = new GeneralNotificationDetailPanel();
+
+    /**
+     * Constructor
+     * 
+     * @param owner
+     *            the owner window
+     * @param tableModel
+     *            the table model holding the archived notifications
+     */
+    public ArchivedNotificationsDialog(Window owner,
+            NotificationTableModel<GeneralNotification> tableModel) {
+        super(owner, "Archived Notifications", ModalityType.MODELESS);
+        this.tableModel = tableModel;
+
+        table = new JTable(tableModel);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setShowGrid(false);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        table.getColumnModel().getColumn(0).setMaxWidth(18);
+        table.getColumnModel().getColumn(1).setMaxWidth(18);
+        table.getSelectionModel().addListSelectionListener(this);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                new JScrollPane(table), detailPanel);
+        splitPane.setDividerLocation(300);
+        getContentPane().add(splitPane);
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(700, 400);
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void valueChanged(ListSelectionEvent e) {
+        if (!e.getValueIsAdjusting()) {
+            detailPanel.setNotification(tableModel.getNotification(table
+                    .getSelectedRow()));
+        }
+    }
+}
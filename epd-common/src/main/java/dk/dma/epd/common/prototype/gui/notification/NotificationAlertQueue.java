@@ -0,0 +1,166 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.gui.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import dk.dma.epd.common.prototype.notification.Notification;
+import dk.dma.epd.common.prototype.notification.NotificationAlert;
+
+/**
+ * Priority queue of the pending notification alerts, ordered by the next time they may trigger.
+ * <p>
+ * The alerts of a panel are scheduled when the list of notifications of the panel changes,
+ * so polling the queue only costs in proportion to the number of due alerts.
+ * Alerts of notifications that have since been removed from their panel are discarded when due.
+ * <p>
+ * The queue is accessed from the Swing event thread only.
+ */
+public class NotificationAlertQueue {
+
+    private final PriorityQueue<DueAlert> queue = new PriorityQueue<>();
+    private final Map<NotificationPanel<?>, Integer> modificationCounts = new IdentityHashMap<>();
+    private final Map<NotificationPanel<?>, Set<Notification<?, ?>>> liveNotifications = new IdentityHashMap<>();
+
+    /**
+     * Schedules the alerts of the notifications that have been added to the panel
+     * since it was last updated
+     *
+     * @param panel
+     *            the notification panel
+     * @param notifications
+     *            the current notifications of the panel
+     * @param modificationCount
+     *            the modification count of the list of notifications of the panel
+     */
+    public void update(NotificationPanel<?> panel, List<? extends Notification<?, ?>> notifications, int modificationCount) {
+        Integer previousCount = modificationCounts.get(panel);
+        if (previousCount != null && previousCount == modificationCount) {
+            return;
+        }
+        modificationCounts.put(panel, modificationCount);
+
+        Set<Notification<?, ?>> previous = liveNotifications.get(panel);
+        Set<Notification<?, ?>> live = Collections.newSetFromMap(new IdentityHashMap<Notification<?, ?>, Boolean>());
+        for (Notification<?, ?> notification : notifications) {
+            live.add(notification);
+            if (previous == null || !previous.contains(notification)) {
+                for (NotificationAlert alert : notification.getAlerts()) {
+                    schedule(new DueAlert(panel, notification, alert));
+                }
+            }
+        }
+        liveNotifications.put(panel, live);
+    }
+
+    /**
+     * Removes and returns the alerts that are due at the given time.
+     * <p>
+     * Call {@linkplain #reschedule(DueAlert, long)} for each of the returned alerts
+     * once they have been handled.
+     *
+     * @param now
+     *            the current time in milliseconds
+     * @return the due alerts, earliest first
+     */
+    public List<DueAlert> pollDue(long now) {
+        List<DueAlert> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().time <= now) {
+            DueAlert alert = queue.poll();
+            Set<Notification<?, ?>> live = liveNotifications.get(alert.panel);
+            if (live != null && live.contains(alert.notification)) {
+                due.add(alert);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Re-schedules a polled alert for the next time it may trigger, if any
+     *
+     * @param alert
+     *            the polled alert
+     * @param now
+     *            the current time in milliseconds
+     */
+    public void reschedule(DueAlert alert, long now) {
+        // Never re-schedule for the current poll
+        schedule(alert, now + 1);
+    }
+
+    /**
+     * Returns the number of scheduled alerts
+     *
+     * @return the number of scheduled alerts
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    private void schedule(DueAlert alert) {
+        schedule(alert, 0L);
+    }
+
+    private void schedule(DueAlert alert, long earliest) {
+        long time = alert.alert.getNextTriggerTime(alert.notification);
+        if (time != Long.MAX_VALUE) {
+            queue.add(new DueAlert(alert.panel, alert.notification, alert.alert, Math.max(time, earliest)));
+        }
+    }
+
+    /**
+     * An alert of a notification along with the time it may trigger
+     */
+    public static final class DueAlert implements Comparable<DueAlert> {
+        private final NotificationPanel<?> panel;
+        private final Notification<?, ?> notification;
+        private final NotificationAlert alert;
+        private final long time;
+
+        DueAlert(NotificationPanel<?> panel, Notification<?, ?> notification, NotificationAlert alert) {
+            this(panel, notification, alert, 0L);
+        }
+
+        DueAlert(NotificationPanel<?> panel, Notification<?, ?> notification, NotificationAlert alert, long time) {
+            this.panel = panel;
+            this.notification = notification;
+            this.alert = alert;
+            this.time = time;
+        }
+
+        public NotificationPanel<?> getPanel() {
+            return panel;
+        }
+
+        public Notification<?, ?> getNotification() {
+            return notification;
+        }
+
+        public NotificationAlert getAlert() {
+            return alert;
+        }
+
+        @Override
+        public int compareTo(DueAlert other) {
+            return Long.compare(time, other.time);
+        }
+    }
+}
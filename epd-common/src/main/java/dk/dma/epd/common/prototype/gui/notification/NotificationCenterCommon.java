@@ -78,6 +78,10 @@ public abstract class NotificationCenterCommon extends ComponentDialog implement
     private static final Logger LOG = LoggerFactory.getLogger(NotificationCenterCommon.class);
 
     protected Timer alertTimer = new Timer(3 * 1000, this); // Every 3 seconds
+    protected NotificationAlertQueue alertQueue = new NotificationAlertQueue();
+
+    private static final long ARCHIVE_INTERVAL = 60 * 1000L; // Every minute
+    private long lastArchived = System.currentTimeMillis();
 
     protected MsiNmServiceHandlerCommon msiNmHandler;
     protected ChatServiceHandlerCommon chatServiceHandler;
@@ -157,16 +161,27 @@ public abstract class NotificationCenterCommon extends ComponentDialog implement
      */
     @Override
     public void actionPerformed(ActionEvent ae) {
-        // Run through all alerts of all notifications of all panels
-        // and check if they should be triggered
+        long now = System.currentTimeMillis();
+
+        // Archive old acknowledged notifications of the panels that maintain their own list
+        if (now - lastArchived > ARCHIVE_INTERVAL) {
+            lastArchived = now;
+            for (NotificationPanel<?> panel : panels) {
+                panel.archiveNotifications();
+            }
+        }
+
+        // Schedule the alerts of the notifications of panels that have changed
         for (NotificationPanel<?> panel : panels) {
-            for (Notification<?, ?> notification : panel.getNotifications()) {
-                for (NotificationAlert alert : notification.getAlerts()) {
-                    if (alert.shouldTrigger(notification)) {
-                        triggerAlert(panel, notification, alert);
-                    }
-                }
+            alertQueue.update(panel, panel.getNotifications(), panel.getModificationCount());
+        }
+
+        // Check if the due alerts should be triggered
+        for (NotificationAlertQueue.DueAlert due : alertQueue.pollDue(now)) {
+            if (due.getAlert().shouldTrigger(due.getNotification())) {
+                triggerAlert(due.getPanel(), due.getNotification(), due.getAlert());
             }
+            alertQueue.reschedule(due, now);
         }
     }
 
@@ -182,15 +182,23 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * @return the notification with the given identifier
      */
     public N getNotificationById(Object id) {
-        // TODO: Consider using an ID look-up map instead
-        if (id != null) {
-            for (N notification : getNotifications()) {
-                if (id.equals(notification.getId())) {
-                    return notification;
-                }
-            }
-        }
-        return null;
+        return tableModel.getNotificationById(id);
+    }
+
+    /**
+     * Returns the notifications that have been archived from the list of notifications
+     * @return the archived notifications
+     */
+    public List<N> getArchivedNotifications() {
+        return tableModel.getArchivedNotifications();
+    }
+
+    /**
+     * Returns a counter that changes whenever the list of notifications changes
+     * @return the modification count of the list of notifications
+     */
+    public int getModificationCount() {
+        return tableModel.getModificationCount();
     }
     
 
@@ -365,11 +373,9 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      * @param id the id of the notification to select
      */
     public void setSelectedId(Object id) {
-        for (int row = 0; row < tableModel.getNotifications().size(); row++) {
-            if (id.equals(tableModel.getNotification(row).getId())) {
-                setSelectedRow(row);
-                return;
-            }
+        int row = tableModel.getRow(id);
+        if (row >= 0) {
+            setSelectedRow(row);
         }
     }
 
@@ -391,11 +397,9 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
      */
     protected void selectFirstUnacknowledgedRow() {
         // Change the selection to the next unacknowledged
-        for (int row = 0; row < tableModel.getNotifications().size(); row++) {
-            if (!tableModel.getNotification(row).isAcknowledged()) {
-                setSelectedRow(row);
-                return;
-            }
+        int row = tableModel.getFirstUnacknowledgedRow();
+        if (row >= 0) {
+            setSelectedRow(row);
         }
     }
     
@@ -517,6 +521,37 @@ public abstract class NotificationPanel<N extends Notification<?,?>> extends JPa
         notifyListeners();
     }
     
+    /**
+     * Archives old acknowledged notifications, if the panel maintains its own list of
+     * notifications. The default implementation does nothing, since most panels refresh
+     * their notifications from a back end.
+     * <p>
+     * Guaranteed to be run in the Swing event tread.
+     *
+     * @return if any notifications were archived
+     */
+    protected boolean archiveNotifications() {
+        return false;
+    }
+
+    /**
+     * Archives the acknowledged notifications, except the latest ones, and
+     * refreshes the table if any notifications were archived.
+     *
+     * @param keepAcknowledged the number of acknowledged notifications to keep in the list
+     * @param maxArchived the maximum number of archived notifications to keep
+     * @return if any notifications were archived
+     */
+    protected boolean archiveAcknowledgedNotifications(int keepAcknowledged, int maxArchived) {
+        if (tableModel.archiveAcknowledged(keepAcknowledged, maxArchived) == 0) {
+            return false;
+        }
+        refreshTableData();
+        updateButtonEnabledState();
+        notifyListeners();
+        return true;
+    }
+
     /**
      * Set the alignment of the given column
      * 
@@ -14,10 +14,16 @@
  */
 package dk.dma.epd.common.prototype.gui.notification;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.ImageIcon;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 import dk.dma.epd.common.prototype.EPD;
@@ -25,6 +31,11 @@ import dk.dma.epd.common.prototype.notification.Notification;
 
 /**
  * Base class for notification table models
+ * <p>
+ * The notifications are indexed by id and by acknowledgement state. The index is
+ * rebuilt lazily after the table model has changed, i.e. after {@code fireTableDataChanged()}
+ * has been called. Acknowledging a notification is considered final, so notifications
+ * that turn out to be acknowledged are removed from the unacknowledged index as they are met.
  */
 public abstract class NotificationTableModel<N extends Notification<?,?>> extends AbstractTableModel {
 
@@ -37,6 +48,13 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
     
     List<N> notifications = new ArrayList<>();
 
+    private Deque<N> archive = new ArrayDeque<>();
+    private int modificationCount;
+
+    // Lazily built indexes. Null if the table model has changed since they were built
+    private Map<Object, Integer> idIndex;
+    private LinkedList<Integer> unacknowledgedRows;
+
     /**
      * Returns the list of column names
      * @return
@@ -102,5 +120,143 @@ public abstract class NotificationTableModel<N extends Notification<?,?>> extend
      */
     public void setNotifications(List<N> notifications) {
         this.notifications = notifications;
+        invalidateIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fireTableChanged(TableModelEvent e) {
+        invalidateIndex();
+        super.fireTableChanged(e);
+    }
+
+    /**
+     * Returns a counter that changes whenever the notifications of the table model change
+     * @return the modification count
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns the row of the notification with the given id, or -1 if not found
+     * @param id the id of the notification
+     * @return the row of the notification with the given id
+     */
+    public int getRow(Object id) {
+        if (id == null) {
+            return -1;
+        }
+        buildIndex();
+        Integer row = idIndex.get(id);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Returns the notification with the given id, or null if not found
+     * @param id the id of the notification
+     * @return the notification with the given id
+     */
+    public N getNotificationById(Object id) {
+        return getNotification(getRow(id));
+    }
+
+    /**
+     * Returns the first unacknowledged row, or -1 if all notifications are acknowledged
+     * @return the first unacknowledged row
+     */
+    public int getFirstUnacknowledgedRow() {
+        buildIndex();
+        while (!unacknowledgedRows.isEmpty()) {
+            int row = unacknowledgedRows.getFirst();
+            if (row < notifications.size() && !notifications.get(row).isAcknowledged()) {
+                return row;
+            }
+            unacknowledgedRows.removeFirst();
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the acknowledged notifications, except the latest {@code keepAcknowledged} ones,
+     * from the table model to the archive. The archive holds at most {@code maxArchived}
+     * notifications, and the oldest ones are discarded.
+     * <p>
+     * Make sure to call fireTableDataChanged afterwards, if any notifications were archived.
+     *
+     * @param keepAcknowledged the number of acknowledged notifications to keep in the table model
+     * @param maxArchived the maximum number of archived notifications
+     * @return the number of archived notifications
+     */
+    public int archiveAcknowledged(int keepAcknowledged, int maxArchived) {
+        int acknowledged = 0;
+        for (N notification : notifications) {
+            if (notification.isAcknowledged()) {
+                acknowledged++;
+            }
+        }
+        int toArchive = acknowledged - keepAcknowledged;
+        if (toArchive <= 0) {
+            return 0;
+        }
+
+        // The notifications are kept in the order they were added, so archive from the front
+        List<N> live = new ArrayList<>(notifications.size() - toArchive);
+        int archived = 0;
+        for (N notification : notifications) {
+            if (archived < toArchive && notification.isAcknowledged()) {
+                archive.addLast(notification);
+                archived++;
+            } else {
+                live.add(notification);
+            }
+        }
+        while (archive.size() > maxArchived) {
+            archive.removeFirst();
+        }
+        setNotifications(live);
+        return archived;
+    }
+
+    /**
+     * Returns the archived notifications, oldest first
+     * @return the archived notifications
+     */
+    public List<N> getArchivedNotifications() {
+        return new ArrayList<>(archive);
+    }
+
+    /**
+     * Invalidates the indexes after the notifications have changed
+     */
+    private void invalidateIndex() {
+        modificationCount++;
+        idIndex = null;
+        unacknowledgedRows = null;
+    }
+
+    /**
+     * Builds the indexes if the notifications have changed
+     */
+    private void buildIndex() {
+        if (idIndex != null) {
+            return;
+        }
+        Map<Object, Integer> ids = new HashMap<>(notifications.size() * 2);
+        LinkedList<Integer> unacknowledged = new LinkedList<>();
+        for (int row = 0; row < notifications.size(); row++) {
+            N notification = notifications.get(row);
+            // Keep the first row of a duplicate id, as a linear search would
+            if (notification.getId() != null && !ids.containsKey(notification.getId())) {
+                ids.put(notification.getId(), row);
+            }
+            if (!notification.isAcknowledged()) {
+                unacknowledged.add(row);
+            }
+        }
+        idIndex = ids;
+        unacknowledgedRows = unacknowledged;
     }
 }
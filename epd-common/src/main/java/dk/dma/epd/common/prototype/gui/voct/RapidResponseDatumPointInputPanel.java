@@ -813,6 +813,10 @@ public class RapidResponseDatumPointInputPanel extends JPanel implements ActionL
             topPanel.setBorder(new TitledBorder(null, "Datum Point Operation", TitledBorder.LEADING, TitledBorder.TOP, null, null));
         }
 
+        if (type == SAR_TYPE.MONTE_CARLO) {
+            topPanel.setBorder(new TitledBorder(null, "Monte Carlo Operation", TitledBorder.LEADING, TitledBorder.TOP, null, null));
+        }
+
     }
 
 }
@@ -70,6 +70,7 @@ public class SARInputCommon extends JDialog implements ActionListener,
     private String rapidresponseTxt = "Rapid Response - Rapid Response should be used when the rescue vessel is within the designated search area in a relatively short timespan (1-2 hours after LKP).";
     private String datumPointTxt = "Datum Pont - Datum point is a calculation method used when the rescue vessel arrives to the designated search area after 2 or more hours after LKP";
     private String datumLineTxt = "Datum line - Datum line is used when an object is mising and a LKP is unkown but a assumed route is known";
+    private String monteCarloTxt = "Monte Carlo - Monte Carlo simulates the drift of a large number of particles with uncertain current and wind, and allocates the search effort to the areas most likely to contain the object";
     // private String backtrackTxt =
     // "Back track - Back track is used when a object has been located that is connected to the missing vessel. By reversing the objects movements a possible search area can be established";
 
@@ -221,7 +222,7 @@ public class SARInputCommon extends JDialog implements ActionListener,
         panel.add(typeSelectionComboBox);
         typeSelectionComboBox.setModel(new DefaultComboBoxModel<String>(
                 new String[] { "Simple SAR", "Rapid Response", "Datum Point",
-                        "Datum Line", "Back Track" }));
+                        "Datum Line", "Back Track", "Monte Carlo" }));
 
         typeSelectionComboBox.addActionListener(this);
 
@@ -287,6 +288,7 @@ public class SARInputCommon extends JDialog implements ActionListener,
             // 2 Datum Point
             // 3 Datum Line
             // 4 Back track
+            // 5 Monte Carlo
 
             switch (selectedIndex) {
             case 0:
@@ -314,6 +316,11 @@ public class SARInputCommon extends JDialog implements ActionListener,
             // descriptiveText.setText(backtrackTxt);
             // nextButton.setEnabled(false);
             // break;
+            case 5:
+                descriptiveImage.setIcon(rapidResponseIcon);
+                descriptiveText.setText(monteCarloTxt);
+                nextButton.setEnabled(true);
+                break;
             }
 
         }
@@ -438,6 +445,10 @@ public class SARInputCommon extends JDialog implements ActionListener,
                     currentCard = INPUTSARRAPIDRESPONSEDATUM;
                 }
 
+                if (type == SAR_TYPE.MONTE_CARLO) {
+                    currentCard = INPUTSARRAPIDRESPONSEDATUM;
+                }
+
                 if (type == SAR_TYPE.DATUM_LINE) {
                     currentCard = INPUTPANELDATUMLINE;
                 }
@@ -503,6 +514,10 @@ public class SARInputCommon extends JDialog implements ActionListener,
                     currentCard = INPUTSARRAPIDRESPONSEDATUM;
                 }
 
+                if (type == SAR_TYPE.MONTE_CARLO) {
+                    currentCard = INPUTSARRAPIDRESPONSEDATUM;
+                }
+
                 if (type == SAR_TYPE.DATUM_LINE) {
                     currentCard = INPUTPANELDATUMLINE;
                 }
@@ -550,6 +565,7 @@ public class SARInputCommon extends JDialog implements ActionListener,
         // 2 Datum Point
         // 3 Datum Line
         // 4 Back track
+        // 5 Monte Carlo
 
         switch (selectedIndex) {
         case 0:
@@ -578,6 +594,11 @@ public class SARInputCommon extends JDialog implements ActionListener,
         // voctManager.setSarType(SAR_TYPE.BACKTRACK);
         // // currentCard = INPUTSARRAPIDRESPONSEDATUM;
         // break;
+        case 5:
+            voctManager.setSarType(SAR_TYPE.MONTE_CARLO);
+            rapidResponseDatumPointInputPanel.setSARType(SAR_TYPE.MONTE_CARLO);
+            currentCard = INPUTSARRAPIDRESPONSEDATUM;
+            break;
         }
     }
 
@@ -589,6 +610,8 @@ public class SARInputCommon extends JDialog implements ActionListener,
             return validateRapidResponse();
         case DATUM_POINT:
             return validateRapidResponse();
+        case MONTE_CARLO:
+            return validateRapidResponse();
         case DATUM_LINE:
             return validateDatumLine();
         case BACKTRACK:
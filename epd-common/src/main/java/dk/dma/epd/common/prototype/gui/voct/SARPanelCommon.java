@@ -597,7 +597,8 @@ public class SARPanelCommon extends JPanel implements ActionListener, ChangeList
         // searchPatternDialog.setVisible(false);
 
         // Activate the relevant panel
-        if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+        if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
             setRapidResponseData((RapidResponseData) data);
         }
 
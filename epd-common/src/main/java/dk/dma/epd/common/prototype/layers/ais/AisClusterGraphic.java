@@ -0,0 +1,65 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.awt.Color;
+import java.awt.Font;
+
+import com.bbn.openmap.omGraphics.OMCircle;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMText;
+
+import dk.dma.epd.common.graphics.GraphicsUtil;
+import dk.dma.epd.common.prototype.gui.constants.ColorConstants;
+
+/**
+ * Graphic of a cluster of AIS targets, displayed instead of the individual
+ * targets at small map scales. The size of the circle grows with the
+ * number of targets, and the number is displayed for clusters of more than
+ * one target.
+ */
+@SuppressWarnings("serial")
+public class AisClusterGraphic extends OMGraphicList {
+
+    private static final int MIN_PIXEL_DIAMETER = 8;
+    private static final int MAX_PIXEL_DIAMETER = 40;
+    private static final Color FILL_COLOR = GraphicsUtil.transparentColor(ColorConstants.VESSEL_COLOR, 128);
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.BOLD, 10);
+
+    /**
+     * Constructor
+     *
+     * @param cluster
+     *            the cluster to display
+     */
+    public AisClusterGraphic(TargetGraphicGrid.Cluster cluster) {
+        int count = cluster.getCount();
+        double log2 = Math.log(count) / Math.log(2);
+        int diameter = (int) Math.min(MAX_PIXEL_DIAMETER, MIN_PIXEL_DIAMETER + 4 * log2);
+
+        OMCircle circle = new OMCircle(cluster.getLatitude(), cluster.getLongitude(), diameter, diameter);
+        circle.setLinePaint(ColorConstants.VESSEL_COLOR);
+        circle.setFillPaint(FILL_COLOR);
+        add(circle);
+
+        if (count > 1) {
+            OMText label = new OMText(cluster.getLatitude(), cluster.getLongitude(), 0, 4, String.valueOf(count),
+                    FONT, OMText.JUSTIFY_CENTER);
+            label.setLinePaint(Color.WHITE);
+            add(label);
+        }
+        setVague(true);
+    }
+}
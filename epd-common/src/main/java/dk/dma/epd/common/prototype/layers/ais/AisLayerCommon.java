@@ -15,8 +15,12 @@
 package dk.dma.epd.common.prototype.layers.ais;
 
 import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -25,18 +29,22 @@ import org.slf4j.LoggerFactory;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
 
+import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.graphics.ISelectableGraphic;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
 import dk.dma.epd.common.prototype.ais.AisTarget;
 import dk.dma.epd.common.prototype.ais.AtoNTarget;
 import dk.dma.epd.common.prototype.ais.IAisTargetListener;
+import dk.dma.epd.common.prototype.ais.MobileTarget;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.layers.LazyLayerCommon;
 import dk.dma.epd.common.prototype.settings.AisSettings;
 import dk.dma.epd.common.prototype.settings.NavSettings;
+import dk.dma.epd.common.util.GridViewport;
 
 /**
  * @author Janus Varmarken
@@ -58,6 +66,37 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      */
     private Map<Long, TargetGraphic> targets = new ConcurrentHashMap<>();
 
+    /**
+     * Spatial grid of the target graphics, used for only projecting and
+     * rendering the graphics within the viewport.
+     */
+    private final TargetGraphicGrid targetGrid = new TargetGraphicGrid();
+
+    /**
+     * The projection used in the most recent call to {@link #prepare()}, or
+     * null if all visible graphics should be projected by the next call.
+     */
+    private volatile Projection preparedProjection;
+
+    /**
+     * Whether the map scale is at or above the cluster scale, in which case
+     * the targets are displayed as clusters, and the graphics of targets that
+     * are not pinned are only updated once they are displayed individually.
+     */
+    private volatile boolean clustering;
+
+    /**
+     * The scene model shared with the AIS layers of other map windows, or
+     * null if this layer listens to the AIS handler directly.
+     */
+    private volatile AisSceneModel sceneModel;
+
+    /**
+     * When using a scene model, maps an MMSI to the scene model item that the
+     * graphic of the target was last updated with.
+     */
+    private final Map<Long, AisSceneModel.Item> appliedItems = new ConcurrentHashMap<>();
+
     /**
      * The graphic that is currently selected by the user.
      */
@@ -96,7 +135,16 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         super.findAndInit(obj);
         if (obj instanceof AisHandlerCommon) {
             this.aisHandler = (AISHANDLER) obj;
-            this.aisHandler.addListener(this);
+            // Targets are pulled from the scene model instead, if present
+            if (this.sceneModel == null) {
+                this.aisHandler.addListener(this);
+            }
+        }
+        if (obj instanceof AisSceneModel) {
+            this.sceneModel = (AisSceneModel) obj;
+            if (this.aisHandler != null) {
+                this.aisHandler.removeListener(this);
+            }
         }
     }
 
@@ -164,6 +212,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         // keep reference to new selection
         this.selectedGraphic = newSelection;
         if (repaint) {
+            this.preparedProjection = null;
             this.doPrepare();
         }
     }
@@ -184,15 +233,15 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         }
         // Add the new graphic to the map of ais targets
         TargetGraphic oldVal = this.targets.put(mmsi, tg);
-        synchronized (this.graphics) {
-            if (oldVal != null) {
-                // remove the old graphical representation of this MMSI
+        if (oldVal != null) {
+            // remove the old graphical representation of this MMSI
+            synchronized (this.graphics) {
                 this.graphics.remove(oldVal);
             }
-            // add the new graphical representation of this MMSI to the list of
-            // graphics to be displayed.
-            this.graphics.add(tg);
         }
+        // The graphic is added to the list of graphics to be displayed by
+        // prepare(), once it is positioned within the viewport.
+        this.targetGrid.put(mmsi, tg, null, false);
     }
 
     /**
@@ -205,6 +254,8 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      */
     protected void removeTargetGraphic(Long mmsi) {
         TargetGraphic deleted = this.targets.remove(mmsi);
+        this.targetGrid.remove(mmsi);
+        this.appliedItems.remove(mmsi);
         if (deleted != null) {
             // Successfully removed a graphic object from map
             // This graphic object should also be present in the list of
@@ -221,6 +272,8 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      */
     public synchronized void clearAisTargetGraphics() {
         targets.clear();
+        targetGrid.clear();
+        appliedItems.clear();
         synchronized (graphics) {
             graphics.clear();
         }
@@ -252,8 +305,6 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         }
         long mmsi = aisTarget.getMmsi();
         TargetGraphic targetGraphic = this.getTargetGraphic(mmsi);
-        float mapScale = (this.getProjection() == null) ? 0 : this
-                .getProjection().getScale();
 
         if (aisTarget.isGone()) {
             if (targetGraphic != null) {
@@ -265,23 +316,103 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
 
         // Create and insert
         if (targetGraphic == null) {
-            if (aisTarget instanceof VesselTarget) {
-                targetGraphic = new VesselGraphicComponentSelector(this.aisSettings.isShowNameLabels());
-            } else if (aisTarget instanceof SarTarget) {
-                targetGraphic = new SarTargetGraphic();
-            } else if (aisTarget instanceof AtoNTarget) {
-                targetGraphic = new AtonTargetGraphic();
-            } else {
-                LOG.error("Unknown target type");
+            targetGraphic = this.createTargetGraphic(mmsi, aisTarget);
+            if (targetGraphic == null) {
                 return;
             }
-            // add to map of graphics + graphics list
-            this.addTargetGraphic(mmsi, targetGraphic);
         }
 
+        if (this.sceneModel != null) {
+            // Re-apply the scene model item by the next prepare()
+            this.appliedItems.remove(mmsi);
+        } else if (this.clustering && !isPinned(targetGraphic)) {
+            // While the targets are displayed as clusters, only the position is
+            // recorded, and the graphic is updated by prepare() once it is displayed.
+            this.targetGrid.putDeferred(mmsi, targetGraphic, getPosition(aisTarget), aisTarget);
+            return;
+        }
+        this.updateTargetGraphic(mmsi, targetGraphic, aisTarget);
+    }
+
+    /**
+     * Creates the graphic of the given AIS target and adds it to this layer
+     * 
+     * @param mmsi
+     *            the MMSI of the AIS target
+     * @param aisTarget
+     *            the AIS target
+     * @return the new graphic, or null if the target type is unknown
+     */
+    private TargetGraphic createTargetGraphic(long mmsi, AisTarget aisTarget) {
+        TargetGraphic targetGraphic;
+        if (aisTarget instanceof VesselTarget) {
+            targetGraphic = new VesselGraphicComponentSelector(this.aisSettings.isShowNameLabels());
+        } else if (aisTarget instanceof SarTarget) {
+            targetGraphic = new SarTargetGraphic();
+        } else if (aisTarget instanceof AtoNTarget) {
+            targetGraphic = new AtonTargetGraphic();
+        } else {
+            LOG.error("Unknown target type");
+            return null;
+        }
+        // add to map of graphics + graphics list
+        this.addTargetGraphic(mmsi, targetGraphic);
+        return targetGraphic;
+    }
+
+    /**
+     * Updates the graphic of an AIS target, and projects it if it is within
+     * the viewport. Otherwise, it is projected by prepare() once it enters the
+     * viewport.
+     * 
+     * @param mmsi
+     *            the MMSI of the AIS target
+     * @param targetGraphic
+     *            the graphic of the AIS target
+     * @param aisTarget
+     *            the AIS target
+     */
+    private void updateTargetGraphic(long mmsi, TargetGraphic targetGraphic, AisTarget aisTarget) {
+        Projection projection = this.getProjection();
+        float mapScale = (projection == null) ? 0 : projection.getScale();
+
         // Send the new location data to the graphic representing the AisTarget
         targetGraphic.update(aisTarget, this.aisSettings, this.navSettings, mapScale);
-        targetGraphic.project(getProjection());
+
+        if (this.targetGrid.put(mmsi, targetGraphic, getPosition(aisTarget), isPinned(targetGraphic))) {
+            targetGraphic.project(projection);
+        }
+    }
+
+    /**
+     * Returns the position of the given AIS target
+     * 
+     * @param aisTarget
+     *            the AIS target
+     * @return the position of the AIS target, or null if unknown
+     */
+    static Position getPosition(AisTarget aisTarget) {
+        if (aisTarget instanceof MobileTarget) {
+            MobileTarget mobileTarget = (MobileTarget) aisTarget;
+            return mobileTarget.getPositionData() == null ? null : mobileTarget.getPositionData().getPos();
+        } else if (aisTarget instanceof AtoNTarget) {
+            return ((AtoNTarget) aisTarget).getPos();
+        }
+        return null;
+    }
+
+    /**
+     * Returns if the graphic should be rendered even if the target is outside
+     * the viewport, i.e. if it displays a past track that may extend into the
+     * viewport.
+     * 
+     * @param targetGraphic
+     *            the target graphic
+     * @return if the graphic should always be rendered
+     */
+    private static boolean isPinned(TargetGraphic targetGraphic) {
+        return targetGraphic instanceof VesselGraphicComponentSelector
+                && ((VesselGraphicComponentSelector) targetGraphic).getPastTrackGraphic().size() > 0;
     }
     
     /**
@@ -306,6 +437,7 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
             }
         }
         // do a repaint
+        this.preparedProjection = null;
         this.doPrepare();
     }
 
@@ -314,8 +446,42 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      */
     @Override
     public synchronized OMGraphicList prepare() {
-        synchronized (graphics) {
-            graphics.project(getProjection());
+        Projection projection = getProjection();
+        if (projection != null) {
+            // Only the graphics within the viewport are displayed. Of these, only the
+            // graphics of targets updated while outside the viewport need to be
+            // projected, unless the projection has changed.
+            Point2D upperLeft = projection.getUpperLeft();
+            Point2D lowerRight = projection.getLowerRight();
+            if (projection.getScale() >= aisSettings.getClusterScale()) {
+                prepareClusters(projection, upperLeft, lowerRight);
+            } else {
+                clustering = false;
+                if (sceneModel != null) {
+                    pullSceneModel(upperLeft, lowerRight, true);
+                }
+                boolean projectAll = !projection.equals(preparedProjection);
+                List<TargetGraphic> toProject = new ArrayList<>();
+                List<AisTarget> toUpdate = new ArrayList<>();
+                List<TargetGraphic> visible = targetGrid.setViewport(lowerRight.getY(), upperLeft.getX(),
+                        upperLeft.getY(), lowerRight.getX(), projectAll, toProject, toUpdate);
+                // Apply the updates deferred while the targets were displayed as clusters
+                for (AisTarget aisTarget : toUpdate) {
+                    TargetGraphic targetGraphic = getTargetGraphic(aisTarget.getMmsi());
+                    if (targetGraphic != null) {
+                        targetGraphic.update(aisTarget, aisSettings, navSettings, projection.getScale());
+                    }
+                }
+                for (TargetGraphic targetGraphic : toProject) {
+                    targetGraphic.project(projection);
+                }
+                preparedProjection = projection;
+
+                synchronized (graphics) {
+                    graphics.clear();
+                    graphics.addAll(visible);
+                }
+            }
         }
         // Was a vessel selected?
         if(this.selectedGraphic instanceof VesselGraphic) {
@@ -335,6 +501,116 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
         return graphics;
     }
     
+    /**
+     * Displays the targets within the viewport as clusters, along with the
+     * pinned graphics. The cost only depends on the number of grid cells
+     * within the viewport, not the number of targets.
+     * 
+     * @param projection
+     *            the current projection
+     * @param upperLeft
+     *            the upper left corner of the viewport
+     * @param lowerRight
+     *            the lower right corner of the viewport
+     */
+    private void prepareClusters(Projection projection, Point2D upperLeft, Point2D lowerRight) {
+        clustering = true;
+        // Force projecting all graphics once the clusters are replaced
+        preparedProjection = null;
+
+        double degreesPerPixel = GridViewport.getLongitudeSpan(upperLeft.getX(), lowerRight.getX())
+                / Math.max(1, projection.getWidth());
+        double clusterSize = aisSettings.getClusterCellSize() * degreesPerPixel;
+        AisSceneModel scene = sceneModel;
+        List<TargetGraphicGrid.Cluster> clusters;
+        if (scene != null) {
+            // Only keep the pinned graphics up to date
+            pullSceneModel(upperLeft, lowerRight, false);
+            clusters = scene.getClusters(lowerRight.getY(), upperLeft.getX(), upperLeft.getY(), lowerRight.getX(),
+                    clusterSize);
+        } else {
+            clusters = targetGrid.getClusters(lowerRight.getY(), upperLeft.getX(), upperLeft.getY(),
+                    lowerRight.getX(), clusterSize);
+        }
+
+        List<OMGraphic> visible = new ArrayList<>(clusters.size());
+        for (TargetGraphicGrid.Cluster cluster : clusters) {
+            AisClusterGraphic clusterGraphic = new AisClusterGraphic(cluster);
+            clusterGraphic.project(projection);
+            visible.add(clusterGraphic);
+        }
+        for (TargetGraphic targetGraphic : targetGrid.getPinned()) {
+            targetGraphic.project(projection);
+            visible.add(targetGraphic);
+        }
+
+        synchronized (graphics) {
+            graphics.clear();
+            graphics.addAll(visible);
+        }
+    }
+
+    /**
+     * Updates the graphics of this layer from the scene model. The graphics
+     * of targets within the viewport are created or updated if the targets
+     * have changed since the last pull. The graphics of targets that have
+     * left the viewport are discarded, unless they are pinned or selected.
+     * Targets without a position are always displayed, as pinned graphics.
+     * 
+     * @param upperLeft
+     *            the upper left corner of the viewport
+     * @param lowerRight
+     *            the lower right corner of the viewport
+     * @param individual
+     *            whether the targets within the viewport are displayed
+     *            individually, or only the pinned and selected targets
+     */
+    private void pullSceneModel(Point2D upperLeft, Point2D lowerRight, boolean individual) {
+        AisSceneModel scene = sceneModel;
+        List<AisSceneModel.Item> items = individual ? scene.getItems(lowerRight.getY(), upperLeft.getX(),
+                upperLeft.getY(), lowerRight.getX()) : new ArrayList<AisSceneModel.Item>();
+        Map<Long, AisSceneModel.Item> inView = new HashMap<>(items.size());
+        for (AisSceneModel.Item item : items) {
+            inView.put(item.getAisTarget().getMmsi(), item);
+        }
+        for (AisSceneModel.Item item : scene.getItemsWithoutPosition()) {
+            inView.put(item.getAisTarget().getMmsi(), item);
+        }
+
+        long selectedMmsi = -1;
+        if (selectedGraphic instanceof VesselGraphic
+                && ((VesselGraphic) selectedGraphic).getMostRecentVesselTarget() != null) {
+            selectedMmsi = ((VesselGraphic) selectedGraphic).getMostRecentVesselTarget().getMmsi();
+        }
+        for (Long mmsi : new ArrayList<>(targets.keySet())) {
+            if (!inView.containsKey(mmsi)) {
+                AisSceneModel.Item item = scene.get(mmsi);
+                if (item == null || (mmsi != selectedMmsi && !isPinned(targets.get(mmsi)))) {
+                    removeTargetGraphic(mmsi);
+                } else {
+                    inView.put(mmsi, item);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, AisSceneModel.Item> entry : inView.entrySet()) {
+            long mmsi = entry.getKey();
+            AisSceneModel.Item item = entry.getValue();
+            if (appliedItems.get(mmsi) == item) {
+                continue;
+            }
+            TargetGraphic targetGraphic = getTargetGraphic(mmsi);
+            if (targetGraphic == null) {
+                targetGraphic = createTargetGraphic(mmsi, item.getAisTarget());
+                if (targetGraphic == null) {
+                    continue;
+                }
+            }
+            updateTargetGraphic(mmsi, targetGraphic, item.getAisTarget());
+            appliedItems.put(mmsi, item);
+        }
+    }
+
     /**
      * Updates target selection if the {@code clickedGraphics} is an {@code ISelectableGraphic} or null.
      */
@@ -385,14 +661,14 @@ public abstract class AisLayerCommon<AISHANDLER extends AisHandlerCommon>
      * labels.
      */
     public void setShowNameLabels(boolean showLabels) {
-        synchronized(this.graphics) {
-            for(OMGraphic og : this.graphics) {
-                if(og instanceof VesselGraphicComponentSelector) {
-                    ((VesselGraphicComponentSelector)og).setShowNameLabel(showLabels);
-                }
+        // Includes the graphics outside the viewport
+        for(TargetGraphic tg : this.targets.values()) {
+            if(tg instanceof VesselGraphicComponentSelector) {
+                ((VesselGraphicComponentSelector)tg).setShowNameLabel(showLabels);
             }
         }
         // repaint
+        this.preparedProjection = null;
         this.doPrepare();
     }
 
@@ -0,0 +1,237 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.IAisTargetBatchListener;
+
+/**
+ * Scene model of the AIS targets shared by the AIS layers of several map windows.
+ * <p>
+ * The model is registered once with the AIS handler, and maintains the latest state of
+ * each target in a spatial grid. Each AIS layer using the model pulls the targets within
+ * its viewport when it is prepared, and only updates the graphics of targets that have
+ * changed since. Thus, the work done per AIS update does not grow with the number of map
+ * windows, and each window only holds graphics for the targets it displays.
+ * <p>
+ * Every update of a target replaces its {@linkplain Item}, so layers can detect changed
+ * targets by comparing the items by identity. Targets without a position are kept apart
+ * from the grid, and are displayed by every layer.
+ */
+@ThreadSafe
+public class AisSceneModel implements IAisTargetBatchListener {
+
+    @GuardedBy("this")
+    private final Map<Long, Item> items = new HashMap<>();
+    @GuardedBy("this")
+    private final PositionGrid<Cell> cells;
+    @GuardedBy("this")
+    private final Map<Long, Item> withoutPosition = new LinkedHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     */
+    public AisSceneModel(double cellSize) {
+        cells = new PositionGrid<>(cellSize);
+    }
+
+    /**
+     * Constructor using the default cell size of the target graphic grid
+     */
+    public AisSceneModel() {
+        this(TargetGraphicGrid.DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void targetsUpdated(Collection<AisTarget> aisTargets) {
+        for (AisTarget aisTarget : aisTargets) {
+            if (aisTarget != null) {
+                update(aisTarget);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void update(AisTarget aisTarget) {
+        long mmsi = aisTarget.getMmsi();
+        Item old = items.remove(mmsi);
+        if (old != null && old.pos == null) {
+            withoutPosition.remove(mmsi);
+        } else if (old != null) {
+            long key = cells.cellKey(old.pos);
+            Cell cell = cells.get(key);
+            cell.items.remove(mmsi);
+            cell.subtract(old.pos);
+            if (cell.items.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+        if (aisTarget.isGone()) {
+            return;
+        }
+
+        Item item = new Item(aisTarget, AisLayerCommon.getPosition(aisTarget));
+        items.put(mmsi, item);
+        if (item.pos != null) {
+            long key = cells.cellKey(item.pos);
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            cell.items.put(mmsi, item);
+            cell.add(item.pos);
+        } else {
+            withoutPosition.put(mmsi, item);
+        }
+    }
+
+    /**
+     * Returns the current item of the target with the given MMSI
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @return the item of the target, or null if the target is unknown or gone
+     */
+    public synchronized Item get(long mmsi) {
+        return items.get(mmsi);
+    }
+
+    /**
+     * Returns the items of the targets within the viewport, expanded by a margin of one grid cell
+     *
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @return the items within the viewport
+     */
+    public synchronized List<Item> getItems(double minLat, double minLon, double maxLat, double maxLon) {
+        List<Item> result = new ArrayList<>();
+        for (Cell cell : cells.getCells(cells.getViewport(minLat, minLon, maxLat, maxLon))) {
+            result.addAll(cell.items.values());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the items of the targets without a position, which are displayed regardless of the viewport
+     *
+     * @return the items without a position
+     */
+    public synchronized List<Item> getItemsWithoutPosition() {
+        return new ArrayList<>(withoutPosition.values());
+    }
+
+    /**
+     * Returns the targets within the viewport, expanded by a margin of one grid cell,
+     * aggregated into clusters aligned to a grid with the given cluster size
+     *
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @param clusterSize
+     *            the size of the clusters in degrees. Clusters are never smaller than the grid cells
+     * @return the clusters
+     * @see TargetGraphicGrid#getClusters(double, double, double, double, double)
+     */
+    public synchronized List<TargetGraphicGrid.Cluster> getClusters(double minLat, double minLon, double maxLat,
+            double maxLon, double clusterSize) {
+        return cells.getClusters(cells.getCells(cells.getViewport(minLat, minLon, maxLat, maxLon)), clusterSize);
+    }
+
+    /**
+     * Returns the number of targets in the model
+     *
+     * @return the number of targets
+     */
+    public synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * Removes all targets from the model
+     */
+    public synchronized void clear() {
+        items.clear();
+        cells.clear();
+        withoutPosition.clear();
+    }
+
+    /**
+     * The state of a target at the time of its latest update
+     */
+    @Immutable
+    public static final class Item {
+        private final AisTarget aisTarget;
+        private final Position pos;
+
+        Item(AisTarget aisTarget, Position pos) {
+            this.aisTarget = aisTarget;
+            this.pos = pos;
+        }
+
+        /**
+         * Returns the target
+         *
+         * @return the target
+         */
+        public AisTarget getAisTarget() {
+            return aisTarget;
+        }
+
+        /**
+         * Returns the position of the target at the time of the update
+         *
+         * @return the position, or null if unknown
+         */
+        public Position getPosition() {
+            return pos;
+        }
+    }
+
+    /**
+     * The items of a grid cell
+     */
+    private static final class Cell extends PositionGrid.Cell {
+        final Map<Long, Item> items = new LinkedHashMap<>();
+    }
+}
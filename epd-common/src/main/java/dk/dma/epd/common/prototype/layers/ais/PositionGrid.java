@@ -0,0 +1,178 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.util.GridViewport;
+
+/**
+ * Grid of the cells holding AIS targets, shared by the {@linkplain TargetGraphicGrid} and the
+ * {@linkplain AisSceneModel}.
+ * <p>
+ * Each cell keeps the number of targets and the sum of their positions, so that the targets
+ * within a viewport can be aggregated into clusters in time proportional to the number of
+ * non-empty cells rather than the number of targets.
+ *
+ * @param <C>
+ *            the type of the cells
+ */
+@NotThreadSafe
+class PositionGrid<C extends PositionGrid.Cell> {
+
+    private final double cellSize;
+    private final Map<Long, C> cells = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     */
+    PositionGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Returns the key of the cell containing the position
+     */
+    long cellKey(Position pos) {
+        return cellKey(GridViewport.cell(pos.getLongitude(), cellSize), GridViewport.cell(pos.getLatitude(), cellSize));
+    }
+
+    static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    C get(long key) {
+        return cells.get(key);
+    }
+
+    void put(long key, C cell) {
+        cells.put(key, cell);
+    }
+
+    void remove(long key) {
+        cells.remove(key);
+    }
+
+    void clear() {
+        cells.clear();
+    }
+
+    /**
+     * Returns the viewport, expanded by a margin of one grid cell
+     */
+    GridViewport getViewport(double minLat, double minLon, double maxLat, double maxLon) {
+        return GridViewport.create(cellSize, 1, minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * Returns if the cell with the given key is within the viewport
+     */
+    static boolean contains(GridViewport viewport, long key) {
+        return viewport.contains((int) (key >> 32), (int) key);
+    }
+
+    /**
+     * Returns the non-empty cells within the viewport
+     */
+    List<C> getCells(GridViewport viewport) {
+        List<C> result = new ArrayList<>();
+        if (viewport.getCellCount() > cells.size()) {
+            // Cheaper to check all non-empty cells
+            for (Map.Entry<Long, C> cell : cells.entrySet()) {
+                if (contains(viewport, cell.getKey())) {
+                    result.add(cell.getValue());
+                }
+            }
+        } else {
+            for (int range = 0; range < viewport.getRangeCount(); range++) {
+                for (int x = viewport.getMinX(range); x <= viewport.getMaxX(range); x++) {
+                    for (int y = viewport.getMinY(); y <= viewport.getMaxY(); y++) {
+                        C cell = cells.get(cellKey(x, y));
+                        if (cell != null) {
+                            result.add(cell);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates the targets of the cells into clusters aligned to a grid with the given cluster
+     * size. The position of each cluster is the mean position of its targets
+     *
+     * @param cells
+     *            the cells
+     * @param clusterSize
+     *            the size of the clusters in degrees. Clusters are never smaller than the grid cells
+     * @return the clusters
+     */
+    List<TargetGraphicGrid.Cluster> getClusters(List<C> cells, double clusterSize) {
+        double size = Math.max(clusterSize, cellSize);
+        Map<Long, double[]> sums = new HashMap<>();
+        for (Cell cell : cells) {
+            if (cell.count == 0) {
+                continue;
+            }
+            // Assign the grid cell to a cluster by its mean position
+            double lat = cell.sumLat / cell.count;
+            double lon = cell.sumLon / cell.count;
+            long key = cellKey(GridViewport.cell(lon, size), GridViewport.cell(lat, size));
+            double[] sum = sums.get(key);
+            if (sum == null) {
+                sum = new double[3];
+                sums.put(key, sum);
+            }
+            sum[0] += cell.count;
+            sum[1] += cell.sumLat;
+            sum[2] += cell.sumLon;
+        }
+        List<TargetGraphicGrid.Cluster> clusters = new ArrayList<>(sums.size());
+        for (double[] sum : sums.values()) {
+            clusters.add(new TargetGraphicGrid.Cluster((int) sum[0], sum[1] / sum[0], sum[2] / sum[0]));
+        }
+        return clusters;
+    }
+
+    /**
+     * A grid cell, along with the number and sum of positions of its targets
+     */
+    static class Cell {
+        int count;
+        double sumLat;
+        double sumLon;
+
+        void add(Position pos) {
+            count++;
+            sumLat += pos.getLatitude();
+            sumLon += pos.getLongitude();
+        }
+
+        void subtract(Position pos) {
+            count--;
+            sumLat -= pos.getLatitude();
+            sumLon -= pos.getLongitude();
+        }
+    }
+}
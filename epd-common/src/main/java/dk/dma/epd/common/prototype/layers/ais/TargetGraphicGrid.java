@@ -0,0 +1,373 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.util.GridViewport;
+
+/**
+ * Spatial grid of the graphics of an AIS layer, keyed by the position of their targets.
+ * <p>
+ * The layer sets the viewport of the map, expanded by a margin, and only the graphics in
+ * the grid cells overlapping the viewport are projected and rendered. When a target outside
+ * the viewport is updated, its cell is only marked dirty, and the graphics of dirty cells are
+ * projected once the cells enter the viewport.
+ * <p>
+ * Each cell also keeps the number of targets and the sum of their positions, so that at small
+ * map scales, the targets can be aggregated into clusters in time proportional to the number
+ * of non-empty cells rather than the number of targets. At these scales, the layer may defer
+ * updating the graphics, and the grid hands the deferred updates back once the graphics
+ * become visible.
+ * <p>
+ * Graphics without a position, and pinned graphics, e.g. of targets displaying their past
+ * track, are always considered visible. A viewport crossing the antimeridian is split in two,
+ * see {@linkplain GridViewport}.
+ */
+@ThreadSafe
+public class TargetGraphicGrid {
+
+    public static final double DEFAULT_CELL_SIZE = 0.25; // Degrees
+
+    @GuardedBy("this")
+    private final PositionGrid<Cell> cells;
+    @GuardedBy("this")
+    private final Map<Long, Entry> entries = new HashMap<>();
+    @GuardedBy("this")
+    private final Map<Long, Entry> pinned = new LinkedHashMap<>();
+
+    // The viewport in grid cells, including the margin, or null if not set
+    @GuardedBy("this")
+    private GridViewport viewport;
+
+    /**
+     * Constructor
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     */
+    public TargetGraphicGrid(double cellSize) {
+        cells = new PositionGrid<>(cellSize);
+    }
+
+    /**
+     * Constructor using the default cell size
+     */
+    public TargetGraphicGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Adds or moves the graphic of a target. If the graphic ends up outside the viewport,
+     * its cell is marked dirty.
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @param graphic
+     *            the graphic of the target
+     * @param pos
+     *            the position of the target, or null if unknown
+     * @param pinnedGraphic
+     *            whether to always consider the graphic visible
+     * @return if the graphic is visible, and should be projected
+     */
+    public synchronized boolean put(long mmsi, TargetGraphic graphic, Position pos, boolean pinnedGraphic) {
+        return put(mmsi, graphic, pos, pinnedGraphic, null);
+    }
+
+    /**
+     * Adds or moves the graphic of a target, whose graphic has not been updated with the
+     * given target. The target is handed back by {@linkplain #setViewport} once the graphic
+     * is visible. Pinned graphics should always be updated directly.
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     * @param graphic
+     *            the graphic of the target
+     * @param pos
+     *            the position of the target, or null if unknown
+     * @param aisTarget
+     *            the target to update the graphic with
+     */
+    public synchronized void putDeferred(long mmsi, TargetGraphic graphic, Position pos, AisTarget aisTarget) {
+        put(mmsi, graphic, pos, false, aisTarget);
+    }
+
+    @GuardedBy("this")
+    private boolean put(long mmsi, TargetGraphic graphic, Position pos, boolean pinnedGraphic, AisTarget deferred) {
+        Entry entry = entries.get(mmsi);
+        long key = pos == null ? 0L : cells.cellKey(pos);
+        boolean hasCell = pos != null && !pinnedGraphic;
+
+        if (entry != null && (entry.graphic != graphic || entry.hasCell != hasCell || entry.key != key)) {
+            removeEntry(mmsi, entry);
+            entry = null;
+        }
+        Cell cell = hasCell ? cells.get(key) : null;
+        if (entry == null) {
+            entry = new Entry(graphic, hasCell, key);
+            entries.put(mmsi, entry);
+            if (hasCell) {
+                if (cell == null) {
+                    cell = new Cell();
+                    cells.put(key, cell);
+                }
+                cell.entries.put(mmsi, entry);
+            } else {
+                pinned.put(mmsi, entry);
+            }
+        } else if (cell != null) {
+            cell.subtract(entry.pos);
+        }
+        entry.pos = pos;
+        entry.deferred = deferred;
+        if (cell != null) {
+            cell.add(pos);
+        }
+
+        if (!hasCell || isInViewport(key)) {
+            return true;
+        }
+        cell.dirty = true;
+        return false;
+    }
+
+    /**
+     * Removes the graphic of a target
+     *
+     * @param mmsi
+     *            the MMSI of the target
+     */
+    public synchronized void remove(long mmsi) {
+        Entry entry = entries.get(mmsi);
+        if (entry != null) {
+            removeEntry(mmsi, entry);
+        }
+    }
+
+    /**
+     * Removes all graphics
+     */
+    public synchronized void clear() {
+        cells.clear();
+        entries.clear();
+        pinned.clear();
+    }
+
+    /**
+     * Returns the number of graphics in the grid
+     *
+     * @return the number of graphics
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the viewport, expanded by a margin of one grid cell, and returns the visible graphics.
+     * <p>
+     * The graphics of the visible cells that are dirty, or of all visible cells if
+     * {@code projectAll} is set, are also added to {@code toProject}, and the cells are marked clean.
+     * The targets of visible graphics whose update was deferred are added to {@code toUpdate}.
+     *
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @param projectAll
+     *            whether all visible graphics should be projected, e.g. because the projection changed
+     * @param toProject
+     *            the list to add the graphics that should be projected to
+     * @param toUpdate
+     *            the list to add the targets whose graphics should be updated to
+     * @return the visible graphics
+     */
+    public synchronized List<TargetGraphic> setViewport(double minLat, double minLon, double maxLat, double maxLon,
+            boolean projectAll, List<TargetGraphic> toProject, List<AisTarget> toUpdate) {
+        List<TargetGraphic> visible = new ArrayList<>();
+        for (Cell cell : setViewport(minLat, minLon, maxLat, maxLon)) {
+            for (Entry entry : cell.entries.values()) {
+                visible.add(entry.graphic);
+                if (projectAll || cell.dirty) {
+                    toProject.add(entry.graphic);
+                }
+                if (entry.deferred != null) {
+                    toUpdate.add(entry.deferred);
+                    entry.deferred = null;
+                }
+            }
+            cell.dirty = false;
+        }
+        for (Entry entry : pinned.values()) {
+            visible.add(entry.graphic);
+            toProject.add(entry.graphic);
+            if (entry.deferred != null) {
+                toUpdate.add(entry.deferred);
+                entry.deferred = null;
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Sets the viewport, expanded by a margin of one grid cell, and returns the targets in the
+     * viewport aggregated into clusters.
+     * <p>
+     * The clusters are aligned to a grid with the given cluster size, and the position of each cluster
+     * is the mean position of its targets. The pinned graphics, and graphics without a position, are
+     * not part of the clusters, and should be displayed individually.
+     *
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @param clusterSize
+     *            the size of the clusters in degrees. Clusters are never smaller than the grid cells
+     * @return the clusters
+     */
+    public synchronized List<Cluster> getClusters(double minLat, double minLon, double maxLat, double maxLon,
+            double clusterSize) {
+        return cells.getClusters(setViewport(minLat, minLon, maxLat, maxLon), clusterSize);
+    }
+
+    /**
+     * Returns the pinned graphics, and graphics without a position, which are always visible
+     *
+     * @return the pinned graphics
+     */
+    public synchronized List<TargetGraphic> getPinned() {
+        List<TargetGraphic> result = new ArrayList<>(pinned.size());
+        for (Entry entry : pinned.values()) {
+            result.add(entry.graphic);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the viewport and returns the non-empty cells within it
+     */
+    @GuardedBy("this")
+    private List<Cell> setViewport(double minLat, double minLon, double maxLat, double maxLon) {
+        viewport = cells.getViewport(minLat, minLon, maxLat, maxLon);
+        return cells.getCells(viewport);
+    }
+
+    @GuardedBy("this")
+    private void removeEntry(long mmsi, Entry entry) {
+        entries.remove(mmsi);
+        if (entry.hasCell) {
+            Cell cell = cells.get(entry.key);
+            if (cell != null) {
+                cell.entries.remove(mmsi);
+                cell.subtract(entry.pos);
+                if (cell.entries.isEmpty()) {
+                    cells.remove(entry.key);
+                }
+            }
+        } else {
+            pinned.remove(mmsi);
+        }
+    }
+
+    @GuardedBy("this")
+    private boolean isInViewport(long key) {
+        return viewport == null || PositionGrid.contains(viewport, key);
+    }
+
+    /**
+     * A cluster of targets
+     */
+    @Immutable
+    public static final class Cluster {
+        private final int count;
+        private final double lat;
+        private final double lon;
+
+        Cluster(int count, double lat, double lon) {
+            this.count = count;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        /**
+         * Returns the number of targets in the cluster
+         *
+         * @return the number of targets
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean latitude of the targets in the cluster
+         *
+         * @return the mean latitude
+         */
+        public double getLatitude() {
+            return lat;
+        }
+
+        /**
+         * Returns the mean longitude of the targets in the cluster
+         *
+         * @return the mean longitude
+         */
+        public double getLongitude() {
+            return lon;
+        }
+    }
+
+    /**
+     * The graphics of a grid cell
+     */
+    private static final class Cell extends PositionGrid.Cell {
+        final Map<Long, Entry> entries = new LinkedHashMap<>();
+        boolean dirty = true;
+    }
+
+    /**
+     * The graphic of a target, along with its cell
+     */
+    private static final class Entry {
+        final TargetGraphic graphic;
+        final boolean hasCell;
+        final long key;
+        Position pos;
+        AisTarget deferred;
+
+        Entry(TargetGraphic graphic, boolean hasCell, long key) {
+            this.graphic = graphic;
+            this.hasCell = hasCell;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.layer.shape.MultiShapeLayer;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.prototype.EPD;
+
+/**
+ * Background layer displaying the coastline from a pre-tiled coastline file.
+ * <p>
+ * The layer is configured like a {@linkplain MultiShapeLayer}, and the tile file is generated
+ * from the configured shapefiles by the {@linkplain CoastlineTiler} in the background when it
+ * is missing or older than the shapefiles. Until then, the shapefiles are displayed directly.
+ * <p>
+ * The tile file is shared by all layers using it, e.g. in the map windows of EPD Shore.
+ */
+@SuppressWarnings("serial")
+public class CoastalOutlineLayerCommon extends MultiShapeLayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoastalOutlineLayerCommon.class);
+
+    public static final String TILE_FILE_PROPERTY = "tileFile";
+    public static final String DEFAULT_TILE_FILE = "shape/GSHHS_shp/coastline.tiles";
+
+    @GuardedBy("STORES")
+    private static final Map<Path, CoastlineTileStore> STORES = new HashMap<>();
+    @GuardedBy("STORES")
+    private static final Set<Path> GENERATING = new HashSet<>();
+
+    private volatile Path tileFile;
+    private volatile CoastlineTileStore tileStore;
+    private final Map<String, Color> fillColors = new HashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        String scope = prefix == null || prefix.isEmpty() ? "" : prefix + ".";
+
+        // The shapefiles are listed top first, and tiled bottom first
+        List<String> names = new ArrayList<>();
+        Map<String, Path> shapeFiles = new HashMap<>();
+        for (String name : props.getProperty(scope + "shapeFileList", "").trim().split("\\s+")) {
+            String shapeFile = props.getProperty(scope + name + ".shapeFile");
+            if (shapeFile != null) {
+                names.add(0, name);
+                shapeFiles.put(name, resolve(shapeFile));
+                fillColors.put(name, parseColor(props.getProperty(scope + name + ".fillColor")));
+            }
+        }
+        if (!names.isEmpty()) {
+            loadTileStore(resolve(props.getProperty(scope + TILE_FILE_PROPERTY, DEFAULT_TILE_FILE)), names, shapeFiles);
+        }
+    }
+
+    /**
+     * Opens the tile file if it is up to date, and otherwise generates it in the background
+     */
+    private void loadTileStore(final Path tileFile, final List<String> names, final Map<String, Path> shapeFiles) {
+        this.tileFile = tileFile;
+        synchronized (STORES) {
+            tileStore = STORES.get(tileFile);
+            if (tileStore != null || GENERATING.contains(tileFile)) {
+                // Picked up by the next prepare()
+                return;
+            }
+            if (isUpToDate(tileFile, shapeFiles.values())) {
+                try {
+                    tileStore = new CoastlineTileStore(tileFile);
+                    STORES.put(tileFile, tileStore);
+                    return;
+                } catch (IOException e) {
+                    LOG.warn("Failed to open coastline tile file, regenerating: " + e.getMessage());
+                }
+            }
+            GENERATING.add(tileFile);
+        }
+
+        EPD.startThread(new Runnable() {
+            @Override
+            public void run() {
+                long t0 = System.currentTimeMillis();
+                CoastlineTileStore store = null;
+                try {
+                    CoastlineTiler tiler = new CoastlineTiler();
+                    for (String name : names) {
+                        tiler.addShapeFile(name, shapeFiles.get(name));
+                    }
+                    tiler.write(tileFile.toFile());
+                    store = new CoastlineTileStore(tileFile);
+                    LOG.info("Generated coastline tile file in " + (System.currentTimeMillis() - t0) + " ms");
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Failed to generate coastline tile file: " + e.getMessage(), e);
+                }
+                synchronized (STORES) {
+                    GENERATING.remove(tileFile);
+                    if (store != null) {
+                        STORES.put(tileFile, store);
+                    }
+                }
+                doPrepare();
+            }
+        }, "CoastlineTiler");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized OMGraphicList prepare() {
+        if (!isVisible()) {
+            return null;
+        }
+        Projection projection = getProjection();
+        CoastlineTileStore store = getTileStore();
+        if (store == null || projection == null) {
+            return super.prepare();
+        }
+
+        long t0 = System.nanoTime();
+        Point2D upperLeft = projection.getUpperLeft();
+        Point2D lowerRight = projection.getLowerRight();
+        double minLat = lowerRight.getY();
+        double minLon = upperLeft.getX();
+        double maxLat = upperLeft.getY();
+        double maxLon = lowerRight.getX();
+        int band = store.getBand(projection.getScale(), minLat, minLon, maxLat, maxLon);
+        String[] layers = store.getLayers();
+
+        OMGraphicList list = new OMGraphicList();
+        list.setTraverseMode(OMGraphicList.LAST_ADDED_ON_TOP);
+        for (CoastlineTileStore.Polygon polygon : store.getPolygons(band, minLat, minLon, maxLat, maxLon)) {
+            Color color = fillColors.get(layers[polygon.getLayer()]);
+            OMPoly poly = new OMPoly(polygon.getLatLons(), OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+            poly.setFillPaint(color);
+            // Outlining the polygons would show the tile borders
+            poly.setLinePaint(color);
+            list.add(poly);
+        }
+        list.generate(projection);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Prepared coastline band " + band + " with " + list.size() + " polygons in "
+                    + (System.nanoTime() - t0) / 1000000 + " ms");
+        }
+        return list;
+    }
+
+    /**
+     * Returns the tile store, or null while it is being generated
+     */
+    private CoastlineTileStore getTileStore() {
+        CoastlineTileStore store = tileStore;
+        if (store == null && tileFile != null) {
+            // Generated by this or another layer in the meantime
+            synchronized (STORES) {
+                store = STORES.get(tileFile);
+            }
+            tileStore = store;
+        }
+        return store;
+    }
+
+    private static boolean isUpToDate(Path tileFile, Iterable<Path> shapeFiles) {
+        File file = tileFile.toFile();
+        if (!file.isFile()) {
+            return false;
+        }
+        for (Path shapeFile : shapeFiles) {
+            if (!Files.exists(shapeFile) || shapeFile.toFile().lastModified() > file.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Path resolve(String path) {
+        Path result = new File(path).toPath();
+        return result.isAbsolute() ? result : EPD.getInstance().getHomePath().resolve(path);
+    }
+
+    private static Color parseColor(String hex) {
+        if (hex == null) {
+            return Color.GRAY;
+        }
+        try {
+            long value = Long.parseLong(hex.trim(), 16);
+            return new Color((int) value, hex.trim().length() > 6);
+        } catch (NumberFormatException e) {
+            return Color.GRAY;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import dk.dma.epd.common.util.GridViewport;
+
+/**
+ * Runtime store of a coastline tile file generated by the {@linkplain CoastlineTiler}.
+ * <p>
+ * The file is memory-mapped, and only the tile index is read up front. Tiles are decoded on
+ * demand for the viewport and zoom band being displayed, and kept in a bounded LRU cache,
+ * so the memory used does not depend on the size of the coastline data.
+ */
+@ThreadSafe
+public class CoastlineTileStore implements Closeable {
+
+    public static final int DEFAULT_CACHE_SIZE = 256; // Tiles
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String[] layers;
+    private final Band[] bands;
+    private final int dataStart;
+    private final int cacheSize;
+
+    @GuardedBy("this")
+    private final Map<Long, List<Polygon>> cache;
+
+    /**
+     * Opens the tile file
+     *
+     * @param file
+     *            the tile file
+     * @param cacheSize
+     *            the maximum number of decoded tiles to keep in memory
+     * @throws IOException
+     *             if the file cannot be read, or is not a valid tile file
+     */
+    public CoastlineTileStore(Path file, int cacheSize) throws IOException {
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<Long, List<Polygon>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Polygon>> eldest) {
+                return size() > CoastlineTileStore.this.cacheSize;
+            }
+        };
+
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != CoastlineTiler.MAGIC || buffer.getInt() != CoastlineTiler.VERSION) {
+                throw new IOException("Not a coastline tile file: " + file);
+            }
+            layers = new String[buffer.getInt()];
+            for (int i = 0; i < layers.length; i++) {
+                layers[i] = readUTF(buffer);
+            }
+            bands = new Band[buffer.getInt()];
+            for (int b = 0; b < bands.length; b++) {
+                float minScale = buffer.getFloat();
+                buffer.getDouble(); // Tolerance
+                bands[b] = new Band(minScale, buffer.getDouble(), buffer.getInt());
+                for (int i = 0; i < bands[b].offsets.length; i++) {
+                    bands[b].index.put(buffer.getLong(), i);
+                    bands[b].offsets[i] = buffer.getInt();
+                    buffer.getInt(); // Length
+                }
+            }
+            dataStart = buffer.position();
+        } catch (RuntimeException e) {
+            channel.close();
+            throw new IOException("Invalid coastline tile file: " + file, e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the tile file with the default cache size
+     *
+     * @param file
+     *            the tile file
+     * @throws IOException
+     *             if the file cannot be read, or is not a valid tile file
+     */
+    public CoastlineTileStore(Path file) throws IOException {
+        this(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Returns the names of the layers, in drawing order, bottom first
+     *
+     * @return the names of the layers
+     */
+    public String[] getLayers() {
+        return layers.clone();
+    }
+
+    /**
+     * Returns the zoom band to use for the given map scale and viewport. If the viewport of a
+     * large window covers more tiles of the band than half the cache size, a coarser band is used
+     *
+     * @param scale
+     *            the map scale
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @return the index of the zoom band
+     */
+    public int getBand(float scale, double minLat, double minLon, double maxLat, double maxLon) {
+        int band = bands.length - 1;
+        for (int b = 0; b < bands.length; b++) {
+            if (scale >= bands[b].minScale) {
+                band = b;
+                break;
+            }
+        }
+        while (band > 0) {
+            long tiles = GridViewport.create(bands[band].tileSize, 0, minLat, minLon, maxLat, maxLon).getCellCount();
+            if (tiles <= cacheSize / 2) {
+                break;
+            }
+            band--;
+        }
+        return band;
+    }
+
+    /**
+     * Returns the polygons of the tiles of the given zoom band overlapping the viewport.
+     * Polygons are clipped to their tiles, and ordered by layer within each tile
+     *
+     * @param band
+     *            the index of the zoom band
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the minimum longitude of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the maximum longitude of the viewport
+     * @return the polygons
+     */
+    public List<Polygon> getPolygons(int band, double minLat, double minLon, double maxLat, double maxLon) {
+        Band b = bands[band];
+        GridViewport viewport = GridViewport.create(b.tileSize, 0, minLat, minLon, maxLat, maxLon);
+
+        List<Polygon> result = new ArrayList<>();
+        for (int range = 0; range < viewport.getRangeCount(); range++) {
+            for (int x = viewport.getMinX(range); x <= viewport.getMaxX(range); x++) {
+                for (int y = viewport.getMinY(); y <= viewport.getMaxY(); y++) {
+                    Integer tile = b.index.get(tileKey(x, y));
+                    if (tile != null) {
+                        result.addAll(getTile(band, tile, x * b.tileSize, y * b.tileSize));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of decoded tiles in memory
+     *
+     * @return the number of cached tiles
+     */
+    public synchronized int getCachedTileCount() {
+        return cache.size();
+    }
+
+    private synchronized List<Polygon> getTile(int band, int tile, double originLon, double originLat) {
+        long key = ((long) band << 32) | tile;
+        List<Polygon> polygons = cache.get(key);
+        if (polygons == null) {
+            polygons = decode(bands[band], tile, originLon, originLat);
+            cache.put(key, polygons);
+        }
+        return polygons;
+    }
+
+    private List<Polygon> decode(Band band, int tile, double originLon, double originLat) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(dataStart + band.offsets[tile]);
+        double scale = band.tileSize / CoastlineTiler.QUANTIZATION;
+        int count = data.getInt();
+        List<Polygon> polygons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int layer = data.get();
+            int n = data.getInt();
+            double[] latLons = new double[n * 2];
+            for (int j = 0; j < latLons.length; j += 2) {
+                latLons[j] = originLat + data.getChar() * scale;
+                latLons[j + 1] = originLon + data.getChar() * scale;
+            }
+            polygons.add(new Polygon(layer, latLons));
+        }
+        return polygons;
+    }
+
+    /**
+     * Reads a string written by {@linkplain java.io.DataOutput#writeUTF(String)}, assuming
+     * it only contains ASCII characters, as is the case for layer names
+     */
+    private static String readUTF(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long tileKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        channel.close();
+    }
+
+    /**
+     * A zoom band along with its tile index
+     */
+    private static final class Band {
+        final float minScale;
+        final double tileSize;
+        final Map<Long, Integer> index = new HashMap<>();
+        final int[] offsets;
+
+        Band(float minScale, double tileSize, int tileCount) {
+            this.minScale = minScale;
+            this.tileSize = tileSize;
+            this.offsets = new int[tileCount];
+        }
+    }
+
+    /**
+     * A coastline polygon clipped to its tile
+     */
+    @Immutable
+    public static final class Polygon {
+        private final int layer;
+        private final double[] latLons;
+
+        Polygon(int layer, double[] latLons) {
+            this.layer = layer;
+            this.latLons = latLons;
+        }
+
+        /**
+         * Returns the index of the layer of the polygon
+         *
+         * @return the layer index
+         */
+        public int getLayer() {
+            return layer;
+        }
+
+        /**
+         * Returns the points of the polygon as lat/lon pairs in degrees. The array must not be modified
+         *
+         * @return the points of the polygon
+         */
+        public double[] getLatLons() {
+            return latLons;
+        }
+    }
+}
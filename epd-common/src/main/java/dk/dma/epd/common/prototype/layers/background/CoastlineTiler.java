@@ -0,0 +1,459 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.util.WriteBehindFile;
+
+/**
+ * Preprocessing step generating a coastline tile file from ESRI polygon shapefiles, such as GSHHS.
+ * <p>
+ * For each zoom band, the polygons are simplified with a tolerance matching the band, and clipped
+ * into square tiles. The points of each tile are quantized to 16 bits relative to the tile, and
+ * the tiles are written to a single file along with an index, to be memory-mapped by the
+ * {@linkplain CoastlineTileStore}.
+ * <p>
+ * The layers are given in drawing order, bottom first. Polygons are stored in the same order
+ * within each tile.
+ */
+public class CoastlineTiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoastlineTiler.class);
+
+    static final int MAGIC = 0x434C5431; // "CLT1"
+    static final int VERSION = 1;
+    static final int QUANTIZATION = 0xFFFF;
+
+    private static final int SHAPE_POLYGON = 5;
+
+    /**
+     * A zoom band of the tile file
+     */
+    public static final class Band {
+        final float minScale;
+        final double tolerance;
+        final double tileSize;
+
+        /**
+         * Constructor
+         *
+         * @param minScale
+         *            the smallest map scale the band is used for
+         * @param tolerance
+         *            the simplification tolerance in degrees
+         * @param tileSize
+         *            the size of the tiles in degrees
+         */
+        public Band(float minScale, double tolerance, double tileSize) {
+            this.minScale = minScale;
+            this.tolerance = tolerance;
+            this.tileSize = tileSize;
+        }
+    }
+
+    /**
+     * The default zoom bands, from world to harbour scale
+     */
+    public static final Band[] DEFAULT_BANDS = {
+        new Band(20000000f, 0.1, 45.0),
+        new Band(5000000f, 0.02, 10.0),
+        new Band(1000000f, 0.004, 2.0),
+        new Band(0f, 0.0002, 0.5)
+    };
+
+    private final Band[] bands;
+    private final List<String> layers = new ArrayList<>();
+    private final List<Map<Long, TileWriter>> tiles = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param bands
+     *            the zoom bands, ordered by decreasing minimum scale
+     */
+    public CoastlineTiler(Band[] bands) {
+        this.bands = bands.clone();
+        for (int i = 0; i < bands.length; i++) {
+            tiles.add(new TreeMap<Long, TileWriter>());
+        }
+    }
+
+    /**
+     * Constructor using the default zoom bands
+     */
+    public CoastlineTiler() {
+        this(DEFAULT_BANDS);
+    }
+
+    /**
+     * Adds the polygons of a shapefile as the next layer
+     *
+     * @param name
+     *            the name of the layer
+     * @param shapeFile
+     *            the shapefile
+     */
+    public void addShapeFile(String name, Path shapeFile) throws IOException {
+        int layer = layers.size();
+        layers.add(name);
+        long t0 = System.currentTimeMillis();
+
+        // Read through a mapped buffer, since the shapefile mixes byte orders
+        try (FileChannel channel = FileChannel.open(shapeFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(100);
+            while (buffer.remaining() >= 8) {
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                buffer.getInt(); // Record number
+                int length = buffer.getInt() * 2;
+                int end = buffer.position() + length;
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt() == SHAPE_POLYGON) {
+                    buffer.position(buffer.position() + 32); // Bounding box
+                    int numParts = buffer.getInt();
+                    int numPoints = buffer.getInt();
+                    int[] parts = new int[numParts + 1];
+                    for (int i = 0; i < numParts; i++) {
+                        parts[i] = buffer.getInt();
+                    }
+                    parts[numParts] = numPoints;
+                    for (int i = 0; i < numParts; i++) {
+                        int n = parts[i + 1] - parts[i];
+                        double[] ring = new double[n * 2];
+                        for (int j = 0; j < n; j++) {
+                            double lon = buffer.getDouble();
+                            double lat = buffer.getDouble();
+                            ring[j * 2] = lat;
+                            ring[j * 2 + 1] = lon;
+                        }
+                        addRing(layer, ring);
+                    }
+                }
+                buffer.position(end);
+            }
+        }
+        LOG.info("Tiled coastline layer " + name + " in " + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+    /**
+     * Adds a polygon ring as lat/lon pairs in degrees to the given layer
+     */
+    void addRing(int layer, double[] ring) {
+        for (int b = 0; b < bands.length; b++) {
+            Band band = bands[b];
+            double[] simplified = simplify(ring, band.tolerance);
+            if (simplified.length < 8) {
+                continue;
+            }
+            double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            for (int i = 0; i < simplified.length; i += 2) {
+                minLat = Math.min(minLat, simplified[i]);
+                maxLat = Math.max(maxLat, simplified[i]);
+                minLon = Math.min(minLon, simplified[i + 1]);
+                maxLon = Math.max(maxLon, simplified[i + 1]);
+            }
+            clip(b, layer, simplified, tile(minLon, band), tile(minLat, band), tile(maxLon, band), tile(maxLat, band));
+        }
+    }
+
+    /**
+     * Clips the ring into the given range of tiles, recursively halving the range, so that
+     * each level only processes the part of the ring within the range
+     */
+    private void clip(int b, int layer, double[] ring, int x0, int y0, int x1, int y1) {
+        double size = bands[b].tileSize;
+        double[] clipped = clip(ring, y0 * size, x0 * size, (y1 + 1) * size, (x1 + 1) * size);
+        if (clipped.length < 6) {
+            return;
+        }
+        if (x0 == x1 && y0 == y1) {
+            Map<Long, TileWriter> bandTiles = tiles.get(b);
+            long key = CoastlineTileStore.tileKey(x0, y0);
+            TileWriter tile = bandTiles.get(key);
+            if (tile == null) {
+                tile = new TileWriter(x0 * size, y0 * size, size);
+                bandTiles.put(key, tile);
+            }
+            tile.add(layer, clipped);
+        } else if (x1 - x0 >= y1 - y0) {
+            int mid = (x0 + x1) >>> 1;
+            clip(b, layer, clipped, x0, y0, mid, y1);
+            clip(b, layer, clipped, mid + 1, y0, x1, y1);
+        } else {
+            int mid = (y0 + y1) >>> 1;
+            clip(b, layer, clipped, x0, y0, x1, mid);
+            clip(b, layer, clipped, x0, mid + 1, x1, y1);
+        }
+    }
+
+    /**
+     * Writes the tile file
+     *
+     * @param file
+     *            the file to write
+     */
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(layers.size());
+        for (String layer : layers) {
+            out.writeUTF(layer);
+        }
+        out.writeInt(bands.length);
+        for (int b = 0; b < bands.length; b++) {
+            out.writeFloat(bands[b].minScale);
+            out.writeDouble(bands[b].tolerance);
+            out.writeDouble(bands[b].tileSize);
+            out.writeInt(tiles.get(b).size());
+            for (Map.Entry<Long, TileWriter> tile : tiles.get(b).entrySet()) {
+                byte[] tileData = tile.getValue().toByteArray();
+                out.writeLong(tile.getKey());
+                out.writeInt(data.size());
+                out.writeInt(tileData.length);
+                data.write(tileData);
+            }
+        }
+        data.writeTo(out);
+        out.flush();
+        WriteBehindFile.writeAtomically(file, bytes.toByteArray());
+    }
+
+    private static int tile(double value, Band band) {
+        return (int) Math.floor(value / band.tileSize);
+    }
+
+    /**
+     * Simplifies a ring with the Douglas-Peucker algorithm, keeping the first and last point
+     *
+     * @param ring
+     *            the ring as lat/lon pairs
+     * @param tolerance
+     *            the tolerance in degrees
+     * @return the simplified ring
+     */
+    static double[] simplify(double[] ring, double tolerance) {
+        int n = ring.length / 2;
+        if (n <= 2 || tolerance <= 0) {
+            return ring;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        // Iterative, since rings of continents have hundreds of thousands of points
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        double tolerance2 = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDist = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double dist = distanceToSegment2(ring, i, first, last);
+                if (dist > maxDist) {
+                    maxDist = dist;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDist > tolerance2) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        double[] result = new double[count * 2];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = ring[i * 2];
+                result[j++] = ring[i * 2 + 1];
+            }
+        }
+        return result;
+    }
+
+    private static double distanceToSegment2(double[] ring, int p, int a, int b) {
+        double py = ring[p * 2], px = ring[p * 2 + 1];
+        double ay = ring[a * 2], ax = ring[a * 2 + 1];
+        double by = ring[b * 2], bx = ring[b * 2 + 1];
+        double dx = bx - ax, dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / len2));
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Clips a ring to a rectangle with the Sutherland-Hodgman algorithm. The result of clipping
+     * a concave ring may contain edges along the rectangle, which do not affect filling.
+     *
+     * @param ring
+     *            the ring as lat/lon pairs
+     * @return the clipped ring as lat/lon pairs
+     */
+    static double[] clip(double[] ring, double minLat, double minLon, double maxLat, double maxLon) {
+        double[] result = ring;
+        for (int edge = 0; edge < 4 && result.length > 0; edge++) {
+            result = clipEdge(result, edge, edge == 0 ? minLat : edge == 1 ? maxLat : edge == 2 ? minLon : maxLon);
+        }
+        return result;
+    }
+
+    private static double[] clipEdge(double[] ring, int edge, double limit) {
+        int n = ring.length / 2;
+        double[] out = new double[(n * 2 + 2) * 2];
+        int count = 0;
+        boolean allInside = true;
+        for (int i = 0; i < n; i++) {
+            double lat = ring[i * 2], lon = ring[i * 2 + 1];
+            int p = (i + n - 1) % n;
+            double plat = ring[p * 2], plon = ring[p * 2 + 1];
+            boolean in = inside(edge, lat, lon, limit);
+            boolean pin = inside(edge, plat, plon, limit);
+            allInside &= in;
+            if (in != pin) {
+                // Intersection of the edge from the previous point with the limit
+                double t = edge < 2 ? (limit - plat) / (lat - plat) : (limit - plon) / (lon - plon);
+                out[count++] = edge < 2 ? limit : plat + t * (lat - plat);
+                out[count++] = edge < 2 ? plon + t * (lon - plon) : limit;
+            }
+            if (in) {
+                out[count++] = lat;
+                out[count++] = lon;
+            }
+        }
+        if (allInside) {
+            return ring;
+        }
+        double[] result = new double[count];
+        System.arraycopy(out, 0, result, 0, count);
+        return result;
+    }
+
+    private static boolean inside(int edge, double lat, double lon, double limit) {
+        switch (edge) {
+        case 0:
+            return lat >= limit;
+        case 1:
+            return lat <= limit;
+        case 2:
+            return lon >= limit;
+        default:
+            return lon <= limit;
+        }
+    }
+
+    /**
+     * The quantized polygons of a tile
+     */
+    private static final class TileWriter {
+        final double originLat;
+        final double originLon;
+        final double size;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        int count;
+
+        TileWriter(double originLon, double originLat, double size) {
+            this.originLat = originLat;
+            this.originLon = originLon;
+            this.size = size;
+        }
+
+        void add(int layer, double[] ring) {
+            try {
+                out.writeByte(layer);
+                out.writeInt(ring.length / 2);
+                for (int i = 0; i < ring.length; i += 2) {
+                    out.writeChar(quantize(ring[i] - originLat));
+                    out.writeChar(quantize(ring[i + 1] - originLon));
+                }
+                count++;
+            } catch (IOException e) {
+                // Cannot happen for an in-memory stream
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int quantize(double offset) {
+            long value = Math.round(offset / size * QUANTIZATION);
+            return (int) Math.max(0, Math.min(QUANTIZATION, value));
+        }
+
+        byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.size() + 4);
+            DataOutputStream header = new DataOutputStream(result);
+            header.writeInt(count);
+            out.flush();
+            bytes.writeTo(result);
+            return result.toByteArray();
+        }
+    }
+
+    /**
+     * Generates a tile file from the given shapefiles, in drawing order, bottom first
+     *
+     * @param args
+     *            the tile file followed by the shapefiles
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CoastlineTiler <tile file> <shapefile>...");
+            System.exit(1);
+        }
+        CoastlineTiler tiler = new CoastlineTiler();
+        for (int i = 1; i < args.length; i++) {
+            Path shapeFile = Paths.get(args[i]);
+            tiler.addShapeFile(shapeFile.getFileName().toString(), shapeFile);
+        }
+        tiler.write(new File(args[0]));
+    }
+}
@@ -0,0 +1,65 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.voct;
+
+import java.awt.Color;
+
+import com.bbn.openmap.omGraphics.OMGraphicConstants;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRect;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.ContainmentGrid;
+
+/**
+ * Graphic for the probability-of-containment grid of a Monte Carlo operation.
+ * Each cell is filled with an opacity in proportion to its probability
+ */
+public class ContainmentGridGraphic extends OMGraphicList {
+    private static final long serialVersionUID = 1L;
+
+    /** Cells below this fraction of the most probable cell are not drawn */
+    private static final float MIN_FRACTION = 0.01f;
+
+    private static final int MAX_ALPHA = 160;
+
+    private Color color = Color.red;
+
+    public ContainmentGridGraphic(ContainmentGrid grid) {
+        super();
+
+        float max = grid.getMaxProbability();
+        if (max <= 0) {
+            return;
+        }
+
+        for (int row = 0; row < grid.getRows(); row++) {
+            for (int col = 0; col < grid.getCols(); col++) {
+                float fraction = grid.getProbability(row, col) / max;
+                if (fraction < MIN_FRACTION) {
+                    continue;
+                }
+
+                Position sw = grid.getPosition(row, col);
+                Position ne = grid.getPosition(row + 1, col + 1);
+                OMRect cell = new OMRect(ne.getLatitude(), sw.getLongitude(), sw.getLatitude(), ne.getLongitude(),
+                        OMGraphicConstants.LINETYPE_RHUMB);
+                cell.setLinePaint(new Color(0, 0, 0, 0));
+                cell.setFillPaint(new Color(color.getRed(), color.getGreen(), color.getBlue(), (int) (fraction * MAX_ALPHA)));
+                add(cell);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointDataSARIS;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
@@ -152,6 +153,14 @@ public class EffortAllocationAreaGraphics extends OMGraphicList {
 
         }
 
+        // Monte Carlo allocations are placed on the north-up containment grid
+        if (sarData instanceof MonteCarloData
+                && ((MonteCarloData) sarData).getAllocationCentre(id) != null) {
+            centerPosition = ((MonteCarloData) sarData).getAllocationCentre(id);
+            verticalBearing = 180;
+            horizontalBearing = 90;
+        }
+
         if (sarData instanceof DatumPointData
                 || sarData instanceof DatumLineData) {
             DatumLineData datumLineDat = null;
@@ -41,6 +41,8 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         Callable<OMGraphicList> {
     private static final Logger LOG = LoggerFactory.getLogger(SingleWMSService.class);
     private Projection projection;
+    private WMSTileCache tileCache;
+    private String cacheKey;
 
     public SingleWMSService(String wmsQuery, Projection p) {
         super(wmsQuery, p);
@@ -59,18 +61,77 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         super(wmsQuery);
     }
 
-    public OMGraphicList getWmsList(Projection p) {
-        java.net.URL url = null;
+    public WMSTileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Sets the tile cache to use. If null, the tile is always fetched from the WMS server
+     * @param tileCache the tile cache to use
+     */
+    public void setTileCache(WMSTileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Returns the key of the tile in the tile cache. Unless a key has been set, this is
+     * the query string, including bounding box and dimensions, along with the zoom level
+     * @return the key of the tile
+     */
+    public String getCacheKey() {
+        if (cacheKey != null) {
+            return cacheKey;
+        }
+        return getQueryString() + "&SCALE=" + Math.round(zoomLevel);
+    }
 
+    /**
+     * Sets a stable key of the tile in the tile cache, e.g. the address of the tile
+     * in a {@linkplain WMSTileGrid}
+     * @param cacheKey the key of the tile
+     */
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * Returns the tile from the memory tier of the tile cache without fetching it.
+     * @return the tile, or an empty list if the tile is not in memory
+     */
+    public OMGraphicList getCachedWmsList() {
         OMGraphicList wmsList = new OMGraphicList();
-        
-        try {
+        WMSTileCache.CachedTile tile = (tileCache != null) ? tileCache.getFromMemory(getCacheKey()) : null;
+        if (tile != null) {
+            wmsList.add(createRaster(tile.getImage()));
+        }
+        return wmsList;
+    }
 
-            url = new java.net.URL(getQueryString());
+    public OMGraphicList getWmsList(Projection p) {
+        OMGraphicList wmsList = new OMGraphicList();
 
-            BufferedImage image = ImageIO.read(url);
+        // Look up the tile in the cache. Stale tiles are used while being re-validated
+        final String key = (tileCache != null) ? getCacheKey() : null;
+        if (tileCache != null) {
+            WMSTileCache.CachedTile tile = tileCache.get(key);
+            if (tile != null) {
+                if (tileCache.isStale(tile)) {
+                    tileCache.revalidate(key, new Callable<BufferedImage>() {
+                        @Override
+                        public BufferedImage call() throws Exception {
+                            return fetchImage();
+                        }
+                    });
+                }
+                wmsList.add(createRaster(tile.getImage()));
+                return wmsList;
+            }
+        }
 
-            if (image == null) {
+        try {
+            BufferedImage maskedImage = fetchImage();
+
+            if (maskedImage == null) {
                 System.out.println("Unable to retrieve image from URL, check the WMS URL");
                 Image noImage = EPD.res().getCachedImageIcon("images/noWMSAvailable.png").getImage();
                 BufferedImage bi = new BufferedImage(noImage.getWidth(null), noImage.getHeight(null), BufferedImage.TYPE_INT_ARGB);
@@ -81,11 +142,10 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
                         this.wmsHeight, noImageIcon));
 
             } else {
-                status.markContactSuccess();
-                
-                Image maskedImage = transformWhiteToTransparent(image);
-                wmsList.add(new CenterRaster(getProjection().getCenter().getY(), getProjection().getCenter().getX(), this.wmsWidth,
-                        this.wmsHeight, new ImageIcon(maskedImage)));
+                if (tileCache != null) {
+                    tileCache.put(key, maskedImage);
+                }
+                wmsList.add(createRaster(maskedImage));
             }
 
         } catch (IOException ex) {
@@ -97,7 +157,32 @@ public final class SingleWMSService extends AbstractWMSService implements ImageS
         return wmsList;
     }
 
-    private Image transformWhiteToTransparent(BufferedImage image) {
+    /**
+     * Creates a raster centered in the projection of the tile
+     * @param image the tile image
+     * @return the raster
+     */
+    private CenterRaster createRaster(BufferedImage image) {
+        return new CenterRaster(getProjection().getCenter().getY(), getProjection().getCenter().getX(), this.wmsWidth,
+                this.wmsHeight, new ImageIcon(image));
+    }
+
+    /**
+     * Fetches the tile image from the WMS server and masks out the white pixels
+     * @return the masked image, or null if the server did not return an image
+     */
+    private BufferedImage fetchImage() throws IOException {
+        java.net.URL url = new java.net.URL(getQueryString());
+
+        BufferedImage image = ImageIO.read(url);
+        if (image == null) {
+            return null;
+        }
+        status.markContactSuccess();
+        return transformWhiteToTransparent(image);
+    }
+
+    private BufferedImage transformWhiteToTransparent(BufferedImage image) {
 
         BufferedImage dest = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = dest.createGraphics();
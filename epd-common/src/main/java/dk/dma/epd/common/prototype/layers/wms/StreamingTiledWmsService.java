@@ -14,59 +14,67 @@
  */
 package dk.dma.epd.common.prototype.layers.wms;
 
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
 
+/**
+ * Tiled WMS service that fetches the tiles of the most recently queued projection
+ * asynchronously, using the shared {@linkplain WMSTileFetcher}.
+ * <p>
+ * When a new projection is queued, pending tiles that are no longer visible are
+ * cancelled, and the remaining tiles are fetched with the center of the viewport first.
+ * A WMS event is fired whenever a tile has been fetched.
+ * <p>
+ * For Mercator projections, the neighbouring tiles of the {@linkplain WMSTileGrid}, and the
+ * center tiles of the next zoom level, are prefetched in the background with a lower priority
+ * than the visible tiles. Neighbours in the direction the map is being panned are fetched first.
+ */
 public class StreamingTiledWmsService extends TiledWMSService implements
-        Runnable, AsyncWMSService {
+        Runnable, AsyncWMSService, WMSTileFetcher.TileListener {
+
+    private static final double PAN_PRIORITY = 1e6;
+    private static final double NEIGHBOUR_PRIORITY = 2e6;
+    private static final double ZOOM_PRIORITY = 3e6;
 
-    private boolean shouldRun = true;
-    ConcurrentHashMap<String, OMGraphicList> cache = new ConcurrentHashMap<String, OMGraphicList>();
-    ConcurrentHashMap<String, OMGraphicList> tmpCache = new ConcurrentHashMap<String, OMGraphicList>();
+    private volatile boolean shouldRun = true;
     LinkedBlockingDeque<Projection> projectionJobs = new LinkedBlockingDeque<>(
             1);
 
     private Thread t;
-    private ExecutorService handOffPool = Executors.newFixedThreadPool(1);
+    private final WMSTileFetcher fetcher;
+    private Point2D lastCenter;
 
     public StreamingTiledWmsService(String wmsQuery, int tileNumber) {
-        super(wmsQuery, tileNumber);
-
-        this.t = new Thread(this);
-        this.t.start();
+        this(wmsQuery, tileNumber, WMSTileCache.getInstance());
     }
     
-    public StreamingTiledWmsService(String wmsQuery, int tileNumber, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
-        super(wmsQuery, tileNumber);
-        this.cache = sharedCache;
-        
+    public StreamingTiledWmsService(String wmsQuery, int tileNumber, WMSTileCache sharedCache) {
+        super(wmsQuery, tileNumber, sharedCache);
+        this.fetcher = WMSTileFetcher.getInstance();
+
         this.t = new Thread(this);
+        this.t.setDaemon(true);
         this.t.start();
     }
 
+    /**
+     * Returns the tiles of the projection that are present in the memory tier of the tile cache.
+     * Never blocks on I/O
+     */
     @Override
     public OMGraphicList getWmsList(Projection p) {
         final OMGraphicList result = new OMGraphicList();
-        final String key = getID(p);
-        if (cache.containsKey(key)) {
-            // LOG.debug("CACHE HIT");
-            tmpCache.remove(key);
-            result.addAll(cache.get(key));
-        } else if (tmpCache.containsKey(key)) {
-            // LOG.debug("TMPCACHE HIT");
-            result.addAll(tmpCache.get(key));
+        for (SingleWMSService tile : getTiles(p)) {
+            result.addAll(tile.getCachedWmsList());
         }
-
         return result;
     }
 
@@ -84,84 +92,108 @@ public class StreamingTiledWmsService extends TiledWMSService implements
             try {
                 // blocks until projection bbox job ready
                 job = projectionJobs.takeLast();
-
-                Thread.sleep(1000); // only take jobs every second
-                // LOG.debug("JOB TAKEN");
             } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                continue;
             }
 
-            if (cache.containsKey(getID(job))) {
-                clearCache();
-            } else {
-                asyncDownload(job);
-                
-            }
+            asyncDownload(job);
         }
     }
-    
-    
 
-    private void clearCache() {
-        if (cache.keySet().size() > 128) {
-            LOG.debug("pruning cache (memory concern)");
-            cache.clear();
-            tmpCache.clear();
+    /**
+     * Cancels the pending tiles that are not part of the job, and requests the
+     * tiles of the job that are not in memory, followed by the tiles to prefetch.
+     * The tile cache bounds its own memory use.
+     * 
+     * @param job
+     */
+    public void asyncDownload(final Projection job) {
+        Collection<SingleWMSService> workers = getTiles(job);
+
+        Set<String> keys = new HashSet<>();
+        List<SingleWMSService> missing = new ArrayList<>();
+        for (SingleWMSService w : workers) {
+            String key = w.getCacheKey();
+            keys.add(key);
+            if (tileCache.getFromMemory(key) == null) {
+                missing.add(w);
+            }
+        }
+
+        List<SingleWMSService> prefetch = getPrefetchTiles(job, keys);
+        for (SingleWMSService w : prefetch) {
+            keys.add(w.getCacheKey());
+        }
+
+        fetcher.cancelAllExcept(this, keys);
+        for (SingleWMSService w : missing) {
+            fetcher.fetch(w, WMSTileFetcher.getPriority(w, job), this, this);
+        }
+
+        // Prefetched tiles are not visible, so there is no need to be notified
+        Point2D center = job.getCenter();
+        double panX = (lastCenter != null) ? center.getX() - lastCenter.getX() : 0.0;
+        double panY = (lastCenter != null) ? center.getY() - lastCenter.getY() : 0.0;
+        lastCenter = center;
+        for (SingleWMSService w : prefetch) {
+            double priority = WMSTileFetcher.getPriority(w, job);
+            Point2D tileCenter = w.getProjection().getCenter();
+            if (w.getProjection().getScale() != job.getScale()) {
+                priority += ZOOM_PRIORITY;
+            } else if ((tileCenter.getX() - center.getX()) * panX + (tileCenter.getY() - center.getY()) * panY > 0.0) {
+                priority += PAN_PRIORITY;
+            } else {
+                priority += NEIGHBOUR_PRIORITY;
+            }
+            fetcher.fetch(w, priority, this, null);
         }
     }
 
     /**
-     * Complete asynchronous download and update of caches
+     * Returns the tiles to prefetch for the job, i.e. the ring of tiles surrounding
+     * the visible tiles and the center tiles of the next zoom level, that are not
+     * already in memory
      * 
      * @param job
+     *            the projection of the viewport
+     * @param visible
+     *            the cache keys of the visible tiles
+     * @return the tiles to prefetch
      */
-    public void asyncDownload(final Projection job) {
-        handOffPool.execute(new Runnable() {
-
-            @Override
-            public void run() {
-                Collection<SingleWMSService> workers = getTiles(job);
-                OMGraphicList result = new OMGraphicList();
-
-                ExecutorService pool = Executors.newFixedThreadPool(Math.max(workers.size(),4));
-                ExecutorCompletionService<OMGraphicList> completionService = new ExecutorCompletionService<>(
-                        pool);
-
-                for (SingleWMSService w : workers) {
-                    completionService.submit(w);
-                }
-
-                boolean allSuccess = true;
-                for (int i = 0; i < workers.size(); i++) {
-                    Future<OMGraphicList> future;
-                    try {
-                        future = completionService.poll(Math.max(100,5000/(i+1)),
-                                TimeUnit.MILLISECONDS);
-                        OMGraphicList tile = future.get();
-                        result.addAll(tile);
-                        tmpCache.putIfAbsent(getID(job), new OMGraphicList());
-                        tmpCache.get(getID(job)).addAll(tile);
-                        fireWMSEvent();
-                    } catch (InterruptedException | ExecutionException
-                            | NullPointerException e) {
-                        allSuccess = false;
-                        //LOG.debug("A Tile failed to download within the alotted time. (~5000ms)");
-                    }
-                }
-
-                if (allSuccess) {
-                    tmpCache.remove(getID(job));
-                    cache.put(getID(job), result);
-                    fireWMSEvent();
-                } else {
-                    LOG.debug("A Tile failed to download, resubmitting job");
-                    queue(job);
-                }
-            }
-        });
+    private List<SingleWMSService> getPrefetchTiles(Projection job, Set<String> visible) {
+        List<SingleWMSService> result = new ArrayList<>();
+        WMSTileGrid grid = WMSTileGrid.create(job);
+        if (grid == null) {
+            return result;
+        }
 
+        List<SingleWMSService> candidates = new ArrayList<>(grid.getTiles(wmsQuery, grid.getRange(job, 1), tileCache));
 
+        WMSTileGrid zoomGrid = WMSTileGrid.create(job, 0.5f);
+        int x = zoomGrid.tileX(job.getCenter().getX());
+        int y = zoomGrid.tileY(job.getCenter().getY());
+        candidates.addAll(zoomGrid.getTiles(wmsQuery, new int[] { x - 1, y - 1, x + 1, y + 1 }, tileCache));
+
+        for (SingleWMSService w : candidates) {
+            String key = w.getCacheKey();
+            if (!visible.contains(key) && tileCache.getFromMemory(key) == null) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called by the tile fetcher when a tile has been fetched
+     * {@inheritDoc}
+     */
+    @Override
+    public void tileFetched(SingleWMSService tile, OMGraphicList result) {
+        if (result == null || result.isEmpty()) {
+            LOG.debug("A Tile failed to download");
+        } else {
+            fireWMSEvent();
+        }
     }
 
     public void queue(Projection p) {
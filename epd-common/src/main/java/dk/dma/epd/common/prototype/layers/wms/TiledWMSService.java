@@ -18,13 +18,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Proj;
@@ -34,32 +27,48 @@ public class TiledWMSService extends AbstractWMSService {
 
     protected int root;
     protected int sqrRoot;
+    protected final WMSTileCache tileCache;
 
     @SuppressWarnings("unused")
     private Projection projection;
 
     public TiledWMSService(String wmsQuery, int tileNumber) {
+        this(wmsQuery, tileNumber, WMSTileCache.getInstance());
+    }
+
+    public TiledWMSService(String wmsQuery, int tileNumber, WMSTileCache tileCache) {
         super(wmsQuery);
         this.root = tileNumber;
         this.sqrRoot = (int) Math.sqrt(root);
+        this.tileCache = tileCache;
     }
     /**
-     * get a single tile if width < 1500 otherwise, get four tiles
+     * Returns the tiles covering the projection.
+     * <p>
+     * For Mercator projections, the tiles of the fixed {@linkplain WMSTileGrid} are returned,
+     * which do not change when the map is panned. For other projections, get a single tile
+     * if width < 2000 otherwise, split the view into tiles
      * @param p projection
      * @return list of rasterizable image tiles
      */
     protected final Collection<SingleWMSService> getTiles(Projection p) {
-        
+        WMSTileGrid grid = WMSTileGrid.create(p);
+        if (grid != null) {
+            return grid.getTiles(wmsQuery, grid.getRange(p, 0), tileCache);
+        }
+
         if (p.getWidth() > 2000 || p.getHeight() > 1400) {
             return getTiles(p,sqrRoot);
         }
         
         LinkedList<SingleWMSService> l = new LinkedList<>();
-        l.add(new SingleWMSService(wmsQuery, p.makeClone()));
+        SingleWMSService s = new SingleWMSService(wmsQuery, p.makeClone());
+        s.setTileCache(tileCache);
+        l.add(s);
         return l;
     }
     
-    protected final Collection<SingleWMSService> getTiles(Projection p, int sqrRoot) {
+    protected final synchronized Collection<SingleWMSService> getTiles(Projection p, int sqrRoot) {
         super.setWMSPosition(p);
         super.setZoomLevel(p.getScale());
         this.setProjection(p);
@@ -84,7 +93,9 @@ public class TiledWMSService extends AbstractWMSService {
 
         Collection<SingleWMSService> wmsInstances = new ArrayList<>();
         for (int i = 0; i < root; i++) {
-            wmsInstances.add(new SingleWMSService(wmsQuery, p));
+            SingleWMSService s = new SingleWMSService(wmsQuery, p);
+            s.setTileCache(tileCache);
+            wmsInstances.add(s);
         }
 
         Iterator<SingleWMSService> it = wmsInstances.iterator();
@@ -128,71 +139,18 @@ public class TiledWMSService extends AbstractWMSService {
     } 
     
     
-    /*
-     * Experimented with various pre-fetching strategies
-     */
-    /*
-    protected final Collection<SingleWMSService> getTiles(Projection p) {
-        
-        LinkedList<SingleWMSService> l = new LinkedList<>();
-        
-        Projection pCurrent = p.makeClone();
-        
-        
-        int degrees = 45;
-        for (int i=0; i<8; i++) {
-            pCurrent = p.makeClone();
-            Proj pC = (Proj)pCurrent;
-            pCurrent.pan(degrees*i);
-            
-            l.add(new SingleWMSService(wmsQuery, pCurrent.makeClone()));
-        }
-        
-        return l;
-    }*/
-    
     private void setProjection(final Projection p) {
         this.projection = p;
 
     }
 
+    /**
+     * Fetches the tiles of the projection using the shared {@linkplain WMSTileFetcher}
+     * and waits for them to complete
+     */
     @Override
     public OMGraphicList getWmsList(Projection p) {
-
-        OMGraphicList result = new OMGraphicList();
-
-        // why not make this a field? because we want total separation between
-        // results
-        ExecutorService es = Executors.newCachedThreadPool();
-
-        Collection<SingleWMSService> wmsInstances = this.getTiles(p);
-
-        try {
-            List<Future<OMGraphicList>> futures = es.invokeAll(wmsInstances,
-                    10, TimeUnit.SECONDS);
-
-            for (Future<OMGraphicList> f : futures) {
-                try {
-                    result.addAll(f.get());
-//                    System.out.println("added tile");
-                } catch (CancellationException e) {
-                    LOG.debug("WMS TILE CANCELLED");
-                }
-
-            }
-
-        } catch (InterruptedException | ExecutionException e) {
-
-        }
-
-        // Singlethreaded alternative
-        /*
-         * for (SingleWMSService s: wmsInstances) {
-         * result.addAll(s.getWmsList(p)); }
-         */
-
-        return result;
-
+        return WMSTileFetcher.getInstance().fetchAll(getTiles(p), p, this, 10000L);
     }
 
 }
@@ -15,8 +15,8 @@
 package dk.dma.epd.common.prototype.layers.wms;
 
 import java.awt.image.BufferedImage;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import com.bbn.openmap.event.ProjectionEvent;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRaster;
 import com.bbn.openmap.proj.Projection;
 
 import dk.dma.epd.common.graphics.CenterRaster;
@@ -54,7 +55,9 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
     private float lastScale = -1F;
     MapSettings mapSettings;
 
-    private CopyOnWriteArrayList<OMGraphic> internalCache = new CopyOnWriteArrayList<>();
+    // The rasters drawn at the current scale, keyed by their tile bounds, so that
+    // re-drawing a tile replaces its previous raster
+    private final Map<String, OMGraphic> internalCache = new ConcurrentHashMap<>();
 
     /**
      * Constructor that starts the WMS layer in a separate thread
@@ -80,9 +83,9 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
      * @param query
      *            the WMS query
      * @param sharedCache
-     *            the shared cache to use
+     *            the shared tile cache to use
      */
-    public WMSLayer(String query, ConcurrentHashMap<String, OMGraphicList> sharedCache) {
+    public WMSLayer(String query, WMSTileCache sharedCache) {
         wmsService = new StreamingTiledWmsService(query, 4, sharedCache);
         wmsService.addWMSEventListener(this);
         new Thread(this).start();
@@ -106,10 +109,11 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
     public void drawWMS(OMGraphicList tiles) {
         this.setVisible(mapSettings.isWmsVisible());
         if (mapSettings.isWmsVisible()) {
-            this.internalCache.addAllAbsent(tiles);
+            for (OMGraphic tile : tiles) {
+                internalCache.put(getTileKey(tile), tile);
+            }
             graphics.clear();
-            graphics.addAll(internalCache);
-            graphics.addAll(tiles);
+            graphics.addAll(internalCache.values());
             doPrepare();
         } else {
 
@@ -117,6 +121,21 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
 
     }
 
+    /**
+     * Returns the key of the given tile raster in the internal cache, i.e. its bounds
+     * 
+     * @param tile
+     *            the tile raster
+     * @return the key of the tile
+     */
+    private static String getTileKey(OMGraphic tile) {
+        if (tile instanceof OMRaster) {
+            OMRaster raster = (OMRaster) tile;
+            return raster.getLat() + "," + raster.getLon() + "," + raster.getWidth() + "x" + raster.getHeight();
+        }
+        return String.valueOf(System.identityHashCode(tile));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -148,7 +167,7 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
      */
     public void clearWMS() {
         // Aggressively flush the buffered images
-        for (OMGraphic g : internalCache) {
+        for (OMGraphic g : internalCache.values()) {
             if (g instanceof CenterRaster) {
                 CenterRaster cr = (CenterRaster) g;
                 if (cr.getImage() instanceof BufferedImage) {
@@ -180,6 +199,8 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
                     if (width > 0 && height > 0 && proj.getScale() <= PROJ_SCALE_THRESHOLD) {
                         OMGraphicList result = wmsService.getWmsList(proj);
                         drawWMS(result);
+                        // Re-request any tiles that failed to download
+                        wmsService.queue(proj);
                     }
                 }
 
@@ -218,7 +239,7 @@ public class WMSLayer extends EPDLayerCommon implements Runnable, WMSEventListen
     public void setVisible(boolean visible) {
         super.setVisible(visible);
         if (visible) {
-            graphics.addAll(internalCache);
+            graphics.addAll(internalCache.values());
             // graphics.addAll(tiles);
             doPrepare();
 
@@ -0,0 +1,420 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jetty.util.ConcurrentHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.epd.common.prototype.EPD;
+
+/**
+ * Two-tier cache for WMS tile images.
+ * <p>
+ * The first tier is an in-memory LRU cache bounded by the number of bytes used by the
+ * images. The second tier is a directory of PNG files bounded by their total size,
+ * which survives restarts. Tiles are keyed by the WMS query, which includes the bounding
+ * box and dimensions of the tile, along with the zoom level.
+ * <p>
+ * Tiles older than the max-age are stale. Stale tiles are still returned, so that
+ * the map can be painted immediately, but should be re-validated in the background
+ * using {@linkplain #revalidate(String, Callable)}.
+ */
+@ThreadSafe
+public class WMSTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WMSTileCache.class);
+
+    public static final long DEFAULT_MEMORY_BUDGET = 96L * 1024L * 1024L; // 96 MB
+    public static final long DEFAULT_DISK_BUDGET = 512L * 1024L * 1024L; // 512 MB
+    public static final long DEFAULT_MAX_AGE = 24L * 60L * 60L * 1000L; // 24 hours
+
+    private static final String TILE_SUFFIX = ".png";
+
+    private static WMSTileCache instance;
+
+    /**
+     * A cached tile image along with the time it was fetched
+     */
+    public static final class CachedTile {
+        private final BufferedImage image;
+        private final long fetched;
+        private final long bytes;
+
+        CachedTile(BufferedImage image, long fetched) {
+            this.image = image;
+            this.fetched = fetched;
+            this.bytes = 4L * image.getWidth() * image.getHeight();
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public long getFetched() {
+            return fetched;
+        }
+    }
+
+    private final Path cacheDir;
+    private final long memoryBudget;
+    private final long diskBudget;
+    private final long maxAge;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, CachedTile> memory = new LinkedHashMap<>(256, 0.75f, true);
+    @GuardedBy("this")
+    private long memoryBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong(-1L);
+    private final Set<String> revalidating = new ConcurrentHashSet<>();
+
+    // Used for disk writes and for re-validating stale tiles
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(new CacheThreadFactory("WMSTileCacheDisk"));
+    private final ExecutorService revalidateExecutor = Executors.newFixedThreadPool(2, new CacheThreadFactory(
+            "WMSTileCacheRevalidate"));
+
+    /**
+     * Constructor
+     *
+     * @param cacheDir
+     *            the directory of the disk tier, or null for a memory-only cache
+     * @param memoryBudget
+     *            the maximum number of bytes used by the in-memory images
+     * @param diskBudget
+     *            the maximum number of bytes used by the disk tier
+     * @param maxAge
+     *            the time in milliseconds after which a tile is stale
+     */
+    public WMSTileCache(Path cacheDir, long memoryBudget, long diskBudget, long maxAge) {
+        this.cacheDir = cacheDir;
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        this.maxAge = maxAge;
+
+        if (cacheDir != null) {
+            try {
+                Files.createDirectories(cacheDir);
+            } catch (IOException e) {
+                LOG.error("Failed to create WMS tile cache directory " + cacheDir + ": " + e.getMessage());
+            }
+            // Compute the disk usage and prune the disk tier in the background
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pruneDisk();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the tile cache shared by all WMS services. The cache is created the first time
+     * this method is called, with the disk tier placed in the EPD home folder.
+     *
+     * @return the shared tile cache
+     */
+    public static synchronized WMSTileCache getInstance() {
+        if (instance == null) {
+            instance = new WMSTileCache(EPD.getInstance().getHomePath().resolve(".wmscache"), DEFAULT_MEMORY_BUDGET,
+                    DEFAULT_DISK_BUDGET, DEFAULT_MAX_AGE);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the tile with the given key from the memory tier only, or null if not present.
+     * <p>
+     * This method never blocks on I/O and may be called from the painting threads.
+     *
+     * @param key
+     *            the tile key
+     * @return the cached tile or null
+     */
+    public synchronized CachedTile getFromMemory(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * Returns the tile with the given key, or null if not present.
+     * <p>
+     * If the tile is not in memory, the disk tier is checked and a tile found
+     * there is promoted to the memory tier.
+     *
+     * @param key
+     *            the tile key
+     * @return the cached tile or null
+     */
+    public CachedTile get(String key) {
+        CachedTile tile = getFromMemory(key);
+        if (tile != null || cacheDir == null) {
+            return tile;
+        }
+
+        Path file = getFile(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long fetched = Files.getLastModifiedTime(file).toMillis();
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            tile = new CachedTile(image, fetched);
+            putInMemory(key, tile);
+            return tile;
+        } catch (IOException e) {
+            LOG.debug("Failed to read cached WMS tile " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the tile image to both the memory and the disk tier.
+     * <p>
+     * The disk write is performed in the background.
+     *
+     * @param key
+     *            the tile key
+     * @param image
+     *            the tile image
+     */
+    public void put(final String key, final BufferedImage image) {
+        final CachedTile tile = new CachedTile(image, System.currentTimeMillis());
+        putInMemory(key, tile);
+
+        if (cacheDir != null) {
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeToDisk(key, tile);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns if the given tile is stale and should be re-validated
+     *
+     * @param tile
+     *            the tile to check
+     * @return if the tile is stale
+     */
+    public boolean isStale(CachedTile tile) {
+        return System.currentTimeMillis() - tile.getFetched() > maxAge;
+    }
+
+    /**
+     * Re-fetches the tile with the given key in the background, unless a
+     * re-validation of the tile is already in progress.
+     *
+     * @param key
+     *            the tile key
+     * @param loader
+     *            loads the fresh tile image. May return null upon failure
+     */
+    public void revalidate(final String key, final Callable<BufferedImage> loader) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        revalidateExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedImage image = loader.call();
+                    if (image != null) {
+                        put(key, image);
+                    }
+                } catch (Exception e) {
+                    LOG.debug("Failed to re-validate WMS tile: " + e.getMessage());
+                } finally {
+                    revalidating.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Clears the memory tier
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0L;
+    }
+
+    /**
+     * Returns the number of bytes used by the memory tier
+     *
+     * @return the number of bytes used by the memory tier
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Adds the tile to the memory tier and evicts the least recently used tiles exceeding the budget
+     */
+    private synchronized void putInMemory(String key, CachedTile tile) {
+        CachedTile old = memory.put(key, tile);
+        if (old != null) {
+            memoryBytes -= old.bytes;
+        }
+        memoryBytes += tile.bytes;
+
+        Iterator<CachedTile> it = memory.values().iterator();
+        while (memoryBytes > memoryBudget && it.hasNext()) {
+            CachedTile evicted = it.next();
+            if (evicted == tile) {
+                break;
+            }
+            it.remove();
+            memoryBytes -= evicted.bytes;
+        }
+    }
+
+    /**
+     * Writes the tile to the disk tier. Called from the disk executor
+     */
+    private void writeToDisk(String key, CachedTile tile) {
+        Path file = getFile(key);
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long oldSize = Files.exists(file) ? Files.size(file) : 0L;
+            if (!ImageIO.write(tile.getImage(), "png", tmpFile.toFile())) {
+                Files.deleteIfExists(tmpFile);
+                return;
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(tile.getFetched()));
+            if (diskBytes.addAndGet(Files.size(file) - oldSize) > diskBudget) {
+                pruneDisk();
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to write cached WMS tile " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the oldest tiles of the disk tier until it is within 80% of the budget.
+     * Called from the disk executor
+     */
+    private void pruneDisk() {
+        List<File> files = new ArrayList<>();
+        long total = 0L;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + TILE_SUFFIX)) {
+            for (Path path : stream) {
+                File file = path.toFile();
+                files.add(file);
+                total += file.length();
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to list WMS tile cache directory: " + e.getMessage());
+            return;
+        }
+
+        if (total > diskBudget) {
+            Collections.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f1.lastModified(), f2.lastModified());
+                }
+            });
+            long target = diskBudget / 10L * 8L;
+            for (Iterator<File> it = files.iterator(); total > target && it.hasNext();) {
+                File file = it.next();
+                long size = file.length();
+                if (file.delete()) {
+                    total -= size;
+                }
+            }
+            LOG.info("Pruned WMS tile cache to " + total / 1024L / 1024L + " MB");
+        }
+        diskBytes.set(total);
+    }
+
+    /**
+     * Returns the disk tier file of the given key
+     */
+    private Path getFile(String key) {
+        return cacheDir.resolve(hash(key) + TILE_SUFFIX);
+    }
+
+    /**
+     * Returns the hex encoded SHA-1 hash of the given key
+     */
+    static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates named daemon threads
+     */
+    private static final class CacheThreadFactory implements ThreadFactory {
+        private final String name;
+
+        CacheThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
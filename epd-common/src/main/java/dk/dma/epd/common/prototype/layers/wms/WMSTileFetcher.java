@@ -0,0 +1,317 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import java.awt.geom.Point2D;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * Tile-fetch scheduler shared by all WMS services.
+ * <p>
+ * Tiles are fetched by a fixed number of threads, and pending tiles are prioritized by
+ * their distance to the center of the viewport, so the center of the map is painted first.
+ * <p>
+ * Identical tile requests, i.e. requests with the same cache key, are coalesced into
+ * a single fetch. Each request is made on behalf of an owner, typically a WMS service,
+ * and when the viewport of the owner changes, it can cancel the pending tiles that are no
+ * longer visible using {@linkplain #cancelAllExcept(Object, Collection)}. A pending fetch
+ * is only cancelled once all of its owners have cancelled it.
+ */
+@ThreadSafe
+public class WMSTileFetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WMSTileFetcher.class);
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private static WMSTileFetcher instance;
+
+    /**
+     * Interface that should be implemented by classes that want to be
+     * notified when a requested tile has been fetched
+     */
+    public interface TileListener {
+
+        /**
+         * Called when the tile has been fetched, or the fetch has failed or been cancelled
+         *
+         * @param tile
+         *            the requested tile
+         * @param result
+         *            the fetched tile graphics, or null upon failure or cancellation
+         */
+        void tileFetched(SingleWMSService tile, OMGraphicList result);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, TileTask> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param poolSize
+     *            the maximum number of concurrent tile fetches
+     */
+    public WMSTileFetcher(int poolSize) {
+        final AtomicInteger threadNo = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "WMSTileFetcher-" + threadNo.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Re-prioritized tasks are put directly into the queue, so the threads must be running
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Returns the tile fetcher shared by all WMS services.
+     * The fetcher is created the first time this method is called.
+     *
+     * @return the shared tile fetcher
+     */
+    public static synchronized WMSTileFetcher getInstance() {
+        if (instance == null) {
+            instance = new WMSTileFetcher(DEFAULT_POOL_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Requests the given tile to be fetched.
+     * <p>
+     * If an identical request is pending, the two requests are coalesced, and the pending request
+     * is re-prioritized if the new request has a higher priority.
+     *
+     * @param tile
+     *            the tile to fetch
+     * @param priority
+     *            the priority. Lower values are fetched first
+     * @param owner
+     *            the owner on behalf of which the tile is fetched
+     * @param listener
+     *            an optional listener notified when the tile has been fetched
+     * @return the future result of the fetch
+     */
+    public Future<OMGraphicList> fetch(SingleWMSService tile, double priority, Object owner, TileListener listener) {
+        String key = tile.getCacheKey();
+        TileTask task;
+        boolean created = false;
+        synchronized (this) {
+            task = inFlight.get(key);
+            if (task == null || task.isCancelled()) {
+                task = new TileTask(key, tile, priority, sequence.incrementAndGet());
+                inFlight.put(key, task);
+                created = true;
+            } else if (priority < task.priority && executor.getQueue().remove(task)) {
+                task.priority = priority;
+                executor.getQueue().add(task);
+            }
+            task.addOwner(owner);
+        }
+        task.addListener(tile, listener);
+        if (created) {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Fetches the given tiles on behalf of the owner, with the tiles closest to the
+     * center of the projection first, and waits for them to complete.
+     *
+     * @param tiles
+     *            the tiles to fetch
+     * @param p
+     *            the projection of the viewport
+     * @param owner
+     *            the owner on behalf of which the tiles are fetched
+     * @param timeout
+     *            the maximum time in milliseconds to wait for the tiles
+     * @return the fetched tiles
+     */
+    public OMGraphicList fetchAll(Collection<SingleWMSService> tiles, Projection p, Object owner, long timeout) {
+        List<Future<OMGraphicList>> futures = new ArrayList<>(tiles.size());
+        for (SingleWMSService tile : tiles) {
+            futures.add(fetch(tile, getPriority(tile, p), owner, null));
+        }
+
+        OMGraphicList result = new OMGraphicList();
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Future<OMGraphicList> future : futures) {
+            try {
+                result.addAll(future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                LOG.debug("WMS TILE FAILED: " + e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cancels the pending tiles of the owner, except the tiles with the given cache keys
+     *
+     * @param owner
+     *            the owner
+     * @param keep
+     *            the cache keys of the tiles to keep
+     */
+    public void cancelAllExcept(Object owner, Collection<String> keep) {
+        List<TileTask> cancelled = new ArrayList<>();
+        synchronized (this) {
+            for (TileTask task : inFlight.values()) {
+                if (!keep.contains(task.key) && task.removeOwner(owner)) {
+                    cancelled.add(task);
+                }
+            }
+        }
+        for (TileTask task : cancelled) {
+            if (executor.remove(task)) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the priority of the tile, i.e. the squared distance in degrees between the
+     * center of the tile and the center of the given projection
+     *
+     * @param tile
+     *            the tile
+     * @param p
+     *            the projection of the viewport
+     * @return the priority of the tile
+     */
+    public static double getPriority(SingleWMSService tile, Projection p) {
+        Point2D tileCenter = tile.getProjection().getCenter();
+        Point2D center = p.getCenter();
+        double dy = tileCenter.getY() - center.getY();
+        double dx = (tileCenter.getX() - center.getX()) * Math.cos(Math.toRadians(center.getY()));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the number of pending and running tile fetches
+     *
+     * @return the number of pending and running tile fetches
+     */
+    public int getPendingCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A prioritized tile fetch, which may be shared by multiple owners
+     */
+    private final class TileTask extends FutureTask<OMGraphicList> implements Comparable<TileTask> {
+        final String key;
+        final long seq;
+        volatile double priority;
+
+        @GuardedBy("WMSTileFetcher.this")
+        final Map<Object, Boolean> owners = new IdentityHashMap<>();
+        @GuardedBy("this")
+        final List<Map.Entry<SingleWMSService, TileListener>> listeners = new ArrayList<>();
+
+        TileTask(String key, SingleWMSService tile, double priority, long seq) {
+            super(tile);
+            this.key = key;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        void addOwner(Object owner) {
+            owners.put(owner, Boolean.TRUE);
+        }
+
+        /**
+         * Removes the owner and returns if the task has no more owners
+         */
+        boolean removeOwner(Object owner) {
+            return owners.remove(owner) != null && owners.isEmpty();
+        }
+
+        void addListener(SingleWMSService tile, TileListener listener) {
+            if (listener == null) {
+                return;
+            }
+            synchronized (this) {
+                if (!isDone()) {
+                    listeners.add(new SimpleImmutableEntry<>(tile, listener));
+                    return;
+                }
+            }
+            listener.tileFetched(tile, getQuietly());
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+            List<Map.Entry<SingleWMSService, TileListener>> toNotify;
+            synchronized (this) {
+                toNotify = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+            OMGraphicList result = getQuietly();
+            for (Map.Entry<SingleWMSService, TileListener> entry : toNotify) {
+                entry.getValue().tileFetched(entry.getKey(), result);
+            }
+        }
+
+        private OMGraphicList getQuietly() {
+            if (isCancelled()) {
+                return null;
+            }
+            try {
+                return get();
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int compareTo(TileTask other) {
+            int result = Double.compare(priority, other.priority);
+            return (result != 0) ? result : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Proj;
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.epd.common.util.GridViewport;
+
+/**
+ * A fixed tile grid aligned with the pixels of a Mercator projection at a given scale.
+ * <p>
+ * The world is divided into square tiles of {@code TILE_SIZE} pixels, addressed by
+ * their zoom level, i.e. the rounded projection scale, and their x/y index.
+ * Since the grid is anchored in world pixel coordinates rather than in the viewport,
+ * the tiles stay the same when the map is panned, which makes them cacheable.
+ * <p>
+ * Each tile is rendered using a projection centered on the tile, so its WMS bounding box
+ * follows the Mercator projection exactly, and neighbouring tiles line up pixel-perfectly.
+ */
+public class WMSTileGrid {
+
+    public static final int TILE_SIZE = 512;
+
+    private static final double MAX_LAT = 85.0;
+
+    private final Projection projection;
+    private final long zoom;
+    private final double circumference; // In pixels
+    private final int tileCount;
+
+    /**
+     * Constructor
+     *
+     * @param p
+     *            the Mercator projection to align the grid with
+     */
+    private WMSTileGrid(Projection p) {
+        this.projection = p;
+        this.zoom = Math.round(p.getScale());
+
+        // The x-coordinate is linear in the longitude. Round off to avoid
+        // floating point noise depending on the center of the projection
+        Point2D p0 = p.forward(0.0, 0.0);
+        Point2D p1 = p.forward(0.0, 10.0);
+        this.circumference = Math.round((p1.getX() - p0.getX()) * 36.0 * 1000.0) / 1000.0;
+        this.tileCount = (int) Math.ceil(circumference / TILE_SIZE);
+    }
+
+    /**
+     * Returns the tile grid of the given projection, or null if the projection is not
+     * a Mercator projection
+     *
+     * @param p
+     *            the projection
+     * @return the tile grid or null
+     */
+    public static WMSTileGrid create(Projection p) {
+        if (!(p instanceof Mercator)) {
+            return null;
+        }
+        return new WMSTileGrid(p);
+    }
+
+    /**
+     * Returns the tile grid of the given projection zoomed by the given factor,
+     * or null if the projection is not a Mercator projection
+     *
+     * @param p
+     *            the projection
+     * @param factor
+     *            the zoom factor applied to the scale, e.g. 0.5 for the next zoom level
+     * @return the tile grid or null
+     */
+    public static WMSTileGrid create(Projection p, float factor) {
+        if (!(p instanceof Mercator)) {
+            return null;
+        }
+        Proj zoomed = (Proj) p.makeClone();
+        zoomed.setScale(p.getScale() * factor);
+        return new WMSTileGrid(zoomed);
+    }
+
+    public long getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Returns the x-index of the tile containing the given longitude
+     */
+    public int tileX(double lon) {
+        return (int) Math.floor(worldX(lon) / TILE_SIZE);
+    }
+
+    /**
+     * Returns the y-index of the tile containing the given latitude
+     */
+    public int tileY(double lat) {
+        return (int) Math.floor(worldY(lat) / TILE_SIZE);
+    }
+
+    /**
+     * Returns the tiles covering the given projection. When the viewport crosses the antimeridian,
+     * it is split into the tiles east and west of the antimeridian
+     *
+     * @param p
+     *            the projection of the viewport
+     * @param margin
+     *            number of tiles to add on each side of the range
+     * @return the tiles covering the viewport
+     */
+    public GridViewport getRange(Projection p, int margin) {
+        Point2D ul = p.getUpperLeft();
+        Point2D lr = p.getLowerRight();
+        int x0 = tileX(ul.getX()) - margin;
+        int x1 = tileX(lr.getX()) + margin;
+        int y0 = Math.max(0, tileY(ul.getY()) - margin);
+        int y1 = Math.min(tileCount - 1, tileY(lr.getY()) + margin);
+        return GridViewport.create(x0, x1, ul.getX() > lr.getX(), 0, tileCount - 1, y0, y1);
+    }
+
+    /**
+     * Returns the tiles within the given viewport
+     *
+     * @param wmsQuery
+     *            the WMS query
+     * @param viewport
+     *            the tiles of the viewport
+     * @param tileCache
+     *            the tile cache to use
+     * @return the tiles
+     */
+    public List<SingleWMSService> getTiles(String wmsQuery, GridViewport viewport, WMSTileCache tileCache) {
+        List<SingleWMSService> tiles = new ArrayList<>();
+        for (int range = 0; range < viewport.getRangeCount(); range++) {
+            tiles.addAll(getTiles(wmsQuery, new int[] { viewport.getMinX(range), viewport.getMinY(),
+                    viewport.getMaxX(range), viewport.getMaxY() }, tileCache));
+        }
+        return tiles;
+    }
+
+    /**
+     * Returns the tiles within the given index range
+     *
+     * @param wmsQuery
+     *            the WMS query
+     * @param range
+     *            the [x0, y0, x1, y1] index range, inclusive
+     * @param tileCache
+     *            the tile cache to use
+     * @return the tiles
+     */
+    public List<SingleWMSService> getTiles(String wmsQuery, int[] range, WMSTileCache tileCache) {
+        List<SingleWMSService> tiles = new ArrayList<>();
+        for (int y = range[1]; y <= range[3]; y++) {
+            for (int x = range[0]; x <= range[2]; x++) {
+                tiles.add(createTile(wmsQuery, x, y, tileCache));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Creates the WMS service of the given tile
+     *
+     * @param wmsQuery
+     *            the WMS query
+     * @param x
+     *            the x-index of the tile
+     * @param y
+     *            the y-index of the tile
+     * @param tileCache
+     *            the tile cache to use
+     * @return the WMS service of the tile
+     */
+    public SingleWMSService createTile(String wmsQuery, int x, int y, WMSTileCache tileCache) {
+        Proj tileProj = (Proj) projection.makeClone();
+        tileProj.setWidth(TILE_SIZE);
+        tileProj.setHeight(TILE_SIZE);
+        tileProj.setCenter(lat((y + 0.5) * TILE_SIZE), lon((x + 0.5) * TILE_SIZE));
+
+        SingleWMSService tile = new SingleWMSService(wmsQuery, tileProj);
+        tile.setTileCache(tileCache);
+        // Wrap the x-index, so that tiles across the date line are shared
+        int wrappedX = ((x % tileCount) + tileCount) % tileCount;
+        tile.setCacheKey(wmsQuery + "&TILE=" + zoom + "/" + wrappedX + "/" + y + "/" + TILE_SIZE);
+        return tile;
+    }
+
+    private double worldX(double lon) {
+        return (lon + 180.0) / 360.0 * circumference;
+    }
+
+    private double worldY(double lat) {
+        double phi = Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)));
+        return circumference / 2.0 - circumference / (2.0 * Math.PI) * Math.log(Math.tan(Math.PI / 4.0 + phi / 2.0));
+    }
+
+    private double lon(double worldX) {
+        double lon = worldX / circumference * 360.0 - 180.0;
+        return lon - 360.0 * Math.floor((lon + 180.0) / 360.0);
+    }
+
+    private double lat(double worldY) {
+        double y = (circumference / 2.0 - worldY) * 2.0 * Math.PI / circumference;
+        return Math.toDegrees(2.0 * Math.atan(Math.exp(y)) - Math.PI / 2.0);
+    }
+}
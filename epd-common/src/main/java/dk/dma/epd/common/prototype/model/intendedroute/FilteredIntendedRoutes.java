@@ -16,8 +16,8 @@ package dk.dma.epd.common.prototype.model.intendedroute;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,26 +35,47 @@ import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute.Fil
  * <p>
  * The two-MMSI methods of this class have been constructed such that
  * the order of the MMSI parameters has no effect.
+ * <p>
+ * The keys are additionally indexed by each of their MMSI's, so that the
+ * single-MMSI methods only touch the filtered intended routes of that MMSI.
  */
 public class FilteredIntendedRoutes implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     private ConcurrentHashMap<FilteredIntendedRouteKey, FilteredIntendedRoute> filteredIntendedRoutes = new ConcurrentHashMap<>();
+    private Map<Long, Set<FilteredIntendedRouteKey>> mmsiIndex = new HashMap<>();
     
     /**
      * Adds a new filtered intended route to the list
      * @param filteredIntendedRoute the route to add
      */
-    public void add(FilteredIntendedRoute filteredIntendedRoute) {
+    public synchronized void add(FilteredIntendedRoute filteredIntendedRoute) {
         // Sanity checks
         if (filteredIntendedRoute == null) {
             return;
         }
         
-        filteredIntendedRoutes.put(
-                new FilteredIntendedRouteKey(filteredIntendedRoute.getMmsi1(), filteredIntendedRoute.getMmsi2()), 
-                filteredIntendedRoute);
+        FilteredIntendedRouteKey key = filteredIntendedRoute.getKey();
+        filteredIntendedRoutes.put(key, filteredIntendedRoute);
+        index(key.getMmsi1(), key);
+        index(key.getMmsi2(), key);
+    }
+    
+    /**
+     * Replaces all the filtered intended routes for the given MMSI
+     * with the given filtered intended routes.
+     * 
+     * @param mmsi the MMSI
+     * @param newFilteredIntendedRoutes the new filtered intended routes for the MMSI
+     * @return the filtered intended routes being replaced
+     */
+    public synchronized Set<FilteredIntendedRoute> replace(Long mmsi, Collection<FilteredIntendedRoute> newFilteredIntendedRoutes) {
+        Set<FilteredIntendedRoute> result = remove(mmsi);
+        for (FilteredIntendedRoute filteredIntendedRoute : newFilteredIntendedRoutes) {
+            add(filteredIntendedRoute);
+        }
+        return result;
     }
     
     /**
@@ -100,8 +121,10 @@ public class FilteredIntendedRoutes implements Serializable {
         if (mmsi1 == null || mmsi2 == null) {
             return null;
         }
-        return filteredIntendedRoutes.remove(
-                new FilteredIntendedRouteKey(mmsi1, mmsi2));
+        FilteredIntendedRouteKey key = new FilteredIntendedRouteKey(mmsi1, mmsi2);
+        unindex(key.getMmsi1(), key);
+        unindex(key.getMmsi2(), key);
+        return filteredIntendedRoutes.remove(key);
     }
 
     
@@ -112,8 +135,7 @@ public class FilteredIntendedRoutes implements Serializable {
      * @return if the list contains a filtered intended route for the given MMSI
      */
     public synchronized boolean containsKey(Long mmsi) {
-        Set<FilteredIntendedRoute> matches = get(mmsi);
-        return matches.size() > 0;
+        return mmsiIndex.containsKey(mmsi);
     }
     
     /**
@@ -124,10 +146,10 @@ public class FilteredIntendedRoutes implements Serializable {
      */
     public synchronized Set<FilteredIntendedRoute> get(Long mmsi) {
         Set<FilteredIntendedRoute> result = new HashSet<>();
-        for (FilteredIntendedRoute filteredIntendedRoute : filteredIntendedRoutes.values()) {
-            if (filteredIntendedRoute.getMmsi1().equals(mmsi) || 
-                    filteredIntendedRoute.getMmsi2().equals(mmsi)) {
-                result.add(filteredIntendedRoute);
+        Set<FilteredIntendedRouteKey> keys = mmsiIndex.get(mmsi);
+        if (keys != null) {
+            for (FilteredIntendedRouteKey key : keys) {
+                result.add(filteredIntendedRoutes.get(key));
             }
         }
         return result;
@@ -142,15 +164,13 @@ public class FilteredIntendedRoutes implements Serializable {
      */
     public synchronized Set<FilteredIntendedRoute> remove(Long mmsi) {
         Set<FilteredIntendedRoute> result = new HashSet<>();
-        for(Iterator<Map.Entry<FilteredIntendedRouteKey, FilteredIntendedRoute>> it 
-                = filteredIntendedRoutes.entrySet().iterator(); it.hasNext(); ) {
-            FilteredIntendedRoute filteredIntendedRoute = it.next().getValue();
-            if(filteredIntendedRoute.getMmsi1().equals(mmsi) || 
-                    filteredIntendedRoute.getMmsi2().equals(mmsi)) {
-              it.remove();
-              result.add(filteredIntendedRoute);
+        Set<FilteredIntendedRouteKey> keys = mmsiIndex.remove(mmsi);
+        if (keys != null) {
+            for (FilteredIntendedRouteKey key : keys) {
+                result.add(filteredIntendedRoutes.remove(key));
+                unindex(key.getMmsi1().equals(mmsi) ? key.getMmsi2() : key.getMmsi1(), key);
             }
-          }
+        }
         return result;
     }
     
@@ -169,4 +189,33 @@ public class FilteredIntendedRoutes implements Serializable {
     public synchronized Collection<FilteredIntendedRoute> values() {
         return filteredIntendedRoutes.values();
     }    
+    
+    /**
+     * Adds the key to the index of the given MMSI
+     * @param mmsi the MMSI
+     * @param key the key to add
+     */
+    private void index(Long mmsi, FilteredIntendedRouteKey key) {
+        Set<FilteredIntendedRouteKey> keys = mmsiIndex.get(mmsi);
+        if (keys == null) {
+            keys = new HashSet<>();
+            mmsiIndex.put(mmsi, keys);
+        }
+        keys.add(key);
+    }
+    
+    /**
+     * Removes the key from the index of the given MMSI
+     * @param mmsi the MMSI
+     * @param key the key to remove
+     */
+    private void unindex(Long mmsi, FilteredIntendedRouteKey key) {
+        Set<FilteredIntendedRouteKey> keys = mmsiIndex.get(mmsi);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                mmsiIndex.remove(mmsi);
+            }
+        }
+    }
 }
@@ -0,0 +1,354 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import dk.dma.epd.common.prototype.model.route.ActiveRoute;
+import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteLeg;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+
+/**
+ * A flattened, time-stamped route leg used by the {@linkplain IntendedRouteTCPAEngine}.
+ * <p>
+ * The leg holds the way point positions and ETA's as primitives along with a
+ * bounding box expanded by the largest filter distance, so that two legs can only
+ * come within the filter distance of each other if their boxes intersect.
+ * <p>
+ * Between the two way points, the vessel is assumed to move linearly in latitude
+ * and longitude at the speed implied by the ETA's.
+ */
+public class IntendedRouteLeg {
+
+    /** Meters per degree of latitude */
+    static final double METERS_PER_DEGREE = 60.0 * 1852.0;
+
+    final Route route;
+    final Long mmsi;
+    final int wpIndex;
+
+    // Way point positions and ETA's in epoch millis
+    final double lat0, lon0, lat1, lon1;
+    final long eta0, eta1;
+
+    // The time interval considered, i.e. the leg clipped to the time window
+    final long t0, t1;
+
+    // Bounding box of the clipped leg expanded by the filter margin
+    final double minLat, maxLat, minLon, maxLon;
+
+    /**
+     * Constructor
+     */
+    IntendedRouteLeg(Route route, Long mmsi, int wpIndex, double lat0, double lon0, long eta0, double lat1, double lon1,
+            long eta1, long t0, long t1, double marginNm) {
+        this.route = route;
+        this.mmsi = mmsi;
+        this.wpIndex = wpIndex;
+        this.lat0 = lat0;
+        this.lon0 = lon0;
+        this.eta0 = eta0;
+        this.lat1 = lat1;
+        this.lon1 = lon1;
+        this.eta1 = eta1;
+        this.t0 = t0;
+        this.t1 = t1;
+
+        double startLat = latAt(t0), startLon = lonAt(t0);
+        double endLat = latAt(t1), endLon = lonAt(t1);
+        double marginLat = marginNm / 60.0;
+        double marginLon = marginLat / Math.max(0.01, Math.cos(Math.toRadians(Math.max(Math.abs(startLat), Math.abs(endLat)))));
+        this.minLat = Math.min(startLat, endLat) - marginLat;
+        this.maxLat = Math.max(startLat, endLat) + marginLat;
+        this.minLon = Math.min(startLon, endLon) - marginLon;
+        this.maxLon = Math.max(startLon, endLon) + marginLon;
+    }
+
+    /**
+     * Envelope constructor
+     */
+    private IntendedRouteLeg(IntendedRouteLeg leg, long t0, long t1, double minLat, double maxLat, double minLon, double maxLon) {
+        this.route = leg.route;
+        this.mmsi = leg.mmsi;
+        this.wpIndex = leg.wpIndex;
+        this.lat0 = leg.lat0;
+        this.lon0 = leg.lon0;
+        this.eta0 = leg.eta0;
+        this.lat1 = leg.lat1;
+        this.lon1 = leg.lon1;
+        this.eta1 = leg.eta1;
+        this.t0 = t0;
+        this.t1 = t1;
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+    }
+
+    /**
+     * Returns the fraction of the leg travelled at the given time
+     *
+     * @param time
+     *            the time in epoch millis
+     * @return the fraction of the leg travelled
+     */
+    double fraction(long time) {
+        if (eta1 <= eta0) {
+            return 0.0;
+        }
+        return (double) (time - eta0) / (double) (eta1 - eta0);
+    }
+
+    /**
+     * Returns the latitude of the vessel at the given time
+     *
+     * @param time
+     *            the time in epoch millis
+     * @return the latitude at the given time
+     */
+    double latAt(long time) {
+        return lat0 + (lat1 - lat0) * fraction(time);
+    }
+
+    /**
+     * Returns the longitude of the vessel at the given time
+     *
+     * @param time
+     *            the time in epoch millis
+     * @return the longitude at the given time
+     */
+    double lonAt(long time) {
+        return lon0 + (lon1 - lon0) * fraction(time);
+    }
+
+    /**
+     * Returns if the bounding box of this leg intersects that of the given leg
+     *
+     * @param leg
+     *            the leg to check
+     * @return if the bounding boxes intersect
+     */
+    boolean intersects(IntendedRouteLeg leg) {
+        return minLat <= leg.maxLat && leg.minLat <= maxLat && minLon <= leg.maxLon && leg.minLon <= maxLon;
+    }
+
+    /**
+     * Returns if the time interval of this leg overlaps that of the given leg
+     *
+     * @param leg
+     *            the leg to check
+     * @return if the time intervals overlap
+     */
+    boolean overlaps(IntendedRouteLeg leg) {
+        return t0 <= leg.t1 && leg.t0 <= t1;
+    }
+
+    /**
+     * Returns a leg-shaped envelope spanning both the time interval and
+     * the bounding box of this leg and the given leg.
+     * <p>
+     * The envelope is only useful for the {@linkplain #overlaps(IntendedRouteLeg)}
+     * and {@linkplain #intersects(IntendedRouteLeg)} checks.
+     *
+     * @param leg
+     *            the other leg
+     * @return the envelope of the two legs
+     */
+    IntendedRouteLeg union(IntendedRouteLeg leg) {
+        return new IntendedRouteLeg(this, Math.min(t0, leg.t0), Math.max(t1, leg.t1), Math.min(minLat, leg.minLat), Math.max(
+                maxLat, leg.maxLat), Math.min(minLon, leg.minLon), Math.max(maxLon, leg.maxLon));
+    }
+
+    /**
+     * Computes the time of closest approach between this leg and the given leg.
+     * <p>
+     * Within the common time interval of the legs, the relative motion is linear
+     * in a local equirectangular plane, so the closest approach is found
+     * analytically by minimizing the squared distance.
+     *
+     * @param leg
+     *            the other leg
+     * @return the time of closest approach in epoch millis, or -1 if the legs do not overlap in time
+     */
+    long timeOfClosestApproach(IntendedRouteLeg leg) {
+        long start = Math.max(t0, leg.t0);
+        long end = Math.min(t1, leg.t1);
+        if (start > end) {
+            return -1L;
+        }
+
+        double cosLat = Math.cos(Math.toRadians((lat0 + lat1 + leg.lat0 + leg.lat1) / 4.0));
+
+        // Relative position at the start of the interval
+        double dx = (lonAt(start) - leg.lonAt(start)) * cosLat;
+        double dy = latAt(start) - leg.latAt(start);
+
+        // Relative velocity in degrees per milli-second
+        double vx = (velocityLon() - leg.velocityLon()) * cosLat;
+        double vy = velocityLat() - leg.velocityLat();
+
+        double vv = vx * vx + vy * vy;
+        if (vv == 0.0) {
+            return start;
+        }
+        double tau = -(dx * vx + dy * vy) / vv;
+        tau = Math.max(0.0, Math.min(tau, end - start));
+        return start + Math.round(tau);
+    }
+
+    /**
+     * Returns the planar distance in meters between this leg and the given leg at the given time
+     *
+     * @param leg
+     *            the other leg
+     * @param time
+     *            the time in epoch millis
+     * @return the distance in meters
+     */
+    double distanceTo(IntendedRouteLeg leg, long time) {
+        double lat = latAt(time), otherLat = leg.latAt(time);
+        double cosLat = Math.cos(Math.toRadians((lat + otherLat) / 2.0));
+        double dx = (lonAt(time) - leg.lonAt(time)) * cosLat;
+        double dy = lat - otherLat;
+        return Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE;
+    }
+
+    private double velocityLat() {
+        return (eta1 > eta0) ? (lat1 - lat0) / (eta1 - eta0) : 0.0;
+    }
+
+    private double velocityLon() {
+        return (eta1 > eta0) ? (lon1 - lon0) / (eta1 - eta0) : 0.0;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    public Long getMmsi() {
+        return mmsi;
+    }
+
+    public int getWpIndex() {
+        return wpIndex;
+    }
+
+    /**
+     * Splits the remaining part of the route into legs that fall within the given time window.
+     * <p>
+     * The leg leading to the active way point is included, since that is the leg
+     * the vessel is currently sailing.
+     *
+     * @param route
+     *            the route to split
+     * @param mmsi
+     *            the MMSI associated with the route
+     * @param from
+     *            the start of the time window in epoch millis
+     * @param to
+     *            the end of the time window in epoch millis
+     * @param marginNm
+     *            the margin in nautical miles by which to expand the leg bounding boxes
+     * @return the legs of the route within the time window
+     */
+    public static List<IntendedRouteLeg> createLegs(Route route, Long mmsi, long from, long to, double marginNm) {
+        List<IntendedRouteLeg> legs = new ArrayList<>();
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        List<Date> routeEtas = route.getEtas();
+        if (waypoints.size() < 2 || routeEtas == null || routeEtas.size() < waypoints.size()) {
+            return legs;
+        }
+
+        int activeWpIndex = getActiveWpIndex(route);
+        long[] etas = calcEtas(route, activeWpIndex);
+        if (etas == null) {
+            return legs;
+        }
+
+        for (int i = Math.max(activeWpIndex - 1, 0); i < waypoints.size() - 1; i++) {
+            long eta0 = etas[i];
+            long eta1 = etas[i + 1];
+            long t0 = Math.max(eta0, from);
+            long t1 = Math.min(eta1, to);
+            if (t0 > t1) {
+                if (eta0 > to) {
+                    break;
+                }
+                continue;
+            }
+            RouteWaypoint wp0 = waypoints.get(i);
+            RouteWaypoint wp1 = waypoints.get(i + 1);
+            legs.add(new IntendedRouteLeg(route, mmsi, i, wp0.getPos().getLatitude(), wp0.getPos().getLongitude(), eta0, wp1
+                    .getPos().getLatitude(), wp1.getPos().getLongitude(), eta1, t0, t1, marginNm));
+        }
+        return legs;
+    }
+
+    /**
+     * Returns the active way point index of the given route
+     *
+     * @param route
+     *            the route
+     * @return the active way point index
+     */
+    static int getActiveWpIndex(Route route) {
+        if (route instanceof IntendedRoute) {
+            return ((IntendedRoute) route).getActiveWpIndex();
+        } else if (route instanceof ActiveRoute) {
+            return ((ActiveRoute) route).getActiveWaypointIndex();
+        }
+        return 0;
+    }
+
+    /**
+     * Calculates the ETA's of all way points of the given route.
+     * <p>
+     * Way points after the active way point rely on the stored ETA's, whereas
+     * the ETA's before the active way point are calculated backwards using the leg speeds.
+     *
+     * @param route
+     *            the route
+     * @param activeWpIndex
+     *            the active way point index
+     * @return the ETA's in epoch millis, or null if undefined
+     */
+    static long[] calcEtas(Route route, int activeWpIndex) {
+        List<Date> routeEtas = route.getEtas();
+        List<RouteWaypoint> waypoints = route.getWaypoints();
+        long[] etas = new long[waypoints.size()];
+        for (int i = waypoints.size() - 1; i >= 0; i--) {
+            if (i >= activeWpIndex) {
+                Date eta = routeEtas.get(i);
+                if (eta == null) {
+                    return null;
+                }
+                etas[i] = eta.getTime();
+            } else {
+                RouteLeg leg = waypoints.get(i).getOutLeg();
+                if (leg == null || leg.getSpeed() <= 0.0) {
+                    etas[i] = etas[i + 1];
+                } else {
+                    // Range in nautical miles, speed in knots
+                    etas[i] = etas[i + 1] - (long) (leg.calcRng() / leg.getSpeed() * 3600000.0);
+                }
+            }
+        }
+        return etas;
+    }
+}
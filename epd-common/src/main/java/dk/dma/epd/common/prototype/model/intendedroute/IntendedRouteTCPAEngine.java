@@ -0,0 +1,435 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.intendedroute;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute.FilteredIntendedRouteKey;
+import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage.IntendedRouteFilterType;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Computes the closest points of approach between routes.
+ * <p>
+ * Routes are split into {@linkplain IntendedRouteLeg} legs, clipped to the time window
+ * between "now" and the look-ahead horizon. The legs are bucketed in a uniform lat/lon grid
+ * by their bounding box, and within each grid cell a sweep over the leg start times
+ * yields the leg pairs that overlap both in time and space. Each unordered leg pair
+ * is evaluated exactly once and the closest approach is solved analytically.
+ * <p>
+ * For each leg pair that comes within the filter distance, a single
+ * {@linkplain IntendedRouteFilterMessage} is generated at the time of closest approach.
+ */
+public class IntendedRouteTCPAEngine {
+
+    /** Default look-ahead horizon */
+    public static final long DEFAULT_HORIZON = 3 * 60 * 60 * 1000L; // 3 hours
+
+    /** Legs whose bounding box spans more grid cells than this are checked separately */
+    private static final int MAX_CELLS_PER_LEG = 1024;
+
+    private static final double MIN_CELL_SIZE = 0.05; // Degrees
+    private static final double MAX_CELL_SIZE = 2.0; // Degrees
+
+    private static final Comparator<IntendedRouteLeg> START_TIME_COMPARATOR = new Comparator<IntendedRouteLeg>() {
+        @Override
+        public int compare(IntendedRouteLeg leg1, IntendedRouteLeg leg2) {
+            return Long.compare(leg1.t0, leg2.t0);
+        }
+    };
+
+    private long horizon = DEFAULT_HORIZON;
+    private double filterDistance; // Nautical miles
+    private double encDistance; // Nautical miles
+    private double alertDistance; // Nautical miles
+
+    /**
+     * Sets the distance thresholds
+     *
+     * @param filterDistance
+     *            the filter distance in nautical miles
+     * @param encDistance
+     *            the ENC marker distance in nautical miles
+     * @param alertDistance
+     *            the alert distance in nautical miles
+     */
+    public synchronized void setDistances(double filterDistance, double encDistance, double alertDistance) {
+        this.filterDistance = filterDistance;
+        this.encDistance = encDistance;
+        this.alertDistance = alertDistance;
+    }
+
+    public synchronized long getHorizon() {
+        return horizon;
+    }
+
+    public synchronized void setHorizon(long horizon) {
+        this.horizon = horizon;
+    }
+
+    /**
+     * Returns the largest of the distance thresholds in nautical miles
+     *
+     * @return the largest of the distance thresholds
+     */
+    public synchronized double getMaxDistance() {
+        return Math.max(filterDistance, Math.max(encDistance, alertDistance));
+    }
+
+    /**
+     * Finds the TCPA's between two routes.
+     * <p>
+     * The order of the routes only determines the order of the MMSI's and positions
+     * in the result.
+     *
+     * @param route1
+     *            the first route
+     * @param mmsi1
+     *            the MMSI of the first route
+     * @param route2
+     *            the second route
+     * @param mmsi2
+     *            the MMSI of the second route
+     * @param now
+     *            the current time in epoch millis
+     * @return the filtered intended route containing the TCPA's
+     */
+    public FilteredIntendedRoute findTCPA(Route route1, Long mmsi1, Route route2, Long mmsi2, long now) {
+        FilteredIntendedRoute filteredIntendedRoute = new FilteredIntendedRoute(mmsi1, mmsi2);
+
+        double maxDistance = getMaxDistance();
+        long to = now + getHorizon();
+        List<IntendedRouteLeg> legs1 = IntendedRouteLeg.createLegs(route1, mmsi1, now, to, maxDistance);
+        List<IntendedRouteLeg> legs2 = IntendedRouteLeg.createLegs(route2, mmsi2, now, to, maxDistance);
+
+        // Both leg lists are sorted by time, so a merge-like sweep suffices
+        int start = 0;
+        for (IntendedRouteLeg leg1 : legs1) {
+            while (start < legs2.size() && legs2.get(start).t1 < leg1.t0) {
+                start++;
+            }
+            for (int j = start; j < legs2.size() && legs2.get(j).t0 <= leg1.t1; j++) {
+                IntendedRouteLeg leg2 = legs2.get(j);
+                if (leg1.intersects(leg2)) {
+                    checkLegs(filteredIntendedRoute, leg1, leg2);
+                }
+            }
+        }
+
+        sortMessages(filteredIntendedRoute);
+        return filteredIntendedRoute;
+    }
+
+    /**
+     * Finds the TCPA's between all pairs of the given routes.
+     * <p>
+     * Only pairs that come within the filter distance are returned, and each unordered pair
+     * is returned once, with the lowest MMSI as the first MMSI.
+     *
+     * @param routes
+     *            the routes indexed by MMSI
+     * @param now
+     *            the current time in epoch millis
+     * @return the filtered intended routes containing the TCPA's
+     */
+    public Collection<FilteredIntendedRoute> findTCPAs(Map<Long, ? extends Route> routes, long now) {
+        double maxDistance = getMaxDistance();
+        long to = now + getHorizon();
+
+        List<IntendedRouteLeg> legs = new ArrayList<>();
+        for (Map.Entry<Long, ? extends Route> entry : routes.entrySet()) {
+            legs.addAll(IntendedRouteLeg.createLegs(entry.getValue(), entry.getKey(), now, to, maxDistance));
+        }
+
+        Map<FilteredIntendedRouteKey, FilteredIntendedRoute> result = new HashMap<>();
+        findTCPAs(legs, result);
+
+        for (FilteredIntendedRoute filteredIntendedRoute : result.values()) {
+            sortMessages(filteredIntendedRoute);
+        }
+        return result.values();
+    }
+
+    /**
+     * Finds the TCPA's between the given route and all the other routes.
+     * <p>
+     * This is used for incremental updates, where only the pairs involving a single
+     * route need to be re-computed. Only pairs that come within the filter distance
+     * are returned, with the lowest MMSI as the first MMSI.
+     *
+     * @param mmsi
+     *            the MMSI of the route
+     * @param route
+     *            the route
+     * @param routes
+     *            the routes indexed by MMSI. The route itself is ignored if present
+     * @param now
+     *            the current time in epoch millis
+     * @return the filtered intended routes containing the TCPA's
+     */
+    public Collection<FilteredIntendedRoute> findTCPAs(Long mmsi, Route route, Map<Long, ? extends Route> routes, long now) {
+        double maxDistance = getMaxDistance();
+        long to = now + getHorizon();
+        List<IntendedRouteLeg> legs = IntendedRouteLeg.createLegs(route, mmsi, now, to, maxDistance);
+        List<FilteredIntendedRoute> result = new ArrayList<>();
+        if (legs.isEmpty()) {
+            return result;
+        }
+
+        // Bounding box and time interval of the entire route, used to skip routes quickly
+        IntendedRouteLeg bounds = legs.get(0);
+        for (IntendedRouteLeg leg : legs) {
+            bounds = bounds.union(leg);
+        }
+
+        for (Map.Entry<Long, ? extends Route> entry : routes.entrySet()) {
+            if (mmsi.equals(entry.getKey())) {
+                continue;
+            }
+            List<IntendedRouteLeg> otherLegs = IntendedRouteLeg.createLegs(entry.getValue(), entry.getKey(), now, to, maxDistance);
+            FilteredIntendedRoute filteredIntendedRoute = (mmsi < entry.getKey()) ? new FilteredIntendedRoute(mmsi,
+                    entry.getKey()) : new FilteredIntendedRoute(entry.getKey(), mmsi);
+            for (IntendedRouteLeg otherLeg : otherLegs) {
+                if (!bounds.overlaps(otherLeg) || !bounds.intersects(otherLeg)) {
+                    continue;
+                }
+                for (IntendedRouteLeg leg : legs) {
+                    if (leg.overlaps(otherLeg) && leg.intersects(otherLeg)) {
+                        if (mmsi < entry.getKey()) {
+                            checkLegs(filteredIntendedRoute, leg, otherLeg);
+                        } else {
+                            checkLegs(filteredIntendedRoute, otherLeg, leg);
+                        }
+                    }
+                }
+            }
+            if (filteredIntendedRoute.include()) {
+                sortMessages(filteredIntendedRoute);
+                result.add(filteredIntendedRoute);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Buckets the legs in a uniform grid and sweeps each grid cell for overlapping leg pairs
+     *
+     * @param legs
+     *            the legs to check
+     * @param result
+     *            the result map to update
+     */
+    private void findTCPAs(List<IntendedRouteLeg> legs, Map<FilteredIntendedRouteKey, FilteredIntendedRoute> result) {
+        if (legs.size() < 2) {
+            return;
+        }
+
+        double cellSize = computeCellSize(legs);
+        Map<Long, List<IntendedRouteLeg>> cells = new HashMap<>();
+        List<IntendedRouteLeg> oversized = new ArrayList<>();
+
+        for (IntendedRouteLeg leg : legs) {
+            int minX = cell(leg.minLon, cellSize), maxX = cell(leg.maxLon, cellSize);
+            int minY = cell(leg.minLat, cellSize), maxY = cell(leg.maxLat, cellSize);
+            if ((long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_LEG) {
+                oversized.add(leg);
+                continue;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    Long key = cellKey(x, y);
+                    List<IntendedRouteLeg> cellLegs = cells.get(key);
+                    if (cellLegs == null) {
+                        cellLegs = new ArrayList<>();
+                        cells.put(key, cellLegs);
+                    }
+                    cellLegs.add(leg);
+                }
+            }
+        }
+
+        // Sweep each cell in order of start time
+        for (Map.Entry<Long, List<IntendedRouteLeg>> entry : cells.entrySet()) {
+            List<IntendedRouteLeg> cellLegs = entry.getValue();
+            if (cellLegs.size() < 2) {
+                continue;
+            }
+            long key = entry.getKey();
+            Collections.sort(cellLegs, START_TIME_COMPARATOR);
+            for (int i = 0; i < cellLegs.size(); i++) {
+                IntendedRouteLeg leg1 = cellLegs.get(i);
+                for (int j = i + 1; j < cellLegs.size() && cellLegs.get(j).t0 <= leg1.t1; j++) {
+                    IntendedRouteLeg leg2 = cellLegs.get(j);
+                    // Only handle the pair in the cell holding the lower corner
+                    // of the box intersection, which ensures it is handled once
+                    if (!leg1.mmsi.equals(leg2.mmsi) && leg1.intersects(leg2)
+                            && key == cellKey(cell(Math.max(leg1.minLon, leg2.minLon), cellSize),
+                                    cell(Math.max(leg1.minLat, leg2.minLat), cellSize))) {
+                        checkLegs(result, leg1, leg2);
+                    }
+                }
+            }
+        }
+
+        // Check the oversized legs against all other legs
+        for (int i = 0; i < oversized.size(); i++) {
+            IntendedRouteLeg leg1 = oversized.get(i);
+            for (IntendedRouteLeg leg2 : legs) {
+                if (leg1 == leg2 || leg1.mmsi.equals(leg2.mmsi)) {
+                    continue;
+                }
+                // Pairs of oversized legs are checked once
+                int index = oversized.indexOf(leg2);
+                if (index >= 0 && index < i) {
+                    continue;
+                }
+                if (leg1.overlaps(leg2) && leg1.intersects(leg2)) {
+                    checkLegs(result, leg1, leg2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the two legs and adds a filter message to the result if they come within the filter distance
+     */
+    private void checkLegs(Map<FilteredIntendedRouteKey, FilteredIntendedRoute> result, IntendedRouteLeg leg1,
+            IntendedRouteLeg leg2) {
+        // Keep the lowest MMSI first
+        if (leg1.mmsi > leg2.mmsi) {
+            IntendedRouteLeg tmp = leg1;
+            leg1 = leg2;
+            leg2 = tmp;
+        }
+        IntendedRouteFilterMessage message = computeMessage(leg1, leg2);
+        if (message != null) {
+            FilteredIntendedRouteKey key = new FilteredIntendedRouteKey(leg1.mmsi, leg2.mmsi);
+            FilteredIntendedRoute filteredIntendedRoute = result.get(key);
+            if (filteredIntendedRoute == null) {
+                filteredIntendedRoute = new FilteredIntendedRoute(leg1.mmsi, leg2.mmsi);
+                result.put(key, filteredIntendedRoute);
+            }
+            filteredIntendedRoute.getFilterMessages().add(message);
+        }
+    }
+
+    /**
+     * Checks the two legs and adds a filter message to the filtered intended route if they come within the filter distance
+     */
+    private void checkLegs(FilteredIntendedRoute filteredIntendedRoute, IntendedRouteLeg leg1, IntendedRouteLeg leg2) {
+        IntendedRouteFilterMessage message = computeMessage(leg1, leg2);
+        if (message != null) {
+            filteredIntendedRoute.getFilterMessages().add(message);
+        }
+    }
+
+    /**
+     * Computes the closest point of approach between the two legs and returns a filter message, if it is within the filter
+     * distance.
+     *
+     * @param leg1
+     *            the first leg
+     * @param leg2
+     *            the second leg
+     * @return the filter message or null if the legs do not come within the filter distance
+     */
+    private IntendedRouteFilterMessage computeMessage(IntendedRouteLeg leg1, IntendedRouteLeg leg2) {
+        long time = leg1.timeOfClosestApproach(leg2);
+        if (time < 0) {
+            return null;
+        }
+
+        double distance = Converter.metersToNm(leg1.distanceTo(leg2, time));
+        double filterDistance, encDistance, alertDistance;
+        synchronized (this) {
+            filterDistance = this.filterDistance;
+            encDistance = this.encDistance;
+            alertDistance = this.alertDistance;
+        }
+
+        if (distance > encDistance && distance > alertDistance && distance > filterDistance) {
+            return null;
+        }
+
+        // Top level filter only, no msg or graphics
+        IntendedRouteFilterType filterType = IntendedRouteFilterType.FILTERONLY;
+        if (distance <= alertDistance && distance <= encDistance) {
+            // We want both
+            filterType = IntendedRouteFilterType.ALERTANDENC;
+        } else if (distance <= alertDistance) {
+            // We want an alert
+            filterType = IntendedRouteFilterType.ALERT;
+        } else if (distance <= encDistance) {
+            // We want an ENC graphics but no warning
+            filterType = IntendedRouteFilterType.ENC;
+        }
+
+        Position position1 = Position.create(leg1.latAt(time), leg1.lonAt(time));
+        Position position2 = Position.create(leg2.latAt(time), leg2.lonAt(time));
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        IntendedRouteFilterMessage message = new IntendedRouteFilterMessage(leg1.route, leg2.route, position1, position2,
+                "TCPA Warning, proxmity of " + df.format(distance) + " nautical miles ", leg1.wpIndex, leg2.wpIndex, filterType);
+        message.setTime1(new DateTime(time));
+        message.setTime2(new DateTime(time));
+        return message;
+    }
+
+    /**
+     * Sorts the filter messages of the filtered intended route by time
+     *
+     * @param filteredIntendedRoute
+     *            the filtered intended route
+     */
+    private static void sortMessages(FilteredIntendedRoute filteredIntendedRoute) {
+        Collections.sort(filteredIntendedRoute.getFilterMessages(), new Comparator<IntendedRouteFilterMessage>() {
+            @Override
+            public int compare(IntendedRouteFilterMessage msg1, IntendedRouteFilterMessage msg2) {
+                return msg1.getTime1().compareTo(msg2.getTime1());
+            }
+        });
+    }
+
+    /**
+     * Computes a grid cell size from the average extent of the leg bounding boxes
+     */
+    private static double computeCellSize(List<IntendedRouteLeg> legs) {
+        double extent = 0.0;
+        for (IntendedRouteLeg leg : legs) {
+            extent += Math.max(leg.maxLat - leg.minLat, leg.maxLon - leg.minLon);
+        }
+        extent /= legs.size();
+        return Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, extent));
+    }
+
+    private static int cell(double value, double cellSize) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
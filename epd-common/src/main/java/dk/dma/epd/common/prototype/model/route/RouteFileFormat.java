@@ -0,0 +1,331 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.model.route.Route.EtaCalculationType;
+import dk.frv.enav.common.xml.metoc.MetocDataTypes;
+
+/**
+ * Compact, versioned binary format of the routes file.
+ * <p>
+ * Only the route definitions are stored. METOC forecasts are requested again, and the
+ * calculated TTG's, DTG's and ETA's are recalculated when the routes are read. Subclasses of
+ * {@linkplain Route}, e.g. search pattern routes, carry state of their own and are stored
+ * with Java serialization.
+ * <p>
+ * The file starts with {@linkplain #MAGIC} and {@linkplain #VERSION}, so older files in
+ * the Java serialization format can be told apart and read by the legacy code path.
+ */
+public final class RouteFileFormat {
+
+    /** "EPDR" */
+    public static final int MAGIC = 0x45504452;
+    public static final int VERSION = 2;
+
+    /** Type tags of the routes, since version 2 */
+    private static final byte PLAIN_ROUTE = 0;
+    private static final byte SERIALIZED_ROUTE = 1;
+
+    private final List<Route> routes;
+    private final int activeRouteIndex;
+
+    /**
+     * Constructor
+     *
+     * @param routes
+     *            the routes
+     * @param activeRouteIndex
+     *            the index of the active route, or -1
+     */
+    public RouteFileFormat(List<Route> routes, int activeRouteIndex) {
+        this.routes = routes;
+        this.activeRouteIndex = activeRouteIndex;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public int getActiveRouteIndex() {
+        return activeRouteIndex;
+    }
+
+    /**
+     * Encodes the routes. Called with the route manager locked, so it only touches memory
+     *
+     * @return the encoded routes
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(activeRouteIndex);
+            out.writeInt(routes.size());
+            for (Route route : routes) {
+                writeRoute(out, route);
+            }
+        } catch (IOException e) {
+            // Not thrown by a byte array stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the routes file
+     *
+     * @param file
+     *            the routes file
+     * @return the routes, or null if the file is not in this format
+     */
+    public static RouteFileFormat read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads routes from the stream
+     *
+     * @param input
+     *            the stream to read from
+     * @return the routes, or null if the stream is not in this format
+     */
+    public static RouteFileFormat read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            return null;
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported routes file version: " + version);
+        }
+        int activeRouteIndex = in.readInt();
+        int count = in.readInt();
+        List<Route> routes = new LinkedList<>();
+        for (int i = 0; i < count; i++) {
+            byte type = version < 2 ? PLAIN_ROUTE : in.readByte();
+            if (type == PLAIN_ROUTE) {
+                routes.add(readRoute(in));
+            } else if (type == SERIALIZED_ROUTE) {
+                routes.add(readSerializedRoute(in));
+            } else {
+                throw new IOException("Unknown route type: " + type);
+            }
+        }
+        return new RouteFileFormat(routes, activeRouteIndex);
+    }
+
+    private static void writeRoute(DataOutputStream out, Route route) throws IOException {
+        if (route.getClass() != Route.class) {
+            out.writeByte(SERIALIZED_ROUTE);
+            writeSerializedRoute(out, route);
+            return;
+        }
+        out.writeByte(PLAIN_ROUTE);
+        writeString(out, route.name);
+        writeString(out, route.departure);
+        writeString(out, route.destination);
+        out.writeBoolean(route.visible);
+        out.writeLong(route.starttime == null ? Long.MIN_VALUE : route.starttime.getTime());
+        out.writeBoolean(route.safeHaven);
+        out.writeBoolean(route.stccApproved);
+        out.writeLong(route.strategicRouteId);
+        writeString(out, route.etaCalculationType == null ? null : route.etaCalculationType.name());
+        writeMetocSettings(out, route.routeMetocSettings);
+
+        List<RouteWaypoint> waypoints = route.waypoints;
+        out.writeInt(waypoints.size());
+        for (int i = 0; i < waypoints.size(); i++) {
+            RouteWaypoint waypoint = waypoints.get(i);
+            writeString(out, waypoint.name);
+            out.writeDouble(waypoint.pos.getLatitude());
+            out.writeDouble(waypoint.pos.getLongitude());
+            writeDouble(out, waypoint.turnRad);
+            writeDouble(out, waypoint.rot);
+
+            RouteLeg leg = waypoint.outLeg;
+            out.writeBoolean(leg != null);
+            if (leg != null) {
+                out.writeDouble(leg.speed);
+                writeString(out, leg.heading == null ? null : leg.heading.name());
+                writeDouble(out, leg.xtdStarboard);
+                writeDouble(out, leg.xtdPort);
+                out.writeDouble(leg.SFLen);
+                // Whether the leg ends at the next waypoint
+                out.writeBoolean(i + 1 < waypoints.size() && leg.endWp == waypoints.get(i + 1));
+            }
+        }
+    }
+
+    private static Route readRoute(DataInputStream in) throws IOException {
+        Route route = new Route();
+        route.name = readString(in);
+        route.departure = readString(in);
+        route.destination = readString(in);
+        route.visible = in.readBoolean();
+        long starttime = in.readLong();
+        route.starttime = starttime == Long.MIN_VALUE ? null : new Date(starttime);
+        route.safeHaven = in.readBoolean();
+        route.stccApproved = in.readBoolean();
+        route.strategicRouteId = in.readLong();
+        String etaCalculationType = readString(in);
+        route.etaCalculationType = etaCalculationType == null ? null : EtaCalculationType.valueOf(etaCalculationType);
+        route.routeMetocSettings = readMetocSettings(in);
+
+        int count = in.readInt();
+        LinkedList<RouteWaypoint> waypoints = new LinkedList<>();
+        List<RouteLeg> linkedLegs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            RouteWaypoint waypoint = new RouteWaypoint();
+            waypoint.name = readString(in);
+            waypoint.pos = Position.create(in.readDouble(), in.readDouble());
+            waypoint.turnRad = readDouble(in);
+            waypoint.rot = readDouble(in);
+
+            // Link the leg of the previous waypoint that ends here
+            RouteLeg inLeg = i > 0 ? linkedLegs.get(i - 1) : null;
+            if (inLeg != null) {
+                inLeg.endWp = waypoint;
+                waypoint.inLeg = inLeg;
+            }
+
+            RouteLeg leg = null;
+            boolean linked = false;
+            if (in.readBoolean()) {
+                leg = new RouteLeg();
+                leg.speed = in.readDouble();
+                String heading = readString(in);
+                leg.heading = heading == null ? null : Heading.valueOf(heading);
+                leg.xtdStarboard = readDouble(in);
+                leg.xtdPort = readDouble(in);
+                leg.SFLen = in.readDouble();
+                linked = in.readBoolean();
+                leg.startWp = waypoint;
+                waypoint.outLeg = leg;
+            }
+            linkedLegs.add(linked ? leg : null);
+            waypoints.add(waypoint);
+        }
+        route.waypoints = waypoints;
+
+        if (count > 0) {
+            route.calcValues(true);
+        }
+        return route;
+    }
+
+    private static void writeSerializedRoute(DataOutputStream out, Route route) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(route);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static Route readSerializedRoute(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Route) objectIn.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Failed to read route: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeMetocSettings(DataOutputStream out, RouteMetocSettings settings) throws IOException {
+        out.writeBoolean(settings != null);
+        if (settings == null) {
+            return;
+        }
+        out.writeBoolean(settings.isShowRouteMetoc());
+        out.writeInt(settings.getInterval());
+        Set<MetocDataTypes> dataTypes = settings.getDataTypes();
+        out.writeInt(dataTypes == null ? 0 : dataTypes.size());
+        if (dataTypes != null) {
+            for (MetocDataTypes dataType : dataTypes) {
+                out.writeUTF(dataType.name());
+            }
+        }
+        writeDouble(out, settings.getWindWarnLimit());
+        writeDouble(out, settings.getCurrentWarnLimit());
+        writeDouble(out, settings.getWaveWarnLimit());
+        writeString(out, settings.getProvider());
+    }
+
+    private static RouteMetocSettings readMetocSettings(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        RouteMetocSettings settings = new RouteMetocSettings();
+        settings.setShowRouteMetoc(in.readBoolean());
+        settings.setInterval(in.readInt());
+        int count = in.readInt();
+        Set<MetocDataTypes> dataTypes = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            dataTypes.add(MetocDataTypes.valueOf(in.readUTF()));
+        }
+        settings.setDataTypes(dataTypes);
+        settings.setWindWarnLimit(readDouble(in));
+        settings.setCurrentWarnLimit(readDouble(in));
+        settings.setWaveWarnLimit(readDouble(in));
+        settings.setProvider(readString(in));
+        return settings;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+}
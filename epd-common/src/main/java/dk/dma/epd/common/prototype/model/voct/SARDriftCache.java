@@ -0,0 +1,231 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.util.Calculator;
+import dk.dma.epd.common.util.Converter;
+
+/**
+ * Memoizes the drift of a search object over a single weather interval.
+ * <p>
+ * The drift over an interval only depends on the starting position and the
+ * current and leeway vectors of the interval. Since each interval starts where the
+ * previous one ended, changing a weather point only misses the cache from that
+ * interval onwards, and projections to later times only recompute the last interval.
+ */
+@ThreadSafe
+public class SARDriftCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @GuardedBy("this")
+    private final LinkedHashMap<Key, Drift> cache;
+
+    /**
+     * Constructor
+     * 
+     * @param capacity
+     *            the maximum number of memoized intervals
+     */
+    public SARDriftCache(final int capacity) {
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Key, Drift>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Drift> eldest) {
+                return size() > SARDriftCache.this.capacity;
+            }
+        };
+    }
+
+    public SARDriftCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the drift over an interval
+     * 
+     * @param start
+     *            the position at the start of the interval
+     * @param twcHeading
+     *            the heading of the total water current
+     * @param currentNm
+     *            the distance drifted by the current in nautical miles
+     * @param downWind
+     *            the down wind heading
+     * @param leewayNm
+     *            the distance drifted by the leeway in nautical miles
+     * @param leewayDivergence
+     *            the leeway divergence in degrees, or {@code Double.NaN} if the divergence positions are not needed
+     * @return the drift over the interval
+     */
+    public Drift drift(Position start, double twcHeading, double currentNm, double downWind, double leewayNm,
+            double leewayDivergence) {
+        Key key = new Key(start, twcHeading, currentNm, downWind, leewayNm, leewayDivergence);
+        Drift drift;
+        synchronized (this) {
+            drift = cache.get(key);
+        }
+        if (drift != null) {
+            hits.incrementAndGet();
+            return drift;
+        }
+        misses.incrementAndGet();
+
+        Position current = Calculator.findPosition(start, twcHeading, Converter.nmToMeters(currentNm));
+        Position downWindPos = Calculator.findPosition(current, downWind, Converter.nmToMeters(leewayNm));
+        Position min = null;
+        Position max = null;
+        if (!Double.isNaN(leewayDivergence)) {
+            min = Calculator.findPosition(current, downWind - leewayDivergence, Converter.nmToMeters(leewayNm));
+            max = Calculator.findPosition(current, downWind + leewayDivergence, Converter.nmToMeters(leewayNm));
+        }
+        drift = new Drift(current, downWindPos, min, max);
+        synchronized (this) {
+            cache.put(key, drift);
+        }
+        return drift;
+    }
+
+    /**
+     * Removes all memoized intervals
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The positions at the end of an interval
+     */
+    @Immutable
+    public static final class Drift {
+        private final Position current;
+        private final Position downWind;
+        private final Position min;
+        private final Position max;
+
+        Drift(Position current, Position downWind, Position min, Position max) {
+            this.current = current;
+            this.downWind = downWind;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Returns the position after drifting with the current only
+         */
+        public Position getCurrent() {
+            return current;
+        }
+
+        /**
+         * Returns the position after drifting with the current and the down wind leeway
+         */
+        public Position getDownWind() {
+            return downWind;
+        }
+
+        /**
+         * Returns the position with the leeway divergence subtracted, or null if no divergence was given
+         */
+        public Position getMin() {
+            return min;
+        }
+
+        /**
+         * Returns the position with the leeway divergence added, or null if no divergence was given
+         */
+        public Position getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * The inputs of an interval
+     */
+    @Immutable
+    private static final class Key {
+        final double lat;
+        final double lon;
+        final double twcHeading;
+        final double currentNm;
+        final double downWind;
+        final double leewayNm;
+        final double leewayDivergence;
+        final int hash;
+
+        Key(Position start, double twcHeading, double currentNm, double downWind, double leewayNm, double leewayDivergence) {
+            this.lat = start.getLatitude();
+            this.lon = start.getLongitude();
+            this.twcHeading = twcHeading;
+            this.currentNm = currentNm;
+            this.downWind = downWind;
+            this.leewayNm = leewayNm;
+            this.leewayDivergence = leewayDivergence;
+            int h = 17;
+            for (double d : new double[] { lat, lon, twcHeading, currentNm, downWind, leewayNm, leewayDivergence }) {
+                long bits = Double.doubleToLongBits(d);
+                h = 31 * h + (int) (bits ^ (bits >>> 32));
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return hash == k.hash && same(lat, k.lat) && same(lon, k.lon) && same(twcHeading, k.twcHeading)
+                    && same(currentNm, k.currentNm) && same(downWind, k.downWind) && same(leewayNm, k.leewayNm)
+                    && same(leewayDivergence, k.leewayDivergence);
+        }
+
+        private static boolean same(double a, double b) {
+            return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+        }
+    }
+}
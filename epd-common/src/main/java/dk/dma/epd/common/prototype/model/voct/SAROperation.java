@@ -15,8 +15,16 @@
 package dk.dma.epd.common.prototype.model.voct;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.joda.time.DateTime;
 
@@ -26,9 +34,11 @@ import com.bbn.openmap.geo.Intersection;
 import dk.dma.enav.model.geometry.CoordinateSystem;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
+import dk.dma.epd.common.prototype.model.voct.sardata.ContainmentGrid;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
 import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
@@ -48,6 +58,24 @@ import dk.dma.epd.common.util.ParseUtils;
  */
 public class SAROperation {
 
+    /** Pool running independent calculations, such as the future projections, in parallel */
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    /** Drift over the weather intervals, shared by all operations */
+    private static final SARDriftCache DRIFT_CACHE = new SARDriftCache();
+
+    /** Relative standard deviation of the current and wind speeds of the Monte Carlo particles */
+    static final double PARTICLE_SPEED_DEVIATION = 0.2;
+
+    /** Standard deviation in degrees of the current and down wind headings of the Monte Carlo particles */
+    static final double PARTICLE_HEADING_DEVIATION = 10.0;
+
+    /** Number of cells along the longest side of the probability-of-containment grid */
+    static final int CONTAINMENT_GRID_CELLS = 64;
+
+    /** Number of Monte Carlo particles simulated by each task */
+    private static final int PARTICLES_PER_TASK = 2500;
+
     SAR_TYPE operationType;
 
     // // Time of Last known position
@@ -105,16 +133,24 @@ public class SAROperation {
         // Create a datumpoint for each
         List<DatumPointData> datumPoints = data.getDatumPointDataSets();
 
+        // The datum points are independent and calculated in parallel
+        List<Callable<DatumPointData>> tasks = new ArrayList<>();
         for (int i = 0; i < datumPoints.size(); i++) {
 
-            DatumPointData datumPointData = datumPoints.get(i);
+            final DatumPointData datumPointData = datumPoints.get(i);
 
             double difference = (double) (datumPointData.getCSSDate().getMillis() - datumPointData.getLKPDate().getMillis()) / 60 / 60 / 1000;
 
             datumPointData.setTimeElasped(difference);
 
-            datumPoint(datumPointData);
+            tasks.add(new Callable<DatumPointData>() {
+                @Override
+                public DatumPointData call() {
+                    return datumPoint(datumPointData);
+                }
+            });
         }
+        invokeAll(tasks);
 
         // System.out.println("Did we get something calculated?");
 
@@ -147,6 +183,15 @@ public class SAROperation {
 
     }
 
+    public MonteCarloData startMonteCarloCalculations(MonteCarloData data) {
+
+        double difference = (double) (data.getCSSDate().getMillis() - data.getLKPDate().getMillis()) / 60 / 60 / 1000;
+
+        data.setTimeElasped(difference);
+
+        return monteCarlo(data);
+    }
+
     public DatumPointData startDatumPointCalculations(DatumPointData data) {
 //        System.out.println("Starting Datum Point with the following parameters");
 //        System.out.println("Time of Last known position: " + data.getLKPDate());
@@ -161,19 +206,31 @@ public class SAROperation {
         return datumPoint(data);
     }
 
-    public List<SARData> sarFutureCalculations(SARData data) {
-        List<SARData> futureDataList = new ArrayList<SARData>();
+    /**
+     * Calculates the SAR data 30 minutes to 4 hours ahead, in steps of 30 minutes.
+     * <p>
+     * The projections are calculated in parallel. Only the last weather interval differs
+     * between them, the drift over the other intervals is taken from the drift cache
+     * 
+     * @param data
+     *            the SAR data to project
+     * @return the projected SAR data
+     */
+    public List<SARData> sarFutureCalculations(final SARData data) {
+        List<Callable<SARData>> tasks = new ArrayList<>();
 
         if (operationType == SAR_TYPE.RAPID_RESPONSE) {
 
             for (int i = 1; i < 9; i++) {
 
-                int additionalTime = i * 30;
-
-                futureDataList.add(rapidResponse(new RapidResponseData((RapidResponseData) data, additionalTime)));
-
-//                System.out.println("Additional Time: " + additionalTime + " minutes");
+                final int additionalTime = i * 30;
 
+                tasks.add(new Callable<SARData>() {
+                    @Override
+                    public SARData call() {
+                        return rapidResponse(new RapidResponseData((RapidResponseData) data, additionalTime));
+                    }
+                });
             }
 
         }
@@ -182,17 +239,78 @@ public class SAROperation {
 
             for (int i = 1; i < 9; i++) {
 
-                int additionalTime = i * 30;
+                final int additionalTime = i * 30;
 
-                futureDataList.add(datumPoint(new DatumPointData((DatumPointData) data, additionalTime)));
+                tasks.add(new Callable<SARData>() {
+                    @Override
+                    public SARData call() {
+                        return datumPoint(new DatumPointData((DatumPointData) data, additionalTime));
+                    }
+                });
+            }
 
-//                System.out.println("Additional Time: " + additionalTime + " minutes");
+        }
 
+        if (operationType == SAR_TYPE.MONTE_CARLO) {
+
+            for (int i = 1; i < 9; i++) {
+
+                final int additionalTime = i * 30;
+
+                tasks.add(new Callable<SARData>() {
+                    @Override
+                    public SARData call() {
+                        return monteCarlo(new MonteCarloData((MonteCarloData) data, additionalTime));
+                    }
+                });
             }
 
         }
 
-        return futureDataList;
+        return invokeAll(tasks);
+    }
+
+    /**
+     * Runs the tasks in parallel and returns their results in order
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            try {
+                results.add(tasks.get(0).call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return results;
+        }
+        try {
+            for (Future<T> future : POOL.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during SAR calculations", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Returns the cache of the drift over the weather intervals
+     * 
+     * @return the drift cache
+     */
+    public static SARDriftCache getDriftCache() {
+        return DRIFT_CACHE;
     }
 
     private double searchObjectValue(int searchObject, double LWKnots) {
@@ -362,8 +480,10 @@ public class SAROperation {
                 startingLocation = datumPositionsDownWind.get(i - 1);
             }
 
-            Position currentPos = Calculator.findPosition(startingLocation, weatherObject.getTWCHeading(),
-                    Converter.nmToMeters(currentTWC));
+            SARDriftCache.Drift drift = DRIFT_CACHE.drift(startingLocation, weatherObject.getTWCHeading(), currentTWC,
+                    weatherObject.getDownWind(), leeway, leewayDivergence);
+
+            Position currentPos = drift.getCurrent();
 
             currentPositions.add(currentPos);
 
@@ -373,22 +493,19 @@ public class SAROperation {
             // Temp
             data.setWtc(currentPos);
 
-            Position windPosDownWind = Calculator.findPosition(currentPos, weatherObject.getDownWind(),
-                    Converter.nmToMeters(leeway));
+            Position windPosDownWind = drift.getDownWind();
 
             datumPositionsDownWind.add(windPosDownWind);
 
             // data.setDatumDownWind(windPosDownWind);
 
-            Position windPosMin = Calculator.findPosition(currentPos, weatherObject.getDownWind() - leewayDivergence,
-                    Converter.nmToMeters(leeway));
+            Position windPosMin = drift.getMin();
 
             datumPositionsMin.add(windPosMin);
 
             // data.setDatumMin(windPosMin);
 
-            Position windPosMax = Calculator.findPosition(currentPos, weatherObject.getDownWind() + leewayDivergence,
-                    Converter.nmToMeters(leeway));
+            Position windPosMax = drift.getMax();
 
             datumPositionsMax.add(windPosMax);
 
@@ -1658,15 +1775,17 @@ public class SAROperation {
                 startingLocation = datumPositions.get(i - 1);
             }
 
-            Position currentPos = Calculator.findPosition(startingLocation, weatherObject.getTWCHeading(),
-                    Converter.nmToMeters(currentTWC));
+            SARDriftCache.Drift drift = DRIFT_CACHE.drift(startingLocation, weatherObject.getTWCHeading(), currentTWC,
+                    weatherObject.getDownWind(), leeway, Double.NaN);
+
+            Position currentPos = drift.getCurrent();
 
             currentPositions.add(currentPos);
 
 //            System.out.println("Current is: " + currentPos.getLatitude());
 //            System.out.println("Current is: " + currentPos.getLongitude());
 
-            Position windPos = Calculator.findPosition(currentPos, weatherObject.getDownWind(), Converter.nmToMeters(leeway));
+            Position windPos = drift.getDownWind();
 
             datumPositions.add(windPos);
 
@@ -1760,6 +1879,128 @@ public class SAROperation {
         return data;
     }
 
+    /**
+     * Simulates the drift of the particles of a Monte Carlo operation.
+     * <p>
+     * Each particle starts at the LKP, displaced by the initial position error, taken as a two-sigma error.
+     * For each weather interval, the current and wind speeds and headings of the particle are perturbed, and
+     * the leeway is diverged to either side of down wind. The particles are advanced in a local flat projection
+     * around the LKP, in parallel tasks with their own seeded random generators, so a given seed gives the same
+     * result.
+     * <p>
+     * The deterministic rapid response drift is calculated as well, for the drift vectors and the orientation of
+     * the search area.
+     */
+    private MonteCarloData monteCarlo(final MonteCarloData data) {
+
+        rapidResponse(data);
+
+        final List<SARWeatherData> weatherPoints = data.getWeatherPoints();
+        final double[] validFor = weatherPointsValidFor(data);
+        final double leewayDivergence = searchObjectValue(data.getSearchObject());
+        final double positionDeviation = data.getX() / 2;
+
+        final int particleCount = data.getParticleCount();
+        final double[] east = new double[particleCount];
+        final double[] north = new double[particleCount];
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        final int taskCount = Math.max(1, particleCount / PARTICLES_PER_TASK);
+        for (int t = 0; t < taskCount; t++) {
+            final int from = (int) ((long) particleCount * t / taskCount);
+            final int to = (int) ((long) particleCount * (t + 1) / taskCount);
+            final Random random = new Random(data.getSeed() + t);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int p = from; p < to; p++) {
+                        double e = random.nextGaussian() * positionDeviation;
+                        double n = random.nextGaussian() * positionDeviation;
+
+                        for (int i = 0; i < validFor.length; i++) {
+                            SARWeatherData weather = weatherPoints.get(i);
+
+                            double currentSpeed = weather.getTWCknots()
+                                    * Math.max(0.0, 1.0 + PARTICLE_SPEED_DEVIATION * random.nextGaussian());
+                            double currentHeading = Math.toRadians(weather.getTWCHeading() + PARTICLE_HEADING_DEVIATION
+                                    * random.nextGaussian());
+                            e += currentSpeed * validFor[i] * Math.sin(currentHeading);
+                            n += currentSpeed * validFor[i] * Math.cos(currentHeading);
+
+                            double windSpeed = weather.getLWknots()
+                                    * Math.max(0.0, 1.0 + PARTICLE_SPEED_DEVIATION * random.nextGaussian());
+                            double leeway = Math.max(0.0, searchObjectValue(data.getSearchObject(), windSpeed)) * validFor[i];
+                            double downWind = Math.toRadians(weather.getDownWind() + PARTICLE_HEADING_DEVIATION
+                                    * random.nextGaussian() + (2 * random.nextDouble() - 1) * leewayDivergence);
+                            e += leeway * Math.sin(downWind);
+                            n += leeway * Math.cos(downWind);
+                        }
+                        east[p] = e;
+                        north[p] = n;
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        // The datum is the centre of the particles
+        double meanEast = 0;
+        double meanNorth = 0;
+        for (int p = 0; p < particleCount; p++) {
+            meanEast += east[p];
+            meanNorth += north[p];
+        }
+        meanEast /= particleCount;
+        meanNorth /= particleCount;
+
+        Position lkp = data.getLKP();
+        double cosLat = Math.cos(Math.toRadians(lkp.getLatitude()));
+        Position datum = Position.create(lkp.getLatitude() + meanNorth / 60.0, lkp.getLongitude() + meanEast / (60.0 * cosLat));
+
+        // The radius holds the containment level of the particles, plus the SRU navigational error
+        double[] distances = new double[particleCount];
+        for (int p = 0; p < particleCount; p++) {
+            distances[p] = Math.hypot(east[p] - meanEast, north[p] - meanNorth);
+        }
+        Arrays.sort(distances);
+        int index = Math.min(particleCount - 1, (int) Math.ceil(data.getContainmentLevel() * particleCount) - 1);
+        double radius = (distances[Math.max(0, index)] + data.getY()) * data.getSafetyFactor();
+
+        data.setDatum(datum);
+        data.setRadius(radius);
+        findRapidResponseBox(datum, radius, data);
+
+        // Probability-of-containment grid
+        double extent = Math.max(distances[particleCount - 1] * 2, 0.01);
+        data.setContainmentGrid(ContainmentGrid.create(lkp, east, north, extent / CONTAINMENT_GRID_CELLS));
+
+        return data;
+    }
+
+    /**
+     * Returns the number of hours each weather point applies, from the LKP to the CSS
+     */
+    private static double[] weatherPointsValidFor(SARData data) {
+        List<SARWeatherData> weatherPoints = data.getWeatherPoints();
+        double[] validFor = new double[weatherPoints.size()];
+        DateTime startTime = data.getLKPDate();
+        for (int i = 0; i < weatherPoints.size(); i++) {
+            if (i == weatherPoints.size() - 1) {
+                // It's the last one - let it last the remainder
+                validFor[i] = (double) (data.getCSSDate().getMillis() - startTime.getMillis()) / 60 / 60 / 1000;
+            } else {
+                DateTime current = weatherPoints.get(i).getDateTime();
+                if (current.isBefore(data.getLKPDate())) {
+                    current = data.getLKPDate();
+                }
+                startTime = weatherPoints.get(i + 1).getDateTime();
+                validFor[i] = (double) (startTime.getMillis() - current.getMillis()) / 60 / 60 / 1000;
+            }
+        }
+        return validFor;
+    }
+
     public static void findRapidResponseBox(Position datum, double radius, RapidResponseData data) {
         // Search box
         // The box is square around the circle, with center point at datum
@@ -1848,6 +2089,71 @@ public class SAROperation {
 
         }
 
+        if (data instanceof MonteCarloData) {
+            // Drop the allocations of a previous calculation
+            ((MonteCarloData) data).clearAllocations();
+            if (((MonteCarloData) data).getContainmentGrid() != null) {
+                allocateEffort((MonteCarloData) data);
+            }
+        }
+
+    }
+
+    /**
+     * Places the effective area of each SRU, largest first, where it covers the most probability of
+     * containment. The probability of the cells covered by an SRU is reduced by its PoD before placing
+     * the next, so the SRUs spread out over the most likely areas.
+     * <p>
+     * The areas are squares, aligned with the grid. A summed-area table of the remaining probability
+     * is used to evaluate all placements of an area in a single pass over the grid.
+     */
+    private void allocateEffort(MonteCarloData data) {
+        ContainmentGrid grid = data.getContainmentGrid();
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        float[] remaining = grid.getProbabilities();
+
+        List<Entry<Long, EffortAllocationData>> entries = new ArrayList<>(data.getEffortAllocationData().entrySet());
+        Collections.sort(entries, new Comparator<Entry<Long, EffortAllocationData>>() {
+            @Override
+            public int compare(Entry<Long, EffortAllocationData> e1, Entry<Long, EffortAllocationData> e2) {
+                int result = Double.compare(e2.getValue().getEffectiveAreaSize(), e1.getValue().getEffectiveAreaSize());
+                return result != 0 ? result : Long.compare(e1.getKey(), e2.getKey());
+            }
+        });
+
+        for (Entry<Long, EffortAllocationData> entry : entries) {
+            EffortAllocationData effortAllocationData = entry.getValue();
+            double side = Math.sqrt(effortAllocationData.getEffectiveAreaSize());
+            int size = Math.max(1, (int) Math.round(side / grid.getCellSizeNm()));
+            int height = Math.min(size, rows);
+            int width = Math.min(size, cols);
+
+            double[] sums = ContainmentGrid.summedAreaTable(remaining, rows, cols);
+            double best = -1;
+            int bestRow = 0;
+            int bestCol = 0;
+            for (int row = 0; row + height <= rows; row++) {
+                for (int col = 0; col + width <= cols; col++) {
+                    double containment = ContainmentGrid.sum(sums, cols, row, col, height, width);
+                    if (containment > best) {
+                        best = containment;
+                        bestRow = row;
+                        bestCol = col;
+                    }
+                }
+            }
+
+            Position centre = grid.getPosition(bestRow + height / 2.0, bestCol + width / 2.0);
+            data.setAllocation(entry.getKey(), centre, best);
+
+            float miss = (float) (1.0 - effortAllocationData.getPod());
+            for (int row = bestRow; row < bestRow + height; row++) {
+                for (int col = bestCol; col < bestCol + width; col++) {
+                    remaining[row * cols + col] *= miss;
+                }
+            }
+        }
     }
 
     private double findS(double W, double PoD) {
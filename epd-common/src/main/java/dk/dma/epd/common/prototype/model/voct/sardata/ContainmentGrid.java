@@ -0,0 +1,221 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct.sardata;
+
+import java.io.Serializable;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Probability-of-containment grid of a Monte Carlo drift simulation.
+ * <p>
+ * The grid is north-up with square cells in a local flat projection around its origin,
+ * i.e. longitudes are scaled by the cosine of the origin latitude. The probability of a cell is the
+ * fraction of the simulated particles within the cell. A summed-area table gives the probability of
+ * containment of any rectangle of cells in constant time.
+ */
+public class ContainmentGrid implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double originLat;
+    private final double originLon;
+    private final double cosLat;
+    private final double cellSizeNm;
+    private final int rows;
+    private final int cols;
+    private final float[] probabilities;
+    private final double[] sums;
+
+    /**
+     * Constructor
+     * 
+     * @param origin
+     *            the south west corner of the grid
+     * @param cellSizeNm
+     *            the side of a cell in nautical miles
+     * @param rows
+     *            the number of rows, from south to north
+     * @param cols
+     *            the number of columns, from west to east
+     * @param probabilities
+     *            the probabilities of the cells, row by row
+     */
+    public ContainmentGrid(Position origin, double cellSizeNm, int rows, int cols, float[] probabilities) {
+        if (probabilities.length != rows * cols) {
+            throw new IllegalArgumentException("Expected " + rows * cols + " cells, got " + probabilities.length);
+        }
+        this.originLat = origin.getLatitude();
+        this.originLon = origin.getLongitude();
+        this.cosLat = Math.cos(Math.toRadians(originLat));
+        this.cellSizeNm = cellSizeNm;
+        this.rows = rows;
+        this.cols = cols;
+        this.probabilities = probabilities;
+        this.sums = summedAreaTable(probabilities, rows, cols);
+    }
+
+    /**
+     * Creates the grid of the given particles
+     * 
+     * @param lkp
+     *            the reference position of the particle offsets
+     * @param east
+     *            the eastward offsets of the particles from the reference position in nautical miles
+     * @param north
+     *            the northward offsets of the particles from the reference position in nautical miles
+     * @param cellSizeNm
+     *            the side of a cell in nautical miles
+     * @return the grid
+     */
+    public static ContainmentGrid create(Position lkp, double[] east, double[] north, double cellSizeNm) {
+        double minEast = Double.MAX_VALUE;
+        double maxEast = -Double.MAX_VALUE;
+        double minNorth = Double.MAX_VALUE;
+        double maxNorth = -Double.MAX_VALUE;
+        for (int i = 0; i < east.length; i++) {
+            minEast = Math.min(minEast, east[i]);
+            maxEast = Math.max(maxEast, east[i]);
+            minNorth = Math.min(minNorth, north[i]);
+            maxNorth = Math.max(maxNorth, north[i]);
+        }
+        int cols = (int) ((maxEast - minEast) / cellSizeNm) + 1;
+        int rows = (int) ((maxNorth - minNorth) / cellSizeNm) + 1;
+
+        float[] probabilities = new float[rows * cols];
+        float weight = 1.0f / east.length;
+        for (int i = 0; i < east.length; i++) {
+            int col = (int) ((east[i] - minEast) / cellSizeNm);
+            int row = (int) ((north[i] - minNorth) / cellSizeNm);
+            probabilities[row * cols + col] += weight;
+        }
+
+        // Longitudes are scaled by the cosine of the origin latitude, as in the grid
+        double originLat = lkp.getLatitude() + minNorth / 60.0;
+        double cosLat = Math.cos(Math.toRadians(originLat));
+        Position origin = Position.create(originLat, lkp.getLongitude() + minEast / (60.0 * cosLat));
+        return new ContainmentGrid(origin, cellSizeNm, rows, cols, probabilities);
+    }
+
+    /**
+     * Returns the summed-area table of the probabilities, with a leading row and column of zeros
+     */
+    public static double[] summedAreaTable(float[] probabilities, int rows, int cols) {
+        double[] sums = new double[(rows + 1) * (cols + 1)];
+        for (int row = 0; row < rows; row++) {
+            double rowSum = 0;
+            for (int col = 0; col < cols; col++) {
+                rowSum += probabilities[row * cols + col];
+                sums[(row + 1) * (cols + 1) + col + 1] = sums[row * (cols + 1) + col + 1] + rowSum;
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Returns the sum of a rectangle of cells from a summed-area table
+     */
+    public static double sum(double[] sums, int cols, int row, int col, int height, int width) {
+        int w = cols + 1;
+        int r1 = row + height;
+        int c1 = col + width;
+        return sums[r1 * w + c1] - sums[row * w + c1] - sums[r1 * w + col] + sums[row * w + col];
+    }
+
+    /**
+     * Returns the probability of containment of a rectangle of cells. The rectangle is clipped to the grid
+     * 
+     * @param row
+     *            the southernmost row
+     * @param col
+     *            the westernmost column
+     * @param height
+     *            the number of rows
+     * @param width
+     *            the number of columns
+     * @return the probability of containment
+     */
+    public double getContainment(int row, int col, int height, int width) {
+        int r0 = Math.max(0, row);
+        int c0 = Math.max(0, col);
+        int r1 = Math.min(rows, row + height);
+        int c1 = Math.min(cols, col + width);
+        if (r1 <= r0 || c1 <= c0) {
+            return 0.0;
+        }
+        return sum(sums, cols, r0, c0, r1 - r0, c1 - c0);
+    }
+
+    /**
+     * Returns the probability of a cell
+     * 
+     * @param row
+     *            the row
+     * @param col
+     *            the column
+     * @return the probability of the cell
+     */
+    public float getProbability(int row, int col) {
+        return probabilities[row * cols + col];
+    }
+
+    /**
+     * Returns the highest probability of any cell
+     * 
+     * @return the highest probability
+     */
+    public float getMaxProbability() {
+        float max = 0;
+        for (float p : probabilities) {
+            max = Math.max(max, p);
+        }
+        return max;
+    }
+
+    /**
+     * Returns a copy of the probabilities of the cells, row by row
+     * 
+     * @return the probabilities
+     */
+    public float[] getProbabilities() {
+        return probabilities.clone();
+    }
+
+    /**
+     * Returns the position at the given fractional row and column, e.g. row 0.5 and
+     * column 0.5 is the centre of the south west cell
+     * 
+     * @param row
+     *            the fractional row
+     * @param col
+     *            the fractional column
+     * @return the position
+     */
+    public Position getPosition(double row, double col) {
+        return Position.create(originLat + row * cellSizeNm / 60.0, originLon + col * cellSizeNm / (60.0 * cosLat));
+    }
+
+    public double getCellSizeNm() {
+        return cellSizeNm;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+}
@@ -0,0 +1,171 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.voct.sardata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.text.Formatter;
+
+/**
+ * Data of a Monte Carlo drift operation.
+ * <p>
+ * The drift of a large number of particles is simulated from the LKP, with random perturbations of
+ * the weather data and the initial position. The particles make up a probability-of-containment grid.
+ * The datum is the centre of the particles, and the radius contains the {@linkplain #getContainmentLevel()
+ * containment level} of the particles, so that the rapid response search area and graphics apply.
+ * <p>
+ * The effort allocation places the effective area of each SRU where it covers the most remaining probability.
+ */
+public class MonteCarloData extends RapidResponseData {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_PARTICLE_COUNT = 20000;
+    public static final double DEFAULT_CONTAINMENT_LEVEL = 0.9;
+
+    private int particleCount = DEFAULT_PARTICLE_COUNT;
+    private double containmentLevel = DEFAULT_CONTAINMENT_LEVEL;
+    private long seed = System.nanoTime();
+
+    // Recalculated when loaded
+    private transient ContainmentGrid containmentGrid;
+
+    private Map<Long, Position> allocationCentres = new HashMap<Long, Position>();
+    private Map<Long, Double> allocationContainment = new HashMap<Long, Double>();
+
+    public MonteCarloData(String sarID, DateTime TLKP, DateTime CSS, Position LKP, double x, double y, double SF,
+            int searchObject) {
+        super(sarID, TLKP, CSS, LKP, x, y, SF, searchObject);
+    }
+
+    public MonteCarloData(MonteCarloData data, int additionalTime) {
+        super(data, additionalTime);
+        particleCount = data.getParticleCount();
+        containmentLevel = data.getContainmentLevel();
+        seed = data.getSeed();
+    }
+
+    /**
+     * @return the number of simulated particles
+     */
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    /**
+     * @param particleCount
+     *            the number of simulated particles
+     */
+    public void setParticleCount(int particleCount) {
+        this.particleCount = particleCount;
+    }
+
+    /**
+     * @return the fraction of the particles within the radius
+     */
+    public double getContainmentLevel() {
+        return containmentLevel;
+    }
+
+    /**
+     * @param containmentLevel
+     *            the fraction of the particles within the radius
+     */
+    public void setContainmentLevel(double containmentLevel) {
+        this.containmentLevel = containmentLevel;
+    }
+
+    /**
+     * @return the seed of the random perturbations
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed
+     *            the seed of the random perturbations
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the probability-of-containment grid, or null if not calculated
+     */
+    public ContainmentGrid getContainmentGrid() {
+        return containmentGrid;
+    }
+
+    /**
+     * @param containmentGrid
+     *            the probability-of-containment grid
+     */
+    public void setContainmentGrid(ContainmentGrid containmentGrid) {
+        this.containmentGrid = containmentGrid;
+    }
+
+    /**
+     * Sets the result of the effort allocation of an SRU
+     * 
+     * @param mmsi
+     *            the MMSI of the SRU
+     * @param centre
+     *            the centre of the effective area
+     * @param containment
+     *            the probability of containment of the effective area
+     */
+    public void setAllocation(long mmsi, Position centre, double containment) {
+        allocationCentres.put(mmsi, centre);
+        allocationContainment.put(mmsi, containment);
+    }
+
+    /**
+     * Clears the results of the effort allocation
+     */
+    public void clearAllocations() {
+        allocationCentres.clear();
+        allocationContainment.clear();
+    }
+
+    /**
+     * @return the centre of the effective area of the SRU, or null if not allocated
+     */
+    public Position getAllocationCentre(long mmsi) {
+        return allocationCentres.get(mmsi);
+    }
+
+    /**
+     * @return the probability of containment of the effective area of the SRU, or null if not allocated
+     */
+    public Double getAllocationContainment(long mmsi) {
+        return allocationContainment.get(mmsi);
+    }
+
+    @Override
+    public String generateHTML() {
+        return super.generateHTML()
+                .replace("Search and Rescue - Rapid Response", "Search and Rescue - Monte Carlo Drift")
+                .replace(
+                        "Search Area:",
+                        "Simulated particles: " + particleCount + "<br>Radius containing "
+                                + Formatter.formatDouble(containmentLevel * 100, 0) + "% of the particles</br><hr>"
+                                + "Search Area:");
+    }
+}
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
@@ -35,6 +36,7 @@ import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceExceptio
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.IRoutesUpdateListener;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteFileFormat;
 import dk.dma.epd.common.prototype.model.route.RouteLoadException;
 import dk.dma.epd.common.prototype.model.route.RouteLoader;
 import dk.dma.epd.common.prototype.model.route.RouteMetocSettings;
@@ -43,6 +45,7 @@ import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
 import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.util.WriteBehindFile;
 import dk.frv.enav.common.xml.metoc.MetocForecast;
 
 /**
@@ -56,6 +59,9 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     private static final long serialVersionUID = -3781810760698987644L;
     private static final Logger LOG = LoggerFactory.getLogger(RouteManagerCommon.class);
 
+    /** Delay in milliseconds for coalescing route changes into a single write of the routes file */
+    public static final long SAVE_DELAY = 1000;
+
     private CopyOnWriteArrayList<IRoutesUpdateListener> listeners = new CopyOnWriteArrayList<>();
     protected EnavSettings enavSettings;
     protected ShoreServicesCommon shoreServices;
@@ -67,11 +73,20 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     @GuardedBy("this")
     protected int activeRouteIndex = -1;
 
+    private final transient WriteBehindFile routesFile;
+    private final transient Callable<byte[]> routesEncoder = new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+            return encodeRoutes();
+        }
+    };
+
     /**
      * Constructor
      */
     public RouteManagerCommon() {
         enavSettings = EPD.getInstance().getSettings().getEnavSettings();
+        routesFile = new WriteBehindFile(getRoutesFile(), SAVE_DELAY);
         EPD.startThread(this, "RouteManager");
     }
 
@@ -360,8 +375,8 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
         for (IRoutesUpdateListener listener : listeners) {
             listener.routesChanged(e);
         }
-        // Persist routes on update
-        saveToFile();
+        // Persist routes on update, in the background
+        scheduleSave();
     }
 
     /**
@@ -625,9 +640,36 @@ public abstract class RouteManagerCommon extends MapHandlerChild implements Runn
     }
 
     /**
-     * Saves the current set of routes to file
+     * Returns the file the routes are saved to
+     *
+     * @return the routes file
      */
-    public abstract void saveToFile();
+    protected abstract File getRoutesFile();
+
+    /**
+     * Saves the current set of routes to file on the calling thread
+     */
+    public void saveToFile() {
+        routesFile.write(encodeRoutes());
+    }
+
+    /**
+     * Schedules a save of the routes in the background, coalescing bursts of changes
+     * into a single encoding and write of the routes
+     */
+    public void scheduleSave() {
+        routesFile.schedule(routesEncoder);
+    }
+
+    /**
+     * Encodes the routes in the routes file format. Only the encoding happens with the
+     * route manager locked, the file is written afterwards
+     *
+     * @return the encoded routes
+     */
+    protected synchronized byte[] encodeRoutes() {
+        return new RouteFileFormat(routes, activeRouteIndex).toByteArray();
+    }
 
     /**
      * {@inheritDoc}
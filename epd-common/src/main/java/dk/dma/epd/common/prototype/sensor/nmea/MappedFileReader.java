@@ -0,0 +1,86 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Reads a file through a sliding memory mapped window, so that files larger than
+ * the maximum size of a mapping can be read at any position
+ */
+@NotThreadSafe
+final class MappedFileReader implements Closeable {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * Returns the size of the file
+     * 
+     * @return the size of the file
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Copies bytes from the given file position into the remaining part of the buffer
+     * 
+     * @param dst
+     *            the array backed destination buffer
+     * @param position
+     *            the file position to read from
+     * @return the number of bytes read, or -1 at the end of the file
+     */
+    int read(ByteBuffer dst, long position) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            windowStart = position;
+            window = channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        }
+        int offset = (int) (position - windowStart);
+        int count = Math.min(dst.remaining(), window.limit() - offset);
+        window.position(offset);
+        window.get(dst.array(), dst.arrayOffset() + dst.position(), count);
+        dst.position(dst.position() + count);
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
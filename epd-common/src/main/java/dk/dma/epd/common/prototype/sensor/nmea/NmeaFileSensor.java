@@ -15,12 +15,21 @@
 package dk.dma.epd.common.prototype.sensor.nmea;
 
 import java.awt.Frame;
-import java.io.FileInputStream;
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 import javax.swing.JOptionPane;
 
+import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
 import org.slf4j.Logger;
@@ -35,20 +44,56 @@ import dk.dma.epd.common.util.Util;
 
 
 /**
- * NMEA sensor reading from file
+ * NMEA sensor reading from file.
+ * <p>
+ * The file is read through memory mapping. A gzip compressed file is inflated once to a
+ * file beside it, or to the temporary directory if that fails, which is reused as long as
+ * it is newer than the compressed file.
+ * The timestamps of the proprietary source tags are indexed, see {@linkplain NmeaReplayIndex},
+ * so that the replay can {@linkplain #seek(Date) seek} instantly. The replay can also be paused,
+ * and the speedup changed while replaying. A speedup of zero or less replays as fast as possible.
+ * <p>
+ * Unless headless, the sensor waits for the main frame and a confirmation before starting the replay.
  */
 @ThreadSafe
 public class NmeaFileSensor extends NmeaSensor {
     
     private static final Logger LOG = LoggerFactory.getLogger(NmeaFileSensor.class);
-    
+
+    /** Suffix of the file a gzip compressed replay file is inflated to */
+    public static final String INFLATED_SUFFIX = ".replay";
+
     private final String filename;
-    private InputStream inputStream;
+    private final boolean headless;
     private volatile Frame frame;
-    
+    private volatile NmeaReplayIndex index;
+
+    @GuardedBy("this")
+    private boolean paused;
+    /** Offset requested by {@linkplain #seek(Date)}, or -1 */
+    private final AtomicLong seekOffset = new AtomicLong(-1);
+    /** Incremented to interrupt the pacing of the replay */
+    @GuardedBy("this")
+    private long controlCount;
+
     public NmeaFileSensor(String filename, SensorSettings sensorSettings) {
+        this(filename, sensorSettings, GraphicsEnvironment.isHeadless());
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param filename
+     *            the replay file, plain or gzip compressed
+     * @param sensorSettings
+     *            the settings holding the replay speedup and start date
+     * @param headless
+     *            if set, the replay starts immediately without user confirmation
+     */
+    public NmeaFileSensor(String filename, SensorSettings sensorSettings, boolean headless) {
         LOG.info("Using AIS replay file: " + filename);
         this.filename = filename;
+        this.headless = headless;
         setReplay(true);
         setReplaySpeedup(sensorSettings.getReplaySpeedup());
         setReplayStartDate(sensorSettings.getReplayStartDate());
@@ -57,45 +102,265 @@ public class NmeaFileSensor extends NmeaSensor {
 
     @Override
     public void run() {
-        // Open file
-        inputStream = null;
+        // Open and index file
+        MappedFileReader reader;
         try {
-            inputStream = new FileInputStream(filename);
+            Path file = resolveDataFile(Paths.get(filename));
+            index = NmeaReplayIndex.load(file);
+            reader = new MappedFileReader(file);
         } catch (IOException e) {
             LOG.error("Failed to open replay file: " + filename + ": " + e.getMessage());
+            flagTerminated();
             return;
         }
         
         // Wait for frame and confirmation
-        while (frame == null) {
-            Util.sleep(1000);
+        if (!headless) {
+            while (frame == null && !isStopped()) {
+                Util.sleep(1000);
+            }
+            Util.sleep(5000);
+            JOptionPane.showMessageDialog(frame, "Start replay");
+        }
+
+        // Skip the data before the replay start date
+        Date replayStartDate = getReplayStartDate();
+        if (replayStartDate != null) {
+            seek(replayStartDate);
         }
-        Util.sleep(5000);
-        JOptionPane.showMessageDialog(frame, "Start replay");        
-        
         
         // Read
         try {
-            readLoop(inputStream);
+            readLoop(reader);
         } catch (IOException e) {
             LOG.error("Error while reading replay file: " + filename + ": " + e.getMessage());
         }
+
+        if (getDataStart() != null && getReplayStart() != null) {
+            long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
+            long realElapsed = getReplayEnd().getTime() - getReplayStart().getTime();
+
+            LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
+            LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
+        }
         
-        long dataElapsed = getDataEnd().getTime() - getDataStart().getTime();
-        long realElapsed = (getReplayEnd().getTime() - getReplayStart().getTime()) * getReplaySpeedup();
-                
-        LOG.info("Replay data start: " + getDataStart() + " end: " + getDataEnd() + " elapsed: " + dataElapsed / 1000);
-        LOG.info("Replay real start: " + getReplayStart() + " end: " + getReplayEnd() + " elapsed: " + realElapsed / 1000);
-        
-        if (frame != null && !isStopped()) {
+        if (!headless && frame != null && !isStopped()) {
             JOptionPane.showMessageDialog(frame, "Replay finished");
         }
         
         // Flag that the sensor has terminated
-        try { inputStream.close(); } catch (Exception ex) {}
+        try { reader.close(); } catch (Exception ex) {}
         flagTerminated();
         LOG.warn("File NMEA sensor terminated");
     }
+
+    /**
+     * Returns the file to read, inflating a gzip compressed file if needed
+     */
+    private static Path resolveDataFile(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            if (in.read() != 0x1f || in.read() != 0x8b) {
+                return file;
+            }
+        }
+        try {
+            return inflate(file, Paths.get(file.toString() + INFLATED_SUFFIX));
+        } catch (IOException e) {
+            LOG.warn("Failed to inflate replay file beside " + file + ": " + e.getMessage());
+        }
+        // E.g. a read-only directory
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        return inflate(file, tmpDir.resolve(file.getFileName().toString() + INFLATED_SUFFIX));
+    }
+
+    /**
+     * Inflates the gzip compressed file to the given file, unless it is up to date already
+     */
+    private static Path inflate(Path file, Path inflated) throws IOException {
+        if (Files.exists(inflated)
+                && Files.getLastModifiedTime(inflated).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+            return inflated;
+        }
+        LOG.info("Inflating replay file " + file + " to " + inflated);
+        Path tmp = Paths.get(inflated.toString() + ".tmp");
+        try {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), NmeaSensor.READ_BUFFER_SIZE)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return Files.move(tmp, inflated, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                LOG.warn("Failed to delete " + tmp + ": " + ex.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the file from the mapping, applying the requested seeks
+     */
+    private void readLoop(MappedFileReader reader) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = 0;
+        while (!isStopped()) {
+            awaitResume();
+            long offset = seekOffset.getAndSet(-1);
+            if (offset >= 0) {
+                position = offset;
+                buffer.clear();
+                resetReplayPacing();
+            }
+
+            int count = reader.read(buffer, position);
+            if (count < 0) {
+                buffer.flip();
+                handleSentences(buffer, true);
+                if (seekOffset.get() < 0) {
+                    break;
+                }
+                continue;
+            }
+            position += count;
+
+            buffer.flip();
+            handleSentences(buffer, false);
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                LOG.warn("Discarding " + buffer.capacity() + " bytes of NMEA data without line terminator");
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Sentences are dropped while a seek is pending
+     */
+    @Override
+    protected void handleSentence(byte[] buf, int offset, int length) {
+        if (seekOffset.get() < 0) {
+            super.handleSentence(buf, offset, length);
+        }
+    }
+
+    @Override
+    protected void handleReplay(String msg) {
+        awaitResume();
+        if (seekOffset.get() < 0) {
+            super.handleReplay(msg);
+        }
+    }
+
+    /**
+     * Sleeps until the time has elapsed, or the replay is paused, seeked, stopped or changes speed
+     */
+    @Override
+    protected synchronized void replaySleep(long millis) {
+        long count = controlCount;
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (remaining > 0 && count == controlCount && !isStopped()) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    private synchronized void awaitResume() {
+        while (paused && !isStopped()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void controlChanged() {
+        controlCount++;
+        notifyAll();
+    }
+
+    /**
+     * Continues the replay from the given time. Returns immediately, and is a no-op
+     * until the file has been indexed
+     * 
+     * @param date
+     *            the time to continue the replay from
+     */
+    public void seek(Date date) {
+        NmeaReplayIndex index = this.index;
+        if (index == null) {
+            LOG.warn("Cannot seek replay before the file has been indexed");
+            return;
+        }
+        seekOffset.set(index.getOffset(date));
+        // The data before the date is paced without delay
+        setReplayStartDate(date);
+        controlChanged();
+    }
+
+    /**
+     * Pauses the replay
+     */
+    public void pause() {
+        synchronized (this) {
+            paused = true;
+        }
+        controlChanged();
+    }
+
+    /**
+     * Resumes a paused replay
+     */
+    public void resume() {
+        synchronized (this) {
+            paused = false;
+        }
+        resetReplayPacing();
+        controlChanged();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets the replay speedup. A speedup of zero or less replays as fast as possible
+     * 
+     * @param replaySpeedup
+     *            the replay speedup
+     */
+    @Override
+    public void setReplaySpeedup(int replaySpeedup) {
+        super.setReplaySpeedup(replaySpeedup);
+        resetReplayPacing();
+        controlChanged();
+    }
+
+    @Override
+    public int getReplaySpeedup() {
+        return super.getReplaySpeedup();
+    }
+
+    /**
+     * Returns the index of the replay file, or null if the file has not been indexed yet
+     * 
+     * @return the index of the replay file
+     */
+    public NmeaReplayIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        controlChanged();
+    }
     
     @Override
     public void findAndInit(Object obj) {
@@ -0,0 +1,271 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.dma.ais.proprietary.IProprietarySourceTag;
+import dk.dma.ais.proprietary.IProprietaryTag;
+import dk.dma.ais.proprietary.ProprietaryFactory;
+import dk.dma.ais.sentence.SentenceLine;
+
+/**
+ * Index of an NMEA replay file, mapping the timestamps of the proprietary source tags to the
+ * byte offsets of the tags in the file.
+ * <p>
+ * The index holds at most one entry per {@linkplain #INDEX_INTERVAL} of data time. It is built
+ * by a single pass over the file, and cached beside the file, see {@linkplain #load(Path)}.
+ */
+@Immutable
+public final class NmeaReplayIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaReplayIndex.class);
+
+    /** The minimum data time between index entries */
+    public static final long INDEX_INTERVAL = 1000L;
+
+    /** Suffix of the cached index file */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4e4d4958; // NMIX
+    private static final int VERSION = 1;
+
+    private final long[] timestamps;
+    private final long[] offsets;
+
+    NmeaReplayIndex(long[] timestamps, long[] offsets) {
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns the index of the given file. The cached index beside the file is used if it is
+     * up to date, otherwise the index is built and cached
+     * 
+     * @param file
+     *            the replay file
+     * @return the index of the file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static NmeaReplayIndex load(Path file) throws IOException {
+        long size = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        Path indexFile = Paths.get(file.toString() + INDEX_SUFFIX);
+
+        if (Files.exists(indexFile)) {
+            try {
+                NmeaReplayIndex index = read(indexFile, size, lastModified);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to read replay index " + indexFile + ": " + e.getMessage());
+            }
+        }
+
+        long t0 = System.currentTimeMillis();
+        NmeaReplayIndex index;
+        try (MappedFileReader reader = new MappedFileReader(file)) {
+            index = build(reader);
+        }
+        LOG.info("Indexed replay file " + file + " with " + index.size() + " entries in "
+                + (System.currentTimeMillis() - t0) + " ms");
+
+        try {
+            index.write(indexFile, size, lastModified);
+        } catch (IOException e) {
+            LOG.warn("Failed to write replay index " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index by framing all lines of the file
+     */
+    static NmeaReplayIndex build(MappedFileReader reader) throws IOException {
+        Builder builder = new Builder();
+        ByteBuffer buffer = ByteBuffer.allocate(NmeaSensor.READ_BUFFER_SIZE);
+        byte[] buf = buffer.array();
+        long bufferOffset = 0; // The file offset of the start of the buffer
+        long position = 0;
+        while (position < reader.size()) {
+            position += reader.read(buffer, position);
+            int end = buffer.position();
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                if (buf[i] == '\n' || buf[i] == '\r') {
+                    if (i > start) {
+                        builder.addLine(buf, start, i - start, bufferOffset + start);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (position >= reader.size() && start < end) {
+                builder.addLine(buf, start, end - start, bufferOffset + start);
+                start = end;
+            }
+            System.arraycopy(buf, start, buf, 0, end - start);
+            bufferOffset += start;
+            buffer.position(end - start);
+            if (!buffer.hasRemaining()) {
+                // No line terminator in a full buffer
+                bufferOffset += buffer.capacity();
+                buffer.clear();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the cached index, or returns null if it is not the index of a file with the given size and modification time
+     */
+    static NmeaReplayIndex read(Path indexFile, long size, long lastModified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != size
+                    || in.readLong() != lastModified) {
+                return null;
+            }
+            int count = in.readInt();
+            long[] timestamps = new long[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new NmeaReplayIndex(timestamps, offsets);
+        }
+    }
+
+    /**
+     * Writes the index along with the size and modification time of the indexed file
+     */
+    void write(Path indexFile, long size, long lastModified) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeInt(timestamps.length);
+            for (int i = 0; i < timestamps.length; i++) {
+                out.writeLong(timestamps[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset to start reading from, in order to replay the data from the given time,
+     * i.e. the offset of the last entry no later than the time
+     * 
+     * @param date
+     *            the time to replay from
+     * @return the byte offset in the file
+     */
+    public long getOffset(Date date) {
+        int i = Arrays.binarySearch(timestamps, date.getTime());
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i < 0 ? 0L : offsets[i];
+    }
+
+    /**
+     * Returns the timestamp of the first entry, or null if the index is empty
+     * 
+     * @return the timestamp of the first entry
+     */
+    public Date getStart() {
+        return timestamps.length == 0 ? null : new Date(timestamps[0]);
+    }
+
+    /**
+     * Returns the timestamp of the last entry, or null if the index is empty
+     * 
+     * @return the timestamp of the last entry
+     */
+    public Date getEnd() {
+        return timestamps.length == 0 ? null : new Date(timestamps[timestamps.length - 1]);
+    }
+
+    /**
+     * Returns the number of entries
+     * 
+     * @return the number of entries
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Collects the entries in increasing order of time
+     */
+    static final class Builder {
+        private long[] timestamps = new long[1024];
+        private long[] offsets = new long[1024];
+        private int count;
+
+        void addLine(byte[] buf, int offset, int length, long fileOffset) {
+            if (length < 2 || buf[offset] != '$' || buf[offset + 1] != 'P') {
+                return;
+            }
+            String line = new String(buf, offset, length, StandardCharsets.US_ASCII);
+            try {
+                if (!ProprietaryFactory.isProprietaryTag(line)) {
+                    return;
+                }
+                IProprietaryTag tag = ProprietaryFactory.parseTag(new SentenceLine(line));
+                if (tag instanceof IProprietarySourceTag && ((IProprietarySourceTag) tag).getTimestamp() != null) {
+                    add(((IProprietarySourceTag) tag).getTimestamp().getTime(), fileOffset);
+                }
+            } catch (Exception e) {
+                // Not a valid source tag
+            }
+        }
+
+        void add(long timestamp, long fileOffset) {
+            if (count > 0 && timestamp < timestamps[count - 1] + INDEX_INTERVAL) {
+                return;
+            }
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            timestamps[count] = timestamp;
+            offsets[count] = fileOffset;
+            count++;
+        }
+
+        NmeaReplayIndex build() {
+            return new NmeaReplayIndex(Arrays.copyOf(timestamps, count), Arrays.copyOf(offsets, count));
+        }
+    }
+}
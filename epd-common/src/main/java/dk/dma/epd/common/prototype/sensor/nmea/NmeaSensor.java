@@ -14,11 +14,12 @@
  */
 package dk.dma.epd.common.prototype.sensor.nmea;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -63,6 +64,9 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(NmeaSensor.class);
 
+    /** Size of the read buffer. A sentence is at most 82 characters, but tag blocks may precede it */
+    protected static final int READ_BUFFER_SIZE = 64 * 1024;
+
     public enum Status {
         CONNECTED, DISCONNECTED
     };
@@ -84,6 +88,10 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     @GuardedBy("this")
     private int replaySpeedup = 1;
     @GuardedBy("this")
+    private Date paceDataStart;
+    @GuardedBy("this")
+    private Date paceRealStart;
+    @GuardedBy("this")
     private boolean stopped;
     @GuardedBy("this")
     private boolean terminated;
@@ -102,19 +110,137 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
     }
 
     /**
-     * Main method to read NMEA messages from stream
+     * Main method to read NMEA messages from stream.
+     * <p>
+     * The stream is read directly into a byte buffer, in which the sentences are framed
+     * and classified, see {@linkplain #handleSentences(ByteBuffer, boolean)}
      * 
      * @param stream
      * @throws IOException
      */
     protected void readLoop(InputStream stream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-        String line;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int count;
+        while (!isStopped() && (count = stream.read(buffer.array(), buffer.position(), buffer.remaining())) >= 0) {
+            buffer.position(buffer.position() + count);
+            handleBuffer(buffer);
+        }
+        buffer.flip();
+        handleSentences(buffer, true);
+    }
+
+    /**
+     * Main method to read NMEA messages from a channel
+     * 
+     * @param channel
+     *            the channel to read from
+     * @throws IOException
+     */
+    protected void readLoop(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (!isStopped() && channel.read(buffer) >= 0) {
+            handleBuffer(buffer);
+        }
+        buffer.flip();
+        handleSentences(buffer, true);
+    }
+
+    /**
+     * Handles the complete sentences of the buffer and prepares it for the next read
+     */
+    private void handleBuffer(ByteBuffer buffer) {
+        buffer.flip();
+        handleSentences(buffer, false);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // No line terminator in a full buffer. Discard the garbage
+            LOG.warn("Discarding " + buffer.capacity() + " bytes of NMEA data without line terminator");
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Frames the sentences of the buffer, between its position and limit, and handles each sentence in place.
+     * <p>
+     * The position of the buffer is advanced past the last line terminator. If {@code endOfInput} is set,
+     * any remaining bytes are handled as a final sentence. The buffer must be backed by an array
+     * 
+     * @param buffer
+     *            the buffer holding the sentences
+     * @param endOfInput
+     *            whether the remaining bytes without line terminator make up a sentence
+     * @return the number of sentences handled
+     */
+    protected int handleSentences(ByteBuffer buffer, boolean endOfInput) {
+        int count = 0;
+        byte[] buf = buffer.array();
+        int start = buffer.arrayOffset() + buffer.position();
+        int end = buffer.arrayOffset() + buffer.limit();
+        for (int i = start; i < end; i++) {
+            if (buf[i] == '\n' || buf[i] == '\r') {
+                if (i > start) {
+                    handleSentence(buf, start, i - start);
+                    count++;
+                }
+                start = i + 1;
+            }
+        }
+        if (endOfInput && start < end) {
+            handleSentence(buf, start, end - start);
+            start = end;
+            count++;
+        }
+        buffer.position(start - buffer.arrayOffset());
+        return count;
+    }
 
-        while (!isStopped() && (line = reader.readLine()) != null) {
-            handleLine(line);
+    /**
+     * Handles the sentence of the given line.
+     * <p>
+     * The sentence type is classified from the raw bytes, and a {@code String} is only materialized
+     * when the sentence is handled, i.e. sentences that are not handled, or have no listeners,
+     * are discarded without allocations.
+     * <p>
+     * Replayed sentences are handled as strings by {@linkplain #handleLine(String)},
+     * since the proprietary source tags are needed for the replay timing
+     * 
+     * @param buf
+     *            the buffer holding the line
+     * @param offset
+     *            the offset of the line
+     * @param length
+     *            the length of the line
+     */
+    protected void handleSentence(byte[] buf, int offset, int length) {
+        if (isReplay()) {
+            handleLine(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            return;
+        }
+        switch (NmeaSentenceType.classify(buf, offset, length)) {
+        case RMC:
+            if (pntListeners.size() > 0) {
+                handleRmc(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            }
+            break;
+        case VDM:
+            if (aisListeners.size() > 0) {
+                handleAis(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            }
+            break;
+        case ABK:
+            String msg = new String(buf, offset, length, StandardCharsets.US_ASCII);
+            if (Abk.isAbk(msg)) {
+                handleAbk(msg);
+            }
+            break;
+        case PROPRIETARY:
+            handleProprietary(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            break;
+        default:
+            break;
         }
     }
+
     
     protected void handleLine(String line) {
         if (isReplay()) {
@@ -211,17 +337,47 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
             setReplayStart(now);
         }
 
-        long elapsedData = timestamp.getTime() - getDataStart().getTime();
-        long elapsedReal = (now.getTime() - getReplayStart().getTime()) * getReplaySpeedup();
-        long diff = elapsedData - elapsedReal;
-        if (diff > 500) {
-            Util.sleep(diff / getReplaySpeedup());
+        // A speedup of zero or less replays as fast as possible
+        int speedup = getReplaySpeedup();
+        if (speedup > 0) {
+            long diff;
+            synchronized (this) {
+                if (paceDataStart == null) {
+                    paceDataStart = timestamp;
+                    paceRealStart = now;
+                }
+                long elapsedData = timestamp.getTime() - paceDataStart.getTime();
+                long elapsedReal = (now.getTime() - paceRealStart.getTime()) * speedup;
+                diff = elapsedData - elapsedReal;
+            }
+            if (diff > 500) {
+                replaySleep(diff / speedup);
+            }
         }
 
         setReplayEnd(now);
 
     }
 
+    /**
+     * Sleeps to pace the replay. Called without holding any locks
+     * 
+     * @param millis
+     *            the time to sleep in milliseconds
+     */
+    protected void replaySleep(long millis) {
+        Util.sleep(millis);
+    }
+
+    /**
+     * Restarts the pacing of the replay from the next source tag, e.g. after a pause,
+     * a seek or a change of the speedup
+     */
+    protected synchronized void resetReplayPacing() {
+        paceDataStart = null;
+        paceRealStart = null;
+    }
+
     protected void handleProprietary(String msg) {        
         if (msg.indexOf("$PSTT,10A") >= 0) {
             handlePstt(msg);
@@ -524,7 +680,7 @@ public abstract class NmeaSensor extends MapHandlerChild implements Runnable {
         this.replayTime = replayTime;
     }
 
-    private synchronized Date getReplayStartDate() {
+    protected synchronized Date getReplayStartDate() {
         return replayStartDate;
     }
 
@@ -0,0 +1,655 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multiplexes the network NMEA sources, i.e. the TCP and UDP sensors, on a single I/O thread.
+ * <p>
+ * The channels of all sources are non-blocking and registered with one selector, so the number
+ * of threads does not grow with the number of sources. The host names of TCP sources are looked up
+ * by a separate resolver thread, and the sources are then connected without blocking. A failed lookup,
+ * and a failed or idle connection, is retried with an exponential backoff, starting at the reconnect
+ * interval of the sensor. The received bytes are framed in place by
+ * {@linkplain NmeaSensor#handleSentences(java.nio.ByteBuffer, boolean)} on the I/O thread, so
+ * listeners of the sensors must not block.
+ * <p>
+ * Throughput counters are maintained per source, see {@linkplain #getStatistics()}.
+ */
+@ThreadSafe
+public final class NmeaSensorHub implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NmeaSensorHub.class);
+
+    /** A connection that has received nothing for this long is considered dead */
+    static final long READ_TIMEOUT = 60000L; // 1 min
+    static final long CONNECT_TIMEOUT = 30000L;
+    static final long MAX_RECONNECT_INTERVAL = 5 * 60000L; // 5 min
+
+    /** Upper bound of the select timeout, so that stopped sensors are noticed */
+    private static final long MAX_SELECT_TIMEOUT = 1000L;
+
+    private static final int UDP_BUFFER_SIZE = 8192;
+
+    private static NmeaSensorHub instance;
+
+    private final Selector selector;
+    private final ExecutorService resolver = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "NmeaSensorHub-resolver");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Map<NmeaSensor, Source> sources = new ConcurrentHashMap<>();
+
+    private NmeaSensorHub() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Returns the shared hub, starting its I/O thread on first use
+     * 
+     * @return the shared hub
+     */
+    public static synchronized NmeaSensorHub getInstance() {
+        if (instance == null) {
+            try {
+                instance = new NmeaSensorHub();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open NMEA selector", e);
+            }
+            Thread thread = new Thread(instance, "NmeaSensorHub");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a TCP source, which is connected as soon as possible
+     * 
+     * @param sensor
+     *            the sensor handling the received sentences
+     * @param hostname
+     *            the host to connect to
+     * @param port
+     *            the port to connect to
+     * @param reconnectInterval
+     *            the initial delay in milliseconds before reconnecting
+     */
+    public void addTcpSource(NmeaSensor sensor, String hostname, int port, long reconnectInterval) {
+        addSource(new TcpSource(sensor, hostname, port, reconnectInterval));
+    }
+
+    /**
+     * Adds a UDP source listening on the given port
+     * 
+     * @param sensor
+     *            the sensor handling the received sentences
+     * @param port
+     *            the port to listen on
+     * @param reconnectInterval
+     *            the initial delay in milliseconds before rebinding after a failure
+     */
+    public void addUdpSource(NmeaSensor sensor, int port, long reconnectInterval) {
+        addSource(new UdpSource(sensor, port, reconnectInterval));
+    }
+
+    private void addSource(final Source source) {
+        if (sources.putIfAbsent(source.sensor, source) != null) {
+            throw new IllegalStateException("Sensor already added: " + source.name);
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                source.open();
+            }
+        });
+    }
+
+    /**
+     * Removes the source of the sensor. Its channel is closed and the sensor is
+     * flagged as terminated by the I/O thread
+     * 
+     * @param sensor
+     *            the sensor to remove
+     */
+    public void removeSource(NmeaSensor sensor) {
+        final Source source = sources.remove(sensor);
+        if (source == null) {
+            // Never added
+            sensor.flagTerminated();
+        } else {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.close();
+                    source.sensor.flagTerminated();
+                    LOG.info("NMEA source removed " + source.name);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns if the source of the sensor is connected
+     * 
+     * @param sensor
+     *            the sensor
+     * @return if the source of the sensor is connected
+     */
+    public boolean isConnected(NmeaSensor sensor) {
+        Source source = sources.get(sensor);
+        return source != null && source.connected;
+    }
+
+    /**
+     * Returns a stream writing to the connection of the TCP source of the sensor, or null if the
+     * sensor has no connected TCP source. The bytes are queued and written by the I/O thread
+     * 
+     * @param sensor
+     *            the sensor
+     * @return the output stream or null
+     */
+    public OutputStream getOutputStream(NmeaSensor sensor) {
+        Source source = sources.get(sensor);
+        if (!(source instanceof TcpSource) || !source.connected) {
+            return null;
+        }
+        final TcpSource tcpSource = (TcpSource) source;
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                tcpSource.writeQueue.add(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        tcpSource.updateInterest();
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Returns the statistics of the sensor's source, or null if the sensor has not been added
+     * 
+     * @param sensor
+     *            the sensor
+     * @return the statistics of the source
+     */
+    public SourceStatistics getStatistics(NmeaSensor sensor) {
+        Source source = sources.get(sensor);
+        return source == null ? null : source.getStatistics();
+    }
+
+    /**
+     * Returns the statistics of all sources
+     * 
+     * @return the statistics of all sources
+     */
+    public List<SourceStatistics> getStatistics() {
+        List<SourceStatistics> statistics = new ArrayList<>();
+        for (Source source : sources.values()) {
+            statistics.add(source.getStatistics());
+        }
+        return statistics;
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                // Never let a failing task stop the I/O thread of all sources
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("NMEA hub task failed: " + e, e);
+                }
+            }
+
+            long timeout = MAX_SELECT_TIMEOUT;
+            long now = System.currentTimeMillis();
+            for (Source source : sources.values()) {
+                if (source.sensor.isStopped()) {
+                    // Stopped without being removed
+                    removeSource(source.sensor);
+                } else {
+                    try {
+                        timeout = Math.min(timeout, source.check(now));
+                    } catch (RuntimeException e) {
+                        LOG.error("Failed to check NMEA source " + source.name + ": " + e, e);
+                        source.fail(e.toString());
+                    }
+                }
+            }
+
+            try {
+                selector.select(Math.max(1L, timeout));
+            } catch (IOException e) {
+                LOG.error("NMEA selector failed: " + e.getMessage(), e);
+                continue;
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                Source source = (Source) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable()) {
+                        ((TcpSource) source).finishConnect();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        ((TcpSource) source).write();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        source.read();
+                    }
+                } catch (IOException e) {
+                    source.fail(e.getMessage());
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to handle NMEA data from " + source.name + ": " + e.getMessage(), e);
+                    source.fail(e.toString());
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * Snapshot of the throughput counters of a source
+     */
+    public static final class SourceStatistics {
+        private final String name;
+        private final boolean connected;
+        private final long bytesReceived;
+        private final long sentencesReceived;
+        private final long connectCount;
+
+        SourceStatistics(String name, boolean connected, long bytesReceived, long sentencesReceived, long connectCount) {
+            this.name = name;
+            this.connected = connected;
+            this.bytesReceived = bytesReceived;
+            this.sentencesReceived = sentencesReceived;
+            this.connectCount = connectCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getSentencesReceived() {
+            return sentencesReceived;
+        }
+
+        public long getConnectCount() {
+            return connectCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + (connected ? " connected" : " disconnected") + ", bytes: " + bytesReceived + ", sentences: "
+                    + sentencesReceived + ", connects: " + connectCount;
+        }
+    }
+
+    /**
+     * A source along with its channel. Apart from the counters, the state is confined to the I/O thread
+     */
+    private abstract class Source {
+        final NmeaSensor sensor;
+        final String name;
+        final long reconnectInterval;
+        final ByteBuffer buffer;
+        final AtomicLong bytesReceived = new AtomicLong();
+        final AtomicLong sentencesReceived = new AtomicLong();
+        final AtomicLong connectCount = new AtomicLong();
+        volatile boolean connected;
+
+        SelectionKey key;
+        long lastActivity;
+        long reconnectTime;
+        int failures;
+
+        Source(NmeaSensor sensor, String name, long reconnectInterval, int bufferSize) {
+            this.sensor = sensor;
+            this.name = name;
+            this.reconnectInterval = reconnectInterval;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+        }
+
+        /**
+         * Opens and registers the channel
+         */
+        abstract void openChannel() throws IOException;
+
+        abstract void read() throws IOException;
+
+        void open() {
+            if (sources.get(sensor) != this) {
+                return;
+            }
+            try {
+                buffer.clear();
+                lastActivity = System.currentTimeMillis();
+                openChannel();
+            } catch (IOException e) {
+                fail(e.getMessage());
+            } catch (RuntimeException e) {
+                // E.g. an invalid host name or port
+                fail(e.toString());
+            }
+        }
+
+        SelectionKey register(SelectableChannel channel, int ops) throws IOException {
+            channel.configureBlocking(false);
+            key = channel.register(selector, ops, this);
+            return key;
+        }
+
+        void connected() {
+            connected = true;
+            connectCount.incrementAndGet();
+            lastActivity = System.currentTimeMillis();
+            LOG.info("NMEA source connected " + name);
+        }
+
+        void received(int bytes, int sentences) {
+            bytesReceived.addAndGet(bytes);
+            sentencesReceived.addAndGet(sentences);
+            lastActivity = System.currentTimeMillis();
+            failures = 0;
+        }
+
+        void close() {
+            connected = false;
+            if (key != null) {
+                key.cancel();
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                }
+                key = null;
+            }
+        }
+
+        /**
+         * Closes the channel and schedules a reconnect with exponential backoff
+         */
+        void fail(String reason) {
+            close();
+            long delay = Math.min(MAX_RECONNECT_INTERVAL, reconnectInterval << Math.min(failures, 16));
+            failures++;
+            reconnectTime = System.currentTimeMillis() + delay;
+            LOG.error("NMEA source " + name + " failed: " + reason + " retry in " + delay / 1000 + " seconds");
+        }
+
+        /**
+         * Reconnects or times out the source as needed
+         * 
+         * @return the time in milliseconds until the source needs to be checked again
+         */
+        long check(long now) {
+            if (key == null) {
+                if (now >= reconnectTime) {
+                    open();
+                    return 0L;
+                }
+                return reconnectTime - now;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        SourceStatistics getStatistics() {
+            return new SourceStatistics(name, connected, bytesReceived.get(), sentencesReceived.get(), connectCount.get());
+        }
+    }
+
+    /**
+     * TCP source
+     */
+    private final class TcpSource extends Source {
+        final String hostname;
+        final int port;
+        final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+
+        TcpSource(NmeaSensor sensor, String hostname, int port, long reconnectInterval) {
+            super(sensor, hostname + ":" + port, reconnectInterval, NmeaSensor.READ_BUFFER_SIZE);
+            this.hostname = hostname;
+            this.port = port;
+        }
+
+        // Set while the host name is looked up by the resolver
+        boolean resolving;
+        int attempt;
+
+        @Override
+        void openChannel() {
+            // Resolve on every attempt to pick up address changes. The lookup may block,
+            // so it is done by the resolver, which hands the address back to the I/O thread
+            resolving = true;
+            final int resolveAttempt = ++attempt;
+            resolver.execute(new Runnable() {
+                @Override
+                public void run() {
+                    InetSocketAddress address = null;
+                    String error = null;
+                    try {
+                        address = new InetSocketAddress(hostname, port);
+                        if (address.isUnresolved()) {
+                            error = "Unknown host: " + hostname;
+                        }
+                    } catch (RuntimeException e) {
+                        // E.g. an invalid port
+                        error = e.toString();
+                    }
+                    final InetSocketAddress resolved = address;
+                    final String failure = error;
+                    execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            resolved(resolveAttempt, resolved, failure);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Connects to the resolved address, unless the lookup has timed out or the source has been removed
+         */
+        void resolved(int resolveAttempt, InetSocketAddress address, String failure) {
+            if (!resolving || resolveAttempt != attempt || sources.get(sensor) != this) {
+                return;
+            }
+            resolving = false;
+            if (failure != null) {
+                fail(failure);
+                return;
+            }
+            try {
+                connect(address);
+            } catch (IOException e) {
+                fail(e.getMessage());
+            } catch (RuntimeException e) {
+                fail(e.toString());
+            }
+        }
+
+        void connect(InetSocketAddress address) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                register(channel, SelectionKey.OP_CONNECT);
+                if (channel.connect(address)) {
+                    finishConnect();
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                key = null;
+                throw e;
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (((SocketChannel) key.channel()).finishConnect()) {
+                // Anything queued for a previous connection is stale
+                writeQueue.clear();
+                connected();
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        @Override
+        void read() throws IOException {
+            int count = ((SocketChannel) key.channel()).read(buffer);
+            if (count < 0) {
+                throw new IOException("Connection closed by peer");
+            }
+            buffer.flip();
+            try {
+                received(count, sensor.handleSentences(buffer, false));
+            } finally {
+                buffer.compact();
+            }
+            if (!buffer.hasRemaining()) {
+                LOG.warn("Discarding " + buffer.capacity() + " bytes of NMEA data without line terminator from " + name);
+                buffer.clear();
+            }
+        }
+
+        void write() throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            ByteBuffer data;
+            while ((data = writeQueue.peek()) != null) {
+                channel.write(data);
+                if (data.hasRemaining()) {
+                    return;
+                }
+                writeQueue.poll();
+            }
+            updateInterest();
+        }
+
+        void updateInterest() {
+            if (key != null && connected) {
+                key.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        @Override
+        void close() {
+            resolving = false;
+            super.close();
+        }
+
+        @Override
+        long check(long now) {
+            if (key == null && !resolving) {
+                return super.check(now);
+            }
+            long timeout = connected ? READ_TIMEOUT : CONNECT_TIMEOUT;
+            if (now - lastActivity >= timeout) {
+                fail(connected ? "No data received for " + READ_TIMEOUT / 1000 + " seconds" : resolving ? "Lookup of "
+                        + hostname + " timed out" : "Connect timed out");
+                return 0L;
+            }
+            return lastActivity + timeout - now;
+        }
+    }
+
+    /**
+     * UDP source. A datagram holds one or more complete sentences
+     */
+    private final class UdpSource extends Source {
+        final int port;
+
+        UdpSource(NmeaSensor sensor, int port, long reconnectInterval) {
+            super(sensor, "udp:" + port, reconnectInterval, UDP_BUFFER_SIZE);
+            this.port = port;
+        }
+
+        @Override
+        void openChannel() throws IOException {
+            DatagramChannel channel = DatagramChannel.open();
+            try {
+                channel.bind(new InetSocketAddress(port));
+                register(channel, SelectionKey.OP_READ);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                key = null;
+                throw e;
+            }
+            connected();
+        }
+
+        @Override
+        void read() throws IOException {
+            DatagramChannel channel = (DatagramChannel) key.channel();
+            buffer.clear();
+            while (channel.receive(buffer) != null) {
+                buffer.flip();
+                int count = buffer.remaining();
+                received(count, sensor.handleSentences(buffer, true));
+                buffer.clear();
+            }
+        }
+    }
+}
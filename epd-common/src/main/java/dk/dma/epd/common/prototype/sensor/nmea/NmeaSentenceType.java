@@ -0,0 +1,93 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import java.util.Arrays;
+
+/**
+ * Enumerates the kinds of NMEA sentences handled by the {@linkplain NmeaSensor}.
+ * <p>
+ * Sentences are classified directly from the raw bytes, using a single dispatch table keyed by
+ * the start character, the talker and the sentence type, i.e. the first six characters
+ * of the sentence, such as "!AIVDM" or "$GPRMC".
+ */
+public enum NmeaSentenceType {
+    RMC, VDM, ABK, PROPRIETARY, UNKNOWN;
+
+    private static final int KEY_LENGTH = 6;
+
+    /** Sorted sentence keys */
+    private static final long[] KEYS;
+    /** The sentence types of the keys */
+    private static final NmeaSentenceType[] TYPES;
+
+    static {
+        Object[][] table = {
+            { "$GPRMC", RMC }, { "$ELRMC", RMC }, { "$RDRMC", RMC },
+            { "!AIVDM", VDM }, { "!AIVDO", VDM }, { "!BSVDM", VDM }, { "!ABVDM", VDM },
+            { "$AIABK", ABK }, { "!AIABK", ABK },
+            { "$PSTT,", PROPRIETARY }, { "$PRPNT", PROPRIETARY }, { "$PDYPN", PROPRIETARY }, { "$PDYPP", PROPRIETARY }
+        };
+        long[] keys = new long[table.length];
+        for (int i = 0; i < table.length; i++) {
+            keys[i] = key((String) table[i][0]);
+        }
+        Arrays.sort(keys);
+        KEYS = keys;
+        TYPES = new NmeaSentenceType[table.length];
+        for (Object[] entry : table) {
+            TYPES[Arrays.binarySearch(KEYS, key((String) entry[0]))] = (NmeaSentenceType) entry[1];
+        }
+    }
+
+    private static long key(String sentence) {
+        long key = 0;
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            key = key << 8 | sentence.charAt(i) & 0xFF;
+        }
+        return key;
+    }
+
+    /**
+     * Classifies the sentence of the given line.
+     * <p>
+     * The sentence starts at the first '$' or '!' of the line, which allows
+     * for a leading tag block
+     *
+     * @param buf
+     *            the buffer holding the line
+     * @param offset
+     *            the offset of the line
+     * @param length
+     *            the length of the line
+     * @return the sentence type
+     */
+    public static NmeaSentenceType classify(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        while (start < end && buf[start] != '$' && buf[start] != '!') {
+            start++;
+        }
+        if (end - start < KEY_LENGTH) {
+            return UNKNOWN;
+        }
+        long key = 0;
+        for (int i = start; i < start + KEY_LENGTH; i++) {
+            key = key << 8 | buf[i] & 0xFF;
+        }
+        int index = Arrays.binarySearch(KEYS, key);
+        return index >= 0 ? TYPES[index] : UNKNOWN;
+    }
+}
@@ -14,12 +14,7 @@
  */
 package dk.dma.epd.common.prototype.sensor.nmea;
 
-import java.io.IOException;
 import java.io.OutputStream;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.UnknownHostException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -33,22 +28,19 @@ import dk.dma.ais.sentence.Abk;
 import dk.dma.enav.util.function.Consumer;
 
 /**
- * TCP NMEA sensor
+ * TCP NMEA sensor.
+ * <p>
+ * The connection is handled by the shared {@linkplain NmeaSensorHub}. A lost connection is
+ * re-established with an exponential backoff, starting at the reconnect interval
  */
 @ThreadSafe
 public class NmeaTcpSensor extends NmeaSensor {
 
     private static final Logger LOG = LoggerFactory.getLogger(NmeaTcpSensor.class);
 
-    private static final int TCP_READ_TIMEOUT = 60000; // 1 min
-
     private volatile long reconnectInterval = 5000; // Default 5 sec
     private volatile String hostname;
     private volatile int port;
-    private volatile OutputStream outputStream;
-    private final AtomicBoolean outputStreamSet = new AtomicBoolean(false);
-
-    private volatile Socket clientSocket = new Socket();
 
     public NmeaTcpSensor() {
     }
@@ -66,82 +58,46 @@ public class NmeaTcpSensor extends NmeaSensor {
         this.port = Integer.parseInt(parts[1]);
     }
 
+    /**
+     * Registers the sensor with the {@linkplain NmeaSensorHub}, which connects and reads the
+     * source on its I/O thread. Returns immediately
+     */
     @Override
     public void run() {
-
-        while (!isStopped()) {
-            try {
-                disconnect();
-                connect();
-                readLoop(clientSocket.getInputStream());
-            } catch (IOException e) {
-                LOG.error("TCP NMEA sensor failed: " + e.getMessage() + " retry in " + reconnectInterval / 1000 + " seconds");
-                try {
-                    Thread.sleep(reconnectInterval);
-                } catch (InterruptedException intE) {
-                }
-            }
-        }
-        
-        // Disconnect and flag that the sensor has terminated
-        disconnect();
-        flagTerminated();
-        LOG.warn("TCP NMEA sensor terminated");
+        NmeaSensorHub.getInstance().addTcpSource(this, hostname, port, reconnectInterval);
     }
 
-    private void connect() throws IOException {
-        try {
-            clientSocket = new Socket();
-            InetSocketAddress address = new InetSocketAddress(hostname, port);
-            clientSocket.connect(address);
-            clientSocket.setKeepAlive(true);
-            clientSocket.setSoTimeout(TCP_READ_TIMEOUT);
-            // mark the outputStream as not established yet
-            outputStreamSet.set(false);
-            LOG.info("NMEA source connected " + hostname + ":" + port);
-        } catch (UnknownHostException e) {
-            LOG.error("Unknown host: " + hostname + ": " + e.getMessage());
-            throw e;
-        } catch (IOException e) {
-            LOG.error("Could not connect to NMEA source: " + hostname + ": " + e.getMessage());
-            throw e;
-        }
+    /**
+     * Starts the sensor. No thread is started, since the source is read by the {@linkplain NmeaSensorHub}
+     */
+    @Override
+    public void start() {
+        run();
     }
 
-    private void disconnect() {
-        if (clientSocket != null && getStatus() == Status.CONNECTED) {
-            try {
-                LOG.info("Disconnecting source " + hostname + ":" + port);
-                clientSocket.close();
-            } catch (IOException e) {
-            }
-        }
+    /**
+     * Stops the sensor and closes the connection
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        NmeaSensorHub.getInstance().removeSource(this);
+        LOG.warn("TCP NMEA sensor stopped");
     }
 
     @Override
     public void send(SendRequest sendRequest, Consumer<Abk> resultListener) throws SendException {
         // TODO block until connection is established both for initial
-        // connection and sleep+reconnect. Something like
-        // j.u.c.ReentrantLock is probably the go here. Care
-        // would have to be taken with two cases being that this send was called
-        // from the same thread as the read loop (called synchronously by a
-        // listener) and the other case where the send was called from a
-        // different thread to the read loop.
-
-        // atomically initialize the outputStream if required
-        if (outputStreamSet.compareAndSet(false, true)) {
-            try {
-                outputStream = clientSocket.getOutputStream();
-            } catch (IOException e) {
-                throw new SendException("Could not connect to NMEA source outputStream: "
-                        + clientSocket.toString());
-            }
+        // connection and reconnect
+        OutputStream out = NmeaSensorHub.getInstance().getOutputStream(this);
+        if (out == null) {
+            throw new SendException("Not connected to NMEA source: " + hostname + ":" + port);
         }
-        doSend(sendRequest, resultListener, outputStream);
+        doSend(sendRequest, resultListener, out);
     }
 
     public Status getStatus() {
-        return clientSocket.isConnected() ? Status.CONNECTED : Status.DISCONNECTED;
+        return NmeaSensorHub.getInstance().isConnected(this) ? Status.CONNECTED : Status.DISCONNECTED;
     }
 
     public long getReconnectInterval() {
@@ -14,47 +14,54 @@
  */
 package dk.dma.epd.common.prototype.sensor.nmea;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
-
 import dk.dma.ais.reader.SendException;
 import dk.dma.ais.reader.SendRequest;
 import dk.dma.ais.sentence.Abk;
 import dk.dma.enav.util.function.Consumer;
 
+/**
+ * UDP NMEA sensor. The socket is handled by the shared {@linkplain NmeaSensorHub}
+ */
 public class NmeaUdpSensor extends NmeaSensor {
     
     private static final Logger LOG = LoggerFactory.getLogger(NmeaUdpSensor.class);
 
+    private static final long REBIND_INTERVAL = 5000; // 5 sec
+
     private final int port;
     
     public NmeaUdpSensor(int port) {
         this.port = port;
     }
     
+    /**
+     * Registers the sensor with the {@linkplain NmeaSensorHub}, which receives the datagrams
+     * on its I/O thread. Returns immediately
+     */
     @Override
     public void run() {
-        byte[] receiveData = new byte[256];
-        try (DatagramSocket serverSocket = new DatagramSocket(port)) {
-            while (!isStopped()) {
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                serverSocket.receive(receivePacket);
-                String sentence = new String(receivePacket.getData(), 0, receivePacket.getLength(), Charsets.US_ASCII);
-                handleLine(sentence);
-            }            
-        } catch (IOException e) {
-            LOG.error("Failed to listen on UDP socket", e);
-        }
+        NmeaSensorHub.getInstance().addUdpSource(this, port, REBIND_INTERVAL);
+    }
 
-        // Flag that the sensor has terminated
-        flagTerminated();
-        LOG.warn("UDP NMEA sensor terminated");
+    /**
+     * Starts the sensor. No thread is started, since the source is read by the {@linkplain NmeaSensorHub}
+     */
+    @Override
+    public void start() {
+        run();
+    }
+
+    /**
+     * Stops the sensor and closes the socket
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        NmeaSensorHub.getInstance().removeSource(this);
+        LOG.warn("UDP NMEA sensor stopped");
     }
 
     @Override
@@ -14,7 +14,6 @@
  */
 package dk.dma.epd.common.prototype.service;
 
-import com.bbn.openmap.proj.Projection;
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.Heading;
 import dk.dma.epd.common.prototype.EPD;
@@ -26,6 +25,7 @@ import dk.dma.epd.common.prototype.route.RouteManagerCommon;
 import dk.dma.epd.common.prototype.sensor.pnt.IPntDataListener;
 import dk.dma.epd.common.prototype.sensor.pnt.PntData;
 import dk.dma.epd.common.prototype.sensor.pnt.PntHandler;
+import dk.dma.epd.common.prototype.service.MsiNmSpatialIndex.Corridor;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.util.Calculator;
 import dma.msinm.MCMessage;
@@ -39,6 +39,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -71,7 +73,14 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     private Position currentShipPosition;
     private Position newRouteMousePosition;
     private Route newRoute;
-    private Projection newRouteProjection;
+
+    // Spatial index of the MSI-NM messages, re-built lazily when the messages change
+    private MsiNmSpatialIndex msiNmIndex;
+
+    // The messages near the own ship, the visible routes and the route being drawn
+    private Set<MsiNmNotification> nearShipMessages = new HashSet<>();
+    private Set<MsiNmNotification> nearRouteMessages = new HashSet<>();
+    private Set<MsiNmNotification> nearNewRouteMessages = new HashSet<>();
 
     /**
      * Constructor
@@ -268,6 +277,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
         }
 
         msiNmMessages = newMsiNmMessages;
+        msiNmIndex = null;
 
         // Update the store
         msiNmStore.setMsiNmMessages(msiNmMessages);
@@ -318,6 +328,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
     public synchronized void reloadMsiNmMessages() {
         msiNmLastUpdate = null;
         msiNmMessages = new ArrayList<>();
+        msiNmIndex = null;
         deletedMsiNmIds = new HashSet<>();
         msiNmStore.setMsiNmMessages(msiNmMessages);
         msiNmStore.setDeletedMsiNmIds(deletedMsiNmIds);
@@ -338,6 +349,7 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
      */
     public synchronized void deleteMsiNmMessage(MsiNmNotification message) {
         if (message != null && msiNmMessages.remove(message)) {
+            msiNmIndex = null;
             deletedMsiNmIds.add(message.getId());
             doUpdate();
         }
@@ -349,92 +361,153 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
      */
     public synchronized void recomputeMsiNmMessageFilter(boolean notifyListeners) {
         long t0 = System.currentTimeMillis();
-        boolean updated = false;
-
-        // Check if the MSI filter is on or not
-        if (!enavSettings.isMsiFilter()) {
-            // All MSI-NM are included in the filter
-            for (MsiNmNotification msg : msiNmMessages) {
-                updated |= !msg.isFiltered();
-                msg.setFiltered(true);
-            }
-
-        } else {
-            // MSI-NM filtering is on
 
-            for (MsiNmNotification msg : msiNmMessages) {
+        // Re-build the index if the messages have changed, and re-run all proximity queries
+        getMsiNmIndex();
+        nearShipMessages = findNearShip();
+        nearRouteMessages = findNearRoutes();
+        nearNewRouteMessages = findNearNewRoute();
+        boolean updated = applyMsiNmMessageFilter(msiNmMessages);
 
-                boolean wasFiltered = msg.isFiltered();
-                msg.setFiltered(false);
-
-                // Messages without location always included
-                if (msg.getLocation() == null) {
-                    msg.setFiltered(true);
-                }
+        LOG.debug("RECOMPUTE MSI-NM IN " + (System.currentTimeMillis() - t0) + " MS");
 
-                // 1) Check proximity to ship
-                if (!msg.isFiltered() && currentShipPosition != null) {
-                    Double dist = msg.getDistanceToPosition(currentShipPosition);
-                    if (dist != null && dist < enavSettings.getMsiRelevanceFromOwnShipRange()) {
-                        msg.setFiltered(true);
-                    }
-                }
+        // Has the MSI-NM been updated
+        if (notifyListeners && updated) {
+            fireMsiNmMessagesChanged();
+        }
+    }
 
-                // 2) Check proximity to routes
-                if (!msg.isFiltered() && msg.nearRoute(routeManager.getVisibleRoutes())) {
-                    msg.setFiltered(true);
-                }
+    /**
+     * Updates the filtered state of the given MSI-NM messages from the results of the
+     * latest proximity queries
+     * @param messages the messages to update
+     * @return if the filtered state of any of the messages changed
+     */
+    private boolean applyMsiNmMessageFilter(Collection<MsiNmNotification> messages) {
+        boolean msiFilter = enavSettings.isMsiFilter();
+        boolean updated = false;
+        for (MsiNmNotification msg : messages) {
+            boolean wasFiltered = msg.isFiltered();
+
+            // If the filter is off, all MSI-NM are included in the filter.
+            // Otherwise, messages without location are always included
+            msg.setFiltered(!msiFilter
+                    || msg.getLocation() == null
+                    || nearShipMessages.contains(msg)
+                    || nearRouteMessages.contains(msg)
+                    || nearNewRouteMessages.contains(msg));
+
+            updated |= wasFiltered != msg.isFiltered();
+        }
+        return updated;
+    }
 
-                // 3) Check proximity from a new route mouse position
-                if (!msg.isFiltered() && newRouteMousePosition != null) {
-                    Double dist = msg.getDistanceToPosition(newRouteMousePosition);
-                    if (dist != null && dist < enavSettings.getMsiVisibilityFromNewWaypoint()) {
-                        msg.setFiltered(true);
-                    }
-                }
+    /**
+     * Updates the filtered state of the messages that entered or left the result of
+     * a proximity query, rather than re-computing the filter of all messages
+     * @param oldResult the previous result of the query
+     * @param newResult the new result of the query
+     * @return if the filtered state of any of the messages changed
+     */
+    private boolean applyMsiNmMessageFilter(Set<MsiNmNotification> oldResult, Set<MsiNmNotification> newResult) {
+        Set<MsiNmNotification> changed = new HashSet<>();
+        for (MsiNmNotification msg : oldResult) {
+            if (!newResult.contains(msg)) {
+                changed.add(msg);
+            }
+        }
+        for (MsiNmNotification msg : newResult) {
+            if (!oldResult.contains(msg)) {
+                changed.add(msg);
+            }
+        }
+        return applyMsiNmMessageFilter(changed);
+    }
 
-                // 4) Check proximity to the new route
-                if (!msg.isFiltered() && newRoute != null && newRouteMousePosition != null && newRouteProjection != null &&
-                        msg.nearNewRoute(newRoute, newRouteMousePosition, newRouteProjection)) {
-                    msg.setFiltered(true);
-                }
+    /**
+     * Returns the spatial index of the MSI-NM messages, re-building it if the messages have changed
+     * @return the spatial index of the MSI-NM messages
+     */
+    private MsiNmSpatialIndex getMsiNmIndex() {
+        if (msiNmIndex == null) {
+            msiNmIndex = new MsiNmSpatialIndex(msiNmMessages);
+        }
+        return msiNmIndex;
+    }
 
-                updated |= wasFiltered != msg.isFiltered();
-            }
+    /**
+     * Returns the messages close to the own ship
+     * @return the messages close to the own ship
+     */
+    private Set<MsiNmNotification> findNearShip() {
+        if (currentShipPosition == null) {
+            return Collections.emptySet();
         }
+        return getMsiNmIndex().findNear(currentShipPosition, enavSettings.getMsiRelevanceFromOwnShipRange());
+    }
 
-        LOG.debug("RECOMPUTE MSI-NM IN " + (System.currentTimeMillis() - t0) + " MS");
+    /**
+     * Returns the messages close to the legs of the visible routes
+     * @return the messages close to the visible routes
+     */
+    private Set<MsiNmNotification> findNearRoutes() {
+        if (routeManager == null) {
+            return Collections.emptySet();
+        }
+        Corridor corridor = Corridor.create(routeManager.getVisibleRoutes(), enavSettings.getMsiVisibilityFromNewWaypoint());
+        return getMsiNmIndex().findNear(corridor);
+    }
 
-        // Has the MSI-NM been updated
-        if (notifyListeners && updated) {
-            fireMsiNmMessagesChanged();
+    /**
+     * Returns the messages close to the legs of the route being drawn, including
+     * the leg from the last waypoint to the mouse position
+     * @return the messages close to the route being drawn
+     */
+    private Set<MsiNmNotification> findNearNewRoute() {
+        if (newRouteMousePosition == null) {
+            return Collections.emptySet();
         }
+        Corridor corridor = Corridor.create(newRoute, newRouteMousePosition, enavSettings.getMsiVisibilityFromNewWaypoint());
+        return getMsiNmIndex().findNear(corridor);
     }
 
     /**
      * Called by the MsiLayer to update the filter when a new route is being drawn
      * @param newRouteMousePosition the current mouse position
      * @param newRoute the new route
-     * @param newRouteProjection the new route projection
      */
-    public synchronized void updateNewRouteMousePosition(Position newRouteMousePosition, Route newRoute, Projection newRouteProjection) {
+    public synchronized void updateNewRouteMousePosition(Position newRouteMousePosition, Route newRoute) {
         this.newRouteMousePosition = newRouteMousePosition;
         this.newRoute = newRoute;
-        this.newRouteProjection = newRouteProjection;
-        recomputeMsiNmMessageFilter(true);
+
+        // Only the messages near the route being drawn are affected
+        Set<MsiNmNotification> oldResult = nearNewRouteMessages;
+        nearNewRouteMessages = findNearNewRoute();
+        if (applyMsiNmMessageFilter(oldResult, nearNewRouteMessages)) {
+            fireMsiNmMessagesChanged();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void pntDataUpdate(PntData pntData) {
+    public synchronized void pntDataUpdate(PntData pntData) {
         Position position = pntData.getPosition();
+        if (position == null) {
+            return;
+        }
 
         if (currentShipPosition == null ||
                 Calculator.range(position, currentShipPosition, Heading.GC) > enavSettings.getMsiRelevanceGpsUpdateRange()) {
             currentShipPosition = position;
-            recomputeMsiNmMessageFilter(true);
+
+            // Only the messages near the own ship are affected
+            Set<MsiNmNotification> oldResult = nearShipMessages;
+            nearShipMessages = findNearShip();
+            if (applyMsiNmMessageFilter(oldResult, nearShipMessages)) {
+                fireMsiNmMessagesChanged();
+            }
         }
 
     }
@@ -453,11 +526,23 @@ public class MsiNmServiceHandlerCommon extends EnavServiceHandlerCommon implemen
                 case ROUTE_ADDED:
                 case ROUTE_REMOVED:
                 case ROUTE_CHANGED:
-                    recomputeMsiNmMessageFilter(true);
+                    updateNearRouteMessages();
             }
         }
     }
 
+    /**
+     * Re-computes the messages close to the visible routes
+     */
+    private synchronized void updateNearRouteMessages() {
+        // Only the messages near the visible routes are affected
+        Set<MsiNmNotification> oldResult = nearRouteMessages;
+        nearRouteMessages = findNearRoutes();
+        if (applyMsiNmMessageFilter(oldResult, nearRouteMessages)) {
+            fireMsiNmMessagesChanged();
+        }
+    }
+
     @Override
     public void findAndInit(Object obj) {
         super.findAndInit(obj);
@@ -0,0 +1,401 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCPoint;
+
+/**
+ * Spatial index of MSI-NM messages, used for finding the messages near the own ship,
+ * the visible routes and a route being drawn.
+ * <p>
+ * The locations of each message are reduced to a set of points, with a radius for circles, and
+ * the messages are bucketed in a uniform lat/lon grid by their bounding box. A proximity query
+ * then only examines the messages of the grid cells overlapping the bounding box of the query.
+ * <p>
+ * Like {@linkplain MsiNmNotification#getDistanceToPosition(Position)}, polygons and polylines are
+ * represented by their vertices.
+ */
+@NotThreadSafe
+public class MsiNmSpatialIndex {
+
+    static final double CELL_SIZE = 0.5; // Degrees
+
+    /** Messages whose bounding box spans more grid cells than this are checked by every query */
+    private static final int MAX_CELLS_PER_MESSAGE = 1024;
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final List<Entry> largeEntries = new ArrayList<>();
+    private int size;
+
+    /**
+     * Constructor
+     *
+     * @param messages
+     *            the messages to index. Messages without a location are not indexed
+     */
+    public MsiNmSpatialIndex(Collection<MsiNmNotification> messages) {
+        for (MsiNmNotification message : messages) {
+            Entry entry = Entry.create(message);
+            if (entry == null) {
+                continue;
+            }
+            size++;
+            int minX = cell(entry.minLon), maxX = cell(entry.maxLon);
+            int minY = cell(entry.minLat), maxY = cell(entry.maxLat);
+            if ((long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_MESSAGE) {
+                largeEntries.add(entry);
+                continue;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    Long key = cellKey(x, y);
+                    List<Entry> cellEntries = cells.get(key);
+                    if (cellEntries == null) {
+                        cellEntries = new ArrayList<>();
+                        cells.put(key, cellEntries);
+                    }
+                    cellEntries.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed messages
+     *
+     * @return the number of indexed messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the messages closer than the given range to the position
+     *
+     * @param pos
+     *            the position
+     * @param range
+     *            the range in nautical miles
+     * @return the messages closer than the given range to the position
+     */
+    public Set<MsiNmNotification> findNear(Position pos, double range) {
+        Set<MsiNmNotification> result = new HashSet<>();
+        if (pos == null) {
+            return result;
+        }
+        double dLat = toLatDegrees(range);
+        double dLon = toLonDegrees(range, Math.abs(pos.getLatitude()) + dLat);
+        for (Entry entry : candidates(pos.getLatitude() - dLat, pos.getLongitude() - dLon, pos.getLatitude() + dLat,
+                pos.getLongitude() + dLon)) {
+            Double dist = entry.message.getDistanceToPosition(pos);
+            if (dist != null && dist < range) {
+                result.add(entry.message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the messages within the given corridor
+     *
+     * @param corridor
+     *            the corridor
+     * @return the messages within the given corridor
+     */
+    public Set<MsiNmNotification> findNear(Corridor corridor) {
+        Set<MsiNmNotification> result = new HashSet<>();
+        for (Leg leg : corridor.legs) {
+            for (Entry entry : candidates(leg.minLat, leg.minLon, leg.maxLat, leg.maxLon)) {
+                if (!result.contains(entry.message) && entry.isNear(leg, corridor.width)) {
+                    result.add(entry.message);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entries whose bounding box intersects the given bounding box
+     */
+    private Collection<Entry> candidates(double minLat, double minLon, double maxLat, double maxLon) {
+        Set<Entry> result = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+        int minX = cell(minLon), maxX = cell(maxLon);
+        int minY = cell(minLat), maxY = cell(maxLat);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            // Cheaper to scan all non-empty cells
+            for (List<Entry> cellEntries : cells.values()) {
+                addIntersecting(result, cellEntries, minLat, minLon, maxLat, maxLon);
+            }
+        } else {
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    List<Entry> cellEntries = cells.get(cellKey(x, y));
+                    if (cellEntries != null) {
+                        addIntersecting(result, cellEntries, minLat, minLon, maxLat, maxLon);
+                    }
+                }
+            }
+        }
+        addIntersecting(result, largeEntries, minLat, minLon, maxLat, maxLon);
+        return result;
+    }
+
+    private static void addIntersecting(Set<Entry> result, List<Entry> entries, double minLat, double minLon, double maxLat,
+            double maxLon) {
+        for (Entry entry : entries) {
+            if (entry.minLat <= maxLat && entry.maxLat >= minLat && entry.minLon <= maxLon && entry.maxLon >= minLon) {
+                result.add(entry);
+            }
+        }
+    }
+
+    private static int cell(double value) {
+        return (int) Math.floor(value / CELL_SIZE);
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Converts a distance in nautical miles to degrees of latitude
+     */
+    static double toLatDegrees(double nm) {
+        return nm / 60.0;
+    }
+
+    /**
+     * Converts a distance in nautical miles to degrees of longitude at the given latitude.
+     * Close to the poles, all longitudes are covered
+     */
+    static double toLonDegrees(double nm, double lat) {
+        double cos = Math.cos(Math.toRadians(Math.min(90.0, Math.abs(lat))));
+        return cos < 0.01 ? 360.0 : nm / (60.0 * cos);
+    }
+
+    /**
+     * The points of the locations of a message, along with their bounding box
+     */
+    private static final class Entry {
+        final MsiNmNotification message;
+        final double[] lats;
+        final double[] lons;
+        final double[] radii;
+        final double minLat, minLon, maxLat, maxLon;
+
+        private Entry(MsiNmNotification message, double[] lats, double[] lons, double[] radii) {
+            this.message = message;
+            this.lats = lats;
+            this.lons = lons;
+            this.radii = radii;
+            double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+            for (int i = 0; i < lats.length; i++) {
+                double dLat = toLatDegrees(radii[i]);
+                double dLon = toLonDegrees(radii[i], Math.abs(lats[i]) + dLat);
+                minLat = Math.min(minLat, lats[i] - dLat);
+                maxLat = Math.max(maxLat, lats[i] + dLat);
+                minLon = Math.min(minLon, lons[i] - dLon);
+                maxLon = Math.max(maxLon, lons[i] + dLon);
+            }
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+        }
+
+        /**
+         * Creates an entry for the message, or returns null if the message has no location
+         */
+        static Entry create(MsiNmNotification message) {
+            if (message.getLocation() == null || message.get().getLocations() == null) {
+                return null;
+            }
+            List<double[]> points = new ArrayList<>();
+            for (MCLocation loc : message.get().getLocations()) {
+                double radius = 0.0;
+                if (loc.getType() == MCLocationType.CIRCLE && loc.getRadius() != null && loc.getPoints().size() == 1) {
+                    radius = loc.getRadius().doubleValue();
+                }
+                for (MCPoint pt : loc.getPoints()) {
+                    points.add(new double[] { pt.getLat(), pt.getLon(), radius });
+                }
+            }
+            if (points.isEmpty()) {
+                return null;
+            }
+            double[] lats = new double[points.size()];
+            double[] lons = new double[points.size()];
+            double[] radii = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                lats[i] = points.get(i)[0];
+                lons[i] = points.get(i)[1];
+                radii[i] = points.get(i)[2];
+            }
+            return new Entry(message, lats, lons, radii);
+        }
+
+        /**
+         * Returns if any point of the message is within the given width of the leg
+         */
+        boolean isNear(Leg leg, double width) {
+            for (int i = 0; i < lats.length; i++) {
+                if (leg.distanceTo(lats[i], lons[i]) - radii[i] <= width) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A corridor of a given width around the legs of one or more routes.
+     * <p>
+     * Each leg is represented by its bounding box, expanded by the width of the corridor, which
+     * is used for looking up the candidate messages in the index. The distance from a message to
+     * a leg is then computed in a local equirectangular plane, which is precise enough for the
+     * leg lengths and widths of a route.
+     */
+    @Immutable
+    public static final class Corridor {
+        final List<Leg> legs;
+        final double width;
+
+        private Corridor(List<Leg> legs, double width) {
+            this.legs = legs;
+            this.width = width;
+        }
+
+        /**
+         * Creates a corridor around the legs of the given routes
+         *
+         * @param routes
+         *            the routes
+         * @param width
+         *            the distance in nautical miles from the legs to the edge of the corridor
+         * @return the corridor
+         */
+        public static Corridor create(List<Route> routes, double width) {
+            List<Leg> legs = new ArrayList<>();
+            for (Route route : routes) {
+                addLegs(legs, route, null, width);
+            }
+            return new Corridor(legs, width);
+        }
+
+        /**
+         * Creates a corridor around the legs of a route being drawn, including the leg from the
+         * last waypoint to the mouse position
+         *
+         * @param route
+         *            the route being drawn, or null
+         * @param mousePosition
+         *            the mouse position
+         * @param width
+         *            the distance in nautical miles from the legs to the edge of the corridor
+         * @return the corridor
+         */
+        public static Corridor create(Route route, Position mousePosition, double width) {
+            List<Leg> legs = new ArrayList<>();
+            addLegs(legs, route, mousePosition, width);
+            return new Corridor(legs, width);
+        }
+
+        private static void addLegs(List<Leg> legs, Route route, Position lastPosition, double width) {
+            Position prev = null;
+            if (route != null && route.getWaypoints() != null) {
+                for (RouteWaypoint waypoint : route.getWaypoints()) {
+                    Position pos = waypoint.getPos();
+                    if (prev != null) {
+                        legs.add(new Leg(prev, pos, width));
+                    }
+                    prev = pos;
+                }
+            }
+            if (lastPosition != null) {
+                legs.add(new Leg(prev != null ? prev : lastPosition, lastPosition, width));
+            } else if (prev != null && legs.isEmpty()) {
+                // Single waypoint route
+                legs.add(new Leg(prev, prev, width));
+            }
+        }
+
+        /**
+         * Returns if the corridor has no legs
+         *
+         * @return if the corridor has no legs
+         */
+        public boolean isEmpty() {
+            return legs.isEmpty();
+        }
+    }
+
+    /**
+     * A leg of a corridor
+     */
+    @Immutable
+    static final class Leg {
+        final double lat1, lon1, lat2, lon2;
+        final double minLat, minLon, maxLat, maxLon;
+        final double cosLat;
+
+        Leg(Position pos1, Position pos2, double width) {
+            lat1 = pos1.getLatitude();
+            lon1 = pos1.getLongitude();
+            lat2 = pos2.getLatitude();
+            lon2 = pos2.getLongitude();
+            double dLat = toLatDegrees(width);
+            double dLon = toLonDegrees(width, Math.max(Math.abs(lat1), Math.abs(lat2)) + dLat);
+            minLat = Math.min(lat1, lat2) - dLat;
+            maxLat = Math.max(lat1, lat2) + dLat;
+            minLon = Math.min(lon1, lon2) - dLon;
+            maxLon = Math.max(lon1, lon2) + dLon;
+            cosLat = Math.cos(Math.toRadians((lat1 + lat2) / 2.0));
+        }
+
+        /**
+         * Returns the distance in nautical miles from the given point to the leg
+         */
+        double distanceTo(double lat, double lon) {
+            // Local plane in nautical miles with the start of the leg at the origin
+            double bx = (lon2 - lon1) * 60.0 * cosLat;
+            double by = (lat2 - lat1) * 60.0;
+            double px = (lon - lon1) * 60.0 * cosLat;
+            double py = (lat - lat1) * 60.0;
+            double len2 = bx * bx + by * by;
+            double t = len2 > 0.0 ? Math.max(0.0, Math.min(1.0, (px * bx + py * by) / len2)) : 0.0;
+            double dx = px - t * bx;
+            double dy = py - t * by;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+}
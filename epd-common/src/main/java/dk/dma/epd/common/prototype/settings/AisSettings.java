@@ -66,10 +66,22 @@ public class AisSettings implements Serializable {
     private float cogVectorLengthScaleInterval = 5000.0f;
     private float cogVectorHideBelow = 0.1f;
 
+    /**
+     * The map scale at and above which AIS targets are aggregated into clusters rather than displayed individually.
+     */
+    private float clusterScale = 2000000.0f;
+
+    /**
+     * The size in pixels of the map cells that AIS targets are aggregated into at cluster scale.
+     */
+    private int clusterCellSize = 48;
+
     private final String varNameCogVectorLengthMin = "cogVectorLengthMin";
     private final String varNameCogVectorLengthMax = "cogVectorLengthMax";
     private final String varNameCogVectorLengthScaleInterval = "cogVectorLengthScaleInterval";
     private final String varNameCogVectorHideBelow = "cogVectorHideBelow";
+    private final String varNameClusterScale = "clusterScale";
+    private final String varNameClusterCellSize = "clusterCellSize";
 
     /**
      * Used to notify listeners of changes to properties in this bean.
@@ -126,6 +138,9 @@ public class AisSettings implements Serializable {
                 this.cogVectorLengthScaleInterval);
         this.cogVectorHideBelow = PropUtils.floatFromProperties(props, PREFIX + this.varNameCogVectorHideBelow,
                 this.cogVectorHideBelow);
+        this.clusterScale = PropUtils.floatFromProperties(props, PREFIX + this.varNameClusterScale, this.clusterScale);
+        this.clusterCellSize = PropUtils.intFromProperties(props, PREFIX + this.varNameClusterCellSize,
+                this.clusterCellSize);
 
         if (simulatedSartMmsi == null) {
             simulatedSartMmsi = new String[0];
@@ -155,6 +170,8 @@ public class AisSettings implements Serializable {
         props.put(PREFIX + this.varNameCogVectorLengthMax, Integer.toString(this.cogVectorLengthMax));
         props.put(PREFIX + this.varNameCogVectorLengthScaleInterval, Float.toString(this.cogVectorLengthScaleInterval));
         props.put(PREFIX + this.varNameCogVectorHideBelow, Float.toString(this.cogVectorHideBelow));
+        props.put(PREFIX + this.varNameClusterScale, Float.toString(this.clusterScale));
+        props.put(PREFIX + this.varNameClusterCellSize, Integer.toString(this.clusterCellSize));
     }
 
     /** Getters and setters **/
@@ -289,4 +306,20 @@ public class AisSettings implements Serializable {
     public void setCogVectorHideBelow(float cogVectorHideBelow) {
         this.cogVectorHideBelow = cogVectorHideBelow;
     }
+
+    public float getClusterScale() {
+        return clusterScale;
+    }
+
+    public void setClusterScale(float clusterScale) {
+        this.clusterScale = clusterScale;
+    }
+
+    public int getClusterCellSize() {
+        return clusterCellSize;
+    }
+
+    public void setClusterCellSize(int clusterCellSize) {
+        this.clusterCellSize = clusterCellSize;
+    }
 }
@@ -17,24 +17,26 @@ package dk.dma.epd.common.prototype.shoreservice;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.dma.epd.common.prototype.communication.webservice.ShoreHttpTransport;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 
 /**
- * Encapsulation of HTTP connection to shore.
+ * Encapsulation of HTTP connection to the MONALISA route service.
+ * <p>
+ * The connections are pooled by the {@linkplain ShoreHttpTransport#getShoreTransport() shore transport}.
  */
 public class RouteHttp {
 
     private static final Logger LOG = LoggerFactory.getLogger(RouteHttp.class);
 
     private static final String USER_AGENT = "EPD";
+    private static final String ENDPOINT = "monalisa";
 
     private String uri = "";
     private String url;
@@ -43,8 +45,8 @@ public class RouteHttp {
 //    private int readTimeout = 60000; // 60 sec
 //    private int connectionTimeout = 30000; // 30 sec
 
-    private HttpClient httpClient;
     private PostMethod method;
+    private int timeout;
     private String responseBody;
 
     public RouteHttp(EnavSettings enavSettings) {
@@ -57,9 +59,11 @@ public class RouteHttp {
     public void makeRequest() throws Exception {
         // Make the request
         int resCode = -1;
+        long start = System.nanoTime();
+        ShoreHttpTransport transport = ShoreHttpTransport.getShoreTransport();
         try {
             // System.out.println("Trying to connect to server");
-            resCode = httpClient.executeMethod(method);
+            resCode = transport.execute(method, timeout);
             // System.out.println("Connected!");
         } catch (HttpException e) {
             LOG.error("Failed to make HTTP connection: " + e.getMessage());
@@ -89,19 +93,16 @@ public class RouteHttp {
         }
 
         method.releaseConnection();
+        transport.record(ENDPOINT, System.nanoTime() - start, resCode == 200);
     }
 
     public void init(int timeout) {
-        httpClient = new HttpClient();
+        this.timeout = timeout;
         method = new PostMethod(url);
-        HttpConnectionManagerParams params = httpClient
-                .getHttpConnectionManager().getParams();
         // params.setSoTimeout(readTimeout);
         // params.setConnectionTimeout(connectionTimeout);
-        params.setSoTimeout(timeout);
-        params.setConnectionTimeout(timeout);
+        method.getParams().setSoTimeout(timeout);
         method.setRequestHeader("User-Agent", USER_AGENT);
-        method.setRequestHeader("Connection", "close");
         method.addRequestHeader("Accept", "text/*");
         method.addRequestHeader("Content-Type", "text/xml");
 
@@ -150,4 +151,13 @@ public class RouteHttp {
         return responseBody;
     }
 
+    /**
+     * Returns the statistics of the requests to the route service
+     *
+     * @return the statistics of the route requests
+     */
+    public static ShoreHttpTransport.EndpointStatistics getStatistics() {
+        return ShoreHttpTransport.getShoreTransport().getStatistics(ENDPOINT);
+    }
+
 }
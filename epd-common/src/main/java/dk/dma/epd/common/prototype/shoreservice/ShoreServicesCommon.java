@@ -21,10 +21,7 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +30,7 @@ import com.bbn.openmap.MapHandlerChild;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.ais.AisHandlerCommon;
+import dk.dma.epd.common.prototype.communication.webservice.JaxbContextCache;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreHttp;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceErrorCode;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
@@ -76,7 +74,6 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     private PntHandler pntHandler;
     protected EnavSettings enavSettings;
     private ShoreServiceStatus status = new ShoreServiceStatus();
-    private static final String ENCODING = "UTF-8";
 
     public ShoreServicesCommon(EnavSettings enavSettings) {
         this.enavSettings = enavSettings;
@@ -274,23 +271,23 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
             throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
         }
 
-        // Make request
+        // Make request, unmarshalling the response as it is received
+        Object resObj;
         try {
-            shoreHttp.makeRequest();
+            resObj = shoreHttp.makeRequest(resContextPath);
         } catch (ShoreServiceException e) {
             status.markContactError(e);
             throw e;
+        } catch (JAXBException e) {
+            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
         }
 
-        ShoreServiceResponse res;
-        try {
-            Object resObj = shoreHttp.getXmlUnmarshalledContent(resContextPath);
-            res = (ShoreServiceResponse) resObj;
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+        if (!(resObj instanceof ShoreServiceResponse)) {
+            LOG.error("Failed to unmarshal XML response: unexpected " + resObj);
             throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
         }
+        ShoreServiceResponse res = (ShoreServiceResponse) resObj;
 
         // Set last fail/contact
         status.markContactSuccess();
@@ -330,20 +327,14 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
     @SuppressWarnings({ "rawtypes", "unused" })
     public SSPAResponse makeMonaLisaRouteRequest(RouterequestType monaLisaRoute, int timeout, boolean showInput, boolean showOutput) {
 
-        JAXBContext context = null;
         String xmlReturnRoute = "";
 
         String xml = "";
 
         try {
-            context = JAXBContext.newInstance(RouterequestType.class);
-            Marshaller m = context.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            m.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
-
             // Convert the generated xml route to a String
             StringWriter st = new StringWriter();
-            m.marshal(monaLisaRoute, st);
+            JaxbContextCache.marshal(RouterequestType.class, monaLisaRoute, st);
             xml = st.toString();
 
             if (showInput) {
@@ -389,17 +380,13 @@ public class ShoreServicesCommon extends MapHandlerChild implements IStatusCompo
                     return new SSPAResponse(null, "Failed to receive a route in the area, buffer timedout");
                 }
 
-                Unmarshaller u;
-                JAXBContext jc;
                 RouteresponseType routeResponse = null;
 
                 StringReader sr = new StringReader(xmlReturnRoute);
 
                 try {
-                    jc = JAXBContext.newInstance("dk.dma.epd.common.prototype.monalisa.sspa");
-                    u = jc.createUnmarshaller();
-
-                    routeResponse = (RouteresponseType) ((javax.xml.bind.JAXBElement) u.unmarshal(sr)).getValue();
+                    routeResponse = (RouteresponseType) ((javax.xml.bind.JAXBElement) JaxbContextCache.unmarshal(
+                            "dk.dma.epd.common.prototype.monalisa.sspa", sr)).getValue();
 
                 } catch (JAXBException e1) {
                     e1.printStackTrace();
@@ -14,14 +14,15 @@
  */
 package dk.dma.epd.common.prototype.voct;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.joda.time.DateTime;
@@ -38,6 +39,7 @@ import dk.dma.epd.common.prototype.model.voct.SearchPatternGenerator;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
 import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARTextLogMessage;
@@ -45,6 +47,7 @@ import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SearchPatternRoute;
 import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
 import dk.dma.epd.common.util.Util;
+import dk.dma.epd.common.util.WriteBehindFile;
 import dma.voct.VOCTMessage;
 
 /**
@@ -78,6 +81,18 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
     protected static final Logger LOG = LoggerFactory
             .getLogger(VOCTManagerCommon.class);
 
+    /** Delay in milliseconds for coalescing changes into a single write of the SAR data */
+    public static final long SAVE_DELAY = 2000;
+
+    private final transient WriteBehindFile sarDataFile = new WriteBehindFile(
+            new File(VOCT_FILE), SAVE_DELAY);
+    private final transient Callable<byte[]> sarDataEncoder = new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws IOException {
+            return serializeSarData();
+        }
+    };
+
     public enum VoctMsgStatus {
         ACCEPTED, REJECTED, NOTED, IGNORED, UNKNOWN, WITHDRAWN
     }
@@ -163,6 +178,15 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 
         }
 
+        if (getSarType() == SAR_TYPE.MONTE_CARLO) {
+            MonteCarloData data = new MonteCarloData(sarID, TLKP, CSS, LKP, x,
+                    y, SF, searchObject);
+
+            data.setWeatherPoints(sarWeatherDataPoints);
+
+            setSarData(sarOperation.startMonteCarloCalculations(data));
+        }
+
     }
 
     public void showSARFuture(int i) {
@@ -211,7 +235,7 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
     }
 
     public void displaySar() {
-        saveToFile();
+        scheduleSave();
         // This is where we display SAR
 
         updateLayers();
@@ -220,20 +244,41 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 
     }
 
+    /**
+     * Saves the SAR data on the calling thread
+     */
     public void saveToFile() {
+        try {
+            sarDataFile.write(serializeSarData());
+        } catch (IOException e) {
+            LOG.error("Failed to serialize SAR data: " + e.getMessage());
+        }
+    }
 
-        
-//        if (hasSar || loadSarFromSerialize) {
-//
-//            try (FileOutputStream fileOut = new FileOutputStream(VOCT_FILE);
-//                    ObjectOutputStream objectOut = new ObjectOutputStream(
-//                            fileOut);) {
-//                
-//                objectOut.writeObject(sarData);
-//            } catch (IOException e) {
-//                LOG.error("Failed to save VOCT data: " + e.getMessage());
-//            }
-//        }
+    /**
+     * Schedules a save of the SAR data in the background, coalescing bursts of changes
+     * into a single serialization and write of the SAR data
+     */
+    public void scheduleSave() {
+        sarDataFile.schedule(sarDataEncoder);
+    }
+
+    /**
+     * Returns the serialized SAR data, or null if there is no SAR operation
+     */
+    protected byte[] serializeSarData() throws IOException {
+        SARData data;
+        synchronized (this) {
+            if (!hasSar && !loadSarFromSerialize) {
+                return null;
+            }
+            data = sarData;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+            objectOut.writeObject(data);
+        }
+        return bytes.toByteArray();
     }
 
     @Override
@@ -254,7 +299,7 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 
         // Persist update VOCT info
         // saveToFile();
-        saveToFile();
+        scheduleSave();
     }
 
     public void addListener(VOCTUpdateListener listener) {
@@ -298,7 +343,7 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 
         notifyListeners(VOCTUpdateEvent.EFFORT_ALLOCATION_DISPLAY);
 
-        saveToFile();
+        scheduleSave();
     }
 
     public void generateSearchPattern(
@@ -342,7 +387,13 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
 
         checkSRU(sarData);
 
-        if (sarData instanceof RapidResponseData) {
+        if (sarData instanceof MonteCarloData) {
+            setSarType(SAR_TYPE.MONTE_CARLO);
+            MonteCarloData monteCarloData = (MonteCarloData) sarData;
+            setSarData(sarOperation
+                    .startMonteCarloCalculations(monteCarloData));
+
+        } else if (sarData instanceof RapidResponseData) {
             setSarType(SAR_TYPE.RAPID_RESPONSE);
             RapidResponseData rapidResponseData = (RapidResponseData) sarData;
             setSarData(sarOperation
@@ -394,7 +445,7 @@ public class VOCTManagerCommon extends MapHandlerChild implements Runnable,
         for (int i = 0; i < voctInfoMsgListener.size(); i++) {
             voctInfoMsgListener.get(i).voctMessageUpdate();
         }
-        saveToFile();
+        scheduleSave();
     }
 
     public void addVoctSarInfoListener(IVoctInfoListener listener) {
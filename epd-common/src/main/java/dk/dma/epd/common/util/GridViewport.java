@@ -0,0 +1,196 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The cells of a regular latitude/longitude grid overlapping a viewport.
+ * <p>
+ * When the viewport crosses the antimeridian, the longitude of its western edge is greater
+ * than that of its eastern edge. The viewport is then split into a range of columns east of
+ * the western edge, up to 180 degrees, and a range west of the eastern edge, from -180 degrees.
+ */
+@Immutable
+public final class GridViewport {
+
+    private final int[] minX;
+    private final int[] maxX;
+    private final int minY;
+    private final int maxY;
+
+    private GridViewport(int[] minX, int[] maxX, int minY, int maxY) {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Returns the cells of the grid overlapping the viewport, expanded by a margin of cells
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     * @param margin
+     *            the number of cells to expand the viewport with on each side
+     * @param minLat
+     *            the minimum latitude of the viewport
+     * @param minLon
+     *            the longitude of the western edge of the viewport
+     * @param maxLat
+     *            the maximum latitude of the viewport
+     * @param maxLon
+     *            the longitude of the eastern edge of the viewport
+     * @return the cells overlapping the viewport
+     */
+    public static GridViewport create(double cellSize, int margin, double minLat, double minLon, double maxLat,
+            double maxLon) {
+        int minY = cell(minLat, cellSize) - margin;
+        int maxY = cell(maxLat, cellSize) + margin;
+        int west = cell(minLon, cellSize) - margin;
+        int east = cell(maxLon, cellSize) + margin;
+        return create(west, east, minLon > maxLon, cell(-180.0, cellSize) - margin, cell(180.0, cellSize) + margin,
+                minY, maxY);
+    }
+
+    /**
+     * Returns the cells of a viewport given by the columns and rows of its edges, for grids whose
+     * columns are not aligned with the longitude origin
+     *
+     * @param west
+     *            the column of the western edge of the viewport
+     * @param east
+     *            the column of the eastern edge of the viewport
+     * @param crossesAntimeridian
+     *            if the viewport crosses the antimeridian
+     * @param firstX
+     *            the first column east of the antimeridian
+     * @param lastX
+     *            the last column west of the antimeridian
+     * @param minY
+     *            the first row of the viewport
+     * @param maxY
+     *            the last row of the viewport
+     * @return the cells overlapping the viewport
+     */
+    public static GridViewport create(int west, int east, boolean crossesAntimeridian, int firstX, int lastX,
+            int minY, int maxY) {
+        if (!crossesAntimeridian) {
+            return new GridViewport(new int[] { west }, new int[] { east }, minY, maxY);
+        }
+        // The ranges must not overlap, if the viewport almost spans the globe
+        int eastOfAntimeridian = Math.min(east, west - 1);
+        return new GridViewport(new int[] { west, firstX }, new int[] { lastX, eastOfAntimeridian }, minY, maxY);
+    }
+
+    /**
+     * Returns the span in degrees of longitude from the western to the eastern edge of a viewport
+     *
+     * @param minLon
+     *            the longitude of the western edge of the viewport
+     * @param maxLon
+     *            the longitude of the eastern edge of the viewport
+     * @return the span of the viewport in degrees
+     */
+    public static double getLongitudeSpan(double minLon, double maxLon) {
+        return minLon <= maxLon ? maxLon - minLon : maxLon - minLon + 360.0;
+    }
+
+    /**
+     * Returns the column or row of the grid cell containing the given longitude or latitude
+     *
+     * @param value
+     *            the longitude or latitude
+     * @param cellSize
+     *            the size of the grid cells in degrees
+     * @return the column or row of the cell
+     */
+    public static int cell(double value, double cellSize) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    /**
+     * Returns the number of column ranges, i.e. two if the viewport crosses the antimeridian
+     *
+     * @return the number of column ranges
+     */
+    public int getRangeCount() {
+        return minX.length;
+    }
+
+    /**
+     * Returns the westernmost column of a range
+     *
+     * @param range
+     *            the index of the range
+     * @return the first column of the range
+     */
+    public int getMinX(int range) {
+        return minX[range];
+    }
+
+    /**
+     * Returns the easternmost column of a range
+     *
+     * @param range
+     *            the index of the range
+     * @return the last column of the range
+     */
+    public int getMaxX(int range) {
+        return maxX[range];
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the number of cells within the viewport
+     *
+     * @return the number of cells
+     */
+    public long getCellCount() {
+        long columns = 0;
+        for (int i = 0; i < minX.length; i++) {
+            columns += Math.max(0, maxX[i] - minX[i] + 1);
+        }
+        return columns * Math.max(0, maxY - minY + 1);
+    }
+
+    /**
+     * Returns if the cell is within the viewport
+     *
+     * @param x
+     *            the column of the cell
+     * @param y
+     *            the row of the cell
+     * @return if the cell is within the viewport
+     */
+    public boolean contains(int x, int y) {
+        if (y < minY || y > maxY) {
+            return false;
+        }
+        for (int i = 0; i < minX.length; i++) {
+            if (x >= minX[i] && x <= maxX[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
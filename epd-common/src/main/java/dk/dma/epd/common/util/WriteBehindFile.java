@@ -0,0 +1,220 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind persistence of a file.
+ * <p>
+ * Changes are signalled with {@linkplain #schedule(Callable)}, which returns immediately. After a
+ * delay, a background thread calls the encoder of the latest change and writes the returned contents,
+ * so a burst of changes, e.g. while dragging a waypoint, is encoded and written only once, and never
+ * on the thread making the changes.
+ * <p>
+ * The encoder may run concurrently with further changes. The pending encoder is taken before it is
+ * called, so a change signalled while encoding schedules another write, and the file always ends
+ * up holding the contents encoded after the last change. An encoder failing with an exception, e.g.
+ * a {@code ConcurrentModificationException}, is retried after the delay, as is a failed write.
+ * <p>
+ * The contents are first written to a temporary file, which is synced and then renamed over the
+ * file, so a crash in the middle of a write leaves the previous version of the file intact.
+ * <p>
+ * Pending writes are flushed when the JVM shuts down.
+ */
+@ThreadSafe
+public class WriteBehindFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindFile.class);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "WriteBehindFile");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Set<WriteBehindFile> PENDING = Collections
+            .newSetFromMap(new ConcurrentHashMap<WriteBehindFile, Boolean>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (WriteBehindFile file : PENDING) {
+                    file.flush();
+                }
+            }
+        }, "WriteBehindFile-shutdown"));
+    }
+
+    private final File file;
+    private final long delay;
+    /** The encoder of the contents to write, or null if no write is pending */
+    private final AtomicReference<Callable<byte[]>> pending = new AtomicReference<>();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param file
+     *            the file to write
+     * @param delay
+     *            the delay in milliseconds from the first change of a burst to the write
+     */
+    public WriteBehindFile(File file, long delay) {
+        this.file = file;
+        this.delay = delay;
+    }
+
+    /**
+     * Schedules a write of the contents returned by the given encoder, replacing the encoder of
+     * a pending write
+     *
+     * @param encoder
+     *            returns the contents, or null to leave the file untouched
+     */
+    public void schedule(Callable<byte[]> encoder) {
+        if (pending.getAndSet(encoder) == null) {
+            PENDING.add(this);
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (pending.get() != null) {
+                    flush();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the given contents on the calling thread, replacing a pending write
+     *
+     * @param data
+     *            the contents, or null to leave the file untouched
+     * @return if the file was written
+     */
+    public boolean write(final byte[] data) {
+        if (data == null) {
+            return false;
+        }
+        pending.set(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return data;
+            }
+        });
+        return flush();
+    }
+
+    /**
+     * Writes the contents of the pending write on the calling thread, if any
+     *
+     * @return if the file was written
+     */
+    public boolean flush() {
+        PENDING.remove(this);
+        synchronized (this) {
+            // Take the encoder first, so changes made while encoding or writing schedule another write
+            Callable<byte[]> encoder = pending.getAndSet(null);
+            if (encoder == null) {
+                return false;
+            }
+            try {
+                byte[] data = encoder.call();
+                if (data == null) {
+                    return false;
+                }
+                writeAtomically(file, data);
+                writeCount.incrementAndGet();
+                return true;
+            } catch (Exception e) {
+                LOG.error("Failed to write " + file + ": " + e);
+                // Retry later, unless replaced by a newer change, which has scheduled a write of its own
+                if (pending.compareAndSet(null, encoder)) {
+                    PENDING.add(this);
+                    scheduleFlush();
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns if a write is pending
+     *
+     * @return if a write is pending
+     */
+    public boolean isPending() {
+        return pending.get() != null;
+    }
+
+    /**
+     * Returns the number of times the file has been written
+     *
+     * @return the number of writes
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * Writes the data to a temporary file next to the file, syncs it, and renames it over the file
+     *
+     * @param file
+     *            the file to write
+     * @param data
+     *            the data to write
+     */
+    public static void writeAtomically(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.StartupOrchestrator.Phase;
+
+public class StartupOrchestratorTest {
+
+    @Test
+    public void testDependencies() {
+        StartupOrchestrator startup = new StartupOrchestrator("test", 4);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        Phase<Integer> a = startup.submit("a", new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                Thread.sleep(50L);
+                order.add("a");
+                return 1;
+            }
+        });
+        Phase<Integer> b = startup.submit("b", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                order.add("b");
+                return 2;
+            }
+        });
+        Phase<Void> c = startup.submit("c", new Runnable() {
+            @Override
+            public void run() {
+                order.add("c");
+            }
+        }, a, b);
+
+        c.get();
+        assertEquals(Integer.valueOf(1), a.get());
+        assertEquals(Integer.valueOf(2), b.get());
+        assertEquals(3, order.size());
+        assertEquals("c", order.get(2));
+        assertTrue(startup.getReport().contains("c"));
+        startup.finish();
+    }
+
+    @Test
+    public void testFailedDependency() {
+        StartupOrchestrator startup = new StartupOrchestrator("test", 2);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        Phase<Void> a = startup.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalArgumentException("failed");
+            }
+        });
+        Phase<Void> b = startup.submit("b", new Runnable() {
+            @Override
+            public void run() {
+                order.add("b");
+            }
+        }, a);
+
+        try {
+            b.get();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertTrue(a.isDone());
+        assertTrue(order.isEmpty());
+        startup.finish();
+    }
+}
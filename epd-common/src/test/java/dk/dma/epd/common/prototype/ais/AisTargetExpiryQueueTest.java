@@ -0,0 +1,60 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class AisTargetExpiryQueueTest {
+
+    private static AtoNTarget createAtonTarget(long mmsi, long lastReceived) {
+        AtoNTarget atonTarget = new AtoNTarget();
+        atonTarget.setMmsi(mmsi);
+        atonTarget.setLastReceived(new Date(lastReceived));
+        return atonTarget;
+    }
+
+    @Test
+    public void testPollExpired() {
+        AisTargetExpiryQueue queue = new AisTargetExpiryQueue();
+        AtoNTarget target1 = createAtonTarget(1L, 0L);
+        AtoNTarget target2 = createAtonTarget(2L, 0L);
+
+        queue.schedule(target1, 2000L);
+        queue.schedule(target2, 1000L);
+        // A later deadline is ignored, an earlier one replaces the current
+        queue.schedule(target1, 5000L);
+        queue.schedule(target2, 500L);
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.pollExpired(400L).isEmpty());
+        assertEquals(Arrays.<AisTarget> asList(target2), queue.pollExpired(1000L));
+        assertEquals(Arrays.<AisTarget> asList(target1), queue.pollExpired(10000L));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testGoneTime() {
+        AtoNTarget target = createAtonTarget(1L, 0L);
+        long goneTime = target.getGoneTime(false);
+        assertTrue(!target.hasGone(new Date(goneTime - 1), false));
+        assertTrue(target.hasGone(new Date(goneTime), false));
+    }
+}
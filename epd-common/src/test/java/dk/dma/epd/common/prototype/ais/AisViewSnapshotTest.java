@@ -0,0 +1,161 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+public class AisViewSnapshotTest {
+
+    private static VesselTarget createVesselTarget(long mmsi, int points) {
+        VesselTarget vesselTarget = new VesselTarget();
+        vesselTarget.setMmsi(mmsi);
+        vesselTarget.setLastReceived(new Date());
+        vesselTarget.setAisClass(VesselTarget.AisClass.A);
+        VesselPositionData positionData = new VesselPositionData();
+        positionData.setPos(Position.create(55.0, 11.0));
+        positionData.setSog(12.5f);
+        vesselTarget.setPositionData(positionData);
+        VesselStaticData staticData = new VesselStaticData();
+        staticData.setName("VESSEL " + mmsi);
+        vesselTarget.setStaticData(staticData);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < points; i++) {
+            vesselTarget.getPastTrackData().append(now + i * 1000L, 55.0 + i * 0.001, 11.0);
+        }
+        return vesselTarget;
+    }
+
+    @Test
+    public void testSnapshotAndJournal() throws IOException {
+        Path dir = Files.createTempDirectory("aisview");
+        AisViewSnapshot snapshot = new AisViewSnapshot(dir.resolve(".aissnapshot"));
+        assertTrue(snapshot.isEmpty());
+
+        AtoNTarget atonTarget = new AtoNTarget();
+        atonTarget.setMmsi(992190001L);
+        atonTarget.setPos(Position.create(56.0, 12.0));
+        atonTarget.setName("BUOY");
+
+        // Includes a past track that does not fit the initial record buffer
+        snapshot.writeSnapshot(Arrays.asList(createVesselTarget(1L, 10), createVesselTarget(2L, 1000)),
+                Collections.singletonList(atonTarget), Collections.<SarTarget> emptyList());
+
+        // Checkpoint an update of vessel 1 and the removal of vessel 2
+        snapshot.writeCheckpoint(Collections.singletonList(createVesselTarget(1L, 20)), Collections.singletonList(2L));
+
+        AisStore aisStore = snapshot.load();
+        assertEquals(1, aisStore.getVesselTargets().size());
+        assertNull(aisStore.getVesselTargets().get(2L));
+
+        VesselTarget vesselTarget = aisStore.getVesselTargets().get(1L);
+        assertNotNull(vesselTarget);
+        assertEquals(VesselTarget.AisClass.A, vesselTarget.getAisClass());
+        assertEquals(12.5f, vesselTarget.getPositionData().getSog(), 0.0001);
+        assertEquals("VESSEL 1", vesselTarget.getStaticData().getName());
+        assertEquals(20, vesselTarget.getPastTrackData().size());
+
+        AtoNTarget loadedAton = aisStore.getAtonTargets().get(992190001);
+        assertEquals("BUOY", loadedAton.getName());
+        assertEquals(56.0, loadedAton.getPos().getLatitude(), 0.00001);
+    }
+
+    @Test
+    public void testTornJournal() throws IOException {
+        Path dir = Files.createTempDirectory("aisview");
+        Path snapshotFile = dir.resolve(".aissnapshot");
+        AisViewSnapshot snapshot = new AisViewSnapshot(snapshotFile);
+
+        VesselTarget vesselTarget = createVesselTarget(1L, 10);
+        vesselTarget.getStaticData().setShipType(null);
+        snapshot.writeSnapshot(Collections.singletonList(vesselTarget), Collections.<AtoNTarget> emptyList(),
+                Collections.<SarTarget> emptyList());
+        snapshot.writeCheckpoint(Collections.singletonList(createVesselTarget(2L, 10)), Collections.<Long> emptyList());
+
+        // Append a block header claiming more bytes than were written
+        Files.write(snapshotFile.resolveSibling(".aissnapshot.journal"), new byte[] { 0, 0, 1, 0, 0, 0, 0, 1, 1, 2 },
+                StandardOpenOption.APPEND);
+
+        AisStore aisStore = snapshot.load();
+        assertTrue(snapshot.isDamaged());
+        assertEquals(2, aisStore.getVesselTargets().size());
+        assertNull(aisStore.getVesselTargets().get(1L).getStaticData().getShipType());
+
+        // A new snapshot replaces the damaged journal
+        snapshot.writeSnapshot(aisStore.getVesselTargets().values(), Collections.<AtoNTarget> emptyList(),
+                Collections.<SarTarget> emptyList());
+        assertFalse(snapshot.isDamaged());
+        assertEquals(2, snapshot.load().getVesselTargets().size());
+        assertFalse(snapshot.isDamaged());
+    }
+
+    @Test
+    public void testUnsupportedAndInvalidFiles() throws IOException {
+        Path dir = Files.createTempDirectory("aisview");
+        Path snapshotFile = dir.resolve(".aissnapshot");
+        AisViewSnapshot snapshot = new AisViewSnapshot(snapshotFile);
+        snapshot.writeSnapshot(Collections.singletonList(createVesselTarget(1L, 10)), Collections.<AtoNTarget> emptyList(),
+                Collections.<SarTarget> emptyList());
+
+        // A file of a newer version is left alone
+        byte[] data = Files.readAllBytes(snapshotFile);
+        data[5] = AisViewSnapshot.VERSION + 1;
+        Files.write(snapshotFile, data);
+        assertTrue(snapshot.load().getVesselTargets().isEmpty());
+        assertTrue(snapshot.isDamaged());
+        assertArrayEquals(data, Files.readAllBytes(snapshotFile));
+
+        // An invalid file is renamed
+        Files.write(snapshotFile, new byte[] { 1, 2, 3 });
+        assertTrue(snapshot.load().getVesselTargets().isEmpty());
+        assertTrue(snapshot.isDamaged());
+        assertFalse(Files.exists(snapshotFile));
+        assertTrue(Files.exists(dir.resolve(".aissnapshot.bad")));
+    }
+
+    @Test
+    public void testLongString() throws IOException {
+        Path dir = Files.createTempDirectory("aisview");
+        AisViewSnapshot snapshot = new AisViewSnapshot(dir.resolve(".aissnapshot"));
+        VesselTarget vesselTarget = createVesselTarget(1L, 10);
+        char[] name = new char[AisViewSnapshot.MAX_STRING_LENGTH + 100];
+        Arrays.fill(name, 'X');
+        vesselTarget.getStaticData().setName(new String(name));
+        snapshot.writeSnapshot(Collections.singletonList(vesselTarget), Collections.<AtoNTarget> emptyList(),
+                Collections.<SarTarget> emptyList());
+
+        // Oversized strings are truncated, and the following fields are still decoded
+        VesselTarget loaded = snapshot.load().getVesselTargets().get(1L);
+        assertFalse(snapshot.isDamaged());
+        assertEquals(AisViewSnapshot.MAX_STRING_LENGTH, loaded.getStaticData().getName().length());
+        assertEquals(10, loaded.getPastTrackData().size());
+    }
+}
@@ -0,0 +1,84 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+
+public class PastTrackBufferTest {
+
+    @Test
+    public void testAddPositionMinDist() {
+        PastTrackBuffer buffer = new PastTrackBuffer();
+        buffer.addPosition(Position.create(55.0, 11.0), 100);
+        // Roughly 11 meters away - ignored
+        buffer.addPosition(Position.create(55.0001, 11.0), 100);
+        // Roughly 1100 meters away - added
+        buffer.addPosition(Position.create(55.01, 11.0), 100);
+
+        List<PastTrackPoint> points = buffer.getPoints();
+        assertEquals(2, points.size());
+        assertEquals(55.01, points.get(1).getPosition().getLatitude(), 0.00001);
+    }
+
+    @Test
+    public void testGrowAndRangeQueries() {
+        long now = System.currentTimeMillis();
+        PastTrackBuffer buffer = new PastTrackBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.append(now + i * 1000L, 55.0 + i * 0.01, 11.0);
+        }
+        assertEquals(100, buffer.size());
+
+        List<PastTrackPoint> points = buffer.getPointsNewerThan(new Date(now + 49 * 1000L));
+        assertEquals(50, points.size());
+        assertEquals(55.5, points.get(0).getPosition().getLatitude(), 0.00001);
+
+        points = buffer.getPointsBetween(new Date(now + 9 * 1000L), new Date(now + 19 * 1000L));
+        assertEquals(10, points.size());
+    }
+
+    @Test
+    public void testCleanupAndFlagGone() {
+        long now = System.currentTimeMillis();
+        PastTrackBuffer buffer = new PastTrackBuffer();
+        for (int i = 0; i < 10; i++) {
+            buffer.append(now - (100 - i) * 1000L, 55.0, 11.0 + i * 0.01);
+        }
+        for (int i = 0; i < 5; i++) {
+            buffer.append(now - (5 - i) * 1000L, 56.0, 11.0 + i * 0.01);
+        }
+        buffer.flagGone();
+
+        buffer.cleanup(50);
+        List<PastTrackPoint> points = buffer.getPoints();
+        assertEquals(5, points.size());
+        assertTrue(points.get(4).hasGone());
+
+        // Wrap around the ring after the cleanup
+        for (int i = 0; i < 20; i++) {
+            buffer.append(now + i * 1000L, 57.0, 11.0);
+        }
+        assertEquals(25, buffer.getPoints().size());
+        assertEquals(25, new PastTrackBuffer(buffer).size());
+    }
+}
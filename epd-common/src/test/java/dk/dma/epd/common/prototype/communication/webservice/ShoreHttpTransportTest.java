@@ -0,0 +1,46 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.communication.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.communication.webservice.ShoreHttpTransport.EndpointStatistics;
+
+public class ShoreHttpTransportTest {
+
+    @Test
+    public void testStatistics() {
+        ShoreHttpTransport transport = new ShoreHttpTransport();
+        try {
+            assertNull(transport.getStatistics("/api/xml/msi"));
+
+            transport.record("/api/xml/msi", 10000000L, true);
+            transport.record("/api/xml/msi", 30000000L, false);
+            transport.record("/api/xml/nogo", 5000000L, true);
+
+            EndpointStatistics stats = transport.getStatistics("/api/xml/msi");
+            assertEquals(2, stats.getRequestCount());
+            assertEquals(1, stats.getErrorCount());
+            assertEquals(30, stats.getMaxMillis());
+            assertEquals(20.0, stats.getAverageMillis(), 0.0);
+            assertEquals(2, transport.getStatistics().size());
+        } finally {
+            transport.shutdown();
+        }
+    }
+}
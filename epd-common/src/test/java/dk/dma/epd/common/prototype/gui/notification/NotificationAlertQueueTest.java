@@ -0,0 +1,94 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.gui.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.epd.common.prototype.notification.Notification;
+import dk.dma.epd.common.prototype.notification.NotificationAlert;
+import dk.dma.epd.common.prototype.notification.NotificationAlert.AlertType;
+import dk.dma.epd.common.prototype.notification.NotificationType;
+
+public class NotificationAlertQueueTest {
+
+    private static Notification<String, String> createNotification(String id, NotificationAlert alert) {
+        Notification<String, String> notification = new Notification<>(id, id, NotificationType.NOTIFICATION);
+        notification.addAlerts(alert);
+        return notification;
+    }
+
+    @Test
+    public void testInitialAlert() {
+        NotificationAlertQueue queue = new NotificationAlertQueue();
+        NotificationAlert alert = new NotificationAlert(AlertType.POPUP);
+        List<Notification<String, String>> notifications = Collections.singletonList(createNotification("1", alert));
+
+        queue.update(null, notifications, 1);
+        List<NotificationAlertQueue.DueAlert> due = queue.pollDue(1000L);
+        assertEquals(1, due.size());
+        assertSame(alert, due.get(0).getAlert());
+
+        // Once triggered, a non-repeating alert is not re-scheduled
+        alert.flagTriggered();
+        queue.reschedule(due.get(0), 1000L);
+        assertEquals(0, queue.size());
+
+        // An unchanged panel is not scheduled again
+        queue.update(null, notifications, 1);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testRemovedNotification() {
+        NotificationAlertQueue queue = new NotificationAlertQueue();
+        Notification<String, String> notification1 = createNotification("1", new NotificationAlert(AlertType.POPUP));
+        Notification<String, String> notification2 = createNotification("2", new NotificationAlert(AlertType.POPUP));
+
+        queue.update(null, Arrays.asList(notification1, notification2), 1);
+        queue.update(null, Collections.singletonList(notification2), 2);
+        List<NotificationAlertQueue.DueAlert> due = queue.pollDue(1000L);
+        assertEquals(1, due.size());
+        assertSame(notification2, due.get(0).getNotification());
+    }
+
+    @Test
+    public void testRepeatingAlert() {
+        NotificationAlertQueue queue = new NotificationAlertQueue();
+        NotificationAlert alert = new NotificationAlert(AlertType.POPUP).setRepeatEvery(1);
+        Notification<String, String> notification = createNotification("1", alert);
+
+        queue.update(null, Collections.singletonList(notification), 1);
+        long now = System.currentTimeMillis();
+        NotificationAlertQueue.DueAlert due = queue.pollDue(now).get(0);
+        alert.flagTriggered();
+        queue.reschedule(due, now);
+
+        // Due again after the repeat interval
+        assertTrue(queue.pollDue(now + 1000L).isEmpty());
+        assertEquals(1, queue.pollDue(System.currentTimeMillis() + 60 * 1000L + 1).size());
+
+        // Acknowledging the notification stops the alert
+        notification.setAcknowledged(true);
+        assertEquals(Long.MAX_VALUE, alert.getNextTriggerTime(notification));
+    }
+}
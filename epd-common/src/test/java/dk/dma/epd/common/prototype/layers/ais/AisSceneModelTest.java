@@ -0,0 +1,120 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.ais.VesselPositionData;
+import dk.dma.epd.common.prototype.ais.VesselTarget;
+
+public class AisSceneModelTest {
+
+    private static VesselTarget createVesselTarget(long mmsi, double lat, double lon) {
+        VesselTarget vesselTarget = new VesselTarget();
+        vesselTarget.setMmsi(mmsi);
+        move(vesselTarget, lat, lon);
+        return vesselTarget;
+    }
+
+    private static void move(VesselTarget vesselTarget, double lat, double lon) {
+        VesselPositionData positionData = new VesselPositionData();
+        positionData.setPos(Position.create(lat, lon));
+        vesselTarget.setPositionData(positionData);
+    }
+
+    private static void publish(AisSceneModel scene, AisTarget... aisTargets) {
+        scene.targetsUpdated(Arrays.asList(aisTargets));
+    }
+
+    @Test
+    public void testItems() {
+        AisSceneModel scene = new AisSceneModel(1.0);
+        VesselTarget target1 = createVesselTarget(1L, 55.5, 12.5);
+        VesselTarget target2 = createVesselTarget(2L, 60.5, 20.5);
+        publish(scene, target1, target2);
+        assertEquals(2, scene.size());
+
+        List<AisSceneModel.Item> items = scene.getItems(55.0, 12.0, 56.0, 13.0);
+        assertEquals(1, items.size());
+        AisSceneModel.Item item = items.get(0);
+        assertSame(target1, item.getAisTarget());
+
+        // An update replaces the item, and moves it between cells
+        move(target1, 60.2, 20.2);
+        publish(scene, target1);
+        assertNotSame(item, scene.get(1L));
+        assertTrue(scene.getItems(55.0, 12.0, 56.0, 13.0).isEmpty());
+        assertEquals(2, scene.getItems(60.0, 20.0, 61.0, 21.0).size());
+
+        // Gone targets are removed
+        target2.setStatus(AisTarget.Status.GONE);
+        publish(scene, target2);
+        assertNull(scene.get(2L));
+        assertEquals(Collections.singletonList(scene.get(1L)), scene.getItems(60.0, 20.0, 61.0, 21.0));
+    }
+
+    @Test
+    public void testClusters() {
+        AisSceneModel scene = new AisSceneModel(1.0);
+        publish(scene, createVesselTarget(1L, 55.2, 12.2), createVesselTarget(2L, 55.4, 12.4),
+                createVesselTarget(3L, 56.5, 13.5), createVesselTarget(4L, 70.0, 30.0));
+
+        List<TargetGraphicGrid.Cluster> clusters = scene.getClusters(54.0, 11.0, 58.0, 15.0, 10.0);
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).getCount());
+        assertEquals(55.7, clusters.get(0).getLatitude(), 1e-9);
+        assertEquals(12.7, clusters.get(0).getLongitude(), 1e-9);
+    }
+
+    @Test
+    public void testAntimeridian() {
+        AisSceneModel scene = new AisSceneModel(1.0);
+        publish(scene, createVesselTarget(1L, 10.5, 179.5), createVesselTarget(2L, 10.5, -179.5),
+                createVesselTarget(3L, 10.5, 0.5));
+
+        // The western edge of the viewport is east of its eastern edge
+        assertEquals(2, scene.getItems(10.0, 178.0, 11.0, -178.0).size());
+        assertEquals(2, scene.getClusters(10.0, 178.0, 11.0, -178.0, 1.0).size());
+    }
+
+    @Test
+    public void testWithoutPosition() {
+        AisSceneModel scene = new AisSceneModel(1.0);
+        VesselTarget target = new VesselTarget();
+        target.setMmsi(1L);
+        publish(scene, target);
+        assertEquals(1, scene.size());
+        assertEquals(Collections.singletonList(scene.get(1L)), scene.getItemsWithoutPosition());
+        assertTrue(scene.getItems(-90.0, -180.0, 90.0, 180.0).isEmpty());
+
+        // Once a position is received, the item moves into the grid
+        move(target, 55.5, 12.5);
+        publish(scene, target);
+        assertTrue(scene.getItemsWithoutPosition().isEmpty());
+        assertEquals(1, scene.getItems(55.0, 12.0, 56.0, 13.0).size());
+    }
+}
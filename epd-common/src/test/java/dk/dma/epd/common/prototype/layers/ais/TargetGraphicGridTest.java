@@ -0,0 +1,173 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.ais.AisTarget;
+import dk.dma.epd.common.prototype.settings.AisSettings;
+import dk.dma.epd.common.prototype.settings.NavSettings;
+
+public class TargetGraphicGridTest {
+
+    private static TargetGraphic createGraphic() {
+        return new TargetGraphic() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void update(AisTarget aisTarget, AisSettings aisSettings, NavSettings navSettings, float mapScale) {
+            }
+        };
+    }
+
+    private static AisTarget createTarget() {
+        return new AisTarget() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected long getGoneTolerance(boolean strict) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testViewport() {
+        TargetGraphicGrid grid = new TargetGraphicGrid(1.0);
+        TargetGraphic inside = createGraphic();
+        TargetGraphic outside = createGraphic();
+        TargetGraphic pinned = createGraphic();
+
+        // Everything is visible until the viewport is set
+        assertTrue(grid.put(1L, inside, Position.create(55.5, 12.5), false));
+        assertTrue(grid.put(2L, outside, Position.create(60.5, 20.5), false));
+        assertTrue(grid.put(3L, pinned, Position.create(60.5, 20.5), true));
+
+        List<TargetGraphic> toProject = new ArrayList<>();
+        List<TargetGraphic> visible = grid.setViewport(55.0, 12.0, 56.0, 13.0, false, toProject, new ArrayList<AisTarget>());
+        assertEquals(new HashSet<>(Arrays.asList(inside, pinned)), new HashSet<>(visible));
+        assertEquals(new HashSet<>(Arrays.asList(inside, pinned)), new HashSet<>(toProject));
+
+        // The cells within the viewport are now clean
+        toProject.clear();
+        grid.setViewport(55.0, 12.0, 56.0, 13.0, false, toProject, new ArrayList<AisTarget>());
+        assertEquals(Arrays.asList(pinned), toProject);
+
+        // An update outside the viewport is not projected until the target enters the viewport
+        assertFalse(grid.put(2L, outside, Position.create(60.6, 20.6), false));
+        assertTrue(grid.put(1L, inside, Position.create(55.6, 12.6), false));
+        toProject.clear();
+        visible = grid.setViewport(60.0, 20.0, 61.0, 21.0, false, toProject, new ArrayList<AisTarget>());
+        assertTrue(visible.contains(outside));
+        assertTrue(toProject.contains(outside));
+        assertFalse(visible.contains(inside));
+
+        // Moving a target between cells
+        grid.put(1L, inside, Position.create(60.2, 20.2), false);
+        visible = grid.setViewport(60.0, 20.0, 61.0, 21.0, false, new ArrayList<TargetGraphic>(),
+                new ArrayList<AisTarget>());
+        assertTrue(visible.contains(inside));
+        assertEquals(3, grid.size());
+
+        grid.remove(1L);
+        visible = grid.setViewport(60.0, 20.0, 61.0, 21.0, true, new ArrayList<TargetGraphic>(),
+                new ArrayList<AisTarget>());
+        assertEquals(new HashSet<>(Arrays.asList(outside, pinned)), new HashSet<>(visible));
+        assertEquals(2, grid.size());
+    }
+
+    @Test
+    public void testClusters() {
+        TargetGraphicGrid grid = new TargetGraphicGrid(1.0);
+        TargetGraphic graphic = createGraphic();
+        grid.put(1L, graphic, Position.create(55.2, 12.2), false);
+        grid.put(2L, createGraphic(), Position.create(55.4, 12.4), false);
+        grid.put(3L, createGraphic(), Position.create(56.5, 13.5), false);
+        grid.put(4L, createGraphic(), Position.create(70.0, 30.0), false);
+        TargetGraphic pinned = createGraphic();
+        grid.put(5L, pinned, Position.create(55.0, 12.0), true);
+
+        // Neighbouring cells are merged into a cluster at their mean position
+        List<TargetGraphicGrid.Cluster> clusters = grid.getClusters(54.0, 11.0, 58.0, 15.0, 10.0);
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).getCount());
+        assertEquals(55.7, clusters.get(0).getLatitude(), 1e-9);
+        assertEquals(12.7, clusters.get(0).getLongitude(), 1e-9);
+        assertEquals(Arrays.asList(pinned), grid.getPinned());
+
+        // Moves are reflected in the clusters
+        grid.put(1L, graphic, Position.create(56.8, 13.8), false);
+        clusters = grid.getClusters(54.0, 11.0, 58.0, 15.0, 1.0);
+        assertEquals(2, clusters.size());
+        for (TargetGraphicGrid.Cluster cluster : clusters) {
+            if (cluster.getCount() == 2) {
+                assertEquals(56.65, cluster.getLatitude(), 1e-9);
+            } else {
+                assertEquals(1, cluster.getCount());
+                assertEquals(55.4, cluster.getLatitude(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDeferredUpdates() {
+        TargetGraphicGrid grid = new TargetGraphicGrid(1.0);
+        TargetGraphic graphic = createGraphic();
+        AisTarget target = createTarget();
+        grid.getClusters(60.0, 20.0, 61.0, 21.0, 1.0);
+        grid.putDeferred(1L, graphic, Position.create(55.5, 12.5), target);
+
+        // The update is handed back once the graphic is visible, and only once
+        List<AisTarget> toUpdate = new ArrayList<>();
+        grid.setViewport(60.0, 20.0, 61.0, 21.0, false, new ArrayList<TargetGraphic>(), toUpdate);
+        assertTrue(toUpdate.isEmpty());
+        List<TargetGraphic> toProject = new ArrayList<>();
+        grid.setViewport(55.0, 12.0, 56.0, 13.0, false, toProject, toUpdate);
+        assertEquals(Arrays.asList(target), toUpdate);
+        assertEquals(Arrays.asList(graphic), toProject);
+        toUpdate.clear();
+        grid.setViewport(55.0, 12.0, 56.0, 13.0, true, toProject, toUpdate);
+        assertTrue(toUpdate.isEmpty());
+    }
+
+    @Test
+    public void testAntimeridian() {
+        TargetGraphicGrid grid = new TargetGraphicGrid(1.0);
+        TargetGraphic east = createGraphic();
+        TargetGraphic west = createGraphic();
+        grid.put(1L, east, Position.create(10.5, 179.5), false);
+        grid.put(2L, west, Position.create(10.5, -179.5), false);
+        grid.put(3L, createGraphic(), Position.create(10.5, 0.5), false);
+
+        // The western edge of the viewport is east of its eastern edge
+        List<TargetGraphic> visible = grid.setViewport(10.0, 178.0, 11.0, -178.0, false,
+                new ArrayList<TargetGraphic>(), new ArrayList<AisTarget>());
+        assertEquals(new HashSet<>(Arrays.asList(east, west)), new HashSet<>(visible));
+        assertTrue(grid.put(2L, west, Position.create(10.6, -179.6), false));
+        assertFalse(grid.put(3L, west, Position.create(10.6, 0.6), false));
+
+        assertEquals(2, grid.getClusters(10.0, 178.0, 11.0, -178.0, 1.0).size());
+    }
+}
@@ -0,0 +1,156 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.background;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CoastlineTileStoreTest {
+
+    /**
+     * Returns a closed square ring with the given number of points per side
+     */
+    private static double[] square(double lat0, double lon0, double size, int pointsPerSide) {
+        int n = pointsPerSide * 4;
+        double[] ring = new double[(n + 1) * 2];
+        for (int i = 0; i <= n; i++) {
+            int side = (i / pointsPerSide) % 4;
+            double t = (double) (i % pointsPerSide) / pointsPerSide * size;
+            double lat = side == 0 ? lat0 : side == 1 ? lat0 + t : side == 2 ? lat0 + size : lat0 + size - t;
+            double lon = side == 0 ? lon0 + t : side == 1 ? lon0 + size : side == 2 ? lon0 + size - t : lon0;
+            ring[i * 2] = lat;
+            ring[i * 2 + 1] = lon;
+        }
+        return ring;
+    }
+
+    @Test
+    public void testSimplifyAndClip() {
+        // The collinear points along the sides are removed
+        double[] simplified = CoastlineTiler.simplify(square(0, 0, 1, 100), 0.001);
+        assertEquals(5 * 2, simplified.length);
+
+        double[] clipped = CoastlineTiler.clip(simplified, 0.5, 0.5, 2, 2);
+        double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+        for (int i = 0; i < clipped.length; i += 2) {
+            minLat = Math.min(minLat, clipped[i]);
+            minLon = Math.min(minLon, clipped[i + 1]);
+            assertTrue(clipped[i] <= 1 && clipped[i + 1] <= 1);
+        }
+        assertEquals(0.5, minLat, 1e-9);
+        assertEquals(0.5, minLon, 1e-9);
+    }
+
+    @Test
+    public void testTiles() throws IOException {
+        CoastlineTiler tiler = new CoastlineTiler(new CoastlineTiler.Band[] {
+            new CoastlineTiler.Band(1000000f, 0.1, 10.0), new CoastlineTiler.Band(0f, 0.0, 1.0) });
+        tiler.addRing(0, square(55.2, 10.2, 2.6, 50));
+
+        File file = File.createTempFile("coastline", ".tiles");
+        file.deleteOnExit();
+        tiler.write(file);
+
+        try (CoastlineTileStore store = new CoastlineTileStore(file.toPath(), 16)) {
+            assertEquals(0, store.getBand(5000000f, 55, 10, 56, 11));
+            assertEquals(1, store.getBand(50000f, 55, 10, 56, 11));
+            // Too many fine tiles for the viewport
+            assertEquals(0, store.getBand(50000f, 40, 0, 60, 20));
+
+            // The coarse band holds the square in a single tile
+            List<CoastlineTileStore.Polygon> polygons = store.getPolygons(0, 50, 5, 60, 15);
+            assertEquals(1, polygons.size());
+            assertEquals(5 * 2, polygons.get(0).getLatLons().length);
+
+            // The fine band splits the square across 3 x 3 tiles, within the quantization error
+            assertEquals(9, store.getPolygons(1, 50, 5, 60, 15).size());
+            polygons = store.getPolygons(1, 55.5, 10.5, 55.5, 10.5);
+            assertEquals(1, polygons.size());
+            double[] latLons = polygons.get(0).getLatLons();
+            for (int i = 0; i < latLons.length; i += 2) {
+                assertTrue(latLons[i] >= 55.2 - 1e-4 && latLons[i] <= 56 + 1e-4);
+                assertTrue(latLons[i + 1] >= 10.2 - 1e-4 && latLons[i + 1] <= 11 + 1e-4);
+            }
+            assertTrue(store.getCachedTileCount() <= 16);
+        }
+    }
+
+    @Test
+    public void testShapeFile() throws IOException {
+        double[] ring = square(55.2, 10.2, 0.6, 1);
+        int points = ring.length / 2;
+        ByteBuffer shp = ByteBuffer.allocate(100 + 8 + 44 + 4 + points * 16);
+        shp.position(100);
+        shp.order(ByteOrder.BIG_ENDIAN);
+        shp.putInt(1);
+        shp.putInt((44 + 4 + points * 16) / 2);
+        shp.order(ByteOrder.LITTLE_ENDIAN);
+        shp.putInt(5);
+        shp.position(shp.position() + 32);
+        shp.putInt(1);
+        shp.putInt(points);
+        shp.putInt(0);
+        for (int i = 0; i < ring.length; i += 2) {
+            shp.putDouble(ring[i + 1]);
+            shp.putDouble(ring[i]);
+        }
+        File shapeFile = File.createTempFile("coastline", ".shp");
+        shapeFile.deleteOnExit();
+        Files.write(shapeFile.toPath(), shp.array());
+
+        CoastlineTiler tiler = new CoastlineTiler(new CoastlineTiler.Band[] { new CoastlineTiler.Band(0f, 0.0, 1.0) });
+        tiler.addShapeFile("land", shapeFile.toPath());
+        File file = File.createTempFile("coastline", ".tiles");
+        file.deleteOnExit();
+        tiler.write(file);
+
+        try (CoastlineTileStore store = new CoastlineTileStore(file.toPath())) {
+            assertEquals("land", store.getLayers()[0]);
+            List<CoastlineTileStore.Polygon> polygons = store.getPolygons(0, 55, 10, 56, 11);
+            assertEquals(1, polygons.size());
+            assertEquals(55.2, polygons.get(0).getLatLons()[0], 1e-4);
+            assertEquals(10.2, polygons.get(0).getLatLons()[1], 1e-4);
+        }
+    }
+
+    @Test
+    public void testAntimeridian() throws IOException {
+        CoastlineTiler tiler = new CoastlineTiler(new CoastlineTiler.Band[] {
+            new CoastlineTiler.Band(1000000f, 0.1, 10.0), new CoastlineTiler.Band(0f, 0.0, 1.0) });
+        tiler.addRing(0, square(10.2, 179.2, 0.6, 1));
+        tiler.addRing(0, square(10.2, -179.8, 0.6, 1));
+        tiler.addRing(0, square(10.2, 0.2, 0.6, 1));
+
+        File file = File.createTempFile("coastline", ".tiles");
+        file.deleteOnExit();
+        tiler.write(file);
+
+        try (CoastlineTileStore store = new CoastlineTileStore(file.toPath(), 16)) {
+            // The western edge of the viewport is east of its eastern edge
+            assertEquals(1, store.getBand(50000f, 10, 179, 11, -179));
+            assertEquals(0, store.getBand(50000f, 0, 170, 20, -170));
+            assertEquals(2, store.getPolygons(1, 10, 179, 11, -179).size());
+        }
+    }
+}
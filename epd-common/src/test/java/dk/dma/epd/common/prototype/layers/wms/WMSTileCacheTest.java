@@ -0,0 +1,73 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.layers.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class WMSTileCacheTest {
+
+    private static BufferedImage createImage() {
+        // 100 x 100 ARGB = 40000 bytes
+        return new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        WMSTileCache cache = new WMSTileCache(null, 100000L, 0L, 60000L);
+        cache.put("a", createImage());
+        cache.put("b", createImage());
+
+        // Touch "a" so that "b" is the least recently used tile
+        assertNotNull(cache.getFromMemory("a"));
+        cache.put("c", createImage());
+
+        assertNotNull(cache.getFromMemory("a"));
+        assertNull(cache.getFromMemory("b"));
+        assertNotNull(cache.getFromMemory("c"));
+        assertEquals(80000L, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void testDiskTierAndStaleness() throws Exception {
+        Path dir = Files.createTempDirectory("wmscache");
+        WMSTileCache cache = new WMSTileCache(dir, 100000L, 1000000L, 60000L);
+        cache.put("tile", createImage());
+
+        // Wait for the background disk write
+        for (int i = 0; i < 50 && !Files.exists(dir.resolve(WMSTileCache.hash("tile") + ".png")); i++) {
+            Thread.sleep(100);
+        }
+
+        // A new cache instance, e.g. after a restart, reads the tile from disk
+        WMSTileCache restarted = new WMSTileCache(dir, 100000L, 1000000L, 60000L);
+        assertNull(restarted.getFromMemory("tile"));
+        WMSTileCache.CachedTile tile = restarted.get("tile");
+        assertNotNull(tile);
+        assertEquals(100, tile.getImage().getWidth());
+        assertNotNull(restarted.getFromMemory("tile"));
+
+        WMSTileCache expired = new WMSTileCache(dir, 100000L, 1000000L, -1L);
+        assertTrue(expired.isStale(expired.get("tile")));
+    }
+}
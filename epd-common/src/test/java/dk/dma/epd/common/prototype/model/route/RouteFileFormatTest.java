@@ -0,0 +1,105 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.model.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.SearchPatternRoute;
+
+public class RouteFileFormatTest {
+
+    @Test
+    public void testReadWrite() throws Exception {
+        Route route = createRoute();
+        SearchPatternRoute searchPattern = new SearchPatternRoute(createRoute());
+        searchPattern.setName("Search pattern");
+        List<Route> routes = new ArrayList<>();
+        routes.add(route);
+        routes.add(searchPattern);
+
+        byte[] bytes = new RouteFileFormat(routes, 1).toByteArray();
+        RouteFileFormat read = RouteFileFormat.read(new ByteArrayInputStream(bytes));
+
+        assertEquals(1, read.getActiveRouteIndex());
+        assertEquals(2, read.getRoutes().size());
+
+        Route readRoute = read.getRoutes().get(0);
+        assertSame(Route.class, readRoute.getClass());
+        assertEquals(route.getName(), readRoute.getName());
+        assertEquals(route.getDeparture(), readRoute.getDeparture());
+        assertEquals(route.getStarttime(), readRoute.getStarttime());
+        assertEquals(3, readRoute.getWaypoints().size());
+        for (int i = 0; i < 3; i++) {
+            RouteWaypoint waypoint = route.getWaypoints().get(i);
+            RouteWaypoint readWaypoint = readRoute.getWaypoints().get(i);
+            assertEquals(waypoint.getName(), readWaypoint.getName());
+            assertEquals(waypoint.getPos(), readWaypoint.getPos());
+        }
+
+        // The legs are linked to the waypoints
+        RouteLeg leg = readRoute.getWaypoints().get(0).getOutLeg();
+        assertEquals(12.0, leg.getSpeed(), 0.0);
+        assertSame(readRoute.getWaypoints().get(0), leg.getStartWp());
+        assertSame(readRoute.getWaypoints().get(1), leg.getEndWp());
+        assertSame(leg, readRoute.getWaypoints().get(1).getInLeg());
+        assertNull(readRoute.getWaypoints().get(2).getOutLeg());
+
+        // The search pattern route keeps its type and state
+        Route readSearchPattern = read.getRoutes().get(1);
+        assertTrue(readSearchPattern instanceof SearchPatternRoute);
+        assertEquals("Search pattern", readSearchPattern.getName());
+        assertEquals(3, readSearchPattern.getWaypoints().size());
+        ((SearchPatternRoute) readSearchPattern).switchToStatic();
+        assertEquals(route.getWaypoints().get(2).getPos(), readSearchPattern.getWaypoints().get(2).getPos());
+    }
+
+    @Test
+    public void testLegacyFormat() throws Exception {
+        // Not in this format
+        assertNull(RouteFileFormat.read(new ByteArrayInputStream(new byte[] { (byte) 0xac, (byte) 0xed, 0, 5 })));
+    }
+
+    private static Route createRoute() {
+        Route route = new Route();
+        route.setName("Route");
+        route.setDeparture("Copenhagen");
+        route.setStarttime(new Date(1363170225000L));
+        LinkedList<RouteWaypoint> waypoints = new LinkedList<>();
+        for (int i = 0; i < 3; i++) {
+            RouteWaypoint waypoint = new RouteWaypoint();
+            waypoint.setName("WP " + i);
+            waypoint.setPos(Position.create(55.0 + i * 0.1, 12.0 + i * 0.2));
+            if (i > 0) {
+                RouteLeg leg = new RouteLeg(waypoints.getLast(), waypoint);
+                leg.setSpeed(12.0);
+            }
+            waypoints.add(waypoint);
+        }
+        route.setWaypoints(waypoints);
+        return route;
+    }
+}
@@ -15,8 +15,12 @@
 package dk.dma.epd.common.prototype.model.voct;
 
 import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.voct.sardata.ContainmentGrid;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
+import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
+import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARWeatherData;
 import org.joda.time.DateTime;
 import org.junit.Test;
@@ -25,6 +29,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by Jesper Tejlgaard on 3/17/15.
@@ -189,4 +195,89 @@ public class SarOperationTest {
         assertEquals("050 45.497W", data.getD().getLongitudeAsString());
     }
 
+    @Test
+    public void testFutureCalculationsMatchSequentialCalculations() {
+        SAROperation operation = new SAROperation(SAR_TYPE.RAPID_RESPONSE);
+
+        DateTime css = DateTime.now();
+        DateTime lastKnowPositionTs = css.minusHours(3);
+        Position lastKnowPosition = Position.create(61, -51);
+
+        List<SARWeatherData> surfaceDriftData = new ArrayList<>();
+        surfaceDriftData.add(new SARWeatherData(45.0, 5.0, 15.0, 30.0, lastKnowPositionTs));
+        surfaceDriftData.add(new SARWeatherData(90.0, 3.0, 10.0, 60.0, lastKnowPositionTs.plusHours(1)));
+        surfaceDriftData.add(new SARWeatherData(135.0, 4.0, 20.0, 90.0, lastKnowPositionTs.plusHours(2)));
+
+        RapidResponseData data = new RapidResponseData("1", lastKnowPositionTs, css, lastKnowPosition, 1.0, 0.1, 1.0, 0);
+        data.setWeatherPoints(surfaceDriftData);
+        operation.startRapidResponseCalculations(data);
+
+        long hits = SAROperation.getDriftCache().getHits();
+        List<SARData> futureData = operation.sarFutureCalculations(data);
+        assertEquals(8, futureData.size());
+        // All but the last weather interval are shared with the current calculation
+        assertTrue(SAROperation.getDriftCache().getHits() - hits >= 16);
+
+        for (int i = 0; i < futureData.size(); i++) {
+            RapidResponseData expected = new RapidResponseData("1", lastKnowPositionTs, css.plusMinutes((i + 1) * 30),
+                    lastKnowPosition, 1.0, 0.1, 1.0, 0);
+            expected.setWeatherPoints(surfaceDriftData);
+            SAROperation.getDriftCache().clear();
+            operation.startRapidResponseCalculations(expected);
+
+            RapidResponseData actual = (RapidResponseData) futureData.get(i);
+            assertEquals(expected.getDatum().getLatitude(), actual.getDatum().getLatitude(), 0.0);
+            assertEquals(expected.getDatum().getLongitude(), actual.getDatum().getLongitude(), 0.0);
+        }
+    }
+
+    @Test
+    public void testMonteCarlo() {
+        SAROperation operation = new SAROperation(SAR_TYPE.MONTE_CARLO);
+
+        DateTime css = DateTime.now();
+        DateTime lastKnowPositionTs = css.minusHours(1);
+        Position lastKnowPosition = Position.create(61, -51);
+
+        List<SARWeatherData> surfaceDriftData = new ArrayList<>();
+        surfaceDriftData.add(new SARWeatherData(45.0, 5.0, 15.0, 30.0, lastKnowPositionTs));
+
+        MonteCarloData data = new MonteCarloData("1", lastKnowPositionTs, css, lastKnowPosition, 1.0, 0.1, 1.0, 0);
+        data.setWeatherPoints(surfaceDriftData);
+        data.setSeed(42L);
+        operation.startMonteCarloCalculations(data);
+
+        // The particles are centred on the deterministic drift
+        RapidResponseData rapidResponse = new RapidResponseData("1", lastKnowPositionTs, css, lastKnowPosition, 1.0, 0.1, 1.0, 0);
+        rapidResponse.setWeatherPoints(surfaceDriftData);
+        operation.startRapidResponseCalculations(rapidResponse);
+        assertEquals(rapidResponse.getDatum().getLatitude(), data.getDatum().getLatitude(), 0.5 / 60);
+        assertEquals(rapidResponse.getDatum().getLongitude(), data.getDatum().getLongitude(), 1.0 / 60);
+        assertTrue(data.getRadius() > 0.1);
+
+        ContainmentGrid grid = data.getContainmentGrid();
+        assertNotNull(grid);
+        assertEquals(1.0, grid.getContainment(0, 0, grid.getRows(), grid.getCols()), 0.001);
+
+        // The same seed gives the same result
+        MonteCarloData repeated = new MonteCarloData("1", lastKnowPositionTs, css, lastKnowPosition, 1.0, 0.1, 1.0, 0);
+        repeated.setWeatherPoints(surfaceDriftData);
+        repeated.setSeed(42L);
+        operation.startMonteCarloCalculations(repeated);
+        assertEquals(data.getDatum().getLatitude(), repeated.getDatum().getLatitude(), 0.0);
+        assertEquals(data.getDatum().getLongitude(), repeated.getDatum().getLongitude(), 0.0);
+        assertEquals(data.getRadius(), repeated.getRadius(), 0.0);
+
+        EffortAllocationData effortAllocation = new EffortAllocationData();
+        effortAllocation.setW(1.0);
+        effortAllocation.setPod(0.79);
+        effortAllocation.setGroundSpeed(10);
+        effortAllocation.setSearchTime(1);
+        data.getEffortAllocationData().put(1L, effortAllocation);
+        operation.calculateEffortAllocation(data);
+
+        assertNotNull(data.getAllocationCentre(1L));
+        double containment = data.getAllocationContainment(1L);
+        assertTrue(containment > 0.0 && containment <= 1.0);
+    }
 }
@@ -0,0 +1,150 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class NmeaReplayIndexTest {
+
+    @Test
+    public void testGetOffset() {
+        NmeaReplayIndex.Builder builder = new NmeaReplayIndex.Builder();
+        builder.add(10000L, 0L);
+        // Within the index interval of the previous entry
+        builder.add(10500L, 100L);
+        builder.add(11000L, 200L);
+        builder.add(15000L, 300L);
+        NmeaReplayIndex index = builder.build();
+
+        assertEquals(3, index.size());
+        assertEquals(0L, index.getOffset(new Date(0L)));
+        assertEquals(0L, index.getOffset(new Date(10999L)));
+        assertEquals(200L, index.getOffset(new Date(11000L)));
+        assertEquals(200L, index.getOffset(new Date(14999L)));
+        assertEquals(300L, index.getOffset(new Date(20000L)));
+        assertEquals(new Date(10000L), index.getStart());
+        assertEquals(new Date(15000L), index.getEnd());
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        NmeaReplayIndex.Builder builder = new NmeaReplayIndex.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add(i * NmeaReplayIndex.INDEX_INTERVAL, i * 80L);
+        }
+        NmeaReplayIndex index = builder.build();
+
+        Path file = Files.createTempFile("replay", NmeaReplayIndex.INDEX_SUFFIX);
+        try {
+            index.write(file, 400000L, 1234L);
+            NmeaReplayIndex read = NmeaReplayIndex.read(file, 400000L, 1234L);
+            assertEquals(index.size(), read.size());
+            assertEquals(index.getOffset(new Date(2500500L)), read.getOffset(new Date(2500500L)));
+
+            // Stale index
+            assertNull(NmeaReplayIndex.read(file, 400001L, 1234L));
+            assertNull(NmeaReplayIndex.read(file, 400000L, 1235L));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        Path file = Files.createTempFile("replay", ".txt");
+        try {
+            long[] offsets = writeReplayFile(file, 2000, 2000L);
+            NmeaReplayIndex index;
+            try (MappedFileReader reader = new MappedFileReader(file)) {
+                index = NmeaReplayIndex.build(reader);
+            }
+            assertEquals(offsets.length, index.size());
+            assertEquals(new Date(START), index.getStart());
+            assertEquals(new Date(START + (offsets.length - 1) * 2000L), index.getEnd());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        Path file = Files.createTempFile("replay", ".txt");
+        try {
+            long[] offsets = writeReplayFile(file, 2000, 2000L);
+            try (MappedFileReader reader = new MappedFileReader(file)) {
+                NmeaReplayIndex index = NmeaReplayIndex.build(reader);
+
+                assertEquals(0L, index.getOffset(new Date(START - 1000L)));
+                for (int i = 0; i < offsets.length; i += 97) {
+                    long offset = index.getOffset(new Date(START + i * 2000L + 1500L));
+                    assertEquals(offsets[i], offset);
+
+                    // The replay continues from the source tag
+                    ByteBuffer buffer = ByteBuffer.allocate(5);
+                    reader.read(buffer, offset);
+                    assertEquals("$PGHP", new String(buffer.array(), StandardCharsets.US_ASCII));
+                }
+                assertEquals(offsets[offsets.length - 1], index.getOffset(new Date(Long.MAX_VALUE)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static final long START = 1363170225123L; // 2013-03-13 10:23:45.123 UTC
+
+    /**
+     * Writes a source tag and an AIS sentence per interval, and returns the offsets of the tags
+     */
+    private static long[] writeReplayFile(Path file, int count, long interval) throws Exception {
+        long[] offsets = new long[count];
+        long offset = 0;
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < count; i++) {
+                cal.setTimeInMillis(START + i * interval);
+                String tag = String.format("PGHP,1,%d,%d,%d,%d,%d,%d,%d,219,,2190047,1,4F", cal.get(Calendar.YEAR),
+                        cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY),
+                        cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND));
+                String lines = "$" + tag + "*" + checksum(tag) + "\r\n"
+                        + "!AIVDM,1,1,,A,13u?etPv2;0n:dDPwUM1U1Cb069D,0*24\r\n";
+                offsets[i] = offset;
+                out.write(lines);
+                offset += lines.length();
+            }
+        }
+        return offsets;
+    }
+
+    private static String checksum(String sentence) {
+        int checksum = 0;
+        for (int i = 0; i < sentence.length(); i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        return String.format("%02X", checksum);
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+
+public class NmeaSensorHubTest {
+
+    private static void await(long timeout, Runnable condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            try {
+                condition.run();
+                return;
+            } catch (AssertionError e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static NmeaSensor createSensor(final List<String> sentences) {
+        return new NmeaSensor() {
+            @Override
+            protected void handleSentence(byte[] buf, int offset, int length) {
+                sentences.add(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            }
+
+            @Override
+            public void send(SendRequest sendRequest, Consumer<Abk> resultListener) {
+            }
+
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    @Test
+    public void testTcpSource() throws Exception {
+        final List<String> sentences = new CopyOnWriteArrayList<>();
+        final NmeaSensor sensor = createSensor(sentences);
+        final NmeaSensorHub hub = NmeaSensorHub.getInstance();
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            hub.addTcpSource(sensor, "localhost", server.getLocalPort(), 100L);
+            try (Socket socket = server.accept()) {
+                OutputStream out = socket.getOutputStream();
+                out.write("$A\r\n$B\n$C".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                await(5000L, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertEquals(Arrays.asList("$A", "$B"), sentences);
+                    }
+                });
+                assertTrue(hub.isConnected(sensor));
+                assertEquals(9L, hub.getStatistics(sensor).getBytesReceived());
+                assertEquals(2L, hub.getStatistics(sensor).getSentencesReceived());
+            }
+
+            // The hub reconnects when the peer closes the connection
+            try (Socket socket = server.accept()) {
+                socket.getOutputStream().write("$D\n".getBytes(StandardCharsets.US_ASCII));
+                await(5000L, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertEquals(Arrays.asList("$A", "$B", "$D"), sentences);
+                    }
+                });
+                assertEquals(2L, hub.getStatistics(sensor).getConnectCount());
+            }
+        } finally {
+            hub.removeSource(sensor);
+        }
+
+        await(5000L, new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(sensor.hasTerminated());
+            }
+        });
+    }
+
+    @Test
+    public void testInvalidSource() throws Exception {
+        final List<String> sentences = new CopyOnWriteArrayList<>();
+        NmeaSensor invalidSensor = createSensor(new CopyOnWriteArrayList<String>());
+        NmeaSensor unknownSensor = createSensor(new CopyOnWriteArrayList<String>());
+        NmeaSensor sensor = createSensor(sentences);
+        NmeaSensorHub hub = NmeaSensorHub.getInstance();
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            // An invalid port fails the source, but not the I/O thread shared by the other sources
+            hub.addTcpSource(invalidSensor, "localhost", -1, 100L);
+            // So does a host name that cannot be resolved
+            hub.addTcpSource(unknownSensor, "unknown.invalid", 1234, 100L);
+            hub.addTcpSource(sensor, "localhost", server.getLocalPort(), 100L);
+            try (Socket socket = server.accept()) {
+                socket.getOutputStream().write("$A\n".getBytes(StandardCharsets.US_ASCII));
+                await(5000L, new Runnable() {
+                    @Override
+                    public void run() {
+                        assertEquals(Arrays.asList("$A"), sentences);
+                    }
+                });
+            }
+            assertTrue(!hub.isConnected(invalidSensor));
+            assertTrue(!hub.isConnected(unknownSensor));
+        } finally {
+            hub.removeSource(invalidSensor);
+            hub.removeSource(unknownSensor);
+            hub.removeSource(sensor);
+        }
+    }
+}
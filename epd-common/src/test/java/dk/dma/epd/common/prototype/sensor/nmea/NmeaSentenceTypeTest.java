@@ -0,0 +1,79 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.sensor.nmea;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.ais.reader.SendRequest;
+import dk.dma.ais.sentence.Abk;
+import dk.dma.enav.util.function.Consumer;
+
+public class NmeaSentenceTypeTest {
+
+    private static NmeaSentenceType classify(String line) {
+        byte[] buf = ("xx" + line + "yy").getBytes(StandardCharsets.US_ASCII);
+        return NmeaSentenceType.classify(buf, 2, line.length());
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(NmeaSentenceType.VDM, classify("!AIVDM,1,1,,A,13@ndqhP0tPg2AJPM`8e;JR20000,0*5C"));
+        assertEquals(NmeaSentenceType.VDM, classify("!AIVDO,1,1,,A,13@ndqhP0tPg2AJPM`8e;JR20000,0*5C"));
+        assertEquals(NmeaSentenceType.VDM, classify("\\s:src,c:1400000000*5A\\!BSVDM,1,1,,A,13@ndqhP0tPg2AJPM`8e;JR20000,0*5C"));
+        assertEquals(NmeaSentenceType.RMC, classify("$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A"));
+        assertEquals(NmeaSentenceType.RMC, classify("$ELRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A"));
+        assertEquals(NmeaSentenceType.PROPRIETARY, classify("$PRPNT,1,2,3*00"));
+        assertEquals(NmeaSentenceType.PROPRIETARY, classify("$PSTT,10A,1*00"));
+        assertEquals(NmeaSentenceType.UNKNOWN, classify("$GPGGA,123519,4807.038,N*47"));
+        assertEquals(NmeaSentenceType.UNKNOWN, classify("!AIVD"));
+        assertEquals(NmeaSentenceType.UNKNOWN, classify("garbage"));
+    }
+
+    @Test
+    public void testFraming() {
+        final List<String> sentences = new ArrayList<>();
+        NmeaSensor sensor = new NmeaSensor() {
+            @Override
+            protected void handleSentence(byte[] buf, int offset, int length) {
+                sentences.add(new String(buf, offset, length, StandardCharsets.US_ASCII));
+            }
+
+            @Override
+            public void send(SendRequest sendRequest, Consumer<Abk> resultListener) {
+            }
+
+            @Override
+            public void run() {
+            }
+        };
+
+        ByteBuffer buffer = ByteBuffer.wrap("$A\r\n\r\n$B\n$C".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, sensor.handleSentences(buffer, false));
+        assertEquals(Arrays.asList("$A", "$B"), sentences);
+        assertEquals(9, buffer.position());
+
+        assertEquals(1, sensor.handleSentences(buffer, true));
+        assertEquals(Arrays.asList("$A", "$B", "$C"), sentences);
+        assertEquals(buffer.limit(), buffer.position());
+    }
+}
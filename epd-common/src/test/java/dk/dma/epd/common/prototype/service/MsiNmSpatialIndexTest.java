@@ -0,0 +1,125 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.prototype.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.maritimecloud.util.Timestamp;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteWaypoint;
+import dk.dma.epd.common.prototype.notification.MsiNmNotification;
+import dk.dma.epd.common.prototype.service.MsiNmSpatialIndex.Corridor;
+import dma.msinm.MCLocation;
+import dma.msinm.MCLocationType;
+import dma.msinm.MCMessage;
+import dma.msinm.MCMessageDesc;
+import dma.msinm.MCPoint;
+
+public class MsiNmSpatialIndexTest {
+
+    private static MsiNmNotification createMessage(int id, MCLocationType type, Integer radius, double... latLons) {
+        MCMessage message = new MCMessage();
+        message.setId(id);
+        message.setUpdated(Timestamp.create(0L));
+        MCMessageDesc desc = new MCMessageDesc();
+        desc.setTitle("MSI-NM " + id);
+        message.addDescs(desc);
+        MCLocation location = new MCLocation();
+        location.setType(type);
+        location.setRadius(radius);
+        for (int i = 0; i < latLons.length; i += 2) {
+            MCPoint point = new MCPoint();
+            point.setLat(latLons[i]);
+            point.setLon(latLons[i + 1]);
+            location.addPoints(point);
+        }
+        message.addLocations(location);
+        return new MsiNmNotification(message);
+    }
+
+    @Test
+    public void testFindNearPosition() {
+        Random random = new Random(42L);
+        List<MsiNmNotification> messages = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double lat = 54.0 + random.nextDouble() * 4.0;
+            double lon = 8.0 + random.nextDouble() * 8.0;
+            if (i % 3 == 0) {
+                messages.add(createMessage(i, MCLocationType.CIRCLE, 1 + random.nextInt(5), lat, lon));
+            } else {
+                messages.add(createMessage(i, MCLocationType.POINT, null, lat, lon));
+            }
+        }
+        MsiNmSpatialIndex index = new MsiNmSpatialIndex(messages);
+        assertEquals(messages.size(), index.size());
+
+        // The index must agree with a brute force search
+        for (int i = 0; i < 20; i++) {
+            Position pos = Position.create(54.0 + random.nextDouble() * 4.0, 8.0 + random.nextDouble() * 8.0);
+            Set<MsiNmNotification> expected = new HashSet<>();
+            for (MsiNmNotification message : messages) {
+                if (message.getDistanceToPosition(pos) < 40.0) {
+                    expected.add(message);
+                }
+            }
+            assertEquals(expected, index.findNear(pos, 40.0));
+        }
+    }
+
+    @Test
+    public void testFindNearCorridor() {
+        MsiNmNotification onLeg = createMessage(1, MCLocationType.POINT, null, 55.0, 11.0);
+        MsiNmNotification nearLeg = createMessage(2, MCLocationType.POINT, null, 55.1, 10.5);
+        MsiNmNotification circle = createMessage(3, MCLocationType.CIRCLE, 5, 55.2, 11.5);
+        MsiNmNotification farFromLeg = createMessage(4, MCLocationType.POINT, null, 55.5, 11.0);
+        MsiNmNotification polygon = createMessage(5, MCLocationType.POLYGON, null, 56.0, 12.0, 56.0, 12.5, 56.5, 12.5);
+        MsiNmSpatialIndex index = new MsiNmSpatialIndex(Arrays.asList(onLeg, nearLeg, circle, farFromLeg, polygon));
+
+        // A route along the 55th parallel. All messages are within the bounding box of the route
+        Route route = new Route();
+        for (Position pos : Arrays.asList(Position.create(55.0, 10.0), Position.create(55.0, 12.0),
+                Position.create(56.5, 12.5))) {
+            RouteWaypoint waypoint = new RouteWaypoint();
+            waypoint.setPos(pos);
+            route.getWaypoints().add(waypoint);
+        }
+
+        Set<MsiNmNotification> near = index.findNear(Corridor.create(Arrays.asList(route), 10.0));
+        assertEquals(new HashSet<>(Arrays.asList(onLeg, nearLeg, circle, polygon)), near);
+
+        // The route being drawn only has its first waypoint, with the mouse at the end of the first leg
+        route.getWaypoints().removeLast();
+        route.getWaypoints().removeLast();
+        near = index.findNear(Corridor.create(route, Position.create(55.0, 12.0), 10.0));
+        assertEquals(new HashSet<>(Arrays.asList(onLeg, nearLeg, circle)), near);
+
+        // Only the mouse position
+        near = index.findNear(Corridor.create(null, Position.create(55.0, 11.0), 1.0));
+        assertTrue(near.contains(onLeg));
+        assertEquals(1, near.size());
+    }
+}
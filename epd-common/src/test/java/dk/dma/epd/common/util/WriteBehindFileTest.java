@@ -0,0 +1,125 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WriteBehindFileTest {
+
+    private static Callable<byte[]> contents(final byte... data) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return data;
+            }
+        };
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        File file = File.createTempFile("writebehind", ".dat");
+        file.deleteOnExit();
+        WriteBehindFile writeBehindFile = new WriteBehindFile(file, 200L);
+
+        // A burst of changes results in a single encoding and write of the latest contents
+        final AtomicInteger encodeCount = new AtomicInteger();
+        for (int i = 1; i <= 10; i++) {
+            final byte value = (byte) i;
+            writeBehindFile.schedule(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    encodeCount.incrementAndGet();
+                    return new byte[] { value };
+                }
+            });
+        }
+        assertTrue(writeBehindFile.isPending());
+        assertEquals(0L, writeBehindFile.getWriteCount());
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (writeBehindFile.isPending() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        Thread.sleep(100L);
+        assertFalse(writeBehindFile.isPending());
+        assertEquals(1L, writeBehindFile.getWriteCount());
+        assertEquals(1, encodeCount.get());
+        assertArrayEquals(new byte[] { 10 }, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        File file = File.createTempFile("writebehind", ".dat");
+        file.deleteOnExit();
+        WriteBehindFile writeBehindFile = new WriteBehindFile(file, 60000L);
+
+        writeBehindFile.schedule(contents((byte) 1, (byte) 2, (byte) 3));
+        assertTrue(writeBehindFile.flush());
+        assertFalse(writeBehindFile.isPending());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(file.toPath()));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // Nothing pending
+        assertFalse(writeBehindFile.flush());
+        assertTrue(writeBehindFile.write(new byte[] { 4 }));
+        assertArrayEquals(new byte[] { 4 }, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testFailedWrite() throws IOException {
+        File dir = Files.createTempDirectory("writebehind").toFile();
+        dir.deleteOnExit();
+        // The temporary file cannot be created in a missing directory
+        WriteBehindFile writeBehindFile = new WriteBehindFile(new File(new File(dir, "missing"), "file.dat"), 60000L);
+
+        writeBehindFile.schedule(contents((byte) 1, (byte) 2, (byte) 3));
+        assertFalse(writeBehindFile.flush());
+        // The contents are kept for the next flush
+        assertTrue(writeBehindFile.isPending());
+        assertEquals(0L, writeBehindFile.getWriteCount());
+    }
+
+    @Test
+    public void testFailedEncoding() throws IOException {
+        File file = File.createTempFile("writebehind", ".dat");
+        file.deleteOnExit();
+        WriteBehindFile writeBehindFile = new WriteBehindFile(file, 60000L);
+
+        Callable<byte[]> failing = new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                throw new IllegalStateException("Modified while encoding");
+            }
+        };
+        writeBehindFile.schedule(failing);
+        assertFalse(writeBehindFile.flush());
+        // The encoder is kept for the next flush, unless replaced by a newer change
+        assertTrue(writeBehindFile.isPending());
+        writeBehindFile.schedule(contents((byte) 5));
+        assertTrue(writeBehindFile.flush());
+        assertArrayEquals(new byte[] { 5 }, Files.readAllBytes(file.toPath()));
+    }
+}
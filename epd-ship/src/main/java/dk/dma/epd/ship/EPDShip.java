@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 
@@ -49,6 +50,8 @@ import dk.dma.epd.common.ExceptionHandler;
 import dk.dma.epd.common.graphics.Resources;
 import dk.dma.epd.common.prototype.Bootstrap;
 import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.StartupOrchestrator;
+import dk.dma.epd.common.prototype.StartupOrchestrator.Phase;
 import dk.dma.epd.common.prototype.PluginLoader;
 import dk.dma.epd.common.prototype.ais.VesselTarget;
 import dk.dma.epd.common.prototype.gui.SystemTrayCommon;
@@ -167,8 +170,18 @@ public final class EPDShip extends EPD implements IOwnShipListener {
             homePath = determineHomePath(Paths.get(System.getProperty("user.home"), ".epd-ship"));
         }
 
-        new Bootstrap().run(this, new String[] { "epd-ship.properties", "enc_navicon.properties", "settings.properties",
-                "transponder.xml" }, new String[] { "routes", "layout/static", "shape/GSHHS_shp", "identities" });
+        // Independent parts of the startup are run in parallel, and the time of each phase is reported
+        StartupOrchestrator startup = new StartupOrchestrator("EPDShip");
+
+        startup.submit("Bootstrap", new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new Bootstrap().run(EPDShip.this, new String[] { "epd-ship.properties", "enc_navicon.properties",
+                        "settings.properties", "transponder.xml" }, new String[] { "routes", "layout/static",
+                        "shape/GSHHS_shp", "identities" });
+                return null;
+            }
+        }).get();
 
         // Set up log4j logging
         LOG = LoggerFactory.getLogger(EPDShip.class);
@@ -189,7 +202,12 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         // Load settings or get defaults and add to bean context
         settings = new EPDSettings();
         LOG.info("Using settings file: " + getSettings().getSettingsFile());
-        settings.loadFromFile();
+        startup.run("Settings", new Runnable() {
+            @Override
+            public void run() {
+                settings.loadFromFile();
+            }
+        });
         mapHandler.add(settings);
 
         // Determine if instance already running and if that is allowed
@@ -198,6 +216,33 @@ public final class EPDShip extends EPD implements IOwnShipListener {
             handleEpdAlreadyRunning();
         }
 
+        // Load the stores in the background. They are added to the bean context in the original order below
+        Phase<RouteManager> routeManagerPhase = startup.submit("Routes", new Callable<RouteManager>() {
+            @Override
+            public RouteManager call() {
+                return RouteManager.loadRouteManager();
+            }
+        });
+        Phase<FALManager> falManagerPhase = startup.submit("FAL", new Callable<FALManager>() {
+            @Override
+            public FALManager call() {
+                return FALManager.loadFALManager();
+            }
+        });
+        Phase<VOCTManager> voctManagerPhase = startup.submit("VOCT", new Callable<VOCTManager>() {
+            @Override
+            public VOCTManager call() {
+                return VOCTManager.loadVOCTManager();
+            }
+        });
+        Phase<RouteSuggestionHandler> routeSuggestionPhase = startup.submit("Route suggestions",
+                new Callable<RouteSuggestionHandler>() {
+                    @Override
+                    public RouteSuggestionHandler call() {
+                        return RouteSuggestionHandler.loadRouteSuggestionHandler();
+                    }
+                });
+
         // start riskHandler
         startRiskHandler();
 
@@ -215,9 +260,21 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         mapHandler.add(msPntHandler);
 
         // Start AIS target monitoring
+        // The AIS view is loaded while the remaining handlers and plugins are created. Received
+        // messages are queued until the handler thread has been started with the loaded view
         aisHandler = new AisHandler(settings.getSensorSettings(), settings.getAisSettings());
-        aisHandler.loadView();
-        EPD.startThread(aisHandler, "AisHandler");
+        Phase<Void> aisViewPhase = startup.submit("AIS view", new Runnable() {
+            @Override
+            public void run() {
+                aisHandler.loadView();
+            }
+        });
+        startup.submit("AIS handler", new Runnable() {
+            @Override
+            public void run() {
+                EPD.startThread(aisHandler, "AisHandler");
+            }
+        }, aisViewPhase);
         mapHandler.add(aisHandler);
 
         // Start own-ship handler
@@ -241,13 +298,13 @@ public final class EPDShip extends EPD implements IOwnShipListener {
         }
 
         // Load routeManager and register as GPS data listener
-        routeManager = RouteManager.loadRouteManager();
+        routeManager = routeManagerPhase.get();
         mapHandler.add(routeManager);
 
-        falManager = FALManager.loadFALManager();
+        falManager = falManagerPhase.get();
         mapHandler.add(falManager);
 
-        voctManager = VOCTManager.loadVOCTManager();
+        voctManager = voctManagerPhase.get();
         mapHandler.add(voctManager);
 
         // Create shore services
@@ -277,7 +334,7 @@ public final class EPDShip extends EPD implements IOwnShipListener {
 
         // Create the route suggestion handler
         // routeSuggestionHandler = new RouteSuggestionHandler();
-        routeSuggestionHandler = RouteSuggestionHandler.loadRouteSuggestionHandler();
+        routeSuggestionHandler = routeSuggestionPhase.get();
         mapHandler.add(routeSuggestionHandler);
 
         // Create a new MSI-NM handler
@@ -308,37 +365,50 @@ public final class EPDShip extends EPD implements IOwnShipListener {
 
         // Create plugin components
 
-        try {
-            pluginLoader = new PluginLoader(getProperties(), getHomePath(), getPropertyFileName());
-            pluginLoader.createPluginComponents(new Consumer<Object>() {
-                public void accept(Object comp) {
-                    mapHandler.add(comp);
+        startup.run("Plugins", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pluginLoader = new PluginLoader(getProperties(), getHomePath(), getPropertyFileName());
+                    pluginLoader.createPluginComponents(new Consumer<Object>() {
+                        public void accept(Object comp) {
+                            mapHandler.add(comp);
+                        }
+                    });
+                } catch (Exception e) {
+                    LOG.error("Failed to load plugin container " + e.getMessage());
                 }
-            });
-        } catch (Exception e) {
-            LOG.error("Failed to load plugin container " + e.getMessage());
-        }
+            }
+        });
 
         // pluginLoader.createPluginComponents(comp -> mapHandler.add(comp));
 
-        final CountDownLatch guiCreated = new CountDownLatch(1);
+        // The layers read the AIS targets when the GUI is created, so it must wait for the loaded view
+        aisViewPhase.get();
 
-        // Create and show GUI
-        SwingUtilities.invokeLater(new Runnable() {
+        startup.run("GUI", new Runnable() {
             @Override
             public void run() {
-                createAndShowGUI();
-                guiCreated.countDown();
+                final CountDownLatch guiCreated = new CountDownLatch(1);
+
+                // Create and show GUI
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        createAndShowGUI();
+                        guiCreated.countDown();
+                    }
+                });
+
+                // Wait for gui to be created
+                try {
+                    guiCreated.await();
+                } catch (InterruptedException e) {
+                    LOG.error("Interrupted while waiting for GUI to be created", e);
+                }
             }
         });
 
-        // Wait for gui to be created
-        try {
-            guiCreated.await();
-        } catch (InterruptedException e) {
-            LOG.error("Interrupted while waiting for GUI to be created", e);
-        }
-
         // Create embedded transponder frame
         transponderFrame = new TransponderFrame(getHomePath().resolve("transponder.xml").toString(), true, mainFrame);
         mapHandler.add(transponderFrame);
@@ -347,6 +417,8 @@ public final class EPDShip extends EPD implements IOwnShipListener {
             transponderFrame.startTransponder();
         }
 
+        // Log the startup report once the remaining background phases have completed
+        startup.finish();
     }
 
     /**
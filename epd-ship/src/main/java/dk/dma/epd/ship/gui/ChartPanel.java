@@ -593,7 +593,8 @@ public class ChartPanel extends ChartPanelCommon implements DockableComponentPan
     @Override
     public void voctUpdated(VOCTUpdateEvent e) {
         if (e == VOCTUpdateEvent.SAR_RECEIVED_CLOUD) {
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
 
                 RapidResponseData data = (RapidResponseData) voctManager.getSarData();
 
@@ -621,7 +622,8 @@ public class ChartPanel extends ChartPanelCommon implements DockableComponentPan
 
         if (e == VOCTUpdateEvent.SAR_DISPLAY) {
 
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
                 RapidResponseData data = (RapidResponseData) voctManager.getSarData();
 
                 List<Position> waypoints = new ArrayList<Position>();
@@ -14,51 +14,17 @@
  */
 package dk.dma.epd.ship.layers.background;
 
-import java.awt.Graphics;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.bbn.openmap.layer.shape.MultiShapeLayer;
-import com.bbn.openmap.omGraphics.OMGraphicList;
+import dk.dma.epd.common.prototype.layers.background.CoastalOutlineLayerCommon;
 
 /**
  * Layer for simple coastal outline background
  */
-public class CoastalOutlineLayer extends MultiShapeLayer {
+public class CoastalOutlineLayer extends CoastalOutlineLayerCommon {
     
     private static final long serialVersionUID = 1L;
-    @SuppressWarnings("unused")
-    private Logger LOG;
-    
-    public CoastalOutlineLayer() {
-        super();
-        LOG = LoggerFactory.getLogger(CoastalOutlineLayer.class);
-    }
     
     public void forceRedraw() {
         doPrepare();
     }
     
-    @Override
-    public synchronized OMGraphicList prepare() {
-        if (!isVisible()) {
-            return null;
-        }
-        
-        //long start = System.nanoTime();
-        OMGraphicList list = super.prepare();
-        //long end = System.nanoTime();
-        //LOG.debug("Time to prepare: "+(end-start)/1000000);
-        return list;
-    }
-    
-    @Override
-    public void paint(Graphics g) {
-        //long start = System.nanoTime();
-        super.paint(g);
-        //long end = System.nanoTime();
-        //LOG.debug("Time to paint: "+(end-start)/1000000);
-    }
-    
 }
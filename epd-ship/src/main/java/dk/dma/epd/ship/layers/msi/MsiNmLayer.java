@@ -108,7 +108,7 @@ public class MsiNmLayer extends MsiNmLayerCommon {
     @Override
     public void mouseExited(MouseEvent arg0) {
         if (RouteEditMouseMode.MODE_ID.equals(mouseDelegator.getActiveMouseModeID())) {
-            msiNmHandler.updateNewRouteMousePosition(null, null, null);
+            msiNmHandler.updateNewRouteMousePosition(null, null);
         }
     }
     
@@ -122,7 +122,7 @@ public class MsiNmLayer extends MsiNmLayerCommon {
             LatLonPoint mousePosition = ((MapBean) e.getSource())
                     .getProjection().inverse(e.getPoint());
             Position pos = Position.create(mousePosition.getLatitude(), mousePosition.getLongitude());
-            msiNmHandler.updateNewRouteMousePosition(pos, newRouteLayer.getRoute(), getProjection());
+            msiNmHandler.updateNewRouteMousePosition(pos, newRouteLayer.getRoute());
         }
         
         return super.mouseMoved(e);
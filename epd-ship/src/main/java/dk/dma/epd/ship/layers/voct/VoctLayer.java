@@ -26,6 +26,7 @@ import com.bbn.openmap.proj.coords.LatLonPoint;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.model.voct.SARAreaData;
+import dk.dma.epd.common.prototype.layers.voct.ContainmentGridGraphic;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics.LineType;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationInternalGraphics;
@@ -38,6 +39,7 @@ import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointDataSARIS;
 import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
@@ -64,6 +66,7 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
     private SarAreaGraphic sarArea;
     private SarGraphics sarGraphics;
+    private ContainmentGridGraphic containmentGrid;
 
     private MainFrame mainFrame;
 
@@ -453,7 +456,8 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
         if (e == VOCTUpdateEvent.SAR_DISPLAY) {
 
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
                 drawRapidResponse();
             }
             if (voctManager.getSarType() == SAR_TYPE.DATUM_POINT) {
@@ -500,7 +504,8 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
         if (e == VOCTUpdateEvent.SAR_RECEIVED_CLOUD) {
             editLocked = true;
 
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
                 drawRapidResponse();
             }
 
@@ -646,6 +651,13 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
             sarGraphics = new SarGraphics(datum, radius, LKP,
                     data.getCurrentList(), data.getWindList());
             graphics.add(sarGraphics);
+
+            graphics.remove(containmentGrid);
+            containmentGrid = null;
+            if (data instanceof MonteCarloData && ((MonteCarloData) data).getContainmentGrid() != null) {
+                containmentGrid = new ContainmentGridGraphic(((MonteCarloData) data).getContainmentGrid());
+                graphics.add(containmentGrid);
+            }
         }
 
         doPrepare();
@@ -742,6 +754,12 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
         graphics.clear();
 
+        containmentGrid = null;
+        if (data instanceof MonteCarloData && ((MonteCarloData) data).getContainmentGrid() != null) {
+            containmentGrid = new ContainmentGridGraphic(((MonteCarloData) data).getContainmentGrid());
+            graphics.add(containmentGrid);
+        }
+
         sarArea = new SarAreaGraphic(A, B, C, D);
         graphics.add(sarArea);
 
@@ -794,6 +812,6 @@ public class VoctLayer extends GeneralLayer implements MapMouseListener,
 
     public void updateEffectiveAreaLocation(SARData sarData) {
         effectiveArea.updateEffectiveAreaSize(sarData);
-        voctManager.saveToFile();
+        voctManager.scheduleSave();
     }
 }
@@ -14,20 +14,42 @@
  */
 package dk.dma.epd.ship.risk;
 
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.bbn.openmap.proj.Projection;
+
+import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.prototype.communication.webservice.ShoreServiceException;
+import dk.dma.epd.common.prototype.sensor.pnt.PntData;
+import dk.dma.epd.common.prototype.shoreservice.ShoreServicesCommon;
 import dk.dma.epd.common.util.Util;
 import dk.dma.epd.ship.EPDShip;
 import dk.frv.enav.common.xml.risk.response.Risk;
 import dk.frv.enav.common.xml.risk.response.RiskList;
 
+/**
+ * Polls the shore services for the risk indexes of the vessels around own ship and in the chart viewport.
+ * <p>
+ * The area around own ship and the chart viewport are requested as one area if they overlap, and
+ * as two areas otherwise. Each area is padded before it is requested, and the areas are only
+ * re-requested when the viewport or own ship leaves the padded areas, and otherwise periodically.
+ * The polling interval is doubled, up to a maximum, as long as the risk indexes are unchanged.
+ * <p>
+ * The results are merged into the risk index map. Vessels that have left a re-requested area
+ * are removed, and vessels outside the area are removed when they have not been reported for a while.
+ */
 public class RiskHandler implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(RiskHandler.class);
@@ -36,8 +58,38 @@ public class RiskHandler implements Runnable {
         HIGH, MEDIUM, LOW, UNKNOWN
     };
 
-    private Map<Long, RiskList> riskListMap = new HashMap<>();
-    private static final Object MUTEX = new Object();
+    /** Polling intervals in milliseconds */
+    static final long MIN_INTERVAL = 10 * 1000L;
+    static final long MAX_INTERVAL = 80 * 1000L;
+    private static final long MIN_REQUEST_SPACING = 2 * 1000L;
+    private static final long CHECK_INTERVAL = 1000L;
+
+    /** Time in milliseconds after which vessels outside the requested area are removed */
+    private static final long MAX_AGE = 5 * 60 * 1000L;
+
+    /** Half size in degrees of the area around own ship */
+    private static final double OWN_SHIP_MARGIN = 0.25;
+
+    /** Maximum span in degrees of the requested viewport */
+    private static final double MAX_VIEWPORT_SPAN = 2.0;
+
+    /** The fraction by which the requested areas are larger than the desired areas */
+    private static final double PADDING = 0.5;
+
+    /** Area requested when neither own ship position nor the viewport is known. [latMin, latMax, lonMin, lonMax] */
+    private static final double[] DEFAULT_AREA = { 54.75, 56.0, 10.65, 11.25 };
+
+    private final Map<Long, RiskList> riskListMap = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastReported = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    // Accessed by the polling thread only
+    private List<double[]> requestedAreas;
+    private Set<Long> requestedMmsis = new HashSet<>();
+    private int fingerprint;
+    private long interval = MIN_INTERVAL;
+    private long lastRequest;
 
     public RiskHandler() {
         super();
@@ -47,22 +99,243 @@ public class RiskHandler implements Runnable {
     @Override
     public void run() {
 
-        while (EPDShip.getInstance().getSettings().getAisSettings().isShowRisk()) {
-            List<RiskList> riskLists = new ArrayList<>();
-            try {
-                riskLists = EPDShip.getInstance().getShoreServices().getRiskIndexes(54.75, 56.0, 10.65, 11.25);
-            } catch (ShoreServiceException e) {
-                LOG.warn("cannot get risk indexes", e);
+        while (running && EPDShip.getInstance().getSettings().getAisSettings().isShowRisk()) {
+            long now = System.currentTimeMillis();
+            List<double[]> areas = getDesiredAreas();
+
+            // Poll when the interval has elapsed, or when the desired areas are no longer covered
+            boolean due = now - lastRequest >= interval;
+            boolean moved = requestedAreas == null || !covers(requestedAreas, areas);
+            if (due || moved && now - lastRequest >= MIN_REQUEST_SPACING) {
+                poll(areas, now);
             }
-            synchronized (MUTEX) {
-                riskListMap.clear();
-                for (RiskList list : riskLists) {
-                    riskListMap.put(list.getMmsi().longValue(), list);
+            Util.sleep(CHECK_INTERVAL);
+        }
+
+    }
+
+    /**
+     * Requests the risk indexes of the given areas, padded, and merges them into the risk index map
+     * 
+     * @param areas
+     *            the desired areas
+     * @param now
+     *            the current time
+     */
+    private void poll(List<double[]> areas, long now) {
+        ShoreServicesCommon shoreServices = EPDShip.getInstance().getShoreServices();
+        if (shoreServices == null) {
+            return;
+        }
+        lastRequest = now;
+
+        List<double[]> padded = new ArrayList<>(areas.size());
+        Map<Long, RiskList> riskLists = new LinkedHashMap<>();
+        try {
+            for (double[] area : areas) {
+                double[] request = pad(area, PADDING);
+                padded.add(request);
+                List<RiskList> result = shoreServices.getRiskIndexes(request[0], request[1], request[2], request[3]);
+                if (result != null) {
+                    for (RiskList list : result) {
+                        riskLists.put(list.getMmsi().longValue(), list);
+                    }
                 }
             }
-            Util.sleep(10000);
+        } catch (ShoreServiceException e) {
+            LOG.warn("cannot get risk indexes", e);
+            interval = backoff(interval);
+            return;
         }
 
+        // Merge the risk indexes
+        for (Map.Entry<Long, RiskList> entry : riskLists.entrySet()) {
+            riskListMap.put(entry.getKey(), entry.getValue());
+            lastReported.put(entry.getKey(), now);
+        }
+
+        // Vessels previously reported within the areas have left them
+        if (requestedAreas != null && covers(padded, requestedAreas)) {
+            for (Long mmsi : requestedMmsis) {
+                if (!riskLists.containsKey(mmsi)) {
+                    remove(mmsi);
+                }
+            }
+        }
+
+        // Remove vessels that have not been reported for a while
+        for (Map.Entry<Long, Long> entry : lastReported.entrySet()) {
+            if (now - entry.getValue() > MAX_AGE) {
+                remove(entry.getKey());
+            }
+        }
+
+        // Back off while nothing changes within the same areas
+        int newFingerprint = fingerprint(riskLists.values());
+        if (requestedAreas != null && newFingerprint == fingerprint && covers(requestedAreas, areas)) {
+            interval = backoff(interval);
+        } else {
+            interval = MIN_INTERVAL;
+        }
+        fingerprint = newFingerprint;
+        requestedAreas = padded;
+        requestedMmsis = new HashSet<>(riskLists.keySet());
+    }
+
+    private void remove(Long mmsi) {
+        riskListMap.remove(mmsi);
+        lastReported.remove(mmsi);
+    }
+
+    /**
+     * Returns the areas to request, i.e. the area around own ship and the chart viewport,
+     * joined if they overlap
+     * 
+     * @return the areas to request as [latMin, latMax, lonMin, lonMax]
+     */
+    private List<double[]> getDesiredAreas() {
+        double[] ownShip = null;
+        PntData pntData = EPDShip.getInstance().getPntHandler() != null ? EPDShip.getInstance().getPntHandler()
+                .getCurrentData() : null;
+        if (pntData != null && !pntData.isBadPosition() && pntData.getPosition() != null) {
+            Position pos = pntData.getPosition();
+            ownShip = new double[] { pos.getLatitude() - OWN_SHIP_MARGIN, pos.getLatitude() + OWN_SHIP_MARGIN,
+                    pos.getLongitude() - OWN_SHIP_MARGIN, pos.getLongitude() + OWN_SHIP_MARGIN };
+        }
+        return getAreas(ownShip, getViewport());
+    }
+
+    /**
+     * Returns the areas to request for the given area around own ship and viewport
+     * 
+     * @param ownShip
+     *            the area around own ship, or null if not known
+     * @param viewport
+     *            the viewport, or null if not known
+     * @return the areas to request
+     */
+    static List<double[]> getAreas(double[] ownShip, double[] viewport) {
+        List<double[]> areas = new ArrayList<>(2);
+        if (ownShip != null && viewport != null && intersects(ownShip, viewport)) {
+            areas.add(union(ownShip, viewport));
+        } else {
+            if (ownShip != null) {
+                areas.add(ownShip);
+            }
+            if (viewport != null) {
+                areas.add(viewport);
+            }
+        }
+        if (areas.isEmpty()) {
+            areas.add(DEFAULT_AREA);
+        }
+        return areas;
+    }
+
+    /**
+     * Returns the chart viewport, limited to a maximum span around its center, or null if not available
+     * 
+     * @return the chart viewport as [latMin, latMax, lonMin, lonMax]
+     */
+    private double[] getViewport() {
+        if (EPDShip.getInstance().getMainFrame() == null || EPDShip.getInstance().getMainFrame().getChartPanel() == null) {
+            return null;
+        }
+        Projection projection = EPDShip.getInstance().getMainFrame().getChartPanel().getMap().getProjection();
+        if (projection == null) {
+            return null;
+        }
+        Point2D ul = projection.getUpperLeft();
+        Point2D lr = projection.getLowerRight();
+        double latMin = lr.getY();
+        double latMax = ul.getY();
+        double lonMin = ul.getX();
+        double lonMax = lr.getX();
+        if (lonMax < lonMin) {
+            // Crossing the date line
+            return null;
+        }
+        double latCenter = (latMin + latMax) / 2;
+        double lonCenter = (lonMin + lonMax) / 2;
+        double halfSpan = MAX_VIEWPORT_SPAN / 2;
+        return new double[] { Math.max(latMin, latCenter - halfSpan), Math.min(latMax, latCenter + halfSpan),
+                Math.max(lonMin, lonCenter - halfSpan), Math.min(lonMax, lonCenter + halfSpan) };
+    }
+
+    /**
+     * Returns if the outer area contains the inner area
+     */
+    static boolean contains(double[] outer, double[] inner) {
+        return outer[0] <= inner[0] && outer[1] >= inner[1] && outer[2] <= inner[2] && outer[3] >= inner[3];
+    }
+
+    /**
+     * Returns if each of the inner areas is contained in one of the outer areas
+     */
+    static boolean covers(List<double[]> outer, List<double[]> inner) {
+        for (double[] area : inner) {
+            boolean covered = false;
+            for (double[] o : outer) {
+                if (contains(o, area)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns if the two areas overlap
+     */
+    static boolean intersects(double[] a, double[] b) {
+        return a[0] <= b[1] && b[0] <= a[1] && a[2] <= b[3] && b[2] <= a[3];
+    }
+
+    /**
+     * Returns the smallest area containing both areas
+     */
+    static double[] union(double[] a, double[] b) {
+        return new double[] { Math.min(a[0], b[0]), Math.max(a[1], b[1]), Math.min(a[2], b[2]), Math.max(a[3], b[3]) };
+    }
+
+    /**
+     * Returns the area enlarged by the given fraction of its span, keeping its center
+     */
+    static double[] pad(double[] area, double fraction) {
+        double latPad = (area[1] - area[0]) * fraction / 2;
+        double lonPad = (area[3] - area[2]) * fraction / 2;
+        return new double[] { Math.max(-90.0, area[0] - latPad), Math.min(90.0, area[1] + latPad),
+                Math.max(-180.0, area[2] - lonPad), Math.min(180.0, area[3] + lonPad) };
+    }
+
+    /**
+     * Returns the polling interval following the given one when nothing has changed
+     */
+    static long backoff(long interval) {
+        return Math.min(interval * 2, MAX_INTERVAL);
+    }
+
+    /**
+     * Returns a fingerprint of the risk indexes used for detecting changes
+     */
+    static int fingerprint(Collection<RiskList> riskLists) {
+        int hash = 0;
+        for (RiskList list : riskLists) {
+            int listHash = Objects.hashCode(list.getMmsi());
+            if (list.getRisks() != null) {
+                for (Risk risk : list.getRisks()) {
+                    listHash = 31 * listHash + Objects.hash(risk.getAccidentType(), risk.getRiskNorm(), risk.getProbability(),
+                            risk.getConsequence());
+                }
+            }
+            // Independent of the order of the vessels
+            hash += listHash;
+        }
+        return 31 * hash + riskLists.size();
     }
 
     public void toggleRiskHandler(boolean onOff) {
@@ -74,7 +347,9 @@ public class RiskHandler implements Runnable {
             EPDShip.getInstance().startRiskHandler();
         } else {
             // stopping, clear the index map as it wont be updated any longer.
+            running = false;
             riskListMap.clear();
+            lastReported.clear();
         }
 
     }
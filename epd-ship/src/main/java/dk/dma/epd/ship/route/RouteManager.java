@@ -17,10 +17,7 @@ package dk.dma.epd.ship.route;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -34,6 +31,7 @@ import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute;
 import dk.dma.epd.common.prototype.model.route.ActiveRoute.ActiveWpSelectionResult;
 import dk.dma.epd.common.prototype.model.route.Route;
+import dk.dma.epd.common.prototype.model.route.RouteFileFormat;
 import dk.dma.epd.common.prototype.model.route.RouteSuggestionData;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
 import dk.dma.epd.common.prototype.route.RouteManagerCommon;
@@ -215,6 +213,32 @@ public class RouteManager extends RouteManagerCommon implements
     public static RouteManager loadRouteManager() {
         RouteManager manager = new RouteManager();
 
+        try {
+            RouteFileFormat routeFile = RouteFileFormat.read(new File(ROUTES_FILE));
+            if (routeFile != null) {
+                manager.setRoutes(routeFile.getRoutes());
+                if (routeFile.getActiveRouteIndex() > -1) {
+                    manager.deactivateRoute();
+                }
+            } else {
+                loadLegacyRouteStore(manager);
+            }
+
+        } catch (FileNotFoundException e) {
+            // Not an error
+        } catch (Exception e) {
+            LOG.error("Failed to load routes file: " + e.getMessage());
+            // Delete possible corrupted or old file
+            new File(ROUTES_FILE).delete();
+        }
+
+        return manager;
+    }
+
+    /**
+     * Loads the routes from a routes file in the Java serialization format of older versions
+     */
+    private static void loadLegacyRouteStore(RouteManager manager) throws Exception {
         try (FileInputStream fileIn = new FileInputStream(ROUTES_FILE);
                 ObjectInputStream objectIn = new ObjectInputStream(fileIn);) {
             RouteStore routeStore = (RouteStore) objectIn.readObject();
@@ -228,30 +252,15 @@ public class RouteManager extends RouteManagerCommon implements
             if (routeStore.getActiveRouteIndex() > -1) {
                 manager.deactivateRoute();
             }
-
-        } catch (FileNotFoundException e) {
-            // Not an error
-        } catch (Exception e) {
-            LOG.error("Failed to load routes file: " + e.getMessage());
-            // Delete possible corrupted or old file
-            new File(ROUTES_FILE).delete();
         }
-
-        return manager;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void saveToFile() {
-        RouteStore routeStore = new RouteStore(this);
-        try (FileOutputStream fileOut = new FileOutputStream(ROUTES_FILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);) {
-            objectOut.writeObject(routeStore);
-        } catch (IOException e) {
-            LOG.error("Failed to save routes file: " + e.getMessage());
-        }
+    protected File getRoutesFile() {
+        return new File(ROUTES_FILE);
     }
 
     /**
@@ -291,7 +300,7 @@ public class RouteManager extends RouteManagerCommon implements
         super.notifyListeners(e);
 
         if (EPDShip.getInstance().getVoctHandler() != null) {
-            EPDShip.getInstance().getVoctManager().saveToFile();
+            EPDShip.getInstance().getVoctManager().scheduleSave();
 
         }
 
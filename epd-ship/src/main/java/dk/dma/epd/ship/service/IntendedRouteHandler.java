@@ -358,10 +358,6 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon implements
                 IntendedRoute recievedRoute = intendedRoute.getValue();
 
                 FilteredIntendedRoute filter = findTCPA(activeRoute, recievedRoute);
-                // Try other way around
-                if (!filter.include()) {
-                    filter = findTCPA(recievedRoute, activeRoute);
-                }
 
                 // No warnings, ignore it
                 if (filter.include()) {
@@ -398,11 +394,6 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon implements
 
             FilteredIntendedRoute filter = findTCPA(routeManager.getActiveRoute(), route);
 
-            // Try other way around or dont
-            if (!filter.include()) {
-                filter = findTCPA(route, routeManager.getActiveRoute());
-            }
-
             // No warnings, ignore it
             if (!filter.include()) {
 
@@ -17,10 +17,7 @@ package dk.dma.epd.ship.service.voct;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -220,21 +217,6 @@ public class VOCTManager extends VOCTManagerCommon {
 //
 //    }
 
-    @Override
-    public synchronized void saveToFile() {
-        if (hasSar || loadSarFromSerialize) {
-
-            try (FileOutputStream fileOut = new FileOutputStream(VOCT_FILE);
-                    ObjectOutputStream objectOut = new ObjectOutputStream(
-                            fileOut);) {
-
-                objectOut.writeObject(sarData);
-            } catch (IOException e) {
-                LOG.error("Failed to save VOCT data: " + e.getMessage());
-            }
-        }
-    }
-
     @Override
     public void generateSearchPattern(
             SearchPatternGenerator.searchPattern type, Position CSP, long id) {
@@ -267,7 +249,7 @@ public class VOCTManager extends VOCTManagerCommon {
 
         notifyListeners(VOCTUpdateEvent.SEARCH_PATTERN_GENERATED);
 
-        saveToFile();
+        scheduleSave();
     }
 
     @Override
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.epd.ship.risk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.frv.enav.common.xml.risk.response.RiskList;
+
+public class RiskHandlerTest {
+
+    private static final double[] OWN_SHIP = { 55.0, 55.5, 11.0, 11.5 };
+
+    @Test
+    public void testContains() {
+        assertTrue(RiskHandler.contains(OWN_SHIP, OWN_SHIP));
+        assertTrue(RiskHandler.contains(OWN_SHIP, new double[] { 55.1, 55.4, 11.1, 11.4 }));
+        assertFalse(RiskHandler.contains(OWN_SHIP, new double[] { 55.1, 55.6, 11.1, 11.4 }));
+        assertFalse(RiskHandler.contains(OWN_SHIP, new double[] { 55.1, 55.4, 10.9, 11.4 }));
+
+        List<double[]> outer = Arrays.asList(OWN_SHIP, new double[] { 57.0, 58.0, 12.0, 13.0 });
+        assertTrue(RiskHandler.covers(outer, Arrays.asList(new double[] { 57.5, 57.6, 12.5, 12.6 }, OWN_SHIP)));
+        assertFalse(RiskHandler.covers(outer, Arrays.asList(new double[] { 55.0, 58.0, 11.0, 13.0 })));
+    }
+
+    @Test
+    public void testAreas() {
+        // Overlapping areas are joined
+        double[] viewport = { 55.4, 56.0, 11.4, 12.0 };
+        List<double[]> areas = RiskHandler.getAreas(OWN_SHIP, viewport);
+        assertEquals(1, areas.size());
+        assertArrayEquals(new double[] { 55.0, 56.0, 11.0, 12.0 }, areas.get(0), 1e-9);
+
+        // Disjoint areas are requested separately
+        viewport = new double[] { 57.0, 58.0, 12.0, 13.0 };
+        areas = RiskHandler.getAreas(OWN_SHIP, viewport);
+        assertEquals(2, areas.size());
+        assertArrayEquals(OWN_SHIP, areas.get(0), 1e-9);
+        assertArrayEquals(viewport, areas.get(1), 1e-9);
+
+        assertEquals(1, RiskHandler.getAreas(null, null).size());
+    }
+
+    @Test
+    public void testPad() {
+        double[] padded = RiskHandler.pad(OWN_SHIP, 0.5);
+        assertArrayEquals(new double[] { 54.875, 55.625, 10.875, 11.625 }, padded, 1e-9);
+        assertTrue(RiskHandler.contains(padded, OWN_SHIP));
+
+        // Clamped to valid coordinates
+        padded = RiskHandler.pad(new double[] { 89.0, 90.0, 179.0, 180.0 }, 0.5);
+        assertEquals(90.0, padded[1], 0.0);
+        assertEquals(180.0, padded[3], 0.0);
+    }
+
+    @Test
+    public void testBackoff() {
+        long interval = RiskHandler.MIN_INTERVAL;
+        for (int i = 0; i < 10; i++) {
+            long next = RiskHandler.backoff(interval);
+            assertTrue(next >= interval);
+            interval = next;
+        }
+        assertEquals(RiskHandler.MAX_INTERVAL, interval);
+    }
+
+    @Test
+    public void testFingerprint() {
+        RiskList list1 = new RiskList();
+        RiskList list2 = new RiskList();
+        assertEquals(RiskHandler.fingerprint(Arrays.asList(list1, list2)),
+                RiskHandler.fingerprint(Arrays.asList(list2, list1)));
+        assertTrue(RiskHandler.fingerprint(Collections.<RiskList> emptyList()) != RiskHandler.fingerprint(Arrays
+                .asList(list1)));
+    }
+}
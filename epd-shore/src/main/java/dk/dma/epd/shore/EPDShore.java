@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 
@@ -44,8 +45,11 @@ import dk.dma.epd.common.ExceptionHandler;
 import dk.dma.epd.common.graphics.Resources;
 import dk.dma.epd.common.prototype.Bootstrap;
 import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.StartupOrchestrator;
+import dk.dma.epd.common.prototype.StartupOrchestrator.Phase;
 import dk.dma.epd.common.prototype.PluginLoader;
 import dk.dma.epd.common.prototype.gui.SystemTrayCommon;
+import dk.dma.epd.common.prototype.layers.ais.AisSceneModel;
 import dk.dma.epd.common.prototype.model.identity.IdentityHandler;
 import dk.dma.epd.common.prototype.model.voyage.VoyageEventDispatcher;
 import dk.dma.epd.common.prototype.sensor.nmea.NmeaFileSensor;
@@ -102,6 +106,11 @@ public final class EPDShore extends EPD {
     private TransponderFrame transponderFrame;
     private MonaLisaRouteOptimization monaLisaRouteExchange;
 
+    /**
+     * AIS targets shared by the AIS layers of all map windows.
+     */
+    private final AisSceneModel aisSceneModel = new AisSceneModel();
+
     private SRUManager sruManager;
 
     private VoyageManager voyageManager;
@@ -145,9 +154,19 @@ public final class EPDShore extends EPD {
                     System.getProperty("user.home"), ".epd-shore"));
         }
 
-        new Bootstrap().run(this, new String[] { "epd-shore.properties",
-                "settings.properties", "transponder.xml" }, new String[] {
-                "workspaces", "routes", "shape/GSHHS_shp", "identities" });
+        // Independent parts of the startup are run in parallel, and the time of each phase is reported
+        StartupOrchestrator startup = new StartupOrchestrator("EPDShore");
+
+        startup.submit("Bootstrap", new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                new Bootstrap().run(EPDShore.this, new String[] {
+                        "epd-shore.properties", "settings.properties",
+                        "transponder.xml" }, new String[] { "workspaces",
+                        "routes", "shape/GSHHS_shp", "identities" });
+                return null;
+            }
+        }).get();
 
         // Set up log4j logging
         LOG = LoggerFactory.getLogger(EPDShore.class);
@@ -169,7 +188,12 @@ public final class EPDShore extends EPD {
         // Load settings or get defaults and add to bean context
         settings = new EPDSettings();
         LOG.info("Using settings file: " + getSettings().getSettingsFile());
-        settings.loadFromFile();
+        startup.run("Settings", new Runnable() {
+            @Override
+            public void run() {
+                settings.loadFromFile();
+            }
+        });
         beanHandler.add(settings);
 
         // Determine if instance already running and if that is allowed
@@ -180,14 +204,67 @@ public final class EPDShore extends EPD {
             handleEpdAlreadyRunning();
         }
 
+        // Load the stores in the background. They are added to the bean
+        // context in the original order below
+        Phase<RouteManager> routeManagerPhase = startup.submit("Routes",
+                new Callable<RouteManager>() {
+                    @Override
+                    public RouteManager call() {
+                        return RouteManager.loadRouteManager();
+                    }
+                });
+        Phase<FALManager> falManagerPhase = startup.submit("FAL",
+                new Callable<FALManager>() {
+                    @Override
+                    public FALManager call() {
+                        return FALManager.loadFALManager();
+                    }
+                });
+        Phase<VoyageManager> voyageManagerPhase = startup.submit("Voyages",
+                new Callable<VoyageManager>() {
+                    @Override
+                    public VoyageManager call() {
+                        return VoyageManager.loadVoyageManager();
+                    }
+                });
+        Phase<SRUManager> sruManagerPhase = startup.submit("SRUs",
+                new Callable<SRUManager>() {
+                    @Override
+                    public SRUManager call() {
+                        return SRUManager.loadSRUManager();
+                    }
+                });
+        Phase<RouteSuggestionHandler> routeSuggestionPhase = startup.submit(
+                "Route suggestions", new Callable<RouteSuggestionHandler>() {
+                    @Override
+                    public RouteSuggestionHandler call() {
+                        return RouteSuggestionHandler
+                                .loadRouteSuggestionHandler();
+                    }
+                });
+
         // Enable GPS timer by adding it to bean context
         PntTime.init(settings.getSensorSettings().isUseTimeFromPnt());
         beanHandler.add(PntTime.getInstance());
 
         // aisHandler = new AisHandlerCommon();
+        // The AIS view is loaded while the remaining handlers and plugins
+        // are created. Received messages are queued until the handler thread
+        // has been started with the loaded view
         aisHandler = new AisHandler(settings.getAisSettings());
-        aisHandler.loadView();
-        EPD.startThread(aisHandler, "AisHandler");
+        aisHandler.addBatchListener(aisSceneModel);
+        Phase<Void> aisViewPhase = startup.submit("AIS view", new Runnable() {
+            @Override
+            public void run() {
+                aisHandler.loadView();
+            }
+        });
+        startup.submit("AIS handler", new Runnable() {
+            @Override
+            public void run() {
+                EPD.startThread(aisHandler, "AisHandler");
+            }
+        }, aisViewPhase);
         beanHandler.add(aisHandler);
 
         // Add StaticImages handler
@@ -195,18 +272,18 @@ public final class EPDShore extends EPD {
         beanHandler.add(staticImages);
 
         // Load routeManager
-        routeManager = RouteManager.loadRouteManager();
+        routeManager = routeManagerPhase.get();
         beanHandler.add(routeManager);
 
-        falManager = FALManager.loadFALManager();
+        falManager = falManagerPhase.get();
         beanHandler.add(falManager);
 
         // To be changed to load similar to routeManager
         // voyageManager = new VoyageManager();
-        voyageManager = VoyageManager.loadVoyageManager();
+        voyageManager = voyageManagerPhase.get();
         beanHandler.add(voyageManager);
 
-        sruManager = SRUManager.loadSRUManager();
+        sruManager = sruManagerPhase.get();
         beanHandler.add(sruManager);
 
         // Create shore services
@@ -232,8 +309,7 @@ public final class EPDShore extends EPD {
 
         // Create the route suggestion handler
         // routeSuggestionHandler = new RouteSuggestionHandler();
-        routeSuggestionHandler = RouteSuggestionHandler
-                .loadRouteSuggestionHandler();
+        routeSuggestionHandler = routeSuggestionPhase.get();
         beanHandler.add(routeSuggestionHandler);
 
         // Create a new MSI-NM handler
@@ -254,35 +330,50 @@ public final class EPDShore extends EPD {
         pluginLoader = new PluginLoader(getProperties(), getHomePath(),
                 getPropertyFileName());
 
-        try {
-            pluginLoader.createPluginComponents(new Consumer<Object>() {
-                public void accept(Object comp) {
-                    beanHandler.add(comp);
+        startup.run("Plugins", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pluginLoader.createPluginComponents(new Consumer<Object>() {
+                        public void accept(Object comp) {
+                            beanHandler.add(comp);
+                        }
+                    });
+                } catch (Exception e) {
+                    LOG.error("Failed to load plugin container "
+                            + e.getMessage());
                 }
-            });
-        } catch (Exception e) {
-            LOG.error("Failed to load plugin container " + e.getMessage());
-        }
+            }
+        });
 
-        final CountDownLatch guiCreated = new CountDownLatch(1);
+        // The layers read the AIS targets when the GUI is created, so it must wait for the loaded view
+        aisViewPhase.get();
 
-        // Create and show GUI
-        SwingUtilities.invokeLater(new Runnable() {
+        startup.run("GUI", new Runnable() {
             @Override
             public void run() {
-                createAndShowGUI();
-                guiCreated.countDown();
+                final CountDownLatch guiCreated = new CountDownLatch(1);
+
+                // Create and show GUI
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        createAndShowGUI();
+                        guiCreated.countDown();
+                    }
+                });
+
+                // Wait for gui to be created
+                try {
+                    guiCreated.await();
+
+                } catch (InterruptedException e) {
+                    LOG.error("Interrupted while waiting for GUI to be created",
+                            e);
+                }
             }
         });
 
-        // Wait for gui to be created
-        try {
-            guiCreated.await();
-
-        } catch (InterruptedException e) {
-            LOG.error("Interrupted while waiting for GUI to be created", e);
-        }
-
         // Create vocthandler
         voctHandler = new VoctHandler();
         beanHandler.add(voctHandler);
@@ -305,6 +396,10 @@ public final class EPDShore extends EPD {
         if (settings.getSensorSettings().isStartTransponder()) {
             transponderFrame.startTransponder();
         }
+
+        // Log the startup report once the remaining background phases have
+        // completed
+        startup.finish();
     }
 
     /**
@@ -479,6 +574,15 @@ public final class EPDShore extends EPD {
         return (AisHandler) aisHandler;
     }
 
+    /**
+     * Returns the AIS scene model shared by the AIS layers of all map windows
+     * 
+     * @return the AIS scene model
+     */
+    public AisSceneModel getAisSceneModel() {
+        return aisSceneModel;
+    }
+
     /**
      * Returns a reference to the intended route handler
      * 
@@ -19,13 +19,13 @@ import com.bbn.openmap.LayerHandler;
 import com.bbn.openmap.MapHandler;
 import com.bbn.openmap.MouseDelegator;
 import com.bbn.openmap.event.ProjectionSupport;
-import com.bbn.openmap.layer.shape.MultiShapeLayer;
 import dk.dma.epd.common.prototype.EPD;
 import dk.dma.epd.common.prototype.event.mouse.CommonDistanceCircleMouseMode;
 import dk.dma.epd.common.prototype.event.mouse.NoGoMouseModeCommon;
 import dk.dma.epd.common.prototype.gui.util.DraggableLayerMapBean;
 import dk.dma.epd.common.prototype.gui.views.ChartPanelCommon;
 import dk.dma.epd.common.prototype.layers.CommonRulerLayer;
+import dk.dma.epd.common.prototype.layers.background.CoastalOutlineLayerCommon;
 import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteCPALayer;
 import dk.dma.epd.common.prototype.layers.intendedroute.IntendedRouteLayerCommon;
 import dk.dma.epd.common.prototype.layers.nogo.NogoLayer;
@@ -103,6 +103,8 @@ public class ChartPanel extends ChartPanelCommon {
 
         // Add the handlers to this bean
         mapHandler.add(EPDShore.getInstance().getAisHandler());
+        // The AIS layers of all windows pull their targets from the shared scene model
+        mapHandler.add(EPDShore.getInstance().getAisSceneModel());
         mapHandler.add(EPDShore.getInstance().getShoreServices());
         mapHandler.add(EPDShore.getInstance().getIntendedRouteHandler());
         // mapHandler.add(EPDShore.getInstance().getIdentityHandler());
@@ -413,7 +415,7 @@ public class ChartPanel extends ChartPanelCommon {
 
         // Create background layer
         String layerName = "background";
-        bgLayer = new MultiShapeLayer();
+        bgLayer = new CoastalOutlineLayerCommon();
         bgLayer.setProperties(layerName, props);
         bgLayer.setAddAsBackground(true);
         bgLayer.setVisible(true);
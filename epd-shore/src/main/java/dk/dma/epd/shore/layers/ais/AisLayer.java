@@ -17,7 +17,6 @@ package dk.dma.epd.shore.layers.ais;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Point2D;
 import java.util.Date;
 import java.util.HashMap;
 
@@ -25,10 +24,8 @@ import net.jcip.annotations.ThreadSafe;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 
-import dk.dma.enav.model.geometry.Position;
 import dk.dma.epd.common.graphics.ISelectableGraphic;
 import dk.dma.epd.common.prototype.ais.IAisTargetListener;
-import dk.dma.epd.common.prototype.ais.MobileTarget;
 import dk.dma.epd.common.prototype.ais.SarTarget;
 import dk.dma.epd.common.prototype.ais.VesselPositionData;
 import dk.dma.epd.common.prototype.ais.VesselStaticData;
@@ -70,32 +67,6 @@ public class AisLayer extends AisLayerCommon<AisHandler> implements IAisTargetLi
         this.registerInfoPanel(this.aisTargetInfoPanel, VesselGraphic.class);
     }
 
-    /**
-* Check if vessel is near map coordinates or it's
-* sending an intended route
-* @param mobileTarget
-* @return if the target should be included
-*/
-    @SuppressWarnings("unused")
-    private boolean drawTarget(MobileTarget mobileTarget) {
-        Point2D lr = chartPanel.getMap().getProjection().getLowerRight();
-        Point2D ul = chartPanel.getMap().getProjection().getUpperLeft();
-        Position pos = mobileTarget.getPositionData().getPos();
-        
-        boolean t1 = pos.getLatitude() >= lr.getY();
-        boolean t2 = pos.getLatitude() <= ul.getY();
-        boolean t3 = pos.getLongitude() >= ul.getX();
-        boolean t4 = pos.getLongitude() <= lr.getX();
-        
-        if (!(t1 && t2 && t3 && t4)) {
-            VesselTarget vesselTarget = (mobileTarget instanceof VesselTarget) ? (VesselTarget)mobileTarget : null;
-            if (vesselTarget == null) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     /**
 * {@inheritDoc}
 */
@@ -28,6 +28,7 @@ import com.bbn.openmap.proj.coords.LatLonPoint;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.model.voct.SARAreaData;
+import dk.dma.epd.common.prototype.layers.voct.ContainmentGridGraphic;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationAreaGraphics.LineType;
 import dk.dma.epd.common.prototype.layers.voct.EffortAllocationInternalGraphics;
@@ -39,6 +40,7 @@ import dk.dma.epd.common.prototype.model.voct.sardata.DatumLineData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointData;
 import dk.dma.epd.common.prototype.model.voct.sardata.DatumPointDataSARIS;
 import dk.dma.epd.common.prototype.model.voct.sardata.EffortAllocationData;
+import dk.dma.epd.common.prototype.model.voct.sardata.MonteCarloData;
 import dk.dma.epd.common.prototype.model.voct.sardata.RapidResponseData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SARData;
 import dk.dma.epd.common.prototype.model.voct.sardata.SimpleSAR;
@@ -59,6 +61,7 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
     private SarAreaGraphic sarArea;
     private SarGraphics sarGraphics;
+    private ContainmentGridGraphic containmentGrid;
 
     public VoctLayerPlanning() {
 
@@ -361,7 +364,8 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
         if (e == VOCTUpdateEvent.SAR_DISPLAY) {
 
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
                 drawRapidResponse();
 //                System.out.println("Painting Rapid Response");
             }
@@ -602,6 +606,12 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
         graphics.clear();
 
+        containmentGrid = null;
+        if (data instanceof MonteCarloData && ((MonteCarloData) data).getContainmentGrid() != null) {
+            containmentGrid = new ContainmentGridGraphic(((MonteCarloData) data).getContainmentGrid());
+            graphics.add(containmentGrid);
+        }
+
         sarArea = new SarAreaGraphic(A, B, C, D);
         graphics.add(sarArea);
 
@@ -679,7 +689,7 @@ public class VoctLayerPlanning extends VoctLayerCommon {
         for (int i = 0; i < effectiveSRUAreas.size(); i++) {
             effectiveSRUAreas.get(i).updateEffectiveAreaSize(sarData);
         }
-        voctManager.saveToFile();
+        voctManager.scheduleSave();
     }
 
     @Override
@@ -769,6 +779,13 @@ public class VoctLayerPlanning extends VoctLayerCommon {
 
             sarGraphics = new SarGraphics(datum, radius, LKP, data.getCurrentList(), data.getWindList());
             graphics.add(sarGraphics);
+
+            graphics.remove(containmentGrid);
+            containmentGrid = null;
+            if (data instanceof MonteCarloData && ((MonteCarloData) data).getContainmentGrid() != null) {
+                containmentGrid = new ContainmentGridGraphic(((MonteCarloData) data).getContainmentGrid());
+                graphics.add(containmentGrid);
+            }
         }
 
         doPrepare();
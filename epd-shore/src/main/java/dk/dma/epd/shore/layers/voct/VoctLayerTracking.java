@@ -76,7 +76,8 @@ public class VoctLayerTracking extends VoctLayerCommon implements SRUUpdateListe
         }
 
         if (e == VOCTUpdateEvent.SAR_DISPLAY) {
-            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE) {
+            if (voctManager.getSarType() == SAR_TYPE.RAPID_RESPONSE
+                    || voctManager.getSarType() == SAR_TYPE.MONTE_CARLO) {
                 drawRapidResponse();
             }
             if (voctManager.getSarType() == SAR_TYPE.DATUM_POINT) {
@@ -17,15 +17,13 @@ package dk.dma.epd.shore.route;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.dma.epd.common.prototype.EPD;
+import dk.dma.epd.common.prototype.model.route.RouteFileFormat;
 import dk.dma.epd.common.prototype.model.route.RoutesUpdateEvent;
 import dk.dma.epd.common.prototype.route.RouteManagerCommon;
 import dk.dma.epd.shore.EPDShore;
@@ -58,12 +56,18 @@ public class RouteManager extends RouteManagerCommon {
     public static RouteManager loadRouteManager() {
         RouteManager manager = new RouteManager();
         try {
-            FileInputStream fileIn = new FileInputStream(ROUTESFILE);
-            ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-            RouteStore routeStore = (RouteStore) objectIn.readObject();
-            objectIn.close();
-            fileIn.close();
-            manager.setRoutes(routeStore.getRoutes());
+            RouteFileFormat routeFile = RouteFileFormat.read(new File(ROUTESFILE));
+            if (routeFile != null) {
+                manager.setRoutes(routeFile.getRoutes());
+            } else {
+                // Java serialization format of older versions
+                FileInputStream fileIn = new FileInputStream(ROUTESFILE);
+                ObjectInputStream objectIn = new ObjectInputStream(fileIn);
+                RouteStore routeStore = (RouteStore) objectIn.readObject();
+                objectIn.close();
+                fileIn.close();
+                manager.setRoutes(routeStore.getRoutes());
+            }
 
         } catch (FileNotFoundException e) {
             // Not an error
@@ -80,25 +84,14 @@ public class RouteManager extends RouteManagerCommon {
      * {@inheritDoc}
      */
     @Override
-    public void saveToFile() {
-        synchronized (routes) {
-            RouteStore routeStore = new RouteStore(this);
-            try {
-                FileOutputStream fileOut = new FileOutputStream(ROUTESFILE);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-                objectOut.writeObject(routeStore);
-                objectOut.close();
-                fileOut.close();
-            } catch (IOException e) {
-                LOG.error("Failed to save routes file: " + e.getMessage());
-            }
-        }
+    protected File getRoutesFile() {
+        return new File(ROUTESFILE);
     }
 
     @Override
     public void notifyListeners(RoutesUpdateEvent e) {
         super.notifyListeners(e);
 
-        EPDShore.getInstance().getVoctManager().saveToFile();
+        EPDShore.getInstance().getVoctManager().scheduleSave();
     }
 }
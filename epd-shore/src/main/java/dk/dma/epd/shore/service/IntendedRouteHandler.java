@@ -14,13 +14,13 @@
  */
 package dk.dma.epd.shore.service;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.Collection;
 
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoute;
 import dk.dma.epd.common.prototype.model.intendedroute.FilteredIntendedRoutes;
 import dk.dma.epd.common.prototype.model.intendedroute.IntendedRouteFilterMessage;
 import dk.dma.epd.common.prototype.model.route.IntendedRoute;
+import dk.dma.epd.common.prototype.sensor.pnt.PntTime;
 import dk.dma.epd.common.prototype.service.IntendedRouteHandlerCommon;
 import dk.dma.epd.common.prototype.settings.EnavSettings;
 import dk.dma.epd.common.text.Formatter;
@@ -78,41 +78,18 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
      * Update all filters
      */
     @Override
-    protected void updateFilter() {
+    protected synchronized void updateFilter() {
 
         // Recalculate everything
         // Compare all routes to current active route
 
         FilteredIntendedRoutes filteredIntendedRoutes = new FilteredIntendedRoutes();
 
-        // Compare all intended routes against all other intended routes
-
-        Iterator<Entry<Long, IntendedRoute>> outerIterator = intendedRoutes
-                .entrySet().iterator();
-        while (outerIterator.hasNext()) {
-            Entry<Long, IntendedRoute> intendedRoute = outerIterator.next();
-
-            IntendedRoute route1 = intendedRoute.getValue();
-
-            Iterator<Entry<Long, IntendedRoute>> innerIterator = intendedRoutes
-                    .entrySet().iterator();
-            while (innerIterator.hasNext()) {
-                Entry<Long, IntendedRoute> intendedRoute2 = innerIterator
-                        .next();
-
-                IntendedRoute route2 = intendedRoute2.getValue();
-
-                if (route1.getMmsi() != route2.getMmsi()) {
-                    FilteredIntendedRoute filter = findTCPA(route1, route2);
-
-                    // No warnings, ignore it
-                    if (filter.include()) {
-                        // Add the filtered route to the list
-                        filteredIntendedRoutes.add(filter);
-                    }
-                }
-
-            }
+        // Compare all intended routes against all other intended routes.
+        // The engine evaluates each unordered pair of routes once and
+        // only for the route legs that overlap in time and space
+        for (FilteredIntendedRoute filter : tcpaEngine.findTCPAs(intendedRoutes, PntTime.getDate().getTime())) {
+            filteredIntendedRoutes.add(filter);
         }
 
         // Check if we need to raise any alerts
@@ -124,13 +101,25 @@ public class IntendedRouteHandler extends IntendedRouteHandlerCommon {
     }
 
     /**
-     * Update filter with new intended route
+     * Update filter with new intended route.
+     * <p>
+     * Only the filtered intended routes involving the MMSI of the route can
+     * change, so only these are re-computed and checked for notifications.
      * 
      * @param route
      */
     @Override
-    protected void applyFilter(IntendedRoute route) {
-        updateFilter();
+    protected synchronized void applyFilter(IntendedRoute route) {
+        Long mmsi = route.getMmsi();
+
+        Collection<FilteredIntendedRoute> filters = tcpaEngine.findTCPAs(mmsi,
+                route, intendedRoutes, PntTime.getDate().getTime());
+
+        // Check if we need to raise any alerts for the touched keys
+        checkGenerateNotifications(this.filteredIntendedRoutes, filters);
+
+        // Replace the filtered intended routes of the MMSI
+        this.filteredIntendedRoutes.replace(mmsi, filters);
     }
 
     @Override
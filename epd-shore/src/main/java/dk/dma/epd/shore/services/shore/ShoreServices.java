@@ -14,6 +14,8 @@
  */
 package dk.dma.epd.shore.services.shore;
 
+import javax.xml.bind.JAXBException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,23 +84,23 @@ public class ShoreServices extends ShoreServicesCommon implements IStatusCompone
             throw new ShoreServiceException(ShoreServiceErrorCode.INTERNAL_ERROR);
         }
 
-        // Make request
+        // Make request, unmarshalling the response as it is received
+        Object resObj;
         try {
-            shoreHttp.makeRequest();
+            resObj = shoreHttp.makeRequest(resContextPath);
         } catch (ShoreServiceException e) {
             status.markContactError(e);
             throw e;
+        } catch (JAXBException e) {
+            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+            throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
         }
 
-        ShoreServiceResponse res;
-        try {
-            Object resObj = shoreHttp.getXmlUnmarshalledContent(resContextPath);
-            res = (ShoreServiceResponse) resObj;
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOG.error("Failed to unmarshal XML response: " + e.getMessage());
+        if (!(resObj instanceof ShoreServiceResponse)) {
+            LOG.error("Failed to unmarshal XML response: unexpected " + resObj);
             throw new ShoreServiceException(ShoreServiceErrorCode.INVALID_RESPONSE);
         }
+        ShoreServiceResponse res = (ShoreServiceResponse) resObj;
 
         // Set last fail/contact
         status.markContactSuccess();
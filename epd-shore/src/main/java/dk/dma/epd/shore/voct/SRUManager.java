@@ -401,7 +401,7 @@ System.out.println("ID is " + voctHandler.getVoctMessageList().get(i)
                 }
                 // maintainAvailableSRUs();
                 notifyListeners(SRUUpdateEvent.SRU_REMOVED, i);
-                voctManager.saveToFile();
+                voctManager.scheduleSave();
             }
         }
     }
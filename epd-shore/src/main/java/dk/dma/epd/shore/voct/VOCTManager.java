@@ -17,10 +17,7 @@ package dk.dma.epd.shore.voct;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -301,7 +298,7 @@ public class VOCTManager extends VOCTManagerCommon implements
 
         notifyListeners(VOCTUpdateEvent.SEARCH_PATTERN_GENERATED);
 
-        saveToFile();
+        scheduleSave();
     }
 
     @Override
@@ -482,19 +479,4 @@ public class VOCTManager extends VOCTManagerCommon implements
 
     }
 
-    @Override
-    public synchronized void saveToFile() {
-        if (hasSar || loadSarFromSerialize) {
-
-            try (FileOutputStream fileOut = new FileOutputStream(VOCT_FILE);
-                    ObjectOutputStream objectOut = new ObjectOutputStream(
-                            fileOut);) {
-
-                objectOut.writeObject(sarData);
-            } catch (IOException e) {
-                LOG.error("Failed to save VOCT data: " + e.getMessage());
-            }
-        }
-    }
-
 }